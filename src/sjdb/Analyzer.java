@@ -0,0 +1,318 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class implements ANALYZE: it streams the tuples of each stored
+ * relation once and, for every attribute, gathers ColumnStatistics to
+ * replace the statistics typed into the catalogue, along with the tuple
+ * count of the relation.
+ *
+ * In one pass, and in memory bounded by the settings rather than by the
+ * size of the relation, it keeps for each attribute:
+ *
+ * - a HyperLogLog sketch, estimating the number of distinct values
+ * - a fixed number of counters, finding the most common values by the
+ *   SpaceSaving algorithm, with the fraction of the tuples having each
+ * - a reservoir sample of the tuples, shared by the attributes, which the
+ *   equi-depth Histogram of the other values is built from
+ *
+ * The sample is kept on the relation too, for the Estimator to evaluate
+ * conjunctions of predicates on the relation over.
+ *
+ * Estimators that memoise must be cleared once the statistics change.
+ */
+public class Analyzer {
+	/**
+	 * The number of tuples sampled from each relation unless set
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 30000;
+	/**
+	 * The number of histogram buckets per attribute unless set
+	 */
+	public static final int DEFAULT_BUCKETS = 20;
+	/**
+	 * The number of most common values kept per attribute unless set
+	 */
+	public static final int DEFAULT_MOST_COMMON = 10;
+
+	private Catalogue catalogue;
+	private DataStore store;
+	private Random random;
+	private int sampleSize = DEFAULT_SAMPLE_SIZE;
+	private int buckets = DEFAULT_BUCKETS;
+	private int mostCommon = DEFAULT_MOST_COMMON;
+
+	/**
+	 * Create an analyser of the stored relations of a catalogue
+	 * @param catalogue Catalogue to store the statistics in
+	 * @param store Store holding the tuples of the relations
+	 */
+	public Analyzer(Catalogue catalogue, DataStore store) {
+		this(catalogue, store, new Random(3211));
+	}
+
+	/**
+	 * Create an analyser of the stored relations of a catalogue
+	 * @param catalogue Catalogue to store the statistics in
+	 * @param store Store holding the tuples of the relations
+	 * @param random Source of randomness for the samples
+	 */
+	public Analyzer(Catalogue catalogue, DataStore store, Random random) {
+		this.catalogue = catalogue;
+		this.store = store;
+		this.random = random;
+	}
+
+	/**
+	 * Analyse every relation of the catalogue whose tuples are stored
+	 * @throws DatabaseException if the tuples of a relation don't match it
+	 */
+	public void analyze() throws DatabaseException {
+		for (NamedRelation reln : this.catalogue.getRelations()) {
+			if (this.store.contains(reln)) analyze(reln);
+		}
+	}
+
+	/**
+	 * Analyse one relation, replacing the statistics of its attributes
+	 * @param reln Relation
+	 * @throws DatabaseException if no tuples were loaded for the relation
+	 */
+	public void analyze(NamedRelation reln) throws DatabaseException {
+		int width = reln.getAttributes().size();
+		HyperLogLog[] sketches = new HyperLogLog[width];
+		SpaceSaving[] counters = new SpaceSaving[width];
+		for (int a = 0; a < width; a++) {
+			sketches[a] = new HyperLogLog();
+			counters[a] = new SpaceSaving(this.mostCommon * 10);
+		}
+
+		// Algorithm R: the n-th tuple replaces a random one of the sample with probability size/n
+		List<Tuple> sample = new ArrayList<Tuple>();
+		long tuples = 0;
+		for (Iterator<Tuple> iter = this.store.iterator(reln); iter.hasNext(); ) {
+			Tuple t = iter.next();
+			tuples++;
+			for (int a = 0; a < width; a++) {
+				sketches[a].add(t.get(a));
+				counters[a].add(t.get(a));
+			}
+			if (sample.size() < this.sampleSize) sample.add(t);
+			else {
+				long slot = (long) (this.random.nextDouble() * tuples);
+				if (slot < this.sampleSize) sample.set((int) slot, t);
+			}
+		}
+
+		this.catalogue.setTupleCount(reln.toString(), tuples);
+		this.catalogue.setSample(reln.toString(), sample);
+		List<Attribute> attrs = new ArrayList<Attribute>(reln.getAttributes());
+		for (int a = 0; a < width; a++) {
+			ColumnStatistics stats = build(tuples, sketches[a].estimate(), counters[a], sample, a);
+			this.catalogue.setStatistics(reln.toString(), attrs.get(a).getName(), stats);
+		}
+	}
+
+	/**
+	 * Build the statistics of one attribute from what was gathered on it
+	 */
+	private ColumnStatistics build(long tuples, long estimate, SpaceSaving counter, List<Tuple> sample, int a) {
+		long values = Math.max(1, Math.min(estimate, tuples));
+
+		// a value is common if it's guaranteed to be in more tuples than average, by a quarter
+		List<String> common = new ArrayList<String>();
+		List<Double> frequencies = new ArrayList<Double>();
+		for (Counter c : counter.getTop(this.mostCommon)) {
+			long count = c.getGuaranteed();
+			if (count > 1 && count * values > 1.25 * tuples) {
+				common.add(c.value);
+				frequencies.add((double) count / tuples);
+			}
+		}
+
+		double rest = 1;
+		for (double f : frequencies) rest -= f;
+		List<String> others = new ArrayList<String>();
+		for (Tuple t : sample) if (!common.contains(t.get(a))) others.add(t.get(a));
+		Collections.sort(others);
+		Histogram histogram = others.isEmpty() ? null
+				: new Histogram(others, this.buckets, Math.max(0, rest), Math.max(1, values - common.size()));
+
+		double[] freqs = new double[frequencies.size()];
+		for (int i = 0; i < freqs.length; i++) freqs[i] = frequencies.get(i);
+		return new ColumnStatistics(values, common.toArray(new String[common.size()]), freqs, histogram);
+	}
+
+	/**
+	 * Set the number of tuples sampled from each relation, for the histograms
+	 * and for estimating conjunctions of predicates
+	 * @param size Sample size, at least 1
+	 */
+	public void setSampleSize(int size) {
+		this.sampleSize = Math.max(1, size);
+	}
+
+	/**
+	 * Set the number of histogram buckets per attribute
+	 * @param buckets Bucket count, at least 1
+	 */
+	public void setBuckets(int buckets) {
+		this.buckets = Math.max(1, buckets);
+	}
+
+	/**
+	 * Set the number of most common values kept per attribute
+	 * @param values Value count, 0 for none
+	 */
+	public void setMostCommonValues(int values) {
+		this.mostCommon = Math.max(0, values);
+	}
+
+	/**
+	 * The SpaceSaving algorithm of Metwally et al: a fixed number of counters,
+	 * each of a value; a value without one takes over the smallest, adding
+	 * to its count and recording that count as its possible overestimate.
+	 * Every value in more than 1/capacity of the tuples keeps a counter.
+	 *
+	 * The counters are kept in their Stream-Summary: a list of buckets of the
+	 * counters of each count, in ascending order, so counting a value moves
+	 * its counter to the next bucket and the smallest is in the first, both
+	 * in constant time however many counters there are.
+	 */
+	private static class SpaceSaving {
+		private int capacity;
+		private HashMap<String, Counter> counters = new HashMap<String, Counter>();
+		// the bucket of the smallest count, or null while there are no counters
+		private Bucket smallest;
+
+		private SpaceSaving(int capacity) {
+			this.capacity = Math.max(1, capacity);
+		}
+
+		private void add(String value) {
+			Counter counter = this.counters.get(value);
+			if (counter != null) {
+				increment(counter);
+				return;
+			}
+			if (this.counters.size() < this.capacity) {
+				// a count of 1 is the least there is, so its bucket is the first
+				if (this.smallest == null || this.smallest.count != 1) link(new Bucket(1), null);
+				counter = new Counter(value, 0);
+				this.smallest.attach(counter);
+				this.counters.put(value, counter);
+				return;
+			}
+
+			counter = this.smallest.first;
+			this.counters.remove(counter.value);
+			counter.value = value;
+			counter.overestimate = this.smallest.count;
+			this.counters.put(value, counter);
+			increment(counter);
+		}
+
+		/**
+		 * Move a counter to the bucket of one more
+		 */
+		private void increment(Counter counter) {
+			Bucket from = counter.bucket;
+			Bucket to = from.next;
+			if (to == null || to.count != from.count + 1) {
+				to = new Bucket(from.count + 1);
+				link(to, from);
+			}
+			from.detach(counter);
+			to.attach(counter);
+			if (from.first == null) unlink(from);
+		}
+
+		/**
+		 * Put a bucket in the list after another, or first if that's null
+		 */
+		private void link(Bucket bucket, Bucket after) {
+			bucket.prev = after;
+			bucket.next = (after == null) ? this.smallest : after.next;
+			if (bucket.next != null) bucket.next.prev = bucket;
+			if (after == null) this.smallest = bucket;
+			else after.next = bucket;
+		}
+
+		/**
+		 * Take an empty bucket out of the list
+		 */
+		private void unlink(Bucket bucket) {
+			if (bucket.prev == null) this.smallest = bucket.next;
+			else bucket.prev.next = bucket.next;
+			if (bucket.next != null) bucket.next.prev = bucket.prev;
+		}
+
+		/**
+		 * @return the counters with the highest guaranteed counts, highest first
+		 */
+		private List<Counter> getTop(int n) {
+			List<Counter> ret = new ArrayList<Counter>(this.counters.values());
+			ret.sort((x, y) -> Long.compare(y.getGuaranteed(), x.getGuaranteed()));
+			return ret.subList(0, Math.min(n, ret.size()));
+		}
+	}
+
+	/**
+	 * The counter of a value, in the bucket of its count
+	 */
+	private static class Counter {
+		private String value;
+		private long overestimate;
+		private Bucket bucket;
+		private Counter prev;
+		private Counter next;
+
+		private Counter(String value, long overestimate) {
+			this.value = value;
+			this.overestimate = overestimate;
+		}
+
+		/**
+		 * @return the number of tuples the value is certainly in
+		 */
+		private long getGuaranteed() {
+			return this.bucket.count - this.overestimate;
+		}
+	}
+
+	/**
+	 * The counters of one count, in a list of their own
+	 */
+	private static class Bucket {
+		private final long count;
+		private Counter first;
+		private Bucket prev;
+		private Bucket next;
+
+		private Bucket(long count) {
+			this.count = count;
+		}
+
+		private void attach(Counter counter) {
+			counter.bucket = this;
+			counter.prev = null;
+			counter.next = this.first;
+			if (this.first != null) this.first.prev = counter;
+			this.first = counter;
+		}
+
+		private void detach(Counter counter) {
+			if (counter.prev == null) this.first = counter.next;
+			else counter.prev.next = counter.next;
+			if (counter.next != null) counter.next.prev = counter.prev;
+			counter.prev = null;
+			counter.next = null;
+		}
+	}
+}
@@ -8,26 +8,86 @@ package sjdb;
  *
  */
 public class Attribute {
+	
+	/**
+	 * The width, in bytes, of the values of an attribute unless given
+	 */
+	public static final int DEFAULT_WIDTH = 8;
 
 	private String name;
-	private int values;
+	private long values;
+	/**
+	 * The width in bytes of the values of the attribute, for the cost of storing them
+	 */
+	private int width = DEFAULT_WIDTH;
+	/**
+	 * The dense id given to the attribute by the Catalogue, or -1
+	 */
+	private int id;
+	/**
+	 * The statistics gathered by ANALYZE on the values of the attribute, or null
+	 */
+	private ColumnStatistics statistics;
 
 	public Attribute(String name) {
 		this.name = name;
 		this.values = 0;
+		this.id = -1;
 	}
 	/**
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
 		this.name = name;
 		this.values = values;
+		this.id = -1;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param id the dense id given by the Catalogue
+	 */
+	Attribute(String name, long values, int id) {
+		this.name = name;
+		this.values = values;
+		this.id = id;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param id the dense id given by the Catalogue
+	 * @param width the width of the values in bytes
+	 * @param statistics the statistics gathered by ANALYZE, or null
+	 */
+	Attribute(String name, long values, int id, int width, ColumnStatistics statistics) {
+		this(name, values, id);
+		this.width = width;
+		this.statistics = statistics;
 	}
 	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
 		this.values = attr.values;
+		this.id = attr.id;
+		this.width = attr.width;
+		this.statistics = attr.statistics;
+	}
+	
+	/**
+	 * Copy an attribute, keeping its id but giving it a new value count;
+	 * the values are no longer spread as they were, so the statistics
+	 * aren't copied
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, long values) {
+		this.name = attr.name;
+		this.values = values;
+		this.id = attr.id;
+		this.width = attr.width;
 	}
 	
 	/**
@@ -40,10 +100,33 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
 	
+	/**
+	 * @return the dense id of this attribute in the Catalogue, 
+	 * 			or -1 if it wasn't created by the Catalogue
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * @return the width in bytes of the values of this attribute
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return the statistics gathered by ANALYZE on the values of this 
+	 * 			attribute, or null if it hasn't been analysed
+	 */
+	public ColumnStatistics getStatistics() {
+		return statistics;
+	}
+	
 	
 	@Override
 	public int hashCode() {
@@ -68,7 +151,7 @@ public class Attribute {
 	}
 	
 	public String render() {
-		return name + "," + values;
+		return name + "," + values + ((width == DEFAULT_WIDTH) ? "" : "," + width);
 	}
 	
 	
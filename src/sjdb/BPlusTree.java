@@ -0,0 +1,463 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a B+tree secondary index on one attribute of a HeapFile,
+ * stored in its own file of fixed-size pages and read through a BufferPool.
+ * Each entry of the index is a value of the attribute and the record id,
+ * the page and slot, of a tuple of the heap file with that value.
+ *
+ * The tree is bulk built, bottom up: the entries are sorted by value, in
+ * order of their bytes in UTF-8, packed into leaves left to right, and each
+ * level above holds the first value of each node below. If the heap file
+ * is sorted on the attribute already, the entries are read in order and
+ * the tuples with each value are in neighbouring pages, so the index is
+ * clustered.
+ *
+ * The first page is a header: a magic number, the page size, the page of
+ * the root, the height of the tree, the number of leaves and the number of
+ * entries. Each node starts with its number of entries, its level, 0 for a
+ * leaf, and for a leaf, the page of the next leaf. A leaf's entries are
+ * each a value, as in a heap file record, and a record id; an inner node
+ * holds its first child, then each value and the child starting with it.
+ */
+public class BPlusTree implements Index {
+	/**
+	 * The size of a page, in bytes.
+	 */
+	public static final int PAGE_SIZE = Estimator.PAGE_SIZE;
+	// the bytes before the entries of a node, and taken by a record id and a child page
+	private static final int NODE_HEADER = 8;
+	private static final int RECORD_ID = 6;
+	private static final int CHILD = 4;
+
+	private static final int MAGIC = 0x534A4249;
+
+	private final String filename;
+	private final int root;
+	private final int height;
+	private final int leafCount;
+	private final long entryCount;
+	private final BufferPool pool;
+	private final FileChannel channel;
+	private final int poolFile;
+
+	private BPlusTree(String filename, int root, int height, int leafCount, long entryCount, BufferPool pool, FileChannel channel) {
+		this.filename = filename;
+		this.root = root;
+		this.height = height;
+		this.leafCount = leafCount;
+		this.entryCount = entryCount;
+		this.pool = pool;
+		this.channel = channel;
+		this.poolFile = pool.register(channel);
+	}
+
+	/**
+	 * Bulk build an index on an attribute of a heap file
+	 * @param filename Index file to create, or replace
+	 * @param heap Heap file to index, best sorted on the attribute
+	 * @param index Position of the attribute in the tuples of the heap file
+	 * @param pool Buffer pool to read the pages of the index through
+	 * @return Index, open for reading
+	 * @throws DatabaseException if a value doesn't fit in a node, or the file can't be written
+	 */
+	public static BPlusTree build(String filename, HeapFile heap, int index, BufferPool pool) throws DatabaseException {
+		// read the entries out of the records, without decoding them
+		List<Entry> entries = new ArrayList<Entry>((int) Math.min(Integer.MAX_VALUE - 8, heap.getTupleCount()));
+		for (int p = 0; p < heap.getPageCount(); p++) {
+			ByteBuffer page = heap.getPage(p);
+			try {
+				for (int s = 0; s < HeapFile.getSlotCount(page); s++) {
+					long found = HeapFile.locate(page, HeapFile.getRecordOffset(page, s), index);
+					byte[] value = new byte[(int) (found >>> 32)];
+					for (int i = 0; i < value.length; i++) value[i] = page.get((int) found + i);
+					entries.add(new Entry(value, p, s));
+				}
+			} finally {
+				heap.releasePage(p);
+			}
+		}
+		// in order already if the heap file is sorted on the attribute, which the sort finds in one pass
+		entries.sort((a, b) -> compare(a.value, b.value));
+
+		int root, height = 1, leaves;
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer node = ByteBuffer.allocateDirect(PAGE_SIZE);
+			int pages = 1;
+
+			// the first value and page of each node of the level being written
+			List<byte[]> firsts = new ArrayList<byte[]>();
+			List<Integer> children = new ArrayList<Integer>();
+
+			channel.position(PAGE_SIZE);
+			clear(node, 0);
+			for (Entry e : entries) {
+				if (!fits(node, e.value, RECORD_ID)) {
+					if (node.getShort(0) == 0) throw new DatabaseException("Value of " + e.value.length + " bytes doesn't fit in a node");
+					// the next leaf is written straight after this one
+					node.putInt(4, pages + 1);
+					pages = flush(channel, node, pages, firsts, children);
+					clear(node, 0);
+				}
+				if (node.getShort(0) == 0) firsts.add(e.value);
+				put(node, e.value).putInt(e.page).putShort((short) e.slot);
+				node.putShort(0, (short) (node.getShort(0) + 1));
+			}
+			node.putInt(4, -1);
+			pages = flush(channel, node, pages, firsts, children);
+			leaves = pages - 1;
+
+			// then each level of inner nodes over the one below, until there's one node
+			while (children.size() > 1) {
+				List<byte[]> levelFirsts = firsts;
+				List<Integer> levelChildren = children;
+				firsts = new ArrayList<byte[]>();
+				children = new ArrayList<Integer>();
+
+				clear(node, height);
+				for (int i = 0; i < levelChildren.size(); i++) {
+					if (node.position() > NODE_HEADER && !fits(node, levelFirsts.get(i), CHILD)) {
+						pages = flush(channel, node, pages, firsts, children);
+						clear(node, height);
+					}
+					if (node.position() == NODE_HEADER) {
+						// a node's first child has no value before it
+						firsts.add(levelFirsts.get(i));
+						node.putInt(levelChildren.get(i));
+					} else {
+						put(node, levelFirsts.get(i)).putInt(levelChildren.get(i));
+						node.putShort(0, (short) (node.getShort(0) + 1));
+					}
+				}
+				pages = flush(channel, node, pages, firsts, children);
+				height++;
+			}
+			root = children.get(0);
+
+			node.clear();
+			node.putInt(MAGIC).putInt(PAGE_SIZE).putInt(root).putInt(height).putInt(leaves).putLong(entries.size());
+			while (node.hasRemaining()) node.put((byte) 0);
+			node.flip();
+			channel.position(0);
+			while (node.hasRemaining()) channel.write(node);
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot write index " + filename, e);
+		}
+
+		return open(filename, pool);
+	}
+
+	/**
+	 * Open an index for reading through a buffer pool
+	 * @param filename Index file
+	 * @param pool Buffer pool to read the pages through
+	 * @return Index
+	 * @throws DatabaseException if the file isn't an index, or can't be read
+	 */
+	public static BPlusTree open(String filename, BufferPool pool) throws DatabaseException {
+		FileChannel channel = null;
+		boolean kept = false;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+			while (header.hasRemaining() && channel.read(header) > 0) {
+				// read the whole header page
+			}
+			if (header.position() < PAGE_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != PAGE_SIZE) {
+				throw new DatabaseException(filename + " is not an index with " + PAGE_SIZE + " byte pages");
+			}
+			kept = true;
+			return new BPlusTree(filename, header.getInt(8), header.getInt(12), header.getInt(16), header.getLong(20), pool, channel);
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read index " + filename, e);
+		} finally {
+			if (!kept && channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the file, once no cursor over it is in use
+	 */
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of levels of nodes, 1 if the root is a leaf
+	 * @return Height
+	 */
+	public int getHeight() {
+		return this.height;
+	}
+
+	/**
+	 * Return the number of leaves
+	 * @return Leaves
+	 */
+	public int getLeafCount() {
+		return this.leafCount;
+	}
+
+	/**
+	 * Return the number of entries, one per tuple of the heap file
+	 * @return Entries
+	 */
+	public long getEntryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * Return the buffer pool the pages are read through
+	 * @return Buffer pool
+	 */
+	public BufferPool getBufferPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Find the entries with a value, going down from the root to the first
+	 * leaf that may hold one
+	 * @param value Value to look up
+	 * @return Cursor before the first entry with the value, to be closed once done with
+	 */
+	public Index.Cursor seek(String value) {
+		byte[] key = value.getBytes(StandardCharsets.UTF_8);
+		int page = this.root;
+		for (int level = this.height - 1; level > 0; level--) {
+			ByteBuffer node = this.pool.pin(this.poolFile, page);
+			int child;
+			try {
+				child = child(node, key);
+			} finally {
+				this.pool.unpin(this.poolFile, page, false);
+			}
+			page = child;
+		}
+		return new LeafCursor(key, page);
+	}
+	
+	public IndexType getType() {
+		return IndexType.BTREE;
+	}
+
+	/**
+	 * Return the child of an inner node to go down to for a value: the last
+	 * one whose first value is less than it, as entries with the value may
+	 * end the child before
+	 */
+	private static int child(ByteBuffer node, byte[] key) {
+		int count = node.getShort(0);
+		int ret = node.getInt(NODE_HEADER);
+		int p = NODE_HEADER + CHILD;
+		for (int i = 0; i < count; i++) {
+			int length = readLength(node, p);
+			p = skipLength(node, p);
+			if (compare(node, p, length, key) >= 0) break;
+			ret = node.getInt(p + length);
+			p += length + CHILD;
+		}
+		return ret;
+	}
+
+	/**
+	 * A cursor over the entries of the index with one value, in leaf order;
+	 * it keeps the leaf it's in pinned
+	 */
+	private class LeafCursor implements Index.Cursor {
+		private final byte[] key;
+		private int leaf;
+		private ByteBuffer node;
+		private int remaining;
+		private int position;
+		private int page;
+		private int slot;
+
+		private LeafCursor(byte[] key, int leaf) {
+			this.key = key;
+			this.leaf = leaf;
+			this.node = BPlusTree.this.pool.pin(BPlusTree.this.poolFile, leaf);
+			this.remaining = this.node.getShort(0);
+			this.position = NODE_HEADER;
+		}
+
+		/**
+		 * Move on to the next entry with the value
+		 * @return Whether there is one
+		 */
+		public boolean next() {
+			while (this.node != null) {
+				if (this.remaining == 0) {
+					// on to the next leaf, which may start with more entries with the value
+					int next = this.node.getInt(4);
+					close();
+					if (next < 0) return false;
+					this.leaf = next;
+					this.node = BPlusTree.this.pool.pin(BPlusTree.this.poolFile, next);
+					this.remaining = this.node.getShort(0);
+					this.position = NODE_HEADER;
+					continue;
+				}
+
+				int length = readLength(this.node, this.position);
+				int start = skipLength(this.node, this.position);
+				int c = compare(this.node, start, length, this.key);
+				this.page = this.node.getInt(start + length);
+				this.slot = this.node.getShort(start + length + 4);
+				this.position = start + length + RECORD_ID;
+				this.remaining--;
+
+				if (c == 0) return true;
+				if (c > 0) {
+					// past the entries with the value
+					close();
+					return false;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Return the heap file page of the tuple of the entry
+		 * @return Page number
+		 */
+		public int getPage() {
+			return this.page;
+		}
+
+		/**
+		 * Return the slot of the tuple of the entry in its page
+		 * @return Slot
+		 */
+		public int getSlot() {
+			return this.slot;
+		}
+
+		/**
+		 * Let go of the leaf the cursor is in
+		 */
+		public void close() {
+			if (this.node != null) BPlusTree.this.pool.unpin(BPlusTree.this.poolFile, this.leaf, false);
+			this.node = null;
+		}
+	}
+
+	/**
+	 * Compare two values by their bytes, unsigned, which orders UTF-8 strings by code point
+	 */
+	private static int compare(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0) return c;
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * Compare a value in a node with another value
+	 */
+	static int compare(ByteBuffer node, int start, int length, byte[] b) {
+		int n = Math.min(length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (node.get(start + i) & 0xFF) - (b[i] & 0xFF);
+			if (c != 0) return c;
+		}
+		return length - b.length;
+	}
+
+	static int readLength(ByteBuffer node, int p) {
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = node.get(p++);
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) return length;
+		}
+	}
+
+	static int skipLength(ByteBuffer node, int p) {
+		while (node.get(p++) < 0) {
+			// 7 more bits of the length
+		}
+		return p;
+	}
+
+	private static void clear(ByteBuffer node, int level) {
+		node.clear();
+		node.putShort((short) 0).putShort((short) level).putInt(-1);
+	}
+
+	/**
+	 * Whether a node has room for a value, its length, and what follows it
+	 */
+	private static boolean fits(ByteBuffer node, byte[] value, int after) {
+		return node.remaining() >= 5 + value.length + after;
+	}
+
+	/**
+	 * Write a value into a node, as its length in 7-bit groups and its bytes
+	 */
+	static ByteBuffer put(ByteBuffer node, byte[] value) {
+		int length = value.length;
+		while (length >= 0x80) {
+			node.put((byte) (length | 0x80));
+			length >>>= 7;
+		}
+		node.put((byte) length);
+		return node.put(value);
+	}
+
+	/**
+	 * Write a node as the next page, noting its first value and page for the level above
+	 * @return Pages written so far
+	 */
+	private static int flush(FileChannel channel, ByteBuffer node, int pages, List<byte[]> firsts, List<Integer> children) throws IOException {
+		children.add(pages);
+		while (node.hasRemaining()) node.put((byte) 0);
+		node.clear();
+		while (node.hasRemaining()) channel.write(node);
+		return pages + 1;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.filename;
+	}
+
+	/**
+	 * An entry of the index being built
+	 */
+	private static class Entry {
+		private final byte[] value;
+		private final int page;
+		private final int slot;
+
+		private Entry(byte[] value, int page, int slot) {
+			this.value = value;
+			this.page = page;
+			this.slot = slot;
+		}
+	}
+}
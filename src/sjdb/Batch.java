@@ -0,0 +1,77 @@
+package sjdb;
+
+/**
+ * This class represents a batch of tuples exchanged between the operators
+ * of a vectorised physical plan.
+ * 
+ * The values are stored by column, dictionary-coded as ints, in the order
+ * of the attributes of the operator that produced the batch. Only the rows
+ * listed in the selection vector are part of the batch; operators such as
+ * select narrow the selection instead of copying the rows that survive.
+ */
+public class Batch {
+	/**
+	 * The number of rows in a full batch.
+	 */
+	public static final int CAPACITY = 1024;
+	
+	int[][] columns;
+	int size;
+	// the rows selected, in order, or null if all of 0..size-1 are
+	int[] selection;
+	int selected;
+	
+	/**
+	 * Create a new batch with all its rows selected
+	 * @param columns Columns of dictionary codes, one per attribute
+	 * @param size Number of rows filled in the columns
+	 */
+	public Batch(int[][] columns, int size) {
+		this.columns = columns;
+		this.size = size;
+		this.selection = null;
+		this.selected = size;
+	}
+	
+	/**
+	 * Return the number of rows selected in this batch
+	 * @return Rows selected
+	 */
+	public int getSelectedCount() {
+		return this.selected;
+	}
+	
+	/**
+	 * Return the row of the i-th selected tuple
+	 * @param i Position in the selection, 0..getSelectedCount()-1
+	 * @return Row in the columns
+	 */
+	public int row(int i) {
+		return (this.selection == null) ? i : this.selection[i];
+	}
+	
+	/**
+	 * Return the code at the given row of the given column
+	 * @param column Column, in attribute order
+	 * @param row Row in the columns
+	 * @return Dictionary code
+	 */
+	public int get(int column, int row) {
+		return this.columns[column][row];
+	}
+	
+	/**
+	 * Decode the i-th selected tuple
+	 * @param i Position in the selection
+	 * @param dict Dictionary the codes come from
+	 * @return Decoded tuple
+	 */
+	public Tuple decode(int i, Dictionary dict) {
+		int r = row(i);
+		String[] values = new String[this.columns.length];
+		for (int c = 0; c < values.length; c++) {
+			values[c] = dict.decode(this.columns[c][r]);
+		}
+		return new Tuple(values);
+	}
+}
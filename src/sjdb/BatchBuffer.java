@@ -0,0 +1,100 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class accumulates the selected rows of a stream of Batches into
+ * growable columns, for operators that need the whole of an input, such
+ * as the build side of a join.
+ */
+public class BatchBuffer {
+	int[][] columns;
+	int size;
+	
+	/**
+	 * Create a new, empty buffer
+	 * @param width Number of columns
+	 */
+	public BatchBuffer(int width) {
+		this(width, Batch.CAPACITY);
+	}
+	
+	/**
+	 * Create a new, empty buffer with room for a given number of rows
+	 * @param width Number of columns
+	 * @param capacity Number of rows to make room for
+	 */
+	public BatchBuffer(int width, int capacity) {
+		this.columns = new int[width][Math.max(1, capacity)];
+		this.size = 0;
+	}
+	
+	/**
+	 * Read every batch of an operator into a new buffer; the operator is opened and closed
+	 * @param input Operator to drain
+	 * @return Buffer with all the selected rows of the operator
+	 */
+	public static BatchBuffer drain(BatchOperator input) {
+		BatchBuffer ret = new BatchBuffer(input.getAttributes().size());
+		input.open();
+		try {
+			Batch b;
+			while ((b = input.nextBatch()) != null) ret.append(b);
+		} finally {
+			input.close();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Append the selected rows of a batch
+	 * @param b Batch with as many columns as the buffer
+	 */
+	public void append(Batch b) {
+		if (this.size + b.selected > capacity()) {
+			int grown = Math.max(this.size + b.selected, capacity() * 2);
+			for (int c = 0; c < this.columns.length; c++) {
+				this.columns[c] = Arrays.copyOf(this.columns[c], grown);
+			}
+		}
+		
+		for (int c = 0; c < this.columns.length; c++) {
+			int[] from = b.columns[c];
+			int[] to = this.columns[c];
+			if (b.selection == null) {
+				System.arraycopy(from, 0, to, this.size, b.selected);
+			} else {
+				for (int i = 0; i < b.selected; i++) to[this.size + i] = from[b.selection[i]];
+			}
+		}
+		this.size += b.selected;
+	}
+	
+	/**
+	 * Return the number of rows in the buffer
+	 * @return Rows
+	 */
+	public int size() {
+		return this.size;
+	}
+	
+	private int capacity() {
+		return (this.columns.length == 0) ? Integer.MAX_VALUE : this.columns[0].length;
+	}
+	
+	/**
+	 * Copy the given rows of some columns into other columns, column by column
+	 * @param from Columns to copy from
+	 * @param rows Rows to copy, in order
+	 * @param n Number of rows to copy
+	 * @param to Columns to copy to, starting at row 0
+	 * @param offset First column of to to copy into
+	 */
+	static void gather(int[][] from, int[] rows, int n, int[][] to, int offset) {
+		for (int c = 0; c < from.length; c++) {
+			int[] src = from[c];
+			int[] dst = to[offset + c];
+			for (int i = 0; i < n; i++) dst[i] = src[rows[i]];
+		}
+	}
+}
@@ -0,0 +1,333 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class implements a vectorised hash join: the whole of the build
+ * input is read into a BatchBuffer and an IntMultiMap on its join column,
+ * then the batches of the probe input are looked up in it.
+ * 
+ * If the build input doesn't fit in the MemoryBudget, this is a grace hash
+ * join instead: both inputs are partitioned on their join columns into
+ * SpillFiles, and the SpillPartitions are then joined one at a time.
+ * 
+ * The output columns are those of the left input followed by those of the
+ * right one, whichever is built on.
+ */
+public class BatchHashJoin extends BatchOperator {
+	private Predicate predicate;
+	private boolean buildLeft;
+	private MemoryBudget budget;
+	// the join column in the probe and build inputs
+	private int probeKey;
+	private int buildKey;
+	
+	private BatchBuffer build;
+	private IntMultiMap table;
+	
+	// the spilled partitions still to be joined, and the probe rows of the one
+	// being joined, read back into a batch; pending is null if nothing was spilled
+	private Deque<SpillPartition> pending;
+	private SpillFile probeFile;
+	private Batch probeBatch;
+	
+	// the probe batch being joined, the next position in its selection and the next match for it
+	private Batch probe;
+	private int position;
+	private int probeRow;
+	private int entry;
+	private boolean done;
+	
+	// matching row pairs for the batch being produced
+	private int[] probeRows;
+	private int[] buildRows;
+	private Batch batch;
+	
+	/**
+	 * Create a new hash join that builds on the right input
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 */
+	public BatchHashJoin(BatchOperator left, BatchOperator right, Predicate predicate) {
+		this(left, right, predicate, false);
+	}
+	
+	/**
+	 * Create a new hash join
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 * @param buildLeft Whether to build on the left input rather than the right one
+	 */
+	public BatchHashJoin(BatchOperator left, BatchOperator right, Predicate predicate, boolean buildLeft) {
+		this(left, right, predicate, buildLeft, new MemoryBudget(MemoryBudget.UNLIMITED));
+	}
+	
+	/**
+	 * Create a new hash join that spills to disk if the build input doesn't fit in memory
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 * @param buildLeft Whether to build on the left input rather than the right one
+	 * @param budget Memory the hash table may take up, which spills are added up in
+	 */
+	public BatchHashJoin(BatchOperator left, BatchOperator right, Predicate predicate, boolean buildLeft, MemoryBudget budget) {
+		this.inputs.add(left);
+		this.inputs.add(right);
+		this.predicate = predicate;
+		this.buildLeft = buildLeft;
+		this.budget = budget;
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+		
+		// the predicate may name the attributes of the inputs either way round
+		BatchOperator probeInput = probeInput(), buildInput = buildInput();
+		if (probeInput.indexOf(predicate.getLeftAttribute()) >= 0) {
+			this.probeKey = probeInput.indexOf(predicate.getLeftAttribute());
+			this.buildKey = buildInput.indexOf(predicate.getRightAttribute());
+		} else {
+			this.probeKey = probeInput.indexOf(predicate.getRightAttribute());
+			this.buildKey = buildInput.indexOf(predicate.getLeftAttribute());
+		}
+	}
+	
+	public void open() {
+		BatchOperator buildInput = buildInput();
+		SpillPartition[] parts = null;
+		this.build = new BatchBuffer(buildInput.getAttributes().size());
+		
+		buildInput.open();
+		try {
+			Batch b;
+			while ((b = buildInput.nextBatch()) != null) {
+				if (parts != null) {
+					spill(b, this.buildKey, parts, true);
+					continue;
+				}
+				
+				this.build.append(b);
+				if (!this.budget.fits(bytes(this.build.size()))) {
+					// the build input doesn't fit, so partition what's been read and all the rest
+					parts = SpillPartition.create(buildInput.getAttributes().size(), probeInput().getAttributes().size(), 0);
+					int[] keys = this.build.columns[this.buildKey];
+					for (int r = 0; r < this.build.size(); r++) {
+						parts[SpillPartition.of(keys[r], 0)].build.write(this.build.columns, r);
+					}
+					this.build = null;
+				}
+			}
+		} finally {
+			buildInput.close();
+		}
+		
+		this.pending = null;
+		this.probeFile = null;
+		if (parts == null) {
+			buildTable();
+			probeInput().open();
+		} else {
+			// partition the probe input the same way, to join the partitions one by one
+			BatchOperator probeInput = probeInput();
+			probeInput.open();
+			try {
+				Batch b;
+				while ((b = probeInput.nextBatch()) != null) spill(b, this.probeKey, parts, false);
+			} finally {
+				probeInput.close();
+			}
+			
+			this.pending = new ArrayDeque<SpillPartition>();
+			for (SpillPartition p : parts) addPending(p);
+			this.probeBatch = new Batch(new int[probeInput.getAttributes().size()][Batch.CAPACITY], 0);
+		}
+		
+		this.probe = null;
+		this.entry = -1;
+		this.done = false;
+		this.probeRows = new int[Batch.CAPACITY];
+		this.buildRows = new int[Batch.CAPACITY];
+		this.batch = new Batch(new int[this.attributes.size()][Batch.CAPACITY], 0);
+	}
+	
+	public Batch nextBatch() {
+		int n = 0;
+		
+		// find the next batch worth of matching pairs
+		while (n < Batch.CAPACITY && !this.done) {
+			if (this.entry < 0) {
+				if (this.probe == null || this.position >= this.probe.selected) {
+					// the pairs found so far point into the probe batch, so hand them on before it's replaced
+					if (n > 0) break;
+					this.probe = nextProbe();
+					this.position = 0;
+					if (this.probe == null) {
+						this.done = true;
+						break;
+					}
+				}
+				this.probeRow = this.probe.row(this.position++);
+				this.entry = this.table.first(this.probe.columns[this.probeKey][this.probeRow]);
+				continue;
+			}
+			
+			this.probeRows[n] = this.probeRow;
+			this.buildRows[n] = this.table.value(this.entry);
+			n++;
+			this.entry = this.table.next(this.entry);
+		}
+		
+		if (n == 0) return null;
+		
+		// then copy them out column by column
+		int[][] left = this.buildLeft ? this.build.columns : this.probe.columns;
+		int[][] right = this.buildLeft ? this.probe.columns : this.build.columns;
+		BatchBuffer.gather(left, this.buildLeft ? this.buildRows : this.probeRows, n, this.batch.columns, 0);
+		BatchBuffer.gather(right, this.buildLeft ? this.probeRows : this.buildRows, n, this.batch.columns, left.length);
+		
+		this.batch.size = n;
+		this.batch.selection = null;
+		this.batch.selected = n;
+		return this.batch;
+	}
+	
+	public void close() {
+		if (this.pending == null) {
+			probeInput().close();
+		} else {
+			if (this.probeFile != null) this.probeFile.close();
+			for (SpillPartition p : this.pending) p.close();
+		}
+		this.pending = null;
+		this.probeFile = null;
+		this.probeBatch = null;
+		this.build = null;
+		this.table = null;
+		this.probe = null;
+		this.batch = null;
+	}
+	
+	/**
+	 * Hash the rows of the build buffer on their join column
+	 */
+	private void buildTable() {
+		this.table = new IntMultiMap(this.build.size());
+		int[] keys = this.build.columns[this.buildKey];
+		for (int r = 0; r < this.build.size(); r++) this.table.put(keys[r], r);
+	}
+	
+	/**
+	 * Return the next batch to probe with, from the probe input, or once 
+	 * spilled, from the partition being joined
+	 * @return Next batch, or null once there are no more
+	 */
+	private Batch nextProbe() {
+		if (this.pending == null) return probeInput().nextBatch();
+		
+		while (true) {
+			if (this.probeFile != null) {
+				int n = 0;
+				while (n < Batch.CAPACITY && this.probeFile.read(this.probeBatch.columns, n)) n++;
+				if (n > 0) {
+					this.probeBatch.size = n;
+					this.probeBatch.selection = null;
+					this.probeBatch.selected = n;
+					return this.probeBatch;
+				}
+				this.probeFile.close();
+				this.probeFile = null;
+			}
+			if (!nextPartition()) return null;
+		}
+	}
+	
+	/**
+	 * Read the build rows of the next spilled partition into memory, splitting
+	 * up the partitions that still don't fit, and start on its probe rows
+	 * @return Whether there was a partition left to join
+	 */
+	private boolean nextPartition() {
+		while (!this.pending.isEmpty()) {
+			SpillPartition p = this.pending.pop();
+			if (p.level < SpillPartition.MAX_LEVEL && !this.budget.fits(bytes(p.build.getRowCount()))) {
+				split(p);
+				continue;
+			}
+			
+			p.build.rewind();
+			this.build = new BatchBuffer(buildInput().getAttributes().size(), (int) p.build.getRowCount());
+			while (p.build.read(this.build.columns, this.build.size)) this.build.size++;
+			p.build.close();
+			buildTable();
+			
+			p.probe.rewind();
+			this.probeFile = p.probe;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Partition both sides of a spilled partition again, on the next level of hash
+	 */
+	private void split(SpillPartition p) {
+		int buildWidth = buildInput().getAttributes().size(), probeWidth = probeInput().getAttributes().size();
+		SpillPartition[] parts = SpillPartition.create(buildWidth, probeWidth, p.level + 1);
+		
+		int[][] row = new int[buildWidth][1];
+		p.build.rewind();
+		while (p.build.read(row, 0)) parts[SpillPartition.of(row[this.buildKey][0], p.level + 1)].build.write(row, 0);
+		row = new int[probeWidth][1];
+		p.probe.rewind();
+		while (p.probe.read(row, 0)) parts[SpillPartition.of(row[this.probeKey][0], p.level + 1)].probe.write(row, 0);
+		
+		p.close();
+		for (SpillPartition part : parts) addPending(part);
+	}
+	
+	/**
+	 * Count the bytes spilled to a new partition, and queue it to be joined unless that can produce nothing
+	 */
+	private void addPending(SpillPartition p) {
+		this.budget.addSpilledBytes(p.getByteCount());
+		if (p.isEmpty()) p.close();
+		else this.pending.push(p);
+	}
+	
+	/**
+	 * Write the selected rows of a batch to the partitions their join column hashes to
+	 */
+	private static void spill(Batch b, int key, SpillPartition[] parts, boolean build) {
+		int[] keys = b.columns[key];
+		for (int i = 0; i < b.selected; i++) {
+			int r = b.row(i);
+			SpillPartition p = parts[SpillPartition.of(keys[r], parts[0].level)];
+			(build ? p.build : p.probe).write(b.columns, r);
+		}
+	}
+	
+	/**
+	 * Estimate the memory taken by the build rows and the hash table over them:
+	 * an int per column, and about eight more for the table's slots and chains
+	 */
+	private long bytes(long rows) {
+		return rows * 4 * (buildInput().getAttributes().size() + 8);
+	}
+	
+	private BatchOperator probeInput() {
+		return this.inputs.get(this.buildLeft ? 1 : 0);
+	}
+	
+	private BatchOperator buildInput() {
+		return this.inputs.get(this.buildLeft ? 0 : 1);
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") HASH-JOIN [" + this.predicate.toString() + "]" + 
+				(this.buildLeft ? " BUILD LEFT" : "") + " (" + this.inputs.get(1).toString() + ")";
+	}
+}
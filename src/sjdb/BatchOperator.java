@@ -0,0 +1,62 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This abstract class represents an operator in a vectorised physical
+ * query plan, which produces Batches of dictionary-coded tuples on demand:
+ * open() prepares it, each call to nextBatch() returns the next batch with
+ * at least one row selected, and close() releases it.
+ * 
+ * A batch is only valid until the next call to nextBatch() on the operator
+ * that produced it, since operators reuse their buffers.
+ */
+public abstract class BatchOperator {
+	/**
+	 * The child operators that feed their batches to this operator.
+	 */
+	protected List<BatchOperator> inputs;
+	/**
+	 * The attributes of the columns produced by this operator, in order.
+	 */
+	protected List<Attribute> attributes;
+	
+	public BatchOperator() {
+		this.inputs = new ArrayList<BatchOperator>();
+		this.attributes = new ArrayList<Attribute>();
+	}
+	
+	/**
+	 * Prepare the operator to produce its batches from the start.
+	 */
+	public abstract void open();
+	
+	/**
+	 * Return the next batch produced by the operator.
+	 * @return Next batch with at least one row selected, or null once there are no more
+	 */
+	public abstract Batch nextBatch();
+	
+	/**
+	 * Release whatever the operator holds since it was opened.
+	 */
+	public abstract void close();
+	
+	/**
+	 * Return the attributes of the columns produced by this operator
+	 * @return Attributes in column order
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+	
+	/**
+	 * Return the position of an attribute in the columns of this operator
+	 * @param attr Attribute to look for
+	 * @return Position, or -1 if the batches don't have the attribute
+	 */
+	public int indexOf(Attribute attr) {
+		return this.attributes.indexOf(attr);
+	}
+}
@@ -0,0 +1,100 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class turns a logical query plan into a vectorised physical plan
+ * that can be executed over the dictionary-coded columns in a DataStore.
+ * 
+ * It visits the logical plan depth-first, building each batch operator
+ * once those for its inputs are built. Joins build on the smaller input,
+ * as in the PhysicalPlanner.
+ */
+public class BatchPlanner implements PlanVisitor {
+	private DataStore store;
+	private MemoryBudget budget;
+	private Deque<BatchOperator> built;
+	private DatabaseException failure;
+	
+	/**
+	 * @param store DataStore holding the tuples of the named relations
+	 */
+	public BatchPlanner(DataStore store) {
+		this(store, new MemoryBudget(MemoryBudget.UNLIMITED));
+	}
+	
+	/**
+	 * @param store DataStore holding the tuples of the named relations
+	 * @param budget Memory budget of the query, beyond which joins spill to disk
+	 */
+	public BatchPlanner(DataStore store, MemoryBudget budget) {
+		this.store = store;
+		this.budget = budget;
+	}
+	
+	/**
+	 * Build the vectorised physical plan for a logical plan
+	 * @param plan Logical plan
+	 * @return Physical plan, not yet opened
+	 * @throws DatabaseException if the tuples of a scanned relation aren't in the DataStore
+	 */
+	public BatchOperator plan(Operator plan) throws DatabaseException {
+		this.built = new ArrayDeque<BatchOperator>();
+		this.failure = null;
+		
+		// the estimated sizes of the inputs decide which side each join builds on
+		new Estimator().getCost(plan);
+		plan.accept(this);
+		
+		if (this.failure != null) throw this.failure;
+		return this.built.pop();
+	}
+	
+	public void visit(Scan op) {
+		NamedRelation reln = (NamedRelation) op.getRelation();
+		try {
+			this.built.push(new BatchScan(reln, this.store.getColumns(reln)));
+		} catch (DatabaseException e) {
+			this.failure = e;
+			this.built.push(new BatchScan(reln, new int[reln.getAttributes().size()][0]));
+		}
+	}
+	
+	public void visit(IndexScan op) {
+		// the columns are in memory, so the index is no use; scan them and select
+		Scan scan = new Scan((NamedRelation) op.getRelation());
+		visit(scan);
+		visit(new Select(scan, op.getPredicate()));
+	}
+	
+	public void visit(Project op) {
+		this.built.push(new BatchProject(this.built.pop(), op.getAttributes()));
+	}
+	
+	public void visit(Select op) {
+		this.built.push(new BatchSelect(this.built.pop(), op.getPredicate(), this.store.getDictionary()));
+	}
+	
+	public void visit(Product op) {
+		BatchOperator right = this.built.pop();
+		BatchOperator left = this.built.pop();
+		this.built.push(new BatchProduct(left, right));
+	}
+	
+	public void visit(Join op) {
+		BatchOperator right = this.built.pop();
+		BatchOperator left = this.built.pop();
+		this.built.push(new BatchHashJoin(left, right, op.getPredicate(), PhysicalPlanner.buildLeft(op), this.budget));
+	}
+	
+	public void visit(IndexJoin op) {
+		// the columns are in memory, so the index is no use; scan the inner relation and hash join it
+		BatchOperator left = this.built.pop();
+		NamedRelation reln = (NamedRelation) op.getRelation();
+		visit(new Scan(reln));
+		BatchOperator right = this.built.pop();
+		boolean buildLeft = op.getInput().getOutput().getTupleCount() < reln.getTupleCount();
+		this.built.push(new BatchHashJoin(left, right, op.getPredicate(), buildLeft, this.budget));
+	}
+}
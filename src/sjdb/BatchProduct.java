@@ -0,0 +1,86 @@
+package sjdb;
+
+/**
+ * This class implements a vectorised cartesian product: the whole of the
+ * right input is read into a BatchBuffer, and every selected row of each
+ * batch of the left input is paired with all of its rows.
+ */
+public class BatchProduct extends BatchOperator {
+	private BatchBuffer inner;
+	
+	// the outer batch being paired, the position in its selection and the next inner row
+	private Batch outer;
+	private int position;
+	private int innerRow;
+	
+	private int[] outerRows;
+	private int[] innerRows;
+	private Batch batch;
+	
+	/**
+	 * Create a new product
+	 * @param left Left (outer) child operator
+	 * @param right Right (inner) child operator
+	 */
+	public BatchProduct(BatchOperator left, BatchOperator right) {
+		this.inputs.add(left);
+		this.inputs.add(right);
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+	}
+	
+	public void open() {
+		this.inner = BatchBuffer.drain(this.inputs.get(1));
+		this.inputs.get(0).open();
+		this.outer = null;
+		this.outerRows = new int[Batch.CAPACITY];
+		this.innerRows = new int[Batch.CAPACITY];
+		this.batch = new Batch(new int[this.attributes.size()][Batch.CAPACITY], 0);
+	}
+	
+	public Batch nextBatch() {
+		if (this.inner.size() == 0) return null;
+		
+		int n = 0;
+		while (n < Batch.CAPACITY) {
+			if (this.outer == null || this.position >= this.outer.selected) {
+				// the pairs found so far point into the outer batch, so hand them on before it's replaced
+				if (n > 0) break;
+				this.outer = this.inputs.get(0).nextBatch();
+				this.position = 0;
+				this.innerRow = 0;
+				if (this.outer == null) return null;
+			}
+			
+			this.outerRows[n] = this.outer.row(this.position);
+			this.innerRows[n] = this.innerRow;
+			n++;
+			if (++this.innerRow == this.inner.size()) {
+				this.innerRow = 0;
+				this.position++;
+			}
+		}
+		
+		BatchBuffer.gather(this.outer.columns, this.outerRows, n, this.batch.columns, 0);
+		BatchBuffer.gather(this.inner.columns, this.innerRows, n, this.batch.columns, this.outer.columns.length);
+		
+		this.batch.size = n;
+		this.batch.selection = null;
+		this.batch.selected = n;
+		return this.batch;
+	}
+	
+	public void close() {
+		this.inputs.get(0).close();
+		this.inner = null;
+		this.outer = null;
+		this.batch = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") TIMES (" + this.inputs.get(1).toString() + ")";
+	}
+}
@@ -0,0 +1,59 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a vectorised project, which passes on the columns
+ * of the given attributes from each batch of its input without copying them.
+ */
+public class BatchProject extends BatchOperator {
+	private int[] indexes;
+	private Batch batch;
+	
+	/**
+	 * Create a new project over an input
+	 * @param input Child operator
+	 * @param attributes Attributes to keep, those the input doesn't have are ignored
+	 */
+	public BatchProject(BatchOperator input, List<Attribute> attributes) {
+		this.inputs.add(input);
+		
+		for (Attribute attr : attributes) {
+			if (input.indexOf(attr) >= 0) this.attributes.add(input.getAttributes().get(input.indexOf(attr)));
+		}
+		this.indexes = new int[this.attributes.size()];
+		for (int i = 0; i < this.indexes.length; i++) {
+			this.indexes[i] = input.indexOf(this.attributes.get(i));
+		}
+	}
+	
+	public void open() {
+		this.inputs.get(0).open();
+		this.batch = new Batch(new int[this.indexes.length][], 0);
+	}
+	
+	public Batch nextBatch() {
+		Batch b = this.inputs.get(0).nextBatch();
+		if (b == null) return null;
+		
+		for (int c = 0; c < this.indexes.length; c++) {
+			this.batch.columns[c] = b.columns[this.indexes[c]];
+		}
+		this.batch.size = b.size;
+		this.batch.selection = b.selection;
+		this.batch.selected = b.selected;
+		return this.batch;
+	}
+	
+	public void close() {
+		this.inputs.get(0).close();
+		this.batch = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "PROJECT " + this.attributes.toString() + " (" + this.inputs.get(0).toString() + ")";
+	}
+}
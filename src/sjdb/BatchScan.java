@@ -0,0 +1,55 @@
+package sjdb;
+
+/**
+ * This class implements a vectorised scan over the dictionary-coded
+ * columns of a NamedRelation held in a DataStore.
+ */
+public class BatchScan extends BatchOperator {
+	private NamedRelation relation;
+	private int[][] data;
+	private int position;
+	private Batch batch;
+	
+	/**
+	 * Create a new scan of the given columns
+	 * @param relation Relation being scanned
+	 * @param data Columns of the relation, one per attribute
+	 */
+	public BatchScan(NamedRelation relation, int[][] data) {
+		this.relation = relation;
+		this.data = data;
+		this.attributes.addAll(relation.getAttributes());
+	}
+	
+	public void open() {
+		this.position = 0;
+		this.batch = new Batch(new int[this.data.length][Batch.CAPACITY], 0);
+	}
+	
+	public Batch nextBatch() {
+		int rows = (this.data.length == 0) ? 0 : this.data[0].length;
+		int n = Math.min(Batch.CAPACITY, rows - this.position);
+		if (n <= 0) return null;
+		
+		for (int c = 0; c < this.data.length; c++) {
+			System.arraycopy(this.data[c], this.position, this.batch.columns[c], 0, n);
+		}
+		this.batch.size = n;
+		this.batch.selection = null;
+		this.batch.selected = n;
+		this.position += n;
+		
+		return this.batch;
+	}
+	
+	public void close() {
+		this.batch = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SCAN " + this.relation.toString();
+	}
+}
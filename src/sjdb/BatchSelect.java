@@ -0,0 +1,80 @@
+package sjdb;
+
+/**
+ * This class implements a vectorised select, which narrows the selection
+ * vector of each batch of its input to the rows satisfying a predicate.
+ */
+public class BatchSelect extends BatchOperator {
+	private Predicate predicate;
+	private int left;
+	private int right;
+	// the code of the value for attr=value, -1 if the value never occurs
+	private int code;
+	private int[] selection;
+	
+	/**
+	 * Create a new select over an input
+	 * @param input Child operator
+	 * @param predicate Predicate the rows have to satisfy
+	 * @param dict Dictionary the input is coded with
+	 */
+	public BatchSelect(BatchOperator input, Predicate predicate, Dictionary dict) {
+		this.inputs.add(input);
+		this.predicate = predicate;
+		this.attributes.addAll(input.getAttributes());
+		
+		this.left = indexOf(predicate.getLeftAttribute());
+		if (predicate.equalsValue()) {
+			this.code = dict.lookup(predicate.getRightValue());
+		} else {
+			this.right = indexOf(predicate.getRightAttribute());
+		}
+	}
+	
+	public void open() {
+		this.inputs.get(0).open();
+		this.selection = new int[Batch.CAPACITY];
+	}
+	
+	public Batch nextBatch() {
+		Batch b;
+		while ((b = this.inputs.get(0).nextBatch()) != null) {
+			if (this.predicate.equalsValue() && this.code < 0) continue;
+			
+			if (this.selection.length < b.size) this.selection = new int[b.size];
+			int[] l = b.columns[this.left];
+			int n = 0;
+			if (this.predicate.equalsValue()) {
+				for (int i = 0; i < b.selected; i++) {
+					int r = b.row(i);
+					if (l[r] == this.code) this.selection[n++] = r;
+				}
+			} else {
+				int[] rt = b.columns[this.right];
+				for (int i = 0; i < b.selected; i++) {
+					int r = b.row(i);
+					if (l[r] == rt[r]) this.selection[n++] = r;
+				}
+			}
+			
+			if (n > 0) {
+				b.selection = this.selection;
+				b.selected = n;
+				return b;
+			}
+		}
+		return null;
+	}
+	
+	public void close() {
+		this.inputs.get(0).close();
+		this.selection = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SELECT [" + this.predicate.toString() + "] (" + this.inputs.get(0).toString() + ")";
+	}
+}
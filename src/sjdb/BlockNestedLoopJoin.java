@@ -0,0 +1,133 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements a tuple-at-a-time block nested loop join: a block
+ * of the left (outer) input, as many pages of it as the block holds, is
+ * read into memory, then the right (inner) input is read through once and
+ * each of its tuples is joined with every tuple of the block. The inner
+ * input is read once per block, rather than once per outer tuple.
+ *
+ * Without a predicate it computes the cartesian product of its inputs, so
+ * it's the join of last resort, for predicates no other join can use.
+ */
+public class BlockNestedLoopJoin extends PhysicalOperator {
+	private Predicate predicate;
+	// positions of the predicate's attributes in the concatenated tuples
+	private int left;
+	private int right;
+	// the most outer tuples held in memory at a time
+	private int blockTuples;
+
+	private List<Tuple> block;
+	private boolean lastBlock;
+	private Tuple inner;
+	private int position;
+
+	/**
+	 * Create a new block nested loop join that reads the whole of the outer input as one block
+	 * @param left Left (outer) child operator
+	 * @param right Right (inner) child operator
+	 * @param predicate Join predicate, or null for a product
+	 */
+	public BlockNestedLoopJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate) {
+		this(left, right, predicate, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Create a new block nested loop join
+	 * @param left Left (outer) child operator
+	 * @param right Right (inner) child operator
+	 * @param predicate Join predicate, or null for a product
+	 * @param blockPages Number of pages of outer tuples in a block, see Estimator.getTuplesPerPage
+	 */
+	public BlockNestedLoopJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate, int blockPages) {
+		this.inputs.add(left);
+		this.inputs.add(right);
+		this.predicate = predicate;
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+
+		long tuples = (long) Math.max(1, blockPages) * Estimator.getTuplesPerPage(left.getAttributes().size());
+		this.blockTuples = (int) Math.min(Integer.MAX_VALUE - 8, tuples);
+
+		if (predicate != null) {
+			this.left = indexOf(predicate.getLeftAttribute());
+			this.right = indexOf(predicate.getRightAttribute());
+		}
+	}
+
+	public void open() {
+		this.inputs.get(0).open();
+		this.block = new ArrayList<Tuple>();
+		this.lastBlock = false;
+		this.inner = null;
+	}
+
+	protected Tuple fetch() {
+		while (true) {
+			if (this.inner == null) {
+				// move on to the next inner tuple, or once they're used up, the next block
+				if (!this.block.isEmpty()) this.inner = this.inputs.get(1).next();
+				if (this.inner == null) {
+					if (!this.block.isEmpty()) this.inputs.get(1).close();
+					if (!nextBlock()) return null;
+					continue;
+				}
+				this.position = 0;
+			}
+
+			while (this.position < this.block.size()) {
+				Tuple outer = this.block.get(this.position++);
+				if (this.predicate == null || value(outer, this.inner, this.left).equals(value(outer, this.inner, this.right))) {
+					return outer.concat(this.inner);
+				}
+			}
+
+			this.inner = null;
+		}
+	}
+
+	/**
+	 * Read the next block of outer tuples, and start reading the inner input again
+	 * @return Whether there were any outer tuples left
+	 */
+	private boolean nextBlock() {
+		this.block.clear();
+		if (this.lastBlock) return false;
+
+		Tuple t;
+		while (this.block.size() < this.blockTuples && (t = this.inputs.get(0).next()) != null) this.block.add(t);
+		this.lastBlock = this.block.size() < this.blockTuples;
+		if (this.block.isEmpty()) return false;
+
+		this.inputs.get(1).open();
+		return true;
+	}
+
+	/**
+	 * Return the value at a position of the concatenation of two tuples, without concatenating them
+	 */
+	private static String value(Tuple outer, Tuple inner, int index) {
+		return (index < outer.size()) ? outer.get(index) : inner.get(index - outer.size());
+	}
+
+	public void close() {
+		this.inputs.get(0).close();
+		// the inner input is open while a block is being joined
+		if (this.block != null && !this.block.isEmpty()) this.inputs.get(1).close();
+		this.block = null;
+		this.inner = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") BNL-JOIN" +
+				(this.predicate == null ? "" : " [" + this.predicate.toString() + "]") +
+				" (" + this.inputs.get(1).toString() + ")";
+	}
+}
@@ -0,0 +1,342 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class is a buffer pool: a fixed number of frames, each of which
+ * holds a page of a file, that heap files and indexes read their pages
+ * through, so that the pages they use most stay in memory.
+ *
+ * A page is pinned while it's in use, and can't be evicted until it has
+ * been unpinned as many times; a page unpinned as dirty is written back
+ * before its frame is reused. The EvictionPolicy chooses which unpinned
+ * page to evict when a frame is needed.
+ *
+ * The page table is split into stripes, each with its own latch, so that
+ * threads using pages in different stripes don't wait for each other; a
+ * page is read in without holding any latch.
+ */
+public class BufferPool {
+	/**
+	 * The size of a page, in bytes.
+	 */
+	public static final int PAGE_SIZE = Estimator.PAGE_SIZE;
+	private static final int STRIPES = 16;
+
+	private final EvictionPolicy policy;
+	private final Frame[] frames;
+	private final ConcurrentLinkedQueue<Frame> free;
+	private final List<FileChannel> files;
+
+	// the frame holding each page, by file and page number, and the latch of each stripe
+	private final List<HashMap<Long, Frame>> tables;
+	private final ReentrantLock[] latches;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder writes = new LongAdder();
+
+	/**
+	 * Create a new buffer pool, evicting by the CLOCK policy
+	 * @param frames Number of pages it holds
+	 */
+	public BufferPool(int frames) {
+		this(frames, new ClockPolicy());
+	}
+
+	/**
+	 * Create a new buffer pool
+	 * @param frames Number of pages it holds
+	 * @param policy Policy choosing which page to evict
+	 */
+	public BufferPool(int frames, EvictionPolicy policy) {
+		this.policy = policy;
+		this.policy.init(frames);
+		this.frames = new Frame[frames];
+		this.free = new ConcurrentLinkedQueue<Frame>();
+		this.files = new CopyOnWriteArrayList<FileChannel>();
+
+		ByteBuffer memory = ByteBuffer.allocateDirect(frames * PAGE_SIZE);
+		for (int i = 0; i < frames; i++) {
+			memory.limit((i + 1) * PAGE_SIZE);
+			memory.position(i * PAGE_SIZE);
+			this.frames[i] = new Frame(i, memory.slice());
+			this.free.add(this.frames[i]);
+		}
+
+		this.tables = new ArrayList<HashMap<Long, Frame>>();
+		this.latches = new ReentrantLock[STRIPES];
+		for (int s = 0; s < STRIPES; s++) {
+			this.tables.add(new HashMap<Long, Frame>());
+			this.latches[s] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * Register a file to read pages from
+	 * @param channel Channel of the file, open for reading, and writing if pages will be dirtied
+	 * @return Number identifying the file to pin and unpin
+	 */
+	public synchronized int register(FileChannel channel) {
+		this.files.add(channel);
+		return this.files.size() - 1;
+	}
+
+	/**
+	 * Pin a page in the pool, reading it in if it isn't there
+	 * @param file File, as returned by register
+	 * @param page Page number in the file, from 0
+	 * @return The frame's copy of the page, to read, or change and unpin as dirty
+	 * @throws IllegalStateException if every frame is pinned
+	 */
+	public ByteBuffer pin(int file, int page) {
+		long key = key(file, page);
+		int s = stripe(key);
+		ReentrantLock latch = this.latches[s];
+
+		latch.lock();
+		try {
+			Frame found = this.tables.get(s).get(key);
+			if (found != null) return hit(found);
+		} finally {
+			latch.unlock();
+		}
+
+		// read the page into a frame no one else can see yet
+		Frame f = take();
+		read(f, file, page);
+
+		latch.lock();
+		try {
+			Frame found = this.tables.get(s).get(key);
+			if (found != null) {
+				// another thread read it in first, so use theirs
+				this.free.add(f);
+				return hit(found);
+			}
+
+			f.file = file;
+			f.page = page;
+			f.pins = 1;
+			f.dirty = false;
+			this.tables.get(s).put(key, f);
+			this.policy.accessed(f.index);
+			this.misses.increment();
+			return f.data.duplicate();
+		} finally {
+			latch.unlock();
+		}
+	}
+
+	/**
+	 * Unpin a page, once for each time it was pinned
+	 * @param file File, as returned by register
+	 * @param page Page number in the file
+	 * @param dirty Whether the page was changed, and needs writing back
+	 * @throws IllegalStateException if the page isn't pinned
+	 */
+	public void unpin(int file, int page, boolean dirty) {
+		long key = key(file, page);
+		int s = stripe(key);
+		ReentrantLock latch = this.latches[s];
+
+		latch.lock();
+		try {
+			Frame f = this.tables.get(s).get(key);
+			if (f == null || f.pins == 0) throw new IllegalStateException("Page " + page + " of file " + file + " isn't pinned");
+			f.pins--;
+			if (dirty) f.dirty = true;
+		} finally {
+			latch.unlock();
+		}
+	}
+
+	/**
+	 * Write every dirty page back to its file
+	 */
+	public void flush() {
+		for (int s = 0; s < STRIPES; s++) {
+			this.latches[s].lock();
+			try {
+				for (Frame f : this.tables.get(s).values()) {
+					if (f.dirty) write(f);
+				}
+			} finally {
+				this.latches[s].unlock();
+			}
+		}
+	}
+
+	/**
+	 * Return the number of frames in the pool
+	 * @return Frames
+	 */
+	public int getFrameCount() {
+		return this.frames.length;
+	}
+
+	/**
+	 * Return the number of pins of pages that were already in the pool
+	 * @return Hits
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Return the number of pins of pages that had to be read in
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Return the fraction of pins of pages that were already in the pool
+	 * @return Hit ratio, 0 if nothing has been pinned
+	 */
+	public double getHitRatio() {
+		long hits = getHits(), total = hits + getMisses();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Return the number of pages evicted to make room for others
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * Return the number of dirty pages written back
+	 * @return Writes
+	 */
+	public long getWrites() {
+		return this.writes.sum();
+	}
+
+	/**
+	 * Pin a page found in the pool; the caller holds the latch of its stripe
+	 */
+	private ByteBuffer hit(Frame f) {
+		f.pins++;
+		this.policy.accessed(f.index);
+		this.hits.increment();
+		return f.data.duplicate();
+	}
+
+	/**
+	 * Take a free frame, or evict a page from one
+	 * @return Frame, holding no page and in no stripe
+	 */
+	private Frame take() {
+		while (true) {
+			Frame f = this.free.poll();
+			if (f != null) return f;
+
+			int v = this.policy.victim(i -> this.frames[i].file >= 0 && this.frames[i].pins == 0);
+			if (v < 0) {
+				if (!this.free.isEmpty()) continue;
+				throw new IllegalStateException("All " + this.frames.length + " frames of the buffer pool are pinned");
+			}
+
+			// the victim may have been pinned or evicted since it was chosen, so check again under its latch
+			Frame victim = this.frames[v];
+			int file = victim.file, page = victim.page;
+			if (file < 0) continue;
+			long key = key(file, page);
+			int s = stripe(key);
+			this.latches[s].lock();
+			try {
+				if (victim.file != file || victim.page != page || victim.pins > 0 || this.tables.get(s).get(key) != victim) continue;
+
+				if (victim.dirty) write(victim);
+				this.tables.get(s).remove(key);
+				victim.file = -1;
+				victim.dirty = false;
+				this.policy.emptied(v);
+				this.evictions.increment();
+				return victim;
+			} finally {
+				this.latches[s].unlock();
+			}
+		}
+	}
+
+	private void read(Frame f, int file, int page) {
+		ByteBuffer data = f.data.duplicate();
+		try {
+			FileChannel channel = this.files.get(file);
+			long position = (long) page * PAGE_SIZE;
+			while (data.hasRemaining()) {
+				int n = channel.read(data, position + data.position());
+				if (n < 0) break;
+			}
+		} catch (IOException e) {
+			this.free.add(f);
+			throw new UncheckedIOException(e);
+		}
+		// past the end of the file, the page is empty
+		while (data.hasRemaining()) data.put((byte) 0);
+	}
+
+	private void write(Frame f) {
+		ByteBuffer data = f.data.duplicate();
+		try {
+			FileChannel channel = this.files.get(f.file);
+			long position = (long) f.page * PAGE_SIZE;
+			while (data.hasRemaining()) channel.write(data, position + data.position());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		f.dirty = false;
+		this.writes.increment();
+	}
+
+	private static long key(int file, int page) {
+		return ((long) file << 32) | (page & 0xFFFFFFFFL);
+	}
+
+	private static int stripe(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 60) & (STRIPES - 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.frames.length + " frames (" + this.policy + "): " + getHits() + " hits, " + getMisses() + " misses, " +
+				getEvictions() + " evictions, " + String.format("%.1f%% hit ratio", 100 * getHitRatio());
+	}
+
+	/**
+	 * A frame of the pool, and the page it holds
+	 */
+	private static class Frame {
+		private final int index;
+		private final ByteBuffer data;
+		// the page held, file -1 if none; they only change under the latch of the page's stripe
+		private volatile int file = -1;
+		private volatile int page;
+		private volatile int pins;
+		private boolean dirty;
+
+		private Frame(int index, ByteBuffer data) {
+			this.index = index;
+			this.data = data;
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -12,9 +16,20 @@ import java.util.HashMap;
  * The catalogue maintains a directory of NamedRelations and
  * Attributes, indexed by name.
  * 
+ * Every NamedRelation and Attribute is given a dense integer id, in
+ * order of creation, so that sets of them can be kept as bitmasks.
+ * 
+ * The catalogue also records which attributes of each relation have an
+ * index declared on them, which the optimiser may look values up in.
+ * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue; ANALYZE replaces it through the catalogue
+ * with what it counts in the stored tuples.
+ * 
+ * Every change to the relations, attributes, statistics or indexes moves
+ * the catalogue on a version, so that plans made against an earlier one,
+ * e.g. by a PlanCache, can be told apart.
  * 
  * @author nmg
  *
@@ -23,11 +38,18 @@ public class Catalogue {
 	
 	private HashMap<String, NamedRelation> relations;
 	private HashMap<String, Attribute> attributes;
+	private ArrayList<NamedRelation> relationsById;
+	private ArrayList<Attribute> attributesById;
+	private HashMap<String, HashMap<String, IndexType>> indexes;
+	private final AtomicLong version = new AtomicLong();
 
 
 	public Catalogue() {
 		this.relations = new HashMap<String, NamedRelation>();
 		this.attributes = new HashMap<String, Attribute>();
+		this.relationsById = new ArrayList<NamedRelation>();
+		this.attributesById = new ArrayList<Attribute>();
+		this.indexes = new HashMap<String, HashMap<String, IndexType>>();
 	}
 	
 	/**
@@ -37,29 +59,167 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
-		NamedRelation reln = new NamedRelation(relName, size);
+	public NamedRelation createRelation(String relName, long size) {
+		NamedRelation reln = new NamedRelation(relName, size, relationsById.size());
 		relations.put(relName, reln);
+		relationsById.add(reln);
+		version.incrementAndGet();
 		return reln;
 	}
 	
 	/**
 	 * Create a new Attribute with the specified name and number of distinct
 	 * values, add it to the directory and associate it with the specified 
-	 * NamedRelation.
+	 * NamedRelation. Attributes are identified by name, so an attribute
+	 * that is created again keeps its id.
 	 * 
 	 * @param relName
 	 * @param attName
 	 * @param values
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, Attribute.DEFAULT_WIDTH);
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values and width of its values in bytes, as createAttribute.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param width
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values, int width) {
+		Attribute existing = attributes.get(attName);
+		int id = (existing == null) ? attributesById.size() : existing.getId();
+		Attribute attr = new Attribute(attName, values, id, width, null);
 		attributes.put(attName, attr);
+		if (existing == null) attributesById.add(attr);
+		else attributesById.set(id, attr);
 		relations.get(relName).addAttribute(attr);
+		version.incrementAndGet();
 		return attr;
 	}
 	
+	/**
+	 * Replace the tuple count of the specified NamedRelation with one
+	 * counted by ANALYZE.
+	 * 
+	 * @param relName
+	 * @param size
+	 * @throws DatabaseException if there's no such relation
+	 */
+	public void setTupleCount(String relName, long size) throws DatabaseException {
+		getRelation(relName).setTupleCount(size);
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * Replace the sample of the tuples of the specified NamedRelation with
+	 * one taken by ANALYZE.
+	 * 
+	 * @param relName
+	 * @param sample
+	 * @throws DatabaseException if there's no such relation
+	 */
+	public void setSample(String relName, List<Tuple> sample) throws DatabaseException {
+		getRelation(relName).setSample(sample);
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * Replace the specified Attribute of the specified NamedRelation with
+	 * one carrying the statistics gathered by ANALYZE, and their estimate
+	 * of its number of distinct values. The attribute keeps its id.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param statistics
+	 * @return the new attribute
+	 * @throws DatabaseException if there's no such relation, or it has no such attribute
+	 */
+	public Attribute setStatistics(String relName, String attName, ColumnStatistics statistics) throws DatabaseException {
+		NamedRelation reln = getRelation(relName);
+		Attribute existing = getAttribute(attName);
+		int index = reln.getAttributes().indexOf(existing);
+		if (index < 0) {
+			throw new DatabaseException("Named relation " + relName + " has no attribute " + attName);
+		}
+		
+		long values = Math.min(statistics.getValueCount(), reln.getTupleCount());
+		Attribute attr = new Attribute(attName, values, existing.getId(), existing.getWidth(), statistics);
+		attributes.put(attName, attr);
+		attributesById.set(attr.getId(), attr);
+		reln.getAttributes().set(index, attr);
+		version.incrementAndGet();
+		return attr;
+	}
+	
+	/**
+	 * Declare a B+tree index on the specified attribute of the specified
+	 * NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @throws DatabaseException if there's no such relation, or it has no such attribute
+	 */
+	public void createIndex(String relName, String attName) throws DatabaseException {
+		createIndex(relName, attName, IndexType.BTREE);
+	}
+	
+	/**
+	 * Declare an index of the specified type on the specified attribute of
+	 * the specified NamedRelation, in place of any declared on it before.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param type
+	 * @throws DatabaseException if there's no such relation, or it has no such attribute
+	 */
+	public void createIndex(String relName, String attName, IndexType type) throws DatabaseException {
+		NamedRelation reln = getRelation(relName);
+		Attribute attr = getAttribute(attName);
+		if (!reln.getAttributes().contains(attr)) {
+			throw new DatabaseException("Named relation " + relName + " has no attribute " + attName);
+		}
+		
+		HashMap<String, IndexType> attrs = indexes.get(relName);
+		if (attrs == null) {
+			attrs = new HashMap<String, IndexType>();
+			indexes.put(relName, attrs);
+		}
+		attrs.put(attName, type);
+		version.incrementAndGet();
+	}
+	
+	/**
+	 * Return whether an index is declared on the specified attribute of
+	 * the specified relation.
+	 * 
+	 * @param reln
+	 * @param attr
+	 * @return
+	 */
+	public boolean hasIndex(NamedRelation reln, Attribute attr) {
+		return getIndexType(reln, attr) != null;
+	}
+	
+	/**
+	 * Return the type of the index declared on the specified attribute of
+	 * the specified relation.
+	 * 
+	 * @param reln
+	 * @param attr
+	 * @return the index type, or null if there's none
+	 */
+	public IndexType getIndexType(NamedRelation reln, Attribute attr) {
+		HashMap<String, IndexType> attrs = indexes.get(reln.toString());
+		return (attrs == null) ? null : attrs.get(attr.getName());
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
@@ -91,4 +251,41 @@ public class Catalogue {
 		
 		return attr;
 	}
+	
+	/**
+	 * Return all the NamedRelations, in order of id.
+	 * 
+	 * @return
+	 */
+	public List<NamedRelation> getRelations() {
+		return Collections.unmodifiableList(relationsById);
+	}
+	
+	/**
+	 * Return the version of the catalogue, which moves on with every change
+	 * to its relations, attributes, statistics or indexes.
+	 * 
+	 * @return
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+	
+	/**
+	 * Return the number of NamedRelations, one more than the largest id.
+	 * 
+	 * @return
+	 */
+	public int getRelationCount() {
+		return relationsById.size();
+	}
+	
+	/**
+	 * Return the number of Attributes, one more than the largest id.
+	 * 
+	 * @return
+	 */
+	public int getAttributeCount() {
+		return attributesById.size();
+	}
 }
@@ -10,6 +10,9 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * An attribute may also give the width of its values in bytes, after its
+ * value count, as <attr name>,<value count>,<width>; it's 8 otherwise.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -44,7 +47,7 @@ public class CatalogueParser {
 	
 	private void parseRelation(String[] parts) {
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
@@ -55,8 +58,9 @@ public class CatalogueParser {
 
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		int width = (parts.length > 2) ? Integer.decode(parts[2]).intValue() : Attribute.DEFAULT_WIDTH;
 		
-		catalogue.createAttribute(reln, attr, values);
+		catalogue.createAttribute(reln, attr, values, width);
 	}
 }
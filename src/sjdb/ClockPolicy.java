@@ -0,0 +1,49 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntPredicate;
+
+/**
+ * This class is the CLOCK eviction policy, an approximation of LRU: each
+ * access to a frame sets its reference bit, and a hand sweeps round the
+ * frames clearing the bits it finds set, until it comes to an evictable
+ * frame whose bit is already clear.
+ */
+public class ClockPolicy implements EvictionPolicy {
+	private AtomicIntegerArray referenced;
+	private int hand;
+	
+	public void init(int frames) {
+		this.referenced = new AtomicIntegerArray(frames);
+		this.hand = 0;
+	}
+	
+	public void accessed(int frame) {
+		this.referenced.set(frame, 1);
+	}
+	
+	public void emptied(int frame) {
+		this.referenced.set(frame, 0);
+	}
+	
+	public synchronized int victim(IntPredicate evictable) {
+		int frames = this.referenced.length();
+		
+		// the first time round clears the bits, so by the second every evictable frame's is clear
+		for (int i = 0; i < 2 * frames; i++) {
+			int frame = this.hand;
+			this.hand = (this.hand + 1) % frames;
+			
+			if (!evictable.test(frame)) continue;
+			if (this.referenced.getAndSet(frame, 0) == 0) return frame;
+		}
+		return -1;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "CLOCK";
+	}
+}
@@ -0,0 +1,153 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class holds the statistics ANALYZE gathers on the values of an
+ * attribute of a relation: the estimated number of distinct values, the
+ * most common values with the fraction of the tuples having each, and an
+ * equi-depth Histogram of the rest.
+ *
+ * Frequencies are kept as fractions of the tuples, not counts, so they
+ * still hold, assuming independence, once other attributes have been
+ * selected on.
+ */
+public class ColumnStatistics {
+	private long values;
+	private String[] common;
+	private double[] frequencies;
+	private Histogram histogram;
+
+	/**
+	 * Create the statistics of an attribute
+	 * @param values Estimated number of distinct values
+	 * @param common Most common values, most common first
+	 * @param frequencies Fraction of the tuples with each of the most common values
+	 * @param histogram Histogram of the other values, or null if there are none
+	 */
+	public ColumnStatistics(long values, String[] common, double[] frequencies, Histogram histogram) {
+		this.values = values;
+		this.common = common;
+		this.frequencies = frequencies;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Return the estimated fraction of the tuples with a value: its frequency
+	 * if it's one of the most common values, else the density of the histogram
+	 * bucket it falls in, else an even share of the tuples left over
+	 * @param value Value
+	 * @return Selectivity
+	 */
+	public double getSelectivity(String value) {
+		double frequency = getFrequency(value);
+		if (frequency >= 0) return frequency;
+
+		double selectivity = (this.histogram == null) ? -1 : this.histogram.getSelectivity(value);
+		if (selectivity >= 0) return selectivity;
+
+		return getRemainder() / Math.max(1, this.values - this.common.length);
+	}
+
+	/**
+	 * Return the fraction of the tuples with a value, if it's one of the most common values
+	 * @param value Value
+	 * @return Frequency, or -1 if the value isn't one of the most common
+	 */
+	public double getFrequency(String value) {
+		for (int i = 0; i < this.common.length; i++) {
+			if (this.common[i].equals(value)) return this.frequencies[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the fraction of the tuples with none of the most common values
+	 * @return Fraction
+	 */
+	public double getRemainder() {
+		double sum = 0;
+		for (double f : this.frequencies) sum += f;
+		return Math.max(0, 1 - sum);
+	}
+
+	/**
+	 * Return the most common values
+	 * @return Values, most common first
+	 */
+	public List<String> getMostCommonValues() {
+		return Collections.unmodifiableList(Arrays.asList(this.common));
+	}
+
+	/**
+	 * Return the histogram of the values that aren't the most common
+	 * @return Histogram, or null if there are none
+	 */
+	public Histogram getHistogram() {
+		return this.histogram;
+	}
+
+	/**
+	 * Return the estimated number of distinct values
+	 * @return Value count
+	 */
+	public long getValueCount() {
+		return this.values;
+	}
+
+	/**
+	 * Estimate the fraction of the pairs of tuples of two relations that
+	 * join on an attribute of each: the most common values of either side
+	 * are matched value by value, and the tuples with the other values are
+	 * spread evenly over them, as for T(R) * T(S) / max ( V(R,A) , V(S,B) ).
+	 *
+	 * An attribute without statistics is taken to have its tuples spread
+	 * evenly over its values, so that without statistics on either side
+	 * this is 1 / max ( V(R,A) , V(S,B) ).
+	 *
+	 * @param left Statistics of the left attribute, or null
+	 * @param leftValues Value count of the left attribute
+	 * @param right Statistics of the right attribute, or null
+	 * @param rightValues Value count of the right attribute
+	 * @return Selectivity
+	 */
+	public static double getJoinSelectivity(ColumnStatistics left, long leftValues, ColumnStatistics right, long rightValues) {
+		Set<String> common = new LinkedHashSet<String>();
+		if (left != null) common.addAll(Arrays.asList(left.common));
+		if (right != null) common.addAll(Arrays.asList(right.common));
+
+		double matched = 0, leftRest = 1, rightRest = 1;
+		for (String value : common) {
+			double l = selectivity(left, leftValues, value);
+			double r = selectivity(right, rightValues, value);
+			matched += l * r;
+			leftRest -= l;
+			rightRest -= r;
+		}
+
+		long rest = Math.max(1, Math.max(leftValues, rightValues) - common.size());
+		return matched + Math.max(0, leftRest) * Math.max(0, rightRest) / rest;
+	}
+
+	private static double selectivity(ColumnStatistics stats, long values, String value) {
+		return (stats == null) ? 1.0 / Math.max(1, values) : stats.getSelectivity(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder("V=" + this.values + " MCV{");
+		for (int i = 0; i < this.common.length; i++) {
+			if (i > 0) ret.append(", ");
+			ret.append(this.common[i]).append(String.format(":%.3f", this.frequencies[i]));
+		}
+		ret.append("}");
+		if (this.histogram != null) ret.append(" HIST{").append(this.histogram).append("}");
+		return ret.toString();
+	}
+}
@@ -0,0 +1,307 @@
+package sjdb;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Calibrates the weights of a PhysicalCostModel against the machine it's
+ * run on, in nanoseconds.
+ *
+ * It generates relations of several sizes into heap files, some narrow and
+ * some with a wide attribute, indexes one attribute of each, and times a
+ * workload of plans over them: scans, selects, projects, hash joins and
+ * index scans. The Estimator counts the page reads, tuples and predicates
+ * of each plan by costing it with a unit weight for each in turn, and the
+ * weights are fitted to the times by least squares, none negative,
+ * with the residuals relative to the times so that the small plans count
+ * as much as the big ones. A page read at random is weighed at least as
+ * much as one read in sequence.
+ *
+ * The weights are saved to a file of properties, which new Estimators
+ * load if the system property Estimator.COST_CONFIG_PROPERTY names it:
+ *
+ * java -Dsjdb.costs=costs.properties ...
+ *
+ * Usage: CostCalibrator [config file] [largest relation] [runs]
+ */
+public class CostCalibrator {
+	/**
+	 * The number of times each plan is run unless set, taking the shortest time
+	 */
+	public static final int DEFAULT_RUNS = 3;
+	/**
+	 * The number of pages of the buffer pool the heap files and indexes are read through
+	 */
+	public static final int POOL_FRAMES = 1024;
+
+	// the width of the wide attribute, and of the others
+	private static final int WIDE = 200;
+	private static final int NARROW = Attribute.DEFAULT_WIDTH;
+
+	private File directory;
+	private int runs = DEFAULT_RUNS;
+	private Random random = new Random(3211);
+	private Catalogue catalogue = new Catalogue();
+	private DataStore store = new DataStore();
+	private BufferPool pool = new BufferPool(POOL_FRAMES);
+
+	// the plans timed, the work the Estimator counts in each, and their shortest times
+	private List<Operator> plans = new ArrayList<Operator>();
+	private List<double[]> features = new ArrayList<double[]>();
+	private List<Long> times = new ArrayList<Long>();
+
+	/**
+	 * Create a calibrator
+	 * @param directory Directory to write the heap files and indexes of the relations in
+	 */
+	public CostCalibrator(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		String config = (args.length > 0) ? args[0] : "costs.properties";
+		long largest = (args.length > 1) ? Long.parseLong(args[1]) : 1000000;
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+		File directory = File.createTempFile("sjdb", ".calibrate");
+		directory.delete();
+		directory.mkdir();
+		try {
+			CostCalibrator calibrator = new CostCalibrator(directory);
+			calibrator.setRuns(runs);
+			PhysicalCostModel model = calibrator.calibrate(largest, System.out);
+			model.save(config, "Calibrated to " + largest + " tuples, in nanoseconds");
+			System.out.println("Saved " + model + " to " + config);
+		} finally {
+			for (File file : directory.listFiles()) file.delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Set the number of times each plan is run, taking the shortest time
+	 * @param runs Run count, at least 1
+	 */
+	public void setRuns(int runs) {
+		this.runs = Math.max(1, runs);
+	}
+
+	/**
+	 * Generate relations of sizes up to the largest, time the workload over
+	 * them and fit the weights of a cost model to the times
+	 * @param largest Number of tuples of the largest relations; the others are a quarter and a sixteenth
+	 * @param out Stream to report each plan's time and fitted cost to, or null
+	 * @return Cost model, weighted in nanoseconds
+	 * @throws DatabaseException if the heap files or indexes can't be written
+	 */
+	public PhysicalCostModel calibrate(long largest, PrintStream out) throws DatabaseException {
+		for (long size = largest; size >= Math.max(100, largest / 16); size /= 4) {
+			NamedRelation narrow = generate("R" + size, size, false);
+			NamedRelation wide = generate("W" + size, size, true);
+			workload(narrow, wide, size);
+		}
+
+		// run the workload once first, so that it's compiled and its pages are cached before it's timed
+		Executor exec = new Executor(this.store);
+		for (Operator plan : this.plans) exec.count(plan, ExecutionMode.ROW);
+		for (Operator plan : this.plans) {
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < this.runs; i++) {
+				exec.count(plan, ExecutionMode.ROW);
+				best = Math.min(best, exec.getStats().getElapsedNanos());
+			}
+			this.times.add(Math.max(1, best));
+		}
+
+		double[] weights = fit();
+		PhysicalCostModel model = new PhysicalCostModel(weights[0], Math.max(weights[0], weights[1]), weights[2], weights[3]);
+
+		if (out != null) {
+			Estimator est = estimator(model);
+			for (int p = 0; p < this.plans.size(); p++) {
+				out.println(this.plans.get(p) + " ===> " + this.times.get(p) + "ns, costed " + est.getCost(this.plans.get(p)));
+			}
+			out.println(String.format("Overhead per plan %.0fns", weights[4]));
+		}
+		return model;
+	}
+
+	/**
+	 * Generate a relation of uniformly distributed values into a heap file,
+	 * with a B+ tree index on its second attribute
+	 * @param name Relation name, also prefixing its attribute names
+	 * @param size Number of tuples
+	 * @param wide Whether it has a wide attribute as well as three narrow ones
+	 * @return Relation
+	 */
+	private NamedRelation generate(String name, long size, boolean wide) throws DatabaseException {
+		String prefix = name.toLowerCase();
+		this.catalogue.createRelation(name, size);
+		this.catalogue.createAttribute(name, prefix + "key", size, NARROW);
+		this.catalogue.createAttribute(name, prefix + "hundred", 100, NARROW);
+		this.catalogue.createAttribute(name, prefix + "ten", 10, NARROW);
+		if (wide) this.catalogue.createAttribute(name, prefix + "pad", 1, WIDE);
+		NamedRelation reln = this.catalogue.getRelation(name);
+
+		// pad to the width, less a length and a slot for each value
+		int width = reln.getAttributes().size();
+		char[] chars = new char[WIDE - 4];
+		Arrays.fill(chars, 'x');
+		String pad = new String(chars);
+		Iterator<String[]> tuples = new Iterator<String[]>() {
+			private long t = 0;
+			public boolean hasNext() {
+				return this.t < size;
+			}
+			public String[] next() {
+				String[] values = new String[width];
+				values[0] = Long.toString(this.t++);
+				values[1] = Integer.toString(random.nextInt(100));
+				values[2] = Integer.toString(random.nextInt(10));
+				if (width > 3) values[3] = pad;
+				return values;
+			}
+		};
+
+		String filename = new File(this.directory, name).getPath();
+		HeapFile.write(filename + ".heap", width, tuples).close();
+		HeapFile heap = HeapFile.open(filename + ".heap", this.pool);
+		this.store.attach(reln, heap);
+		this.store.attachIndex(reln, this.catalogue.getAttribute(prefix + "hundred"),
+				BPlusTree.build(filename + ".index", heap, 1, this.pool));
+		return reln;
+	}
+
+	/**
+	 * Add the plans of the workload over a narrow and a wide relation of the same size
+	 */
+	private void workload(NamedRelation narrow, NamedRelation wide, long size) throws DatabaseException {
+		String r = narrow.toString().toLowerCase(), w = wide.toString().toLowerCase();
+		Attribute key = this.catalogue.getAttribute(r + "key"), hundred = this.catalogue.getAttribute(r + "hundred");
+		Attribute ten = this.catalogue.getAttribute(r + "ten"), wideKey = this.catalogue.getAttribute(w + "key");
+
+		List<Operator> workload = new ArrayList<Operator>();
+		workload.add(new Scan(narrow));
+		workload.add(new Scan(wide));
+		// attr=attr, so they aren't evaluated in the pages of the scan
+		workload.add(new Select(new Scan(narrow), new Predicate(ten, hundred)));
+		workload.add(new Select(new Select(new Scan(narrow), new Predicate(ten, hundred)), new Predicate(key, hundred)));
+		workload.add(new Project(new Scan(wide), Arrays.asList(wideKey)));
+		workload.add(new Join(new Scan(narrow), new Scan(wide), new Predicate(key, wideKey)));
+		workload.add(new IndexScan(narrow, new Predicate(hundred, "7"), IndexType.BTREE));
+
+		Estimator[] units = {
+			estimator(new PhysicalCostModel(1, 0, 0, 0)),
+			estimator(new PhysicalCostModel(0, 1, 0, 0)),
+			estimator(new PhysicalCostModel(0, 0, 1, 0)),
+			estimator(new PhysicalCostModel(0, 0, 0, 1))
+		};
+		for (Operator plan : workload) {
+			// the work of each kind, and one for the overhead of running a plan
+			double[] x = new double[units.length + 1];
+			for (int u = 0; u < units.length; u++) x[u] = units[u].getCost(plan);
+			x[units.length] = 1;
+			this.plans.add(plan);
+			this.features.add(x);
+		}
+	}
+
+	/**
+	 * @return an estimator costing by a model, with as much buffer as the executor's unlimited memory
+	 */
+	private static Estimator estimator(CostModel model) {
+		Estimator est = new Estimator();
+		est.setCostModel(model);
+		est.setBufferPages(Integer.MAX_VALUE);
+		return est;
+	}
+
+	/**
+	 * Fit the weights to the times by non-negative least squares, relative to the
+	 * times: of the least squares fits of each subset of the weights, with the
+	 * others zero, the closest with none negative
+	 * @return the weight of each kind of work, then of the overhead
+	 */
+	private double[] fit() {
+		int n = this.features.get(0).length;
+		double[][] gram = new double[n][n];
+		double[] moment = new double[n];
+		for (int p = 0; p < this.features.size(); p++) {
+			double[] x = this.features.get(p);
+			double y = this.times.get(p);
+			for (int i = 0; i < n; i++) {
+				moment[i] += x[i] / y;
+				for (int j = 0; j < n; j++) gram[i][j] += x[i] * x[j] / (y * y);
+			}
+		}
+
+		double[] best = new double[n];
+		double bestError = Double.MAX_VALUE;
+		for (int subset = 1; subset < (1 << n); subset++) {
+			double[] weights = solve(gram, moment, subset);
+			if (weights == null) continue;
+
+			// the sum of the squared relative residuals, less the number of plans
+			double error = 0;
+			for (int i = 0; i < n; i++) {
+				error -= 2 * weights[i] * moment[i];
+				for (int j = 0; j < n; j++) error += weights[i] * gram[i][j] * weights[j];
+			}
+			if (error < bestError) {
+				bestError = error;
+				best = weights;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Solve the normal equations for a subset of the weights by Gaussian elimination
+	 * @return the weights, zero outside the subset, or null if the equations are
+	 * singular or a weight is negative
+	 */
+	private static double[] solve(double[][] gram, double[] moment, int subset) {
+		int n = moment.length;
+		int[] vars = new int[Integer.bitCount(subset)];
+		for (int i = 0, k = 0; i < n; i++) if ((subset & (1 << i)) != 0) vars[k++] = i;
+
+		// scaled so the diagonal is one, the equations are better conditioned
+		int m = vars.length;
+		double[][] a = new double[m][m + 1];
+		for (int i = 0; i < m; i++) {
+			if (gram[vars[i]][vars[i]] <= 0) return null;
+			for (int j = 0; j < m; j++) {
+				a[i][j] = gram[vars[i]][vars[j]] / Math.sqrt(gram[vars[i]][vars[i]] * gram[vars[j]][vars[j]]);
+			}
+			a[i][m] = moment[vars[i]] / Math.sqrt(gram[vars[i]][vars[i]]);
+		}
+		for (int c = 0; c < m; c++) {
+			int pivot = c;
+			for (int r = c + 1; r < m; r++) if (Math.abs(a[r][c]) > Math.abs(a[pivot][c])) pivot = r;
+			if (Math.abs(a[pivot][c]) < 1e-12) return null;
+			double[] row = a[c];
+			a[c] = a[pivot];
+			a[pivot] = row;
+			for (int r = 0; r < m; r++) {
+				if (r == c) continue;
+				double f = a[r][c] / a[c][c];
+				for (int k = c; k <= m; k++) a[r][k] -= f * a[c][k];
+			}
+		}
+
+		double[] weights = new double[n];
+		for (int i = 0; i < m; i++) {
+			weights[vars[i]] = a[i][m] / a[i][i] / Math.sqrt(gram[vars[i]][vars[i]]);
+			if (weights[vars[i]] < 0) return null;
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,71 @@
+package sjdb;
+
+/**
+ * This interface is implemented by the cost models the Estimator costs
+ * each operator of a plan with, once it has estimated the operator's
+ * output relation; the Optimiser picks the plan whose operators cost
+ * least in all.
+ *
+ * Each method is given the estimated input and output relations of the
+ * operator, and returns what it costs on top of its inputs, not negative,
+ * saturating at Long.MAX_VALUE.
+ */
+public interface CostModel {
+	/**
+	 * @param output the named relation scanned
+	 * @return the cost of scanning it
+	 */
+	long scan(Relation output);
+
+	/**
+	 * @param type the type of index looked up
+	 * @param relation the named relation whose index is looked up
+	 * @param output the tuples with the value looked up
+	 * @return the cost of looking them up
+	 */
+	long indexScan(IndexType type, Relation relation, Relation output);
+
+	/**
+	 * @param input the input relation
+	 * @param output the projected relation
+	 * @return the cost of projecting the input
+	 */
+	long project(Relation input, Relation output);
+
+	/**
+	 * @param input the input relation
+	 * @param output the selected relation
+	 * @return the cost of evaluating the predicate on the input
+	 */
+	long select(Relation input, Relation output);
+
+	/**
+	 * @param left the left input relation
+	 * @param right the right input relation
+	 * @param output their product
+	 * @param bufferPages the number of pages of buffer to join in
+	 * @return the cost of a block nested loop join of the inputs
+	 */
+	long product(Relation left, Relation right, Relation output, int bufferPages);
+
+	/**
+	 * @param left the left input relation
+	 * @param right the right input relation
+	 * @param output their join
+	 * @param bufferPages the number of pages of buffer to join in
+	 * @param merged whether both inputs are in order of their join attributes, so 
+	 * the PhysicalPlanner merges them rather than building a hash table
+	 * @return the cost of an equi-join of the inputs
+	 */
+	long join(Relation left, Relation right, Relation output, int bufferPages, boolean merged);
+
+	/**
+	 * @param type the type of index looked up
+	 * @param outer the outer input relation
+	 * @param inner the inner named relation, whose index is looked up
+	 * @param matches the number of inner tuples found by each look up
+	 * @param output their join
+	 * @return the cost of looking up each outer tuple in the index
+	 */
+	long indexJoin(IndexType type, Relation outer, Relation inner, long matches, Relation output);
+}
@@ -0,0 +1,280 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class holds the tuples of each NamedRelation in memory, so that
+ * query plans over them can be executed.
+ * 
+ * Tuples can be loaded from a file with one tuple per line, the values
+ * separated by commas in the order of the attributes of the relation:
+ * 
+ * <value>,<value>,...,<value>
+ * 
+ * or generated to match the statistics of the relation in the catalogue.
+ * 
+ * Alternatively, a relation's tuples can be left on disk in a HeapFile, which
+ * scans read through; they are only read into memory if they're asked for.
+ * The attributes of a relation held in a heap file can also be indexed, by
+ * a BPlusTree or HashIndex on the heap file.
+ * 
+ * For vectorised execution, the tuples of each relation are also kept by
+ * column, coded with a Dictionary shared by all the relations.
+ */
+public class DataStore {
+	private HashMap<String, List<Tuple>> tuples;
+	private HashMap<String, int[][]> columns;
+	private HashMap<String, Attribute> orders;
+	private HashMap<String, HeapFile> heapFiles;
+	private HashMap<String, HashMap<String, Index>> indexes;
+	private Dictionary dictionary;
+
+	public DataStore() {
+		this.tuples = new HashMap<String, List<Tuple>>();
+		this.columns = new HashMap<String, int[][]>();
+		this.orders = new HashMap<String, Attribute>();
+		this.heapFiles = new HashMap<String, HeapFile>();
+		this.indexes = new HashMap<String, HashMap<String, Index>>();
+		this.dictionary = new Dictionary();
+	}
+
+	/**
+	 * Replace the tuples of the given relation
+	 * @param reln Relation the tuples belong to
+	 * @param data Tuples of the relation
+	 */
+	public void insert(NamedRelation reln, List<Tuple> data) {
+		this.tuples.put(reln.toString(), data);
+		this.columns.remove(reln.toString());
+		this.orders.remove(reln.toString());
+		this.heapFiles.remove(reln.toString());
+		this.indexes.remove(reln.toString());
+	}
+	
+	/**
+	 * Replace the tuples of the given relation with those of a heap file,
+	 * which stay on disk
+	 * @param reln Relation the tuples belong to
+	 * @param file Heap file, e.g. from HeapFile.load
+	 * @throws DatabaseException if the tuples of the file don't match the attributes of the relation
+	 */
+	public void attach(NamedRelation reln, HeapFile file) throws DatabaseException {
+		if (file.getWidth() != reln.getAttributes().size()) {
+			throw new DatabaseException("Heap file " + file + " doesn't match relation " + reln.render());
+		}
+		this.tuples.remove(reln.toString());
+		this.columns.remove(reln.toString());
+		this.orders.remove(reln.toString());
+		this.heapFiles.put(reln.toString(), file);
+		this.indexes.remove(reln.toString());
+	}
+	
+	/**
+	 * Add an index on an attribute of the given relation, whose tuples are in a heap file
+	 * @param reln Relation the index is on
+	 * @param attr Attribute indexed
+	 * @param index Index, e.g. from BPlusTree.build or HashIndex.build on the relation's heap file
+	 * @throws DatabaseException if the relation's tuples aren't in a heap file, or it doesn't have the attribute
+	 */
+	public void attachIndex(NamedRelation reln, Attribute attr, Index index) throws DatabaseException {
+		if (this.heapFiles.get(reln.toString()) == null) {
+			throw new DatabaseException("Relation " + reln + " isn't held in a heap file to index");
+		}
+		if (!reln.getAttributes().contains(attr)) throw new DatabaseException("Relation " + reln + " has no attribute " + attr);
+		
+		HashMap<String, Index> attrs = this.indexes.get(reln.toString());
+		if (attrs == null) {
+			attrs = new HashMap<String, Index>();
+			this.indexes.put(reln.toString(), attrs);
+		}
+		attrs.put(attr.getName(), index);
+	}
+	
+	/**
+	 * Return the index on an attribute of the given relation
+	 * @param reln Relation
+	 * @param attr Attribute
+	 * @return Index, or null if the attribute isn't indexed
+	 */
+	public Index getIndex(NamedRelation reln, Attribute attr) {
+		HashMap<String, Index> attrs = this.indexes.get(reln.toString());
+		return (attrs == null) ? null : attrs.get(attr.getName());
+	}
+	
+	/**
+	 * Return the heap file holding the tuples of the given relation
+	 * @param reln Relation
+	 * @return Heap file, or null if its tuples are in memory
+	 */
+	public HeapFile getHeapFile(NamedRelation reln) {
+		return this.heapFiles.get(reln.toString());
+	}
+	
+	/**
+	 * Sort the tuples of the given relation into ascending order of one
+	 * of its attributes, compared as strings, so that scans produce them
+	 * in that order
+	 * @param reln Relation whose tuples to sort
+	 * @param attr Attribute to sort them on
+	 * @throws DatabaseException if no tuples were loaded for the relation, or it doesn't have the attribute
+	 */
+	public void sort(NamedRelation reln, Attribute attr) throws DatabaseException {
+		int index = reln.getAttributes().indexOf(attr);
+		if (index < 0) throw new DatabaseException("Relation " + reln + " has no attribute " + attr);
+		
+		List<Tuple> data = new ArrayList<Tuple>(getTuples(reln));
+		data.sort((a, b) -> a.get(index).compareTo(b.get(index)));
+		
+		insert(reln, data);
+		this.orders.put(reln.toString(), reln.getAttributes().get(index));
+	}
+	
+	/**
+	 * Return the attribute the tuples of the given relation are sorted on
+	 * @param reln Relation
+	 * @return Attribute, or null if they're in the order they were loaded
+	 */
+	public Attribute getOrder(NamedRelation reln) {
+		return this.orders.get(reln.toString());
+	}
+
+	/**
+	 * Load the tuples of the given relation from a file
+	 * @param reln Relation the tuples belong to
+	 * @param filename File with one comma-separated tuple per line
+	 * @throws DatabaseException if a line doesn't match the attributes of the relation
+	 */
+	public void load(NamedRelation reln, String filename) throws DatabaseException {
+		List<Tuple> data = new ArrayList<Tuple>();
+		int width = reln.getAttributes().size();
+
+		try (BufferedReader read = new BufferedReader(new FileReader(filename))) {
+			String line;
+			while ((line = read.readLine()) != null) {
+				if (line.trim().isEmpty()) continue;
+				String[] values = line.split("\\s*,\\s*", -1);
+				if (values.length != width) {
+					throw new DatabaseException("Tuple " + line + " doesn't match relation " + reln.render());
+				}
+				data.add(new Tuple(values));
+			}
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot load relation " + reln + " from " + filename, e);
+		}
+
+		insert(reln, data);
+	}
+
+	/**
+	 * Generate as many tuples for the given relation as its tuple count,
+	 * where each attribute takes values 0..V-1, V being its value count,
+	 * chosen uniformly at random. Attributes that are compared in a join
+	 * therefore share values.
+	 * @param reln Relation to generate tuples for
+	 * @param random Source of randomness
+	 */
+	public void generate(NamedRelation reln, Random random) {
+		List<Attribute> attrs = reln.getAttributes();
+		List<Tuple> data = new ArrayList<Tuple>((int) Math.min(Integer.MAX_VALUE - 8, reln.getTupleCount()));
+
+		for (long t = 0; t < reln.getTupleCount(); t++) {
+			String[] values = new String[attrs.size()];
+			for (int a = 0; a < values.length; a++) {
+				values[a] = Integer.toString(random.nextInt((int) Math.max(1, Math.min(Integer.MAX_VALUE, attrs.get(a).getValueCount()))));
+			}
+			data.add(new Tuple(values));
+		}
+
+		insert(reln, data);
+	}
+
+	/**
+	 * Return the tuples of the given relation
+	 * @param reln Relation to return the tuples of
+	 * @return Tuples in the order they were loaded
+	 * @throws DatabaseException if no tuples were loaded for the relation
+	 */
+	public List<Tuple> getTuples(NamedRelation reln) throws DatabaseException {
+		List<Tuple> data = this.tuples.get(reln.toString());
+		
+		HeapFile file = this.heapFiles.get(reln.toString());
+		if (data == null && file != null) {
+			// read the heap file into memory the first time, e.g. to code its columns
+			data = new ArrayList<Tuple>((int) file.getTupleCount());
+			for (Iterator<Tuple> iter = file.iterator(); iter.hasNext(); ) data.add(iter.next());
+			this.tuples.put(reln.toString(), data);
+		}
+
+		if (data == null) {
+			throw new DatabaseException("No tuples loaded for relation " + reln);
+		}
+
+		return data;
+	}
+
+	/**
+	 * Stream the tuples of the given relation, without reading a heap file
+	 * into memory if they're held in one
+	 * @param reln Relation to stream the tuples of
+	 * @return Iterator over the tuples, in the order they were loaded
+	 * @throws DatabaseException if no tuples were loaded for the relation
+	 */
+	public Iterator<Tuple> iterator(NamedRelation reln) throws DatabaseException {
+		List<Tuple> data = this.tuples.get(reln.toString());
+		if (data != null) return data.iterator();
+		
+		HeapFile file = this.heapFiles.get(reln.toString());
+		if (file == null) {
+			throw new DatabaseException("No tuples loaded for relation " + reln);
+		}
+		return file.iterator();
+	}
+
+	/**
+	 * Return whether any tuples were loaded for the given relation
+	 * @param reln Relation
+	 * @return true if its tuples are in memory or in a heap file
+	 */
+	public boolean contains(NamedRelation reln) {
+		return this.tuples.containsKey(reln.toString()) || this.heapFiles.containsKey(reln.toString());
+	}
+
+	/**
+	 * Return the tuples of the given relation by column, dictionary-coded;
+	 * they are coded the first time they're asked for
+	 * @param reln Relation to return the columns of
+	 * @return One array of codes per attribute, in attribute order
+	 * @throws DatabaseException if no tuples were loaded for the relation
+	 */
+	public synchronized int[][] getColumns(NamedRelation reln) throws DatabaseException {
+		int[][] ret = this.columns.get(reln.toString());
+		if (ret != null) return ret;
+		
+		List<Tuple> data = getTuples(reln);
+		ret = new int[reln.getAttributes().size()][data.size()];
+		for (int t = 0; t < data.size(); t++) {
+			Tuple tuple = data.get(t);
+			for (int a = 0; a < ret.length; a++) {
+				ret[a][t] = this.dictionary.encode(tuple.get(a));
+			}
+		}
+		
+		this.columns.put(reln.toString(), ret);
+		return ret;
+	}
+	
+	/**
+	 * Return the dictionary the columns are coded with
+	 * @return Dictionary
+	 */
+	public Dictionary getDictionary() {
+		return this.dictionary;
+	}
+}
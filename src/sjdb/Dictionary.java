@@ -0,0 +1,64 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class dictionary-codes attribute values: each distinct value is
+ * given a dense integer code, in order of first appearance.
+ * 
+ * A single dictionary is shared by all the relations in a DataStore, so
+ * two values are equal if and only if their codes are, whichever
+ * attributes they belong to.
+ */
+public class Dictionary {
+	private HashMap<String, Integer> codes;
+	private ArrayList<String> values;
+	
+	public Dictionary() {
+		this.codes = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+	}
+	
+	/**
+	 * Return the code of a value, giving it a new one if it has none yet
+	 * @param value Value to encode
+	 * @return Code of the value
+	 */
+	public synchronized int encode(String value) {
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.values.size();
+			this.codes.put(value, code);
+			this.values.add(value);
+		}
+		return code;
+	}
+	
+	/**
+	 * Return the code of a value, without giving it one
+	 * @param value Value to look up
+	 * @return Code of the value, or -1 if it doesn't occur in the data
+	 */
+	public synchronized int lookup(String value) {
+		Integer code = this.codes.get(value);
+		return (code == null) ? -1 : code;
+	}
+	
+	/**
+	 * Return the value with the given code
+	 * @param code Code of the value
+	 * @return Value
+	 */
+	public synchronized String decode(int code) {
+		return this.values.get(code);
+	}
+	
+	/**
+	 * Return the number of distinct values coded so far
+	 * @return Number of codes
+	 */
+	public synchronized int size() {
+		return this.values.size();
+	}
+}
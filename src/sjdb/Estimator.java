@@ -1,15 +1,89 @@
 package sjdb;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class Estimator implements PlanVisitor {
 	
-	private int totalCost = 0;
+	/**
+	 * The size of a page of tuples, in bytes.
+	 */
+	public static final int PAGE_SIZE = 4096;
+	/**
+	 * The number of pages of buffer, as in the BufferPool, that PRODUCTs are costed with unless set.
+	 */
+	public static final int DEFAULT_BUFFER_PAGES = 100;
+	/**
+	 * The system property naming a file of PhysicalCostModel weights, as written by the 
+	 * CostCalibrator, that new Estimators cost operators with; a TupleCostModel if it's unset.
+	 */
+	public static final String COST_CONFIG_PROPERTY = "sjdb.costs";
+	
+	// the cost model loaded from the file named by the property, and the file it was loaded from
+	private static String loadedConfig;
+	private static CostModel loadedModel;
+	
+	private long totalCost = 0;
+	private int bufferPages = DEFAULT_BUFFER_PAGES;
+	private boolean sampling = true;
+	private CostModel model;
+	// the store whose relations' orders Scans keep; null if none are known
+	private DataStore store;
+	
+	// the output Relation and cumulative cost of each subtree estimated so far, 
+	// by the fingerprint of the subtree; null if not memoising
+	private Map<Fingerprint, Estimate> memo;
+	private int memoHits = 0;
+	private int memoMisses = 0;
 	
 	public Estimator() {
-		// empty constructor
+		this.model = getDefaultCostModel();
+	}
+	
+	/**
+	 * Create an Estimator that, if asked to, memoises the estimate for every
+	 * subtree it costs, so that getCost and estimate only visit the operators
+	 * of a plan whose subtrees haven't been seen before.
+	 * 
+	 * The memo assumes the statistics of the catalogue don't change; call
+	 * clearMemo if they do.
+	 * 
+	 * @param memoise whether to memoise the estimates
+	 */
+	public Estimator(boolean memoise) {
+		this();
+		if (memoise) this.memo = new HashMap<>();
+	}
+	
+	/**
+	 * Create an Estimator with a cost model already chosen, without taking the 
+	 * lock getDefaultCostModel does
+	 * 
+	 * @param model the cost model
+	 */
+	private Estimator(CostModel model) {
+		this.model = model;
+	}
+
+	/**
+	 * Create an Estimator with this one's cost model, pages of buffer and sampling,
+	 * but not its memo, for another thread: an Estimator is only ever used by one.
+	 * 
+	 * Without a memo, estimate costs just the new operator over inputs whose outputs 
+	 * are set, which is all the JoinEnumerator's tasks ask of it; a memo would only 
+	 * add a fingerprint and a lookup to each, as every candidate they build is new.
+	 * 
+	 * @return the Estimator, which doesn't memoise
+	 */
+	public Estimator copy() {
+		Estimator copy = new Estimator(this.model);
+		copy.bufferPages = this.bufferPages;
+		copy.sampling = this.sampling;
+		copy.store = this.store;
+		return copy;
 	}
 
 	/* 
@@ -27,10 +101,13 @@ public class Estimator implements PlanVisitor {
 			output.addAttribute(new Attribute(attr)); // add attribute to local record
 		}
 		
+		// a Scan produces the tuples in the order they're stored in
+		if (this.store != null) output.setOrder(this.store.getOrder((NamedRelation) input));
+		
 		//System.out.println("SCAN " + output.render());
 		
 		op.setOutput(output);
-		totalCost += output.getTupleCount();
+		totalCost = add(totalCost, this.model.scan(output));
 	}
 
 	public void visit(Project op) {
@@ -43,16 +120,18 @@ public class Estimator implements PlanVisitor {
 		for(Attribute attr_needed : op.getAttributes()){
 			for (Attribute attr_found : rel_input.getAttributes()) {
 				if (attr_needed.equals(attr_found)) {
-					output.addAttribute(new Attribute(attr_found.getName(), attr_found.getValueCount()));
+					output.addAttribute(new Attribute(attr_found));
 				}
 			}
 		}
 		
+		keepOrder(rel_input, output);
+		
 		//System.out.println("PROJECT " + output.render());
 		
 		// set output for the project
 		op.setOutput(output);
-		totalCost += output.getTupleCount();
+		totalCost = add(totalCost, this.model.project(rel_input, output));
 	}
 	
 	public void visit(Select op) {
@@ -69,34 +148,26 @@ public class Estimator implements PlanVisitor {
 		
 		// find and fill in the right left attribute value count
 		for(Attribute attr_found : input.getAttributes()){
-			if (attr_found.equals(attr_left)) attr_left = new Attribute(attr_found.getName(), attr_found.getValueCount());
+			if (attr_found.equals(attr_left)) attr_left = new Attribute(attr_found);
 		}
 		
 		if(p.equalsValue()) {
 			// attr = val
-			output = new Relation(input.getTupleCount()/attr_left.getValueCount());
-			output_left_attr = new Attribute(attr_left.getName(), Math.min(1, output.getTupleCount()));
-		
-			for (Attribute attr : input.getAttributes()){
-				if (!attr.equals(attr_left)) {
-					output.addAttribute(new Attribute(attr));
-				}
-			}
-			
-			// add left attr always
-			output.addAttribute(output_left_attr);
+			output = selectValue(input, attr_left, p.getRightValue());
 		} else {
 			// attr = attr
 			Attribute attr_right = new Attribute(p.getRightAttribute().getName()); // right != null
-			output = new Relation(input.getTupleCount()/Math.max(attr_left.getValueCount(), attr_right.getValueCount()));
 			
 			for(Attribute attr_found : input.getAttributes()){
-				if (attr_found.equals(attr_right)) attr_right = new Attribute(attr_found.getName(), attr_found.getValueCount());
+				if (attr_found.equals(attr_right)) attr_right = new Attribute(attr_found);
 			}
 			
-			int size = Math.min(Math.min(attr_left.getValueCount(), attr_right.getValueCount()), output.getTupleCount());
-			output_left_attr = new Attribute(attr_left.getName(), size);
-			Attribute output_right_attr = new Attribute(attr_right.getName(), size);
+			// an empty input leaves no distinct values to divide by
+			output = new Relation(input.getTupleCount()/Math.max(1, Math.max(attr_left.getValueCount(), attr_right.getValueCount())));
+			
+			long size = Math.min(Math.min(attr_left.getValueCount(), attr_right.getValueCount()), output.getTupleCount());
+			output_left_attr = new Attribute(attr_left, size);
+			Attribute output_right_attr = new Attribute(attr_right, size);
 			
 			// add the attributes from the original relation except the selection attrs, A			
 			for (Attribute attr : input.getAttributes()){
@@ -108,11 +179,143 @@ public class Estimator implements PlanVisitor {
 			output.addAttribute(output_right_attr);
 		}
 		
+		// a conjunction of PREDICATEs on one relation is better counted in its sample
+		long sampled = getSampledTupleCount(op);
+		if (sampled >= 0) output = resize(output, input, p, sampled);
+		keepOrder(input, output);
+		
 		//System.out.println("SELECT " + output.render());
 		
 		// set the output to select
 		op.setOutput(output);
-		totalCost += output.getTupleCount();
+		totalCost = add(totalCost, this.model.select(input, output));
+	}
+	
+	/* 
+	 * An IndexScan goes down the INDEX to the first leaf with the value, then
+	 * reads the tuples with it; its output is that of a SELECT attr = val on a Scan
+	 */
+	public void visit(IndexScan op) {
+		Relation input = op.getRelation();
+		Attribute attr_left = new Attribute(op.getPredicate().getLeftAttribute().getName());
+		for(Attribute attr_found : input.getAttributes()){
+			if (attr_found.equals(attr_left)) attr_left = new Attribute(attr_found);
+		}
+		
+		Relation output = selectValue(input, attr_left, op.getPredicate().getRightValue());
+		
+		op.setOutput(output);
+		totalCost = add(totalCost, this.model.indexScan(op.getIndexType(), input, output));
+	}
+	
+	/**
+	 * The PREDICATEs of a chain of SELECTs over a Scan or IndexScan of one relation
+	 * assume nothing of each other, so are evaluated together over the sample of the
+	 * relation: T(R) times the fraction of the sampled tuples satisfying them all.
+	 * 
+	 * @param op the top SELECT of the chain
+	 * @return the estimated tuple count, or -1 if it isn't a chain of two or more 
+	 * PREDICATEs, one is a parameter, there's no sample, or no sampled tuple satisfies them
+	 */
+	private long getSampledTupleCount(Select op) {
+		if (!this.sampling) return -1;
+		
+		List<Predicate> preds = new ArrayList<>();
+		Operator below = op;
+		while (below instanceof Select || below instanceof Project) {
+			if (below instanceof Select) preds.add(((Select) below).getPredicate());
+			below = ((UnaryOperator) below).getInput();
+		}
+		
+		Relation reln;
+		if (below instanceof IndexScan) {
+			preds.add(((IndexScan) below).getPredicate());
+			reln = ((IndexScan) below).getRelation();
+		} else if (below instanceof Scan) {
+			reln = ((Scan) below).getRelation();
+		} else {
+			return -1;
+		}
+		
+		List<Tuple> sample = (reln instanceof NamedRelation) ? ((NamedRelation) reln).getSample() : null;
+		if (preds.size() < 2 || sample == null || sample.isEmpty()) return -1;
+		
+		// the positions in the sampled tuples of the ATTRIBUTEs compared
+		int[][] positions = new int[preds.size()][2];
+		for (int i = 0; i < preds.size(); i++) {
+			Predicate pred = preds.get(i);
+			if (pred.isParameter()) return -1;
+			positions[i][0] = reln.getAttributes().indexOf(pred.getLeftAttribute());
+			positions[i][1] = pred.equalsValue() ? -1 : reln.getAttributes().indexOf(pred.getRightAttribute());
+			if (positions[i][0] < 0 || (!pred.equalsValue() && positions[i][1] < 0)) return -1;
+		}
+		
+		int matches = 0;
+		for (Tuple t : sample) {
+			boolean match = true;
+			for (int i = 0; i < positions.length && match; i++) {
+				String value = (positions[i][1] < 0) ? preds.get(i).getRightValue() : t.get(positions[i][1]);
+				match = t.get(positions[i][0]).equals(value);
+			}
+			if (match) matches++;
+		}
+		
+		if (matches == 0) return -1;
+		return Math.round((double) reln.getTupleCount() * matches / sample.size());
+	}
+	
+	/**
+	 * The output of a SELECT with its tuple count replaced: the ATTRIBUTEs of the 
+	 * PREDICATE take as many values as the PREDICATE leaves them, the others as many 
+	 * as in the input, up to the new tuple count
+	 * 
+	 * @param output the output relation estimated by the formulas
+	 * @param input the input relation
+	 * @param p the PREDICATE of the SELECT
+	 * @param count the new tuple count
+	 * @return the output relation, with the ATTRIBUTEs in the same order
+	 */
+	private static Relation resize(Relation output, Relation input, Predicate p, long count) {
+		Relation ret = new Relation(count);
+		long values = 1;
+		if (!p.equalsValue()) {
+			values = Math.min(input.getAttribute(p.getLeftAttribute()).getValueCount(), 
+					input.getAttribute(p.getRightAttribute()).getValueCount());
+		}
+		
+		for (Attribute attr : output.getAttributes()) {
+			Attribute attr_found = input.getAttribute(attr);
+			boolean selected = attr.equals(p.getLeftAttribute()) || (!p.equalsValue() && attr.equals(p.getRightAttribute()));
+			ret.addAttribute(selected ? new Attribute(attr_found, Math.min(values, count)) : new Attribute(attr_found));
+		}
+		return ret;
+	}
+	
+	/**
+	 * The output of a SELECT attr = val: T(R) / V(R,A) tuples, with one value of A;
+	 * or, if A has been analysed, T(R) times the fraction of the tuples with the value;
+	 * a parameter's value isn't known yet, so its SELECT is always T(R) / V(R,A)
+	 * 
+	 * @param input the input relation
+	 * @param attr_left the ATTRIBUTE, with its value count in the input
+	 * @param value the value selected, or null for a parameter
+	 * @return the output relation, with the ATTRIBUTE last
+	 */
+	private static Relation selectValue(Relation input, Attribute attr_left, String value) {
+		ColumnStatistics stats = attr_left.getStatistics();
+		Relation output = new Relation((stats == null || value == null) ? input.getTupleCount()/Math.max(1, attr_left.getValueCount())
+				: Math.round(input.getTupleCount() * stats.getSelectivity(value)));
+		Attribute output_left_attr = new Attribute(attr_left, Math.min(1, output.getTupleCount()));
+	
+		for (Attribute attr : input.getAttributes()){
+			if (!attr.equals(attr_left)) {
+				output.addAttribute(new Attribute(attr));
+			}
+		}
+		
+		// add left attr always
+		output.addAttribute(output_left_attr);
+		return output;
 	}
 	
 	public void visit(Product op) {
@@ -122,28 +325,88 @@ public class Estimator implements PlanVisitor {
 		Relation right = op.getRight().getOutput();
 		
 		// output of the product.c_tuple = left.c_tuple * right.c_tuple
-		Relation output = new Relation(left.getTupleCount() * right.getTupleCount());
+		Relation output = new Relation(multiply(left.getTupleCount(), right.getTupleCount()));
 		
 		// add attributes from left
-		left.getAttributes().forEach(attr -> output.addAttribute(new Attribute(attr.getName(), attr.getValueCount())));
+		left.getAttributes().forEach(attr -> output.addAttribute(new Attribute(attr)));
 		
 		// add attributes from right
-		right.getAttributes().forEach(attr -> output.addAttribute(new Attribute(attr.getName(), attr.getValueCount())));
+		right.getAttributes().forEach(attr -> output.addAttribute(new Attribute(attr)));
 		
 		//System.out.println("PRODUCT " + output.render());
 		
-		// set the output of the product
+		// set the output of the product, a block nested loop join
 		op.setOutput(output);
-		totalCost += output.getTupleCount();
+		totalCost = add(totalCost, this.model.product(left, right, output, this.bufferPages));
 	}
 	
+	/* 
+	 * A JOIN of inputs both in order of their join ATTRIBUTEs is merged by the
+	 * PhysicalPlanner, and its output is in order of the left one; else it's hashed
+	 */
 	public void visit(Join op) {
+		Relation left = op.getLeft().getOutput();
+		Relation right = op.getRight().getOutput();
+		Relation output = joinOutput(left, right, op.getPredicate());
 		
-		// get output from two subtrees
-		Relation left_rel = op.getLeft().getOutput();
-		Relation right_rel = op.getRight().getOutput();
+		// the PREDICATE may name the ATTRIBUTEs the other way round to the inputs
+		Predicate p = op.getPredicate();
+		Attribute attr_left = p.getLeftAttribute(), attr_right = p.getRightAttribute();
+		if (!left.getAttributes().contains(attr_left)) {
+			attr_left = p.getRightAttribute();
+			attr_right = p.getLeftAttribute();
+		}
+		boolean merged = left.isOrderedOn(attr_left) && right.isOrderedOn(attr_right);
+		if (merged) output.setOrder(attr_left);
 		
-		Predicate p = op.getPredicate(); // the predicate
+		op.setOutput(output);
+		totalCost = add(totalCost, this.model.join(left, right, output, this.bufferPages, merged));
+	}
+	
+	/* 
+	 * An IndexJoin probes the INDEX of the inner relation once per outer tuple,
+	 * then reads the inner tuples that JOIN with it; its output is that of a JOIN
+	 */
+	public void visit(IndexJoin op) {
+		Relation outer = op.getInput().getOutput();
+		Relation inner = op.getRelation();
+		Relation output = joinOutput(outer, inner, op.getPredicate());
+		
+		// the entries with each value looked up: T(S) / V(S,B)
+		long values = 1;
+		for (Attribute attr_found : inner.getAttributes()) {
+			if (attr_found.equals(op.getInnerAttribute())) values = Math.max(1, attr_found.getValueCount());
+		}
+		
+		keepOrder(outer, output);
+		
+		op.setOutput(output);
+		totalCost = add(totalCost, this.model.indexJoin(op.getIndexType(), outer, inner, inner.getTupleCount() / values, output));
+	}
+	
+	/**
+	 * An operator that reads its input in order and doesn't reorder it keeps the 
+	 * order, as long as it keeps the ATTRIBUTE
+	 * 
+	 * @param input the input relation
+	 * @param output the output relation, in no known order yet
+	 */
+	private static void keepOrder(Relation input, Relation output) {
+		Attribute order = input.getOrder();
+		if (order != null && output.getAttributes().contains(order)) output.setOrder(order);
+	}
+	
+	/**
+	 * The output of a JOIN: T(R) * T(S) / max ( V(R,A) , V(S,B) ) tuples; or, if A or B
+	 * has been analysed, T(R) * T(S) times the fraction of pairs of tuples matching their
+	 * most common values, and the rest spread evenly
+	 * 
+	 * @param left_rel the left input relation
+	 * @param right_rel the right input relation
+	 * @param p the JOIN PREDICATE
+	 * @return the output relation, with the left ATTRIBUTEs first
+	 */
+	private static Relation joinOutput(Relation left_rel, Relation right_rel, Predicate p) {
 		Attribute attr_left = new Attribute(p.getLeftAttribute().getName()); // left attr != null
 		Attribute attr_right = new Attribute(p.getRightAttribute().getName()); // right attr != null
 		
@@ -152,17 +415,24 @@ public class Estimator implements PlanVisitor {
 		all_attrs.addAll(left_rel.getAttributes());
 		all_attrs.addAll(right_rel.getAttributes());
 		for(Attribute attr_found : all_attrs){
-			if (attr_found.equals(attr_left)) attr_left = new Attribute(attr_found.getName(), attr_found.getValueCount());
-			if (attr_found.equals(attr_right)) attr_right = new Attribute(attr_found.getName(), attr_found.getValueCount());
+			if (attr_found.equals(attr_left)) attr_left = new Attribute(attr_found);
+			if (attr_found.equals(attr_right)) attr_right = new Attribute(attr_found);
 		}
 		
 		// output of the join.c_tuple = T(R) * T(S) / max ( V(R,A) , V(S,B) )
-		Relation output = new Relation(left_rel.getTupleCount() * right_rel.getTupleCount() / Math.max(attr_left.getValueCount(), attr_right.getValueCount()));
+		Relation output;
+		if (attr_left.getStatistics() == null && attr_right.getStatistics() == null) {
+			output = new Relation(multiplyDivide(left_rel.getTupleCount(), right_rel.getTupleCount(), Math.max(attr_left.getValueCount(), attr_right.getValueCount())));
+		} else {
+			double selectivity = ColumnStatistics.getJoinSelectivity(attr_left.getStatistics(), attr_left.getValueCount(), 
+					attr_right.getStatistics(), attr_right.getValueCount());
+			output = new Relation(Math.round((double) left_rel.getTupleCount() * right_rel.getTupleCount() * selectivity));
+		}
 		
 		// V(R_join, A) = V(R_join, A) = min ( V(R,A) , V(S,B) )
-		int uniq_size = Math.min(Math.min(attr_left.getValueCount(), attr_right.getValueCount()), output.getTupleCount());
-		Attribute join_attr_left = new Attribute(attr_left.getName(), uniq_size);
-		Attribute join_attr_right = new Attribute(attr_right.getName(), uniq_size);
+		long uniq_size = Math.min(Math.min(attr_left.getValueCount(), attr_right.getValueCount()), output.getTupleCount());
+		Attribute join_attr_left = new Attribute(attr_left, uniq_size);
+		Attribute join_attr_right = new Attribute(attr_right, uniq_size);
 		
 		// add the attributes from left relation
 		Iterator<Attribute> liter = left_rel.getAttributes().iterator();
@@ -180,13 +450,302 @@ public class Estimator implements PlanVisitor {
 			else output.addAttribute(join_attr_right);
 		}
 		
-		op.setOutput(output);
-		totalCost += output.getTupleCount();
+		return output;
 	}
 	
-	public int getCost(Operator plan) {
+	/**
+	 * Estimate the output of a single operator whose inputs already carry
+	 * their output relations, without re-visiting the subtrees below it.
+	 * 
+	 * @param op the operator to estimate
+	 * @return the cost the operator adds on top of its inputs
+	 */
+	public long estimate(Operator op) {
+		if (this.memo == null) return estimateNode(op);
+		
+		// the inputs are normally in the memo already, having just been estimated
+		long inputCost = 0;
+		List<Operator> inputs = op.getInputs();
+		if (inputs != null) for (Operator input : inputs) inputCost = add(inputCost, memoisedCost(input));
+		
+		return memoisedCost(op) - inputCost;
+	}
+	
+	public long getCost(Operator plan) {
+		if (this.memo != null) return memoisedCost(plan);
+		
 		this.totalCost = 0;
 		plan.accept(this);		
 		return this.totalCost;
 	}
+	
+	/**
+	 * Set the number of pages of buffer PRODUCTs are costed with; this forgets
+	 * any memoised estimates, as they were costed with the old number
+	 * 
+	 * @param pages the number of pages, at least 1
+	 */
+	public void setBufferPages(int pages) {
+		this.bufferPages = Math.max(1, pages);
+		clearMemo();
+	}
+	
+	/**
+	 * Cost PRODUCTs with as many pages of buffer as the pool has frames
+	 * 
+	 * @param pool the BufferPool the pages of the relations are read through
+	 */
+	public void setBufferPool(BufferPool pool) {
+		setBufferPages(pool.getFrameCount());
+	}
+	
+	/**
+	 * Set whether chains of SELECTs on one relation are estimated over its sample,
+	 * where ANALYZE has taken one; this forgets any memoised estimates
+	 * 
+	 * @param sampling whether to estimate over the samples
+	 */
+	public void setSampling(boolean sampling) {
+		this.sampling = sampling;
+		clearMemo();
+	}
+	
+	/**
+	 * @return whether chains of SELECTs on one relation are estimated over its sample
+	 */
+	public boolean isSampling() {
+		return sampling;
+	}
+	
+	/**
+	 * Set the store whose relations are scanned, so that Scans of those it's 
+	 * sorted are known to be in order and JOINs of them costed as merges; 
+	 * this forgets any memoised estimates
+	 * 
+	 * Only the orders of the stored relations are known: the CHEAPEST plan for 
+	 * each set of relations is kept, not one dearer that would keep an order a 
+	 * later JOIN could merge on, and an input the PhysicalPlanner sorts to 
+	 * merge with one in order is still costed as a hash join.
+	 * 
+	 * @param store the store, or null if no orders are known
+	 */
+	public void setDataStore(DataStore store) {
+		this.store = store;
+		clearMemo();
+	}
+	
+	/**
+	 * Set the model the operators are costed with once their outputs are 
+	 * estimated; this forgets any memoised estimates
+	 * 
+	 * @param model the cost model
+	 */
+	public void setCostModel(CostModel model) {
+		this.model = model;
+		clearMemo();
+	}
+	
+	/**
+	 * @return the model the operators are costed with, the default model unless set
+	 */
+	public CostModel getCostModel() {
+		return model;
+	}
+	
+	/**
+	 * The model new Estimators cost operators with: the PhysicalCostModel whose weights
+	 * are in the file named by the COST_CONFIG_PROPERTY system property, loaded the first 
+	 * time it's asked for, or a TupleCostModel if the property is unset or the file can't be loaded
+	 * 
+	 * @return the default cost model
+	 */
+	public static synchronized CostModel getDefaultCostModel() {
+		String config = System.getProperty(COST_CONFIG_PROPERTY);
+		if (config == null) return new TupleCostModel();
+		
+		if (!config.equals(loadedConfig)) {
+			try {
+				loadedModel = PhysicalCostModel.load(config);
+			} catch (DatabaseException e) {
+				System.err.println(e.getMessage() + ", costing by tuples");
+				loadedModel = new TupleCostModel();
+			}
+			loadedConfig = config;
+		}
+		return loadedModel;
+	}
+	
+	/**
+	 * @return the number of pages of buffer PRODUCTs are costed with
+	 */
+	public int getBufferPages() {
+		return bufferPages;
+	}
+	
+	/**
+	 * @param width the number of attributes of the tuples
+	 * @return the number of tuples that fit in a page, taking eight bytes
+	 * per value and eight more per tuple
+	 */
+	public static int getTuplesPerPage(int width) {
+		return Math.max(1, PAGE_SIZE / (8 + 8 * width));
+	}
+	
+	/**
+	 * An INDEX entry is a value and a record id, taking up as much room as a 
+	 * tuple of one value, so a node has getTuplesPerPage(1) children
+	 * 
+	 * @param tuples the number of tuples indexed
+	 * @return the number of levels of nodes in a B+tree INDEX of them, 1 if the root is a leaf
+	 */
+	public static int getIndexHeight(long tuples) {
+		int fanout = getTuplesPerPage(1);
+		int height = 1;
+		for (long nodes = tuples / fanout + ((tuples % fanout == 0) ? 0 : 1); nodes > 1; nodes = (nodes + fanout - 1) / fanout) height++;
+		return height;
+	}
+	
+	/**
+	 * @param type the type of INDEX
+	 * @param tuples the number of tuples indexed
+	 * @param matches the number of entries with the value looked up
+	 * @return the number of INDEX pages read to find them: the inner nodes of a B+tree and the leaves
+	 * the entries take up, or the bucket of a hash INDEX and its overflow pages
+	 */
+	public static long getIndexProbeCost(IndexType type, long tuples, long matches) {
+		long pages = Math.max(1, matches / getTuplesPerPage(1) + ((matches % getTuplesPerPage(1) == 0) ? 0 : 1));
+		return (type == IndexType.HASH) ? pages : getIndexHeight(tuples) - 1 + pages;
+	}
+	
+	/**
+	 * @param reln an estimated relation
+	 * @return the number of pages its tuples take up
+	 */
+	public static long getPageCount(Relation reln) {
+		int perPage = getTuplesPerPage(reln.getAttributes().size());
+		return reln.getTupleCount() / perPage + ((reln.getTupleCount() % perPage == 0) ? 0 : 1);
+	}
+	
+	/**
+	 * Add two counts of tuples or pages, saturating rather than overflowing
+	 * 
+	 * @param a a count, not negative
+	 * @param b a count, not negative
+	 * @return a + b, or Long.MAX_VALUE if it doesn't fit
+	 */
+	public static long add(long a, long b) {
+		long sum = a + b;
+		return (sum < 0) ? Long.MAX_VALUE : sum;
+	}
+	
+	/**
+	 * Multiply two counts of tuples or pages, saturating rather than overflowing
+	 * 
+	 * @param a a count, not negative
+	 * @param b a count, not negative
+	 * @return a * b, or Long.MAX_VALUE if it doesn't fit
+	 */
+	public static long multiply(long a, long b) {
+		if (a == 0 || b == 0) return 0;
+		return (a > Long.MAX_VALUE / b) ? Long.MAX_VALUE : a * b;
+	}
+	
+	/**
+	 * Multiply two counts and divide by a third, exactly, rounding down, if the
+	 * product fits in a long, and in floating point, saturating, if it doesn't
+	 * 
+	 * @param a a count, not negative
+	 * @param b a count, not negative
+	 * @param c the divisor, taken as 1 if less
+	 * @return a * b / c
+	 */
+	public static long multiplyDivide(long a, long b, long c) {
+		c = Math.max(1, c);
+		long product = multiply(a, b);
+		return (product < Long.MAX_VALUE) ? product / c : (long) ((double) a * b / c);
+	}
+	
+	/**
+	 * @return the number of subtrees whose estimate was found in the memo
+	 */
+	public int getMemoHits() {
+		return memoHits;
+	}
+	
+	/**
+	 * @return the number of subtrees that had to be estimated
+	 */
+	public int getMemoMisses() {
+		return memoMisses;
+	}
+	
+	/**
+	 * Forget every memoised estimate, e.g. once the statistics have changed.
+	 */
+	public void clearMemo() {
+		if (this.memo != null) this.memo.clear();
+	}
+	
+	/**
+	 * Cost the plan rooted at op, only visiting the subtrees not found in the memo.
+	 * A subtree found in the memo gets its output set, but its own inputs are left alone.
+	 * 
+	 * @param op the root of the plan
+	 * @return the cumulative cost of the plan
+	 */
+	private long memoisedCost(Operator op) {
+		Fingerprint key = op.getFingerprint();
+		Estimate found = this.memo.get(key);
+		if (found != null) {
+			this.memoHits++;
+			op.setOutput(found.output);
+			return found.cost;
+		}
+		
+		this.memoMisses++;
+		long cost = 0;
+		List<Operator> inputs = op.getInputs();
+		if (inputs != null) for (Operator input : inputs) cost = add(cost, memoisedCost(input));
+		cost = add(cost, estimateNode(op));
+		
+		this.memo.put(key, new Estimate(op.getOutput(), cost));
+		return cost;
+	}
+	
+	/**
+	 * Visit just the one operator, whose inputs already have their outputs set.
+	 * 
+	 * @param op the operator to estimate
+	 * @return the cost the operator adds on top of its inputs
+	 */
+	private long estimateNode(Operator op) {
+		// counted from 0, so a saturated total doesn't hide the cost
+		long before = this.totalCost;
+		this.totalCost = 0;
+		
+		if (op instanceof Scan) visit((Scan) op);
+		else if (op instanceof IndexScan) visit((IndexScan) op);
+		else if (op instanceof Project) visit((Project) op);
+		else if (op instanceof Select) visit((Select) op);
+		else if (op instanceof Product) visit((Product) op);
+		else if (op instanceof Join) visit((Join) op);
+		else if (op instanceof IndexJoin) visit((IndexJoin) op);
+		
+		long cost = this.totalCost;
+		this.totalCost = add(before, cost);
+		return cost;
+	}
+	
+	/**
+	 * The memoised estimate for a subtree
+	 */
+	private static class Estimate {
+		private final Relation output;
+		private final long cost;
+		
+		private Estimate(Relation output, long cost) {
+			this.output = output;
+			this.cost = cost;
+		}
+	}
 }
@@ -0,0 +1,38 @@
+package sjdb;
+
+import java.util.function.IntPredicate;
+
+/**
+ * This interface is a policy a BufferPool uses to choose which of its
+ * frames to evict when it needs one for a page it doesn't hold.
+ * 
+ * The pool tells the policy about every access to a frame while it holds
+ * the latch of the page in it, so the accesses to each frame are ordered;
+ * victims are chosen one at a time, but concurrently with accesses.
+ */
+public interface EvictionPolicy {
+	/**
+	 * Prepare to track the given number of frames, numbered from 0.
+	 * @param frames Number of frames in the pool
+	 */
+	public void init(int frames);
+	
+	/**
+	 * Record an access to the page in a frame, whether it was just read in or already there.
+	 * @param frame Frame accessed
+	 */
+	public void accessed(int frame);
+	
+	/**
+	 * Record that a frame no longer holds a page, and should be the first to go.
+	 * @param frame Frame emptied
+	 */
+	public void emptied(int frame);
+	
+	/**
+	 * Choose a frame to evict.
+	 * @param evictable Whether a frame may be evicted, i.e. it isn't pinned
+	 * @return Frame, or -1 if none may be
+	 */
+	public int victim(IntPredicate evictable);
+}
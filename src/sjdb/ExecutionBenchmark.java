@@ -0,0 +1,91 @@
+/**
+ * 
+ */
+package sjdb;
+import java.io.*;
+import java.util.Random;
+
+/**
+ * Times the sample queries over generated data in both execution modes.
+ * 
+ * The relations of the catalogue are scaled up by the given factor, along
+ * with the value counts of their keys, so e.g. a factor of 5000 makes
+ * Person two million tuples.
+ * 
+ * Joins spill to disk once they need more than the memory budget, if one is given.
+ * 
+ * Usage: ExecutionBenchmark [scale factor] [runs] [memory budget in KB]
+ */
+public class ExecutionBenchmark {
+
+	private static final String[] QUERIES = {
+		"SELECT persname\nFROM Person\nWHERE age=\"35\"\n",
+		"SELECT projid, deptname\nFROM Project, Department\nWHERE dept=deptid, deptid=\"3\"\n",
+		"SELECT projname, deptname\nFROM Project, Department\nWHERE dept=deptid\n",
+		"SELECT persname, age\nFROM Person\nWHERE age=persid\n"
+	};
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		int scale = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		long budget = (args.length > 2) ? Long.parseLong(args[2]) * 1024 : MemoryBudget.UNLIMITED;
+		
+		Catalogue sample = new Catalogue();
+		new CatalogueParser("data/cat.txt", sample).parse();
+		Catalogue cat = scale(sample, scale);
+		
+		DataStore store = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) {
+			store.generate(reln, random);
+			store.getColumns(reln); // code the columns up front, not while timing
+			System.out.println(reln.render());
+		}
+		
+		Executor exec = new Executor(store);
+		exec.setMemoryBudget(budget);
+		for (String query : QUERIES) {
+			Operator plan = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+			System.out.println("--------------------------------------------------------------------------------------------------");
+			System.out.println(plan);
+			
+			long row = best(exec, plan, ExecutionMode.ROW, runs);
+			System.out.println("Row:        " + exec.getStats());
+			long vectorised = best(exec, plan, ExecutionMode.VECTORISED, runs);
+			System.out.println("Vectorised: " + exec.getStats());
+			System.out.println(String.format("Speedup:    %.1fx", (double) row / vectorised));
+		}
+	}
+	
+	/**
+	 * Execute a plan a number of times
+	 * @return the shortest time taken, in nanoseconds
+	 */
+	private static long best(Executor exec, Operator plan, ExecutionMode mode, int runs) throws DatabaseException {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < runs; i++) {
+			exec.count(plan, mode);
+			best = Math.min(best, exec.getStats().getElapsedNanos());
+		}
+		return best;
+	}
+	
+	/**
+	 * Copy a catalogue with every relation scaled up by a factor; attributes
+	 * with as many values as tuples are keys, and are scaled up too.
+	 */
+	private static Catalogue scale(Catalogue sample, int scale) {
+		Catalogue cat = new Catalogue();
+		for (NamedRelation reln : sample.getRelations()) {
+			cat.createRelation(reln.toString(), reln.getTupleCount() * scale);
+			for (Attribute attr : reln.getAttributes()) {
+				boolean key = attr.getValueCount() == reln.getTupleCount();
+				cat.createAttribute(reln.toString(), attr.getName(), key ? attr.getValueCount() * scale : attr.getValueCount());
+			}
+		}
+		return cat;
+	}
+}
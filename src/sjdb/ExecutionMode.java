@@ -0,0 +1,15 @@
+package sjdb;
+
+/**
+ * The ways in which the Executor can run a query plan.
+ */
+public enum ExecutionMode {
+	/**
+	 * Tuple at a time, through PhysicalOperators.
+	 */
+	ROW,
+	/**
+	 * A Batch of dictionary-coded columns at a time, through BatchOperators.
+	 */
+	VECTORISED
+}
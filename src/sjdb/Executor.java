@@ -0,0 +1,174 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class executes query plans by pulling every tuple out of the root
+ * of their physical plan, and records the QueryStats of the last one.
+ * 
+ * Each query can be run in either ExecutionMode: tuple at a time, or 
+ * vectorised, a batch at a time.
+ */
+public class Executor {
+	private DataStore store;
+	private QueryStats stats;
+	private long memoryBudget = MemoryBudget.UNLIMITED;
+	
+	/**
+	 * @param store DataStore holding the tuples of the named relations
+	 */
+	public Executor(DataStore store) {
+		this.store = store;
+	}
+	
+	/**
+	 * Set the memory budget of the logical plans executed from now on: the
+	 * most memory any one of their joins may hold before spilling to disk
+	 * @param bytes Budget, in bytes, or MemoryBudget.UNLIMITED
+	 */
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+	}
+	
+	/**
+	 * Execute a logical plan and collect its result
+	 * @param plan Logical plan, e.g. from the Optimiser
+	 * @return Tuples produced by the plan
+	 * @throws DatabaseException if the tuples of a scanned relation aren't in the DataStore
+	 */
+	public List<Tuple> execute(Operator plan) throws DatabaseException {
+		return execute(plan, ExecutionMode.ROW);
+	}
+	
+	/**
+	 * Execute a logical plan in the given mode and collect its result
+	 * @param plan Logical plan, e.g. from the Optimiser
+	 * @param mode Whether to execute the plan a tuple or a batch at a time
+	 * @return Tuples produced by the plan
+	 * @throws DatabaseException if the tuples of a scanned relation aren't in the DataStore, or a parameter isn't bound
+	 */
+	public List<Tuple> execute(Operator plan, ExecutionMode mode) throws DatabaseException {
+		if (PlanBinder.hasParameters(plan)) throw new DatabaseException("Plan has parameters not bound: " + plan);
+		MemoryBudget budget = new MemoryBudget(this.memoryBudget);
+		List<Tuple> result;
+		if (mode == ExecutionMode.VECTORISED) result = execute(new BatchPlanner(this.store, budget).plan(plan));
+		else result = execute(new PhysicalPlanner(this.store, budget).plan(plan));
+		
+		this.stats.setSpilledBytes(budget.getSpilledBytes());
+		return result;
+	}
+	
+	/**
+	 * Execute a logical plan in the given mode, counting but not keeping its tuples
+	 * @param plan Logical plan, e.g. from the Optimiser
+	 * @param mode Whether to execute the plan a tuple or a batch at a time
+	 * @return Number of tuples produced by the plan
+	 * @throws DatabaseException if the tuples of a scanned relation aren't in the DataStore, or a parameter isn't bound
+	 */
+	public long count(Operator plan, ExecutionMode mode) throws DatabaseException {
+		if (PlanBinder.hasParameters(plan)) throw new DatabaseException("Plan has parameters not bound: " + plan);
+		MemoryBudget budget = new MemoryBudget(this.memoryBudget);
+		if (mode == ExecutionMode.VECTORISED) count(new BatchPlanner(this.store, budget).plan(plan));
+		else count(new PhysicalPlanner(this.store, budget).plan(plan));
+		
+		this.stats.setSpilledBytes(budget.getSpilledBytes());
+		return this.stats.getTupleCount();
+	}
+	
+	/**
+	 * Execute a physical plan and collect its result
+	 * @param root Root of the physical plan
+	 * @return Tuples produced by the plan
+	 */
+	public List<Tuple> execute(PhysicalOperator root) {
+		List<Tuple> result = new ArrayList<Tuple>();
+		run(root, result);
+		return result;
+	}
+	
+	/**
+	 * Execute a physical plan, counting but not keeping its tuples
+	 * @param root Root of the physical plan
+	 * @return Number of tuples produced by the plan
+	 */
+	public long count(PhysicalOperator root) {
+		run(root, null);
+		return this.stats.getTupleCount();
+	}
+	
+	/**
+	 * Execute a vectorised physical plan and collect its result, decoded
+	 * @param root Root of the physical plan
+	 * @return Tuples produced by the plan
+	 */
+	public List<Tuple> execute(BatchOperator root) {
+		List<Tuple> result = new ArrayList<Tuple>();
+		run(root, result);
+		return result;
+	}
+	
+	/**
+	 * Execute a vectorised physical plan, counting but not keeping its tuples
+	 * @param root Root of the physical plan
+	 * @return Number of tuples produced by the plan
+	 */
+	public long count(BatchOperator root) {
+		run(root, null);
+		return this.stats.getTupleCount();
+	}
+	
+	/**
+	 * Return the stats of the last plan executed
+	 * @return Stats, or null if nothing has been executed
+	 */
+	public QueryStats getStats() {
+		return this.stats;
+	}
+	
+	/**
+	 * Pull the tuples out of the root of a physical plan until there are none left
+	 * @param root Root of the physical plan
+	 * @param result List to add the tuples to, or null to drop them
+	 */
+	private void run(PhysicalOperator root, List<Tuple> result) {
+		this.stats = new QueryStats();
+		long start = System.nanoTime();
+		
+		root.open();
+		try {
+			Tuple t;
+			while ((t = root.next()) != null) {
+				this.stats.addTuple();
+				if (result != null) result.add(t);
+			}
+		} finally {
+			root.close();
+			this.stats.setElapsedNanos(System.nanoTime() - start);
+		}
+	}
+	
+	/**
+	 * Pull the batches out of the root of a vectorised physical plan until there are none left
+	 * @param root Root of the physical plan
+	 * @param result List to add the decoded tuples to, or null to drop them
+	 */
+	private void run(BatchOperator root, List<Tuple> result) {
+		this.stats = new QueryStats();
+		long start = System.nanoTime();
+		
+		root.open();
+		try {
+			Batch b;
+			while ((b = root.nextBatch()) != null) {
+				this.stats.addTuples(b.getSelectedCount());
+				if (result != null) {
+					for (int i = 0; i < b.getSelectedCount(); i++) result.add(b.decode(i, this.store.getDictionary()));
+				}
+			}
+		} finally {
+			root.close();
+			this.stats.setElapsedNanos(System.nanoTime() - start);
+		}
+	}
+}
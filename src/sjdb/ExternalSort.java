@@ -0,0 +1,199 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class implements an external merge sort, which produces the tuples
+ * of its input in ascending order of one attribute, compared as strings.
+ *
+ * The input is read into memory when the sort is opened, and sorted there
+ * if it fits in the MemoryBudget. If not, each budget's worth of tuples is
+ * sorted and spilled to a SpillFile as a run, with the bytes of its values,
+ * and the runs are merged k ways, through a priority queue of the
+ * next tuple of each; with more than FAN_IN runs, they're first merged
+ * FAN_IN at a time into longer runs.
+ */
+public class ExternalSort extends PhysicalOperator {
+	/**
+	 * Most runs merged at a time.
+	 */
+	static final int FAN_IN = 64;
+
+	private Attribute key;
+	private int index;
+	private MemoryBudget budget;
+	private Comparator<Tuple> comparator;
+
+	// the tuples of the run being read, and the runs spilled to disk
+	private List<Tuple> memory;
+	private List<SpillFile> runs;
+
+	// the next tuple of each run being merged, in order
+	private PriorityQueue<Run> merge;
+	private int position;
+
+	/**
+	 * Create a new sort that keeps all of its input in memory
+	 * @param input Child operator
+	 * @param key Attribute to sort on
+	 */
+	public ExternalSort(PhysicalOperator input, Attribute key) {
+		this(input, key, new MemoryBudget(MemoryBudget.UNLIMITED));
+	}
+
+	/**
+	 * Create a new sort that spills sorted runs to disk if its input doesn't fit in memory
+	 * @param input Child operator
+	 * @param key Attribute to sort on
+	 * @param budget Memory the tuples being sorted may take up, which spills are added up in
+	 */
+	public ExternalSort(PhysicalOperator input, Attribute key, MemoryBudget budget) {
+		this.inputs.add(input);
+		this.attributes.addAll(input.getAttributes());
+		this.index = indexOf(key);
+		this.key = this.attributes.get(this.index);
+		this.order.add(this.key);
+		this.budget = budget;
+
+		int i = this.index;
+		this.comparator = (a, b) -> a.get(i).compareTo(b.get(i));
+	}
+
+	public void open() {
+		this.memory = new ArrayList<Tuple>();
+		this.runs = new ArrayList<SpillFile>();
+
+		PhysicalOperator input = this.inputs.get(0);
+		input.open();
+		try {
+			Tuple t;
+			while ((t = input.next()) != null) {
+				this.memory.add(t);
+				if (!this.budget.fits(HashJoin.bytes(this.memory.size(), t.size()))) {
+					// the run is as long as will fit, so sort it and spill it
+					this.memory.sort(this.comparator);
+					this.runs.add(spill(this.memory));
+					this.memory = new ArrayList<Tuple>();
+				}
+			}
+		} finally {
+			input.close();
+		}
+		this.memory.sort(this.comparator);
+
+		// merge the runs into longer ones until they can all be merged at once
+		while (this.runs.size() + 1 > FAN_IN) {
+			List<SpillFile> merged = new ArrayList<SpillFile>();
+			for (int from = 0; from < this.runs.size(); from += FAN_IN) {
+				List<SpillFile> some = this.runs.subList(from, Math.min(from + FAN_IN, this.runs.size()));
+				PriorityQueue<Run> queue = startMerge(some, null);
+
+				SpillFile out = new SpillFile(this.attributes.size());
+				Tuple t;
+				while ((t = nextMerged(queue)) != null) out.write(t);
+				for (SpillFile run : some) run.close();
+				this.budget.addSpilledBytes(out.getByteCount());
+				merged.add(out);
+			}
+			this.runs = merged;
+		}
+
+		this.merge = this.runs.isEmpty() ? null : startMerge(this.runs, this.memory);
+		this.position = 0;
+	}
+
+	protected Tuple fetch() {
+		if (this.merge == null) {
+			return (this.position < this.memory.size()) ? this.memory.get(this.position++) : null;
+		}
+		return nextMerged(this.merge);
+	}
+
+	public void close() {
+		if (this.runs != null) for (SpillFile run : this.runs) run.close();
+		this.runs = null;
+		this.memory = null;
+		this.merge = null;
+	}
+
+	/**
+	 * Write a sorted run to a new spill file
+	 */
+	private SpillFile spill(List<Tuple> run) {
+		SpillFile ret = new SpillFile(this.attributes.size());
+		for (Tuple t : run) ret.write(t);
+		this.budget.addSpilledBytes(ret.getByteCount());
+		return ret;
+	}
+
+	/**
+	 * Start merging some spilled runs, and possibly one in memory
+	 * @param spilled Runs on disk
+	 * @param memory Run in memory, or null
+	 * @return Queue of the first tuple of each run
+	 */
+	private PriorityQueue<Run> startMerge(List<SpillFile> spilled, List<Tuple> memory) {
+		PriorityQueue<Run> ret = new PriorityQueue<Run>(spilled.size() + 1, (a, b) -> this.comparator.compare(a.head, b.head));
+		for (SpillFile file : spilled) {
+			file.rewind();
+			Run run = new Run(file, null);
+			if (run.advance()) ret.add(run);
+		}
+		if (memory != null) {
+			Run run = new Run(null, memory);
+			if (run.advance()) ret.add(run);
+		}
+		return ret;
+	}
+
+	/**
+	 * Take the least tuple off the front of the runs being merged
+	 * @return Tuple, or null once the runs are all used up
+	 */
+	private Tuple nextMerged(PriorityQueue<Run> queue) {
+		Run run = queue.poll();
+		if (run == null) return null;
+
+		Tuple ret = run.head;
+		if (run.advance()) queue.add(run);
+		return ret;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SORT [" + this.key.toString() + "] (" + this.inputs.get(0).toString() + ")";
+	}
+
+	/**
+	 * A sorted run being merged, on disk or in memory, and its next tuple
+	 */
+	private class Run {
+		private final SpillFile file;
+		private final List<Tuple> tuples;
+		private int position;
+		private Tuple head;
+
+		private Run(SpillFile file, List<Tuple> tuples) {
+			this.file = file;
+			this.tuples = tuples;
+		}
+
+		/**
+		 * Move on to the next tuple of the run
+		 * @return Whether there was one
+		 */
+		private boolean advance() {
+			if (this.file == null) {
+				this.head = (this.position < this.tuples.size()) ? this.tuples.get(this.position++) : null;
+			} else {
+				this.head = this.file.read();
+			}
+			return this.head != null;
+		}
+	}
+}
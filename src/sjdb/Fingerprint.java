@@ -0,0 +1,57 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class is a structural fingerprint of a query plan: the kind and
+ * parameters of its root operator, and the fingerprints of its inputs.
+ * 
+ * The hash code is worked out once from those of the inputs, so fingerprinting
+ * a new operator over already fingerprinted inputs doesn't walk the subtrees;
+ * comparing two fingerprints only walks them when they're not the same objects.
+ */
+final class Fingerprint {
+	private final String label;
+	private final Fingerprint[] inputs;
+	private final int hash;
+
+	/**
+	 * @param label the kind and parameters of the root operator
+	 * @param inputs the fingerprints of its inputs
+	 */
+	Fingerprint(String label, Fingerprint[] inputs) {
+		this.label = label;
+		this.inputs = inputs;
+		this.hash = 31 * label.hashCode() + Arrays.hashCode(inputs);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof Fingerprint)) {
+			return false;
+		}
+		Fingerprint rhs = (Fingerprint) obj;
+
+		return this.hash == rhs.hash && this.label.equals(rhs.label) && Arrays.equals(this.inputs, rhs.inputs);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String ret = this.label;
+		for (Fingerprint input : this.inputs) {
+			ret += "(" + input.toString() + ")";
+		}
+		return ret;
+	}
+}
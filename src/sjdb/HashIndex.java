@@ -0,0 +1,478 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This class is an extendible hash index on one attribute of a HeapFile,
+ * stored in its own file of fixed-size pages and read through a BufferPool.
+ * Each entry of the index is a value of the attribute and the record id of
+ * a tuple of the heap file with that value, as in a BPlusTree.
+ *
+ * A directory of 2^d buckets, d being the global depth, is indexed by the
+ * low d bits of the hash of a value. When a bucket fills up it's split in
+ * two on the next bit of the hashes, doubling the directory if the bucket
+ * already used all d bits; a bucket whose entries all have the same hash
+ * can't be split, so it takes on overflow pages instead. A lookup reads the
+ * bucket, and its overflow pages if it has any, and nothing else.
+ *
+ * The index is built by inserting the entries of the heap file one at a
+ * time, through the buffer pool, which writes the buckets back as they're
+ * evicted. The first page is a header: a magic number, the page size, the
+ * global depth, the page the directory starts at and the number of
+ * entries; the directory follows the buckets. Each bucket page starts with
+ * its number of entries, its local depth and its next overflow page, 0 if
+ * none, followed by the entries.
+ */
+public class HashIndex implements Index {
+	/**
+	 * The size of a page, in bytes.
+	 */
+	public static final int PAGE_SIZE = Estimator.PAGE_SIZE;
+	// the bytes before the entries of a bucket, and taken by a record id
+	private static final int BUCKET_HEADER = 8;
+	private static final int RECORD_ID = 6;
+	// the most bits of the hashes the directory is indexed by
+	private static final int MAX_DEPTH = 20;
+
+	private static final int MAGIC = 0x534A4248;
+
+	private final String filename;
+	private final BufferPool pool;
+	private final FileChannel channel;
+	private final int poolFile;
+
+	private int globalDepth;
+	// the bucket page of each directory entry
+	private int[] directory;
+	// the pages of the file, and those let go of by splits, to be used again
+	private int pageCount;
+	private final Deque<Integer> free;
+	private long entryCount;
+
+	private HashIndex(String filename, BufferPool pool, FileChannel channel, int globalDepth, int[] directory, int pageCount, long entryCount) {
+		this.filename = filename;
+		this.pool = pool;
+		this.channel = channel;
+		this.poolFile = pool.register(channel);
+		this.globalDepth = globalDepth;
+		this.directory = directory;
+		this.pageCount = pageCount;
+		this.free = new ArrayDeque<Integer>();
+		this.entryCount = entryCount;
+	}
+
+	/**
+	 * Build an index on an attribute of a heap file
+	 * @param filename Index file to create, or replace
+	 * @param heap Heap file to index
+	 * @param index Position of the attribute in the tuples of the heap file
+	 * @param pool Buffer pool to build and read the index through
+	 * @return Index, open for reading
+	 * @throws DatabaseException if a value doesn't fit in a bucket, or the file can't be written
+	 */
+	public static HashIndex build(String filename, HeapFile heap, int index, BufferPool pool) throws DatabaseException {
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			// one empty bucket, of local depth 0, after the header
+			HashIndex ret = new HashIndex(filename, pool, channel, 0, new int[] {1}, 2, 0);
+
+			for (int p = 0; p < heap.getPageCount(); p++) {
+				ByteBuffer page = heap.getPage(p);
+				try {
+					for (int s = 0; s < HeapFile.getSlotCount(page); s++) {
+						long found = HeapFile.locate(page, HeapFile.getRecordOffset(page, s), index);
+						byte[] value = new byte[(int) (found >>> 32)];
+						if (BUCKET_HEADER + 5 + value.length + RECORD_ID > PAGE_SIZE) {
+							throw new DatabaseException("Value of " + value.length + " bytes doesn't fit in a bucket");
+						}
+						for (int i = 0; i < value.length; i++) value[i] = page.get((int) found + i);
+						ret.insert(new Entry(value, p, s));
+					}
+				} finally {
+					heap.releasePage(p);
+				}
+			}
+
+			ret.write();
+			return ret;
+		} catch (IOException | UncheckedIOException e) {
+			close(channel);
+			throw new DatabaseException("Cannot write index " + filename, e);
+		} catch (DatabaseException | RuntimeException e) {
+			close(channel);
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an index for reading through a buffer pool
+	 * @param filename Index file
+	 * @param pool Buffer pool to read the pages through
+	 * @return Index
+	 * @throws DatabaseException if the file isn't an index, or can't be read
+	 */
+	public static HashIndex open(String filename, BufferPool pool) throws DatabaseException {
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+				// read the whole header page
+			}
+			if (header.position() < PAGE_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != PAGE_SIZE) {
+				throw new DatabaseException(filename + " is not a hash index with " + PAGE_SIZE + " byte pages");
+			}
+			int depth = header.getInt(8);
+			int pages = header.getInt(12);
+
+			ByteBuffer bytes = ByteBuffer.allocate(4 << depth);
+			while (bytes.hasRemaining() && channel.read(bytes, (long) pages * PAGE_SIZE + bytes.position()) > 0) {
+				// read the whole directory
+			}
+			bytes.flip();
+			int[] directory = new int[1 << depth];
+			bytes.asIntBuffer().get(directory);
+
+			return new HashIndex(filename, pool, channel, depth, directory, pages, header.getLong(16));
+		} catch (IOException | RuntimeException e) {
+			close(channel);
+			throw new DatabaseException("Cannot read index " + filename, e);
+		} catch (DatabaseException e) {
+			close(channel);
+			throw e;
+		}
+	}
+
+	/**
+	 * Close the file, once no cursor over it is in use
+	 */
+	public void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of bits of the hashes the directory is indexed by
+	 * @return Global depth
+	 */
+	public int getGlobalDepth() {
+		return this.globalDepth;
+	}
+
+	/**
+	 * Return the number of pages of buckets, and their overflow pages
+	 * @return Pages, not counting the header and the directory
+	 */
+	public int getPageCount() {
+		return this.pageCount - 1;
+	}
+
+	/**
+	 * Return the number of entries, one per tuple of the heap file
+	 * @return Entries
+	 */
+	public long getEntryCount() {
+		return this.entryCount;
+	}
+
+	/**
+	 * Return the buffer pool the pages are read through
+	 * @return Buffer pool
+	 */
+	public BufferPool getBufferPool() {
+		return this.pool;
+	}
+
+	public IndexType getType() {
+		return IndexType.HASH;
+	}
+
+	/**
+	 * Find the entries with a value, in the bucket its hash leads to
+	 * @param value Value to look up
+	 * @return Cursor before the first entry with the value, to be closed once done with
+	 */
+	public Index.Cursor seek(String value) {
+		byte[] key = value.getBytes(StandardCharsets.UTF_8);
+		return new BucketCursor(key, this.directory[hash(key) & ((1 << this.globalDepth) - 1)]);
+	}
+
+	/**
+	 * Add an entry to the bucket its hash leads to, splitting the bucket first if it's full
+	 */
+	private void insert(Entry e) {
+		while (true) {
+			int bucket = this.directory[e.hash & ((1 << this.globalDepth) - 1)];
+			ByteBuffer first = this.pool.pin(this.poolFile, bucket);
+			int local = first.getShort(2);
+			boolean full = first.getInt(4) != 0 || !fits(first, e.value);
+			this.pool.unpin(this.poolFile, bucket, false);
+
+			if (full && local < MAX_DEPTH) {
+				// a bucket whose entries all hash the same would only split into itself
+				List<Entry> entries = read(bucket);
+				boolean same = true;
+				for (Entry other : entries) same &= other.hash == e.hash;
+				if (!same) {
+					split(bucket, local, entries);
+					continue;
+				}
+			}
+
+			append(bucket, e);
+			this.entryCount++;
+			return;
+		}
+	}
+
+	/**
+	 * Split a bucket in two on bit local of the hashes of its entries
+	 */
+	private void split(int bucket, int local, List<Entry> entries) {
+		if (local == this.globalDepth) {
+			// the directory doubles, the new half pointing at the same buckets as the old
+			int size = this.directory.length;
+			this.directory = Arrays.copyOf(this.directory, 2 * size);
+			System.arraycopy(this.directory, 0, this.directory, size, size);
+			this.globalDepth++;
+		}
+
+		// the bucket's overflow pages are let go of, and its entries shared out anew
+		ByteBuffer first = this.pool.pin(this.poolFile, bucket);
+		for (int p = first.getInt(4); p != 0; ) {
+			ByteBuffer page = this.pool.pin(this.poolFile, p);
+			int next = page.getInt(4);
+			this.pool.unpin(this.poolFile, p, false);
+			this.free.push(p);
+			p = next;
+		}
+		clear(first, local + 1);
+		this.pool.unpin(this.poolFile, bucket, true);
+
+		int sibling = allocate(local + 1);
+		for (int i = 0; i < this.directory.length; i++) {
+			if (this.directory[i] == bucket && ((i >>> local) & 1) == 1) this.directory[i] = sibling;
+		}
+		for (Entry e : entries) append(((e.hash >>> local) & 1) == 0 ? bucket : sibling, e);
+	}
+
+	/**
+	 * Add an entry to the last page of a bucket, or a new overflow page if it's full
+	 */
+	private void append(int bucket, Entry e) {
+		int p = bucket;
+		ByteBuffer page = this.pool.pin(this.poolFile, p);
+		while (page.getInt(4) != 0) {
+			int next = page.getInt(4);
+			this.pool.unpin(this.poolFile, p, false);
+			p = next;
+			page = this.pool.pin(this.poolFile, p);
+		}
+
+		if (!fits(page, e.value)) {
+			int overflow = allocate(page.getShort(2));
+			page.putInt(4, overflow);
+			this.pool.unpin(this.poolFile, p, true);
+			p = overflow;
+			page = this.pool.pin(this.poolFile, p);
+		}
+
+		int count = page.getShort(0);
+		int position = BUCKET_HEADER;
+		for (int i = 0; i < count; i++) position = BPlusTree.skipLength(page, position) + BPlusTree.readLength(page, position) + RECORD_ID;
+		page.position(position);
+		BPlusTree.put(page, e.value).putInt(e.page).putShort((short) e.slot);
+		page.putShort(0, (short) (count + 1));
+		this.pool.unpin(this.poolFile, p, true);
+	}
+
+	/**
+	 * Read the entries of a bucket and its overflow pages
+	 */
+	private List<Entry> read(int bucket) {
+		List<Entry> ret = new ArrayList<Entry>();
+		for (int p = bucket; p != 0; ) {
+			ByteBuffer page = this.pool.pin(this.poolFile, p);
+			int position = BUCKET_HEADER;
+			for (int i = 0; i < page.getShort(0); i++) {
+				int length = BPlusTree.readLength(page, position);
+				int start = BPlusTree.skipLength(page, position);
+				byte[] value = new byte[length];
+				for (int b = 0; b < length; b++) value[b] = page.get(start + b);
+				ret.add(new Entry(value, page.getInt(start + length), page.getShort(start + length + 4)));
+				position = start + length + RECORD_ID;
+			}
+			int next = page.getInt(4);
+			this.pool.unpin(this.poolFile, p, false);
+			p = next;
+		}
+		return ret;
+	}
+
+	/**
+	 * Take an empty page for a bucket, or an overflow page of one
+	 */
+	private int allocate(int local) {
+		int ret = this.free.isEmpty() ? this.pageCount++ : this.free.pop();
+		ByteBuffer page = this.pool.pin(this.poolFile, ret);
+		clear(page, local);
+		this.pool.unpin(this.poolFile, ret, true);
+		return ret;
+	}
+
+	/**
+	 * Write the buckets back, then the directory and the header
+	 */
+	private void write() throws IOException {
+		this.pool.flush();
+
+		ByteBuffer bytes = ByteBuffer.allocate(4 * this.directory.length);
+		IntBuffer ints = bytes.asIntBuffer();
+		ints.put(this.directory);
+		while (bytes.hasRemaining()) this.channel.write(bytes, (long) this.pageCount * PAGE_SIZE + bytes.position());
+
+		ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+		header.putInt(MAGIC).putInt(PAGE_SIZE).putInt(this.globalDepth).putInt(this.pageCount).putLong(this.entryCount);
+		header.clear();
+		while (header.hasRemaining()) this.channel.write(header, header.position());
+	}
+
+	private static boolean fits(ByteBuffer page, byte[] value) {
+		int count = page.getShort(0);
+		int position = BUCKET_HEADER;
+		for (int i = 0; i < count; i++) position = BPlusTree.skipLength(page, position) + BPlusTree.readLength(page, position) + RECORD_ID;
+		return PAGE_SIZE - position >= 5 + value.length + RECORD_ID;
+	}
+
+	private static void clear(ByteBuffer page, int local) {
+		page.putShort(0, (short) 0);
+		page.putShort(2, (short) local);
+		page.putInt(4, 0);
+	}
+
+	/**
+	 * Hash the bytes of a value, mixing the bits so that the low ones index the directory well
+	 */
+	static int hash(byte[] value) {
+		int h = 0;
+		for (byte b : value) h = 31 * h + (b & 0xFF);
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static void close(FileChannel channel) {
+		if (channel == null) return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing more to do
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.filename;
+	}
+
+	/**
+	 * A cursor over the entries of a bucket with one value; it keeps the page it's in pinned
+	 */
+	private class BucketCursor implements Index.Cursor {
+		private final byte[] key;
+		private int pageNo;
+		private ByteBuffer page;
+		private int remaining;
+		private int position;
+		private int recordPage;
+		private int recordSlot;
+
+		private BucketCursor(byte[] key, int bucket) {
+			this.key = key;
+			open(bucket);
+		}
+
+		private void open(int p) {
+			this.pageNo = p;
+			this.page = HashIndex.this.pool.pin(HashIndex.this.poolFile, p);
+			this.remaining = this.page.getShort(0);
+			this.position = BUCKET_HEADER;
+		}
+
+		public boolean next() {
+			while (this.page != null) {
+				if (this.remaining == 0) {
+					// on to the overflow page, if there is one
+					int next = this.page.getInt(4);
+					close();
+					if (next == 0) return false;
+					open(next);
+					continue;
+				}
+
+				int length = BPlusTree.readLength(this.page, this.position);
+				int start = BPlusTree.skipLength(this.page, this.position);
+				this.position = start + length + RECORD_ID;
+				this.remaining--;
+				if (BPlusTree.compare(this.page, start, length, this.key) == 0) {
+					this.recordPage = this.page.getInt(start + length);
+					this.recordSlot = this.page.getShort(start + length + 4);
+					return true;
+				}
+			}
+			return false;
+		}
+
+		public int getPage() {
+			return this.recordPage;
+		}
+
+		public int getSlot() {
+			return this.recordSlot;
+		}
+
+		public void close() {
+			if (this.page != null) HashIndex.this.pool.unpin(HashIndex.this.poolFile, this.pageNo, false);
+			this.page = null;
+		}
+	}
+
+	/**
+	 * An entry being inserted, and the hash of its value
+	 */
+	private static class Entry {
+		private final byte[] value;
+		private final int page;
+		private final int slot;
+		private final int hash;
+
+		private Entry(byte[] value, int page, int slot) {
+			this.value = value;
+			this.page = page;
+			this.slot = slot;
+			this.hash = hash(value);
+		}
+	}
+}
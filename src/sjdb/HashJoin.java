@@ -0,0 +1,300 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This class implements a tuple-at-a-time hash join: the whole of the
+ * build input is read into memory when the join is opened and hashed on
+ * its join attribute, then each tuple of the probe input is looked up in it.
+ *
+ * The hash table is an IntMultiMap keyed on the hash codes of the join
+ * values, so nothing is boxed; values whose hash codes collide are told
+ * apart when probing.
+ *
+ * If the build input doesn't fit in the MemoryBudget, this is a grace hash
+ * join instead: both inputs are partitioned on their join attributes into
+ * SpillFiles, with the bytes of their values, and the SpillPartitions are
+ * then joined one at a time.
+ *
+ * The output tuples are those of the left input followed by those of the
+ * right one, whichever is built on. They're in the order of the probe input
+ * only if the join can't spill.
+ */
+public class HashJoin extends PhysicalOperator {
+	private Predicate predicate;
+	private boolean buildLeft;
+	private MemoryBudget budget;
+	// positions of the join attribute in the tuples of the probe and build inputs
+	private int probeKey;
+	private int buildKey;
+
+	private List<Tuple> build;
+	private IntMultiMap table;
+
+	// the spilled partitions still to be joined, and the probe rows of the one
+	// being joined; pending is null if nothing was spilled
+	private Deque<SpillPartition> pending;
+	private SpillFile probeFile;
+
+	// the probe tuple being joined, and the next entry of the table for it
+	private Tuple probe;
+	private int entry;
+
+	/**
+	 * Create a new hash join that builds on the right input
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 */
+	public HashJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate) {
+		this(left, right, predicate, false);
+	}
+
+	/**
+	 * Create a new hash join
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 * @param buildLeft Whether to build on the left input rather than the right one
+	 */
+	public HashJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate, boolean buildLeft) {
+		this(left, right, predicate, buildLeft, new MemoryBudget(MemoryBudget.UNLIMITED));
+	}
+
+	/**
+	 * Create a new hash join that spills to disk if the build input doesn't fit in memory
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate of the form attr=attr
+	 * @param buildLeft Whether to build on the left input rather than the right one
+	 * @param budget Memory the build tuples and hash table may take up, which spills are added up in
+	 */
+	public HashJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate, boolean buildLeft, MemoryBudget budget) {
+		this.inputs.add(left);
+		this.inputs.add(right);
+		this.predicate = predicate;
+		this.buildLeft = buildLeft;
+		this.budget = budget;
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+		// the probe tuples are read in order, unless the join may spill and read them partition by partition
+		if (budget.getLimit() == MemoryBudget.UNLIMITED) this.order.addAll(probeInput().getOrder());
+
+		// the predicate may name the attributes of the inputs either way round
+		PhysicalOperator probeInput = probeInput(), buildInput = buildInput();
+		if (probeInput.indexOf(predicate.getLeftAttribute()) >= 0) {
+			this.probeKey = probeInput.indexOf(predicate.getLeftAttribute());
+			this.buildKey = buildInput.indexOf(predicate.getRightAttribute());
+		} else {
+			this.probeKey = probeInput.indexOf(predicate.getRightAttribute());
+			this.buildKey = buildInput.indexOf(predicate.getLeftAttribute());
+		}
+	}
+
+	public void open() {
+		PhysicalOperator buildInput = buildInput();
+		SpillPartition[] parts = null;
+		this.build = new ArrayList<Tuple>();
+
+		buildInput.open();
+		try {
+			Tuple t;
+			while ((t = buildInput.next()) != null) {
+				if (parts != null) {
+					spill(t, this.buildKey, parts, true);
+					continue;
+				}
+
+				this.build.add(t);
+				if (!this.budget.fits(bytes(this.build.size()))) {
+					// the build input doesn't fit, so partition what's been read and all the rest
+					parts = SpillPartition.create(buildInput.getAttributes().size(), probeInput().getAttributes().size(), 0);
+					for (Tuple b : this.build) spill(b, this.buildKey, parts, true);
+					this.build = null;
+				}
+			}
+		} finally {
+			buildInput.close();
+		}
+
+		this.pending = null;
+		this.probeFile = null;
+		if (parts == null) {
+			buildTable();
+			probeInput().open();
+		} else {
+			// partition the probe input the same way, to join the partitions one by one
+			PhysicalOperator probeInput = probeInput();
+			probeInput.open();
+			try {
+				Tuple t;
+				while ((t = probeInput.next()) != null) spill(t, this.probeKey, parts, false);
+			} finally {
+				probeInput.close();
+			}
+
+			this.pending = new ArrayDeque<SpillPartition>();
+			for (SpillPartition p : parts) addPending(p);
+		}
+
+		this.probe = null;
+		this.entry = -1;
+	}
+
+	protected Tuple fetch() {
+		while (true) {
+			if (this.entry < 0) {
+				// move on to the next probe tuple and look it up
+				this.probe = nextProbe();
+				if (this.probe == null) return null;
+				this.entry = this.table.first(this.probe.get(this.probeKey).hashCode());
+				continue;
+			}
+
+			Tuple t = this.build.get(this.table.value(this.entry));
+			this.entry = this.table.next(this.entry);
+			if (t.get(this.buildKey).equals(this.probe.get(this.probeKey))) {
+				return this.buildLeft ? t.concat(this.probe) : this.probe.concat(t);
+			}
+		}
+	}
+
+	public void close() {
+		if (this.pending == null) {
+			probeInput().close();
+		} else {
+			if (this.probeFile != null) this.probeFile.close();
+			for (SpillPartition p : this.pending) p.close();
+		}
+		this.pending = null;
+		this.probeFile = null;
+		this.build = null;
+		this.table = null;
+		this.probe = null;
+	}
+
+	/**
+	 * Hash the build tuples on their join attribute
+	 */
+	private void buildTable() {
+		this.table = new IntMultiMap(this.build.size());
+		for (int r = 0; r < this.build.size(); r++) {
+			this.table.put(this.build.get(r).get(this.buildKey).hashCode(), r);
+		}
+	}
+
+	/**
+	 * Return the next tuple to probe with, from the probe input, or once
+	 * spilled, from the partition being joined
+	 * @return Next tuple, or null once there are no more
+	 */
+	private Tuple nextProbe() {
+		if (this.pending == null) return probeInput().next();
+
+		while (true) {
+			if (this.probeFile != null) {
+				Tuple t = this.probeFile.read();
+				if (t != null) return t;
+				this.probeFile.close();
+				this.probeFile = null;
+			}
+			if (!nextPartition()) return null;
+		}
+	}
+
+	/**
+	 * Read the build tuples of the next spilled partition into memory, splitting
+	 * up the partitions that still don't fit, and start on its probe tuples
+	 * @return Whether there was a partition left to join
+	 */
+	private boolean nextPartition() {
+		while (!this.pending.isEmpty()) {
+			SpillPartition p = this.pending.pop();
+			if (p.level < SpillPartition.MAX_LEVEL && !this.budget.fits(bytes(p.build.getRowCount()))) {
+				split(p);
+				continue;
+			}
+
+			this.build = new ArrayList<Tuple>((int) p.build.getRowCount());
+			p.build.rewind();
+			Tuple t;
+			while ((t = p.build.read()) != null) this.build.add(t);
+			p.build.close();
+			buildTable();
+
+			p.probe.rewind();
+			this.probeFile = p.probe;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Partition both sides of a spilled partition again, on the next level of hash
+	 */
+	private void split(SpillPartition p) {
+		int buildWidth = buildInput().getAttributes().size(), probeWidth = probeInput().getAttributes().size();
+		SpillPartition[] parts = SpillPartition.create(buildWidth, probeWidth, p.level + 1);
+
+		Tuple t;
+		p.build.rewind();
+		while ((t = p.build.read()) != null) parts[SpillPartition.of(t.get(this.buildKey).hashCode(), p.level + 1)].build.write(t);
+		p.probe.rewind();
+		while ((t = p.probe.read()) != null) parts[SpillPartition.of(t.get(this.probeKey).hashCode(), p.level + 1)].probe.write(t);
+
+		p.close();
+		for (SpillPartition part : parts) addPending(part);
+	}
+
+	/**
+	 * Count the bytes spilled to a new partition, and queue it to be joined unless that can produce nothing
+	 */
+	private void addPending(SpillPartition p) {
+		this.budget.addSpilledBytes(p.getByteCount());
+		if (p.isEmpty()) p.close();
+		else this.pending.push(p);
+	}
+
+	/**
+	 * Write a tuple to the partition its join attribute hashes to
+	 */
+	private void spill(Tuple t, int key, SpillPartition[] parts, boolean build) {
+		SpillPartition p = parts[SpillPartition.of(t.get(key).hashCode(), parts[0].level)];
+		(build ? p.build : p.probe).write(t);
+	}
+
+	private long bytes(long rows) {
+		return bytes(rows, buildInput().getAttributes().size());
+	}
+
+	/**
+	 * Estimate the memory taken by build tuples and the hash table over them:
+	 * the tuples and their arrays of references to the values, which are shared,
+	 * and about 32 bytes for the table's slots and chains
+	 * @param rows Number of build tuples
+	 * @param width Number of attributes of the build tuples
+	 * @return Bytes
+	 */
+	static long bytes(long rows, int width) {
+		return rows * (80 + 8 * width);
+	}
+
+	private PhysicalOperator probeInput() {
+		return this.inputs.get(this.buildLeft ? 1 : 0);
+	}
+
+	private PhysicalOperator buildInput() {
+		return this.inputs.get(this.buildLeft ? 0 : 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") HASH-JOIN [" + this.predicate.toString() + "]" +
+				(this.buildLeft ? " BUILD LEFT" : "") + " (" + this.inputs.get(1).toString() + ")";
+	}
+}
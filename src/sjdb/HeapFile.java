@@ -0,0 +1,443 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is a heap file: the tuples of a NamedRelation stored on disk,
+ * in the order they were loaded, in fixed-size slotted pages. It is read
+ * through MappedByteBuffers, so scanning it doesn't copy its pages, or if
+ * opened with one, through a BufferPool; either way, each page is got with
+ * getPage and let go of with releasePage.
+ *
+ * The first page is a header: a magic number, the page size, the number of
+ * attributes, the number of data pages and the number of tuples. Each data
+ * page then starts with its number of slots and the offset of its lowest
+ * record, followed by the slots, each the offset and length of a record;
+ * the records are packed in from the end of the page.
+ *
+ * A record holds the values of a tuple in attribute order, each as its
+ * length in bytes, in 7-bit groups, followed by its bytes in UTF-8.
+ */
+public class HeapFile {
+	/**
+	 * The size of a page, in bytes.
+	 */
+	public static final int PAGE_SIZE = Estimator.PAGE_SIZE;
+	// the bytes before the slots of a data page, and taken by each slot
+	static final int PAGE_HEADER = 4;
+	static final int SLOT = 4;
+
+	private static final int MAGIC = 0x534A4442;
+	// the pages mapped at a time; a MappedByteBuffer is limited to 2GB
+	private static final int SEGMENT_PAGES = (1 << 30) / PAGE_SIZE;
+
+	private final String filename;
+	private final int width;
+	private final int pageCount;
+	private final long tupleCount;
+	// the mapped pages, or else the buffer pool the pages are read through, and the file's number in it
+	private final MappedByteBuffer[] segments;
+	private final BufferPool pool;
+	private final FileChannel channel;
+	private final int poolFile;
+
+	private HeapFile(String filename, int width, int pageCount, long tupleCount, MappedByteBuffer[] segments,
+			BufferPool pool, FileChannel channel) {
+		this.filename = filename;
+		this.width = width;
+		this.pageCount = pageCount;
+		this.tupleCount = tupleCount;
+		this.segments = segments;
+		this.pool = pool;
+		this.channel = channel;
+		this.poolFile = (pool == null) ? -1 : pool.register(channel);
+	}
+
+	/**
+	 * Bulk load a heap file from a file with one comma-separated tuple per
+	 * line, as DataStore.load reads
+	 * @param reln Relation the tuples belong to
+	 * @param csvFilename File to load the tuples from
+	 * @param filename Heap file to create, or replace
+	 * @return Heap file, open for reading
+	 * @throws DatabaseException if a line doesn't match the attributes of the relation, or the files can't be used
+	 */
+	public static HeapFile load(NamedRelation reln, String csvFilename, String filename) throws DatabaseException {
+		int width = reln.getAttributes().size();
+		try (BufferedReader read = new BufferedReader(new FileReader(csvFilename))) {
+			Iterator<String[]> lines = new Iterator<String[]>() {
+				private String line = nextLine();
+
+				private String nextLine() {
+					try {
+						String ret;
+						while ((ret = read.readLine()) != null && ret.trim().isEmpty()) {
+							// skip blank lines
+						}
+						return ret;
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				}
+
+				public boolean hasNext() {
+					return this.line != null;
+				}
+
+				public String[] next() {
+					if (this.line == null) throw new NoSuchElementException();
+					String[] values = this.line.split("\\s*,\\s*", -1);
+					if (values.length != width) {
+						throw new IllegalArgumentException("Tuple " + this.line + " doesn't match relation " + reln.render());
+					}
+					this.line = nextLine();
+					return values;
+				}
+			};
+			return write(filename, width, lines);
+		} catch (IOException | IllegalStateException e) {
+			throw new DatabaseException("Cannot load relation " + reln + " from " + csvFilename, e);
+		} catch (IllegalArgumentException e) {
+			throw new DatabaseException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Write tuples to a new heap file
+	 * @param filename Heap file to create, or replace
+	 * @param width Number of values in each tuple
+	 * @param tuples Values of the tuples, in attribute order
+	 * @return Heap file, open for reading
+	 * @throws DatabaseException if a tuple doesn't fit in a page, or the file can't be written
+	 */
+	public static HeapFile write(String filename, int width, Iterator<String[]> tuples) throws DatabaseException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer page = ByteBuffer.allocateDirect(PAGE_SIZE);
+			ByteBuffer record = ByteBuffer.allocate(PAGE_SIZE);
+			int pages = 0;
+			long count = 0;
+
+			// leave the header page to be written once the counts are known
+			channel.position(PAGE_SIZE);
+			clear(page);
+			while (tuples.hasNext()) {
+				String[] values = tuples.next();
+				if (values.length != width) throw new DatabaseException("Tuple doesn't have " + width + " values");
+				if (!encode(values, record)) throw new DatabaseException("Tuple " + String.join(",", values) + " doesn't fit in a page");
+
+				if (!append(page, record)) {
+					flush(channel, page);
+					pages++;
+					clear(page);
+					append(page, record);
+				}
+				count++;
+			}
+			if (page.getShort(0) > 0) {
+				flush(channel, page);
+				pages++;
+			}
+
+			page.clear();
+			page.putInt(MAGIC).putInt(PAGE_SIZE).putInt(width).putInt(pages).putLong(count);
+			while (page.hasRemaining()) page.put((byte) 0);
+			page.flip();
+			channel.position(0);
+			while (page.hasRemaining()) channel.write(page);
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot write heap file " + filename, e);
+		}
+
+		return open(filename);
+	}
+
+	/**
+	 * Open a heap file for reading, mapping its pages
+	 * @param filename Heap file
+	 * @return Heap file
+	 * @throws DatabaseException if the file isn't a heap file, or can't be read
+	 */
+	public static HeapFile open(String filename) throws DatabaseException {
+		return open(filename, null);
+	}
+
+	/**
+	 * Open a heap file for reading through a buffer pool
+	 * @param filename Heap file
+	 * @param pool Buffer pool to read the pages through, or null to map them
+	 * @return Heap file
+	 * @throws DatabaseException if the file isn't a heap file, or can't be read
+	 */
+	public static HeapFile open(String filename, BufferPool pool) throws DatabaseException {
+		FileChannel channel = null;
+		boolean kept = false;
+		try {
+			channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+			if (channel.size() < PAGE_SIZE) throw new DatabaseException(filename + " is not a heap file");
+			ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+			while (header.hasRemaining() && channel.read(header) > 0) {
+				// read the whole header page
+			}
+			if (header.getInt(0) != MAGIC || header.getInt(4) != PAGE_SIZE) {
+				throw new DatabaseException(filename + " is not a heap file with " + PAGE_SIZE + " byte pages");
+			}
+			int width = header.getInt(8);
+			int pages = header.getInt(12);
+			long count = header.getLong(16);
+
+			if (pool != null) {
+				// the pool reads the pages through the channel, so it's kept open
+				kept = true;
+				return new HeapFile(filename, width, pages, count, null, pool, channel);
+			}
+
+			// the mappings stay valid once the channel is closed
+			MappedByteBuffer[] segments = new MappedByteBuffer[(pages + SEGMENT_PAGES - 1) / SEGMENT_PAGES];
+			for (int s = 0; s < segments.length; s++) {
+				long first = 1 + (long) s * SEGMENT_PAGES;
+				long size = (long) Math.min(SEGMENT_PAGES, pages - s * SEGMENT_PAGES) * PAGE_SIZE;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, first * PAGE_SIZE, size);
+			}
+			return new HeapFile(filename, width, pages, count, segments, null, null);
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot read heap file " + filename, e);
+		} finally {
+			if (!kept && channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					// nothing more to do
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the file, once none of its pages are in use
+	 */
+	public void close() {
+		if (this.channel == null) return;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Return the number of values in each tuple
+	 * @return Number of attributes
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+	/**
+	 * Return the number of data pages, not counting the header
+	 * @return Pages
+	 */
+	public int getPageCount() {
+		return this.pageCount;
+	}
+
+	/**
+	 * Return the number of tuples
+	 * @return Tuples
+	 */
+	public long getTupleCount() {
+		return this.tupleCount;
+	}
+
+	/**
+	 * Return the buffer pool the pages are read through
+	 * @return Buffer pool, or null if they're mapped
+	 */
+	public BufferPool getBufferPool() {
+		return this.pool;
+	}
+
+	/**
+	 * Return a data page, without copying it; it's pinned in the buffer pool,
+	 * if there is one, until it's released
+	 * @param page Page number, from 0
+	 * @return View of the page, positioned at its start, not to be changed
+	 */
+	public ByteBuffer getPage(int page) {
+		if (this.pool != null) return this.pool.pin(this.poolFile, page + 1);
+
+		ByteBuffer ret = this.segments[page / SEGMENT_PAGES].duplicate();
+		int offset = (page % SEGMENT_PAGES) * PAGE_SIZE;
+		ret.position(offset);
+		ret.limit(offset + PAGE_SIZE);
+		return ret.slice();
+	}
+
+	/**
+	 * Let go of a page got with getPage
+	 * @param page Page number
+	 */
+	public void releasePage(int page) {
+		if (this.pool != null) this.pool.unpin(this.poolFile, page + 1, false);
+	}
+
+	/**
+	 * Return the number of records in a page
+	 * @param page Page returned by getPage
+	 * @return Slots
+	 */
+	public static int getSlotCount(ByteBuffer page) {
+		return page.getShort(0);
+	}
+
+	/**
+	 * Return the offset of a record in its page
+	 * @param page Page returned by getPage
+	 * @param slot Slot of the record
+	 * @return Offset
+	 */
+	public static int getRecordOffset(ByteBuffer page, int slot) {
+		return page.getShort(PAGE_HEADER + slot * SLOT);
+	}
+
+	/**
+	 * Read every tuple of the file; each page is released once its tuples have been read
+	 * @return Iterator over the tuples, in the order they were loaded
+	 */
+	public Iterator<Tuple> iterator() {
+		return new Iterator<Tuple>() {
+			private int page = 0;
+			private int slot = 0;
+			private ByteBuffer current = (pageCount > 0) ? getPage(0) : null;
+
+			public boolean hasNext() {
+				while (this.current != null && this.slot >= getSlotCount(this.current)) {
+					releasePage(this.page);
+					this.page++;
+					this.slot = 0;
+					this.current = (this.page < pageCount) ? getPage(this.page) : null;
+				}
+				return this.current != null;
+			}
+
+			public Tuple next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return decode(this.current, getRecordOffset(this.current, this.slot++), width);
+			}
+		};
+	}
+
+	/**
+	 * Decode the record at an offset of a page into a tuple
+	 * @param page Page returned by getPage
+	 * @param offset Offset of the record
+	 * @param width Number of values in the record
+	 * @return Tuple
+	 */
+	public static Tuple decode(ByteBuffer page, int offset, int width) {
+		String[] values = new String[width];
+		byte[] bytes = new byte[64];
+		int p = offset;
+		for (int c = 0; c < width; c++) {
+			int length = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = page.get(p++);
+				length |= (b & 0x7F) << shift;
+				if (b >= 0) break;
+			}
+			if (length > bytes.length) bytes = new byte[length];
+			for (int i = 0; i < length; i++) bytes[i] = page.get(p + i);
+			values[c] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+			p += length;
+		}
+		return new Tuple(values);
+	}
+
+	/**
+	 * Find a value of the record at an offset of a page, without decoding the record
+	 * @param page Page returned by getPage
+	 * @param offset Offset of the record
+	 * @param index Position of the value in the record
+	 * @return Offset of the bytes of the value, with their length in the high 32 bits
+	 */
+	static long locate(ByteBuffer page, int offset, int index) {
+		int p = offset;
+		for (int c = 0; ; c++) {
+			int length = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte b = page.get(p++);
+				length |= (b & 0x7F) << shift;
+				if (b >= 0) break;
+			}
+			if (c == index) return ((long) length << 32) | p;
+			p += length;
+		}
+	}
+
+	/**
+	 * Encode the values of a tuple as a record
+	 * @return Whether the record fits in a page; if so the buffer holds it, ready to be read
+	 */
+	private static boolean encode(String[] values, ByteBuffer record) {
+		record.clear();
+		for (String value : values) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			if (record.remaining() < 5 + bytes.length) return false;
+			int length = bytes.length;
+			while (length >= 0x80) {
+				record.put((byte) (length | 0x80));
+				length >>>= 7;
+			}
+			record.put((byte) length);
+			record.put(bytes);
+		}
+		record.flip();
+		return record.remaining() + SLOT <= PAGE_SIZE - PAGE_HEADER;
+	}
+
+	private static void clear(ByteBuffer page) {
+		page.clear();
+		page.putShort(0, (short) 0);
+		page.putShort(2, (short) PAGE_SIZE);
+	}
+
+	/**
+	 * Add a record to a page, if it has room for it and its slot
+	 */
+	private static boolean append(ByteBuffer page, ByteBuffer record) {
+		int slots = page.getShort(0);
+		int lowest = page.getShort(2);
+		int offset = lowest - record.remaining();
+		if (offset < PAGE_HEADER + (slots + 1) * SLOT) return false;
+
+		for (int i = 0; i < record.remaining(); i++) page.put(offset + i, record.get(i));
+		page.putShort(PAGE_HEADER + slots * SLOT, (short) offset);
+		page.putShort(PAGE_HEADER + slots * SLOT + 2, (short) record.remaining());
+		page.putShort(0, (short) (slots + 1));
+		page.putShort(2, (short) offset);
+		return true;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer page) throws IOException {
+		page.clear();
+		while (page.hasRemaining()) channel.write(page);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.filename;
+	}
+}
@@ -0,0 +1,129 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class implements a physical scan over the pages of a HeapFile,
+ * straight out of the mapped file or the buffer pool, one page at a time:
+ * each record is decoded into a tuple only once it's to be produced.
+ * 
+ * A select of the form attr=val can be pushed into the scan, in which case
+ * the value is compared with the bytes of the records where they lie, and
+ * only the records that match it are decoded.
+ */
+public class HeapScan extends PhysicalOperator {
+	private NamedRelation relation;
+	private HeapFile file;
+	private Predicate predicate;
+	// the position of the predicate's attribute, and its value, as stored
+	private int index;
+	private byte[] value;
+	
+	private int pageNo;
+	private ByteBuffer page;
+	private int slots;
+	private int slot;
+	
+	/**
+	 * Create a new scan of a heap file
+	 * @param relation Relation being scanned
+	 * @param file Heap file holding the tuples of the relation
+	 */
+	public HeapScan(NamedRelation relation, HeapFile file) {
+		this(relation, file, null);
+	}
+	
+	/**
+	 * Create a new scan of a heap file that only produces the tuples that satisfy a predicate
+	 * @param relation Relation being scanned
+	 * @param file Heap file holding the tuples of the relation
+	 * @param predicate Predicate of the form attr=val, or null for all the tuples
+	 */
+	public HeapScan(NamedRelation relation, HeapFile file, Predicate predicate) {
+		this.relation = relation;
+		this.file = file;
+		this.predicate = predicate;
+		this.attributes.addAll(relation.getAttributes());
+		
+		if (predicate != null) {
+			this.index = indexOf(predicate.getLeftAttribute());
+			this.value = predicate.getRightValue().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+	
+	public void open() {
+		this.pageNo = -1;
+		this.page = null;
+		this.slots = 0;
+		this.slot = 0;
+	}
+	
+	protected Tuple fetch() {
+		while (true) {
+			if (this.slot >= this.slots) {
+				// move on to the next page
+				if (this.page != null) this.file.releasePage(this.pageNo);
+				this.page = null;
+				if (++this.pageNo >= this.file.getPageCount()) return null;
+				this.page = this.file.getPage(this.pageNo);
+				this.slots = HeapFile.getSlotCount(this.page);
+				this.slot = 0;
+				continue;
+			}
+			
+			int offset = HeapFile.getRecordOffset(this.page, this.slot++);
+			if (this.predicate == null || matches(offset)) return HeapFile.decode(this.page, offset, this.attributes.size());
+		}
+	}
+	
+	/**
+	 * Compare the predicate's value with the bytes of a record in place
+	 */
+	private boolean matches(int offset) {
+		long found = HeapFile.locate(this.page, offset, this.index);
+		if ((int) (found >>> 32) != this.value.length) return false;
+		
+		int start = (int) found;
+		for (int i = 0; i < this.value.length; i++) {
+			if (this.page.get(start + i) != this.value[i]) return false;
+		}
+		return true;
+	}
+	
+	public void close() {
+		if (this.page != null) this.file.releasePage(this.pageNo);
+		this.page = null;
+	}
+	
+	/**
+	 * Return the relation being scanned
+	 * @return Relation
+	 */
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+	
+	/**
+	 * Return the heap file being scanned
+	 * @return Heap file
+	 */
+	public HeapFile getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * Return the predicate pushed into the scan
+	 * @return Predicate of the form attr=val, or null if none
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "HEAP-SCAN " + this.relation.toString() + (this.predicate == null ? "" : " [" + this.predicate.toString() + "]");
+	}
+}
@@ -0,0 +1,132 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements an equi-depth histogram of the values of an
+ * attribute: the values, in String order, are cut into buckets holding
+ * about the same number of tuples each, so that a bucket covers a narrow
+ * range where the values are dense and a wide one where they are sparse.
+ *
+ * Each bucket records the fraction of the tuples of the relation whose
+ * value falls in it, and the number of distinct values it covers; the
+ * tuples of a bucket are assumed to be spread evenly over its values.
+ *
+ * Bucket b covers the values from bounds[b], exclusive, to bounds[b+1],
+ * inclusive, except the first, which covers bounds[0] too. A value never
+ * spans two buckets.
+ */
+public class Histogram {
+	private String[] bounds;
+	private double[] fractions;
+	private long[] distinct;
+
+	/**
+	 * Build a histogram from a sample of the values of an attribute
+	 * @param sorted Sampled values, in String order
+	 * @param buckets Number of buckets wanted; fewer are made if there are fewer distinct values
+	 * @param fraction Fraction of the tuples of the relation the values sampled stand for
+	 * @param values Estimated number of distinct values they're drawn from
+	 */
+	public Histogram(List<String> sorted, int buckets, double fraction, long values) {
+		List<String> bounds = new ArrayList<String>();
+		List<Integer> counts = new ArrayList<Integer>();
+		List<Integer> distincts = new ArrayList<Integer>();
+
+		int n = sorted.size();
+		int depth = Math.max(1, (n + buckets - 1) / Math.max(1, buckets));
+		if (n > 0) bounds.add(sorted.get(0));
+		int start = 0, sampled = 0;
+		while (start < n) {
+			// extend the bucket to the end of the run of its last value
+			int end = Math.min(n, start + depth);
+			while (end < n && sorted.get(end).equals(sorted.get(end - 1))) end++;
+
+			int d = 1;
+			for (int i = start + 1; i < end; i++) if (!sorted.get(i).equals(sorted.get(i - 1))) d++;
+			bounds.add(sorted.get(end - 1));
+			counts.add(end - start);
+			distincts.add(d);
+			sampled += d;
+			start = end;
+		}
+
+		// a sample misses values, so scale up the distinct values seen in each bucket
+		double scale = (sampled == 0) ? 1 : Math.max(1.0, (double) values / sampled);
+		this.bounds = bounds.toArray(new String[bounds.size()]);
+		this.fractions = new double[counts.size()];
+		this.distinct = new long[counts.size()];
+		for (int b = 0; b < counts.size(); b++) {
+			this.fractions[b] = fraction * counts.get(b) / n;
+			this.distinct[b] = Math.max(1, Math.round(distincts.get(b) * scale));
+		}
+	}
+
+	/**
+	 * Return the bucket a value falls in
+	 * @param value Value
+	 * @return Bucket, or -1 if the value is outside the histogram
+	 */
+	public int getBucket(String value) {
+		if (this.fractions.length == 0 || value.compareTo(this.bounds[0]) < 0) return -1;
+
+		// the first upper bound not below the value
+		int lo = 0, hi = this.fractions.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.bounds[mid + 1].compareTo(value) < 0) lo = mid + 1;
+			else hi = mid;
+		}
+		return (lo < this.fractions.length) ? lo : -1;
+	}
+
+	/**
+	 * Return the estimated fraction of the tuples of the relation with a value
+	 * @param value Value
+	 * @return Selectivity, or -1 if the value is outside the histogram
+	 */
+	public double getSelectivity(String value) {
+		int b = getBucket(value);
+		return (b < 0) ? -1 : this.fractions[b] / this.distinct[b];
+	}
+
+	/**
+	 * Return the number of buckets
+	 * @return Bucket count
+	 */
+	public int getBucketCount() {
+		return this.fractions.length;
+	}
+
+	/**
+	 * Return the fraction of the tuples of the relation in a bucket
+	 * @param bucket Bucket
+	 * @return Fraction
+	 */
+	public double getFraction(int bucket) {
+		return this.fractions[bucket];
+	}
+
+	/**
+	 * Return the estimated number of distinct values in a bucket
+	 * @param bucket Bucket
+	 * @return Value count
+	 */
+	public long getValueCount(int bucket) {
+		return this.distinct[bucket];
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+		for (int b = 0; b < this.fractions.length; b++) {
+			if (b > 0) ret.append(" ");
+			ret.append(b == 0 ? "[" : "(").append(this.bounds[b]).append("..").append(this.bounds[b + 1]).append("]:");
+			ret.append(String.format("%.3f", this.fractions[b])).append("/").append(this.distinct[b]);
+		}
+		return ret.toString();
+	}
+}
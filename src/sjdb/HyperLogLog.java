@@ -0,0 +1,106 @@
+package sjdb;
+
+/**
+ * This class implements a HyperLogLog sketch, which estimates the number
+ * of distinct values added to it in a fixed amount of memory, whatever the
+ * number of values: each value is hashed, the first bits of the hash pick
+ * one of 2^precision registers, and the register keeps the longest run of
+ * leading zeros seen in the rest of the hashes it was picked for.
+ *
+ * The standard error of the estimate is about 1.04 / sqrt(2^precision),
+ * so 1.6% with the default precision of 12, in 4KB of registers.
+ */
+public class HyperLogLog {
+	/**
+	 * The precision sketches are made with unless given
+	 */
+	public static final int DEFAULT_PRECISION = 12;
+
+	private int precision;
+	private byte[] registers;
+
+	/**
+	 * Create an empty sketch with the default precision
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Create an empty sketch
+	 * @param precision Number of bits of the hash picking the register, from 4 to 16
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("Precision " + precision + " is not between 4 and 16");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Add a value to the sketch
+	 * @param value Value
+	 */
+	public void add(String value) {
+		long hash = hash(value);
+		int register = (int) (hash >>> (64 - this.precision));
+		// the run of zeros after the register bits, plus one; the sentinel bit stops it at the end of the hash
+		byte rank = (byte) (Long.numberOfLeadingZeros((hash << this.precision) | (1L << (this.precision - 1))) + 1);
+		if (rank > this.registers[register]) this.registers[register] = rank;
+	}
+
+	/**
+	 * Return the estimated number of distinct values added to the sketch
+	 * @return Estimate
+	 */
+	public long estimate() {
+		int m = this.registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (byte r : this.registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0) zeros++;
+		}
+
+		double estimate = 0.7213 / (1 + 1.079 / m) * m * m / sum;
+		// few values leave registers empty, and are better counted by how many are
+		if (estimate <= 2.5 * m && zeros > 0) estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Return the number of bits of the hash picking the register
+	 * @return Precision
+	 */
+	public int getPrecision() {
+		return this.precision;
+	}
+
+	/**
+	 * Hash a value to 64 bits, FNV-1a over its characters and then the
+	 * finaliser of MurmurHash3, so every bit depends on every character
+	 * @param value Value
+	 * @return Hash
+	 */
+	static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "HLL(" + this.registers.length + " registers) ~" + estimate();
+	}
+}
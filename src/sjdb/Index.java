@@ -0,0 +1,49 @@
+package sjdb;
+
+/**
+ * This is an interface for an index on one attribute of a HeapFile, which
+ * finds the record ids, the page and slot, of the tuples with a value.
+ */
+public interface Index {
+	/**
+	 * Find the entries of the index with a value
+	 * @param value Value to look up
+	 * @return Cursor before the first entry with the value, to be closed once done with
+	 */
+	public Cursor seek(String value);
+
+	/**
+	 * Return the kind of index this is
+	 * @return Index type
+	 */
+	public IndexType getType();
+
+	/**
+	 * A cursor over the entries of an index with one value, which keeps the
+	 * page it's in pinned until it moves off it or is closed
+	 */
+	public interface Cursor {
+		/**
+		 * Move on to the next entry with the value
+		 * @return Whether there is one
+		 */
+		public boolean next();
+
+		/**
+		 * Return the heap file page of the tuple of the entry
+		 * @return Page number
+		 */
+		public int getPage();
+
+		/**
+		 * Return the slot of the tuple of the entry in its page
+		 * @return Slot
+		 */
+		public int getSlot();
+
+		/**
+		 * Let go of the page the cursor is in
+		 */
+		public void close();
+	}
+}
@@ -0,0 +1,104 @@
+package sjdb;
+
+/**
+ * This class implements an IndexJoin operator: a join of its input, the
+ * outer relation, with a NamedRelation, the inner one, whose tuples that
+ * join with each outer tuple are looked up in an index on its attribute
+ * of the join predicate, so the inner relation is never scanned.
+ *
+ * The output tuples are those of the input followed by those of the inner
+ * relation, as for a Join with the inner relation scanned on its right.
+ */
+public class IndexJoin extends UnaryOperator {
+	/**
+	 * The inner named relation, whose index is looked up
+	 */
+	private NamedRelation relation;
+	/**
+	 * The join predicate, of the form attr=attr
+	 */
+	private Predicate predicate;
+	/**
+	 * The type of the index
+	 */
+	private IndexType type;
+
+	/**
+	 * Create a new index join
+	 * @param input Child operator, the outer relation
+	 * @param relation Inner named relation
+	 * @param predicate Join predicate, one of whose attributes is indexed in the inner relation
+	 * @param type Type of the index
+	 */
+	public IndexJoin(Operator input, NamedRelation relation, Predicate predicate, IndexType type) {
+		super(input);
+		this.relation = relation;
+		this.predicate = predicate;
+		this.type = type;
+	}
+
+	/**
+	 * Return the inner named relation
+	 * @return Named relation
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the join predicate
+	 * @return Predicate of the form attr=attr
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/**
+	 * Return the attribute of the inner relation looked up in its index
+	 * @return Attribute
+	 */
+	public Attribute getInnerAttribute() {
+		return this.relation.getAttributes().contains(this.predicate.getLeftAttribute())
+				? this.predicate.getLeftAttribute() : this.predicate.getRightAttribute();
+	}
+
+	/**
+	 * Return the attribute of the outer relation whose values are looked up
+	 * @return Attribute
+	 */
+	public Attribute getOuterAttribute() {
+		return getInnerAttribute().equals(this.predicate.getLeftAttribute())
+				? this.predicate.getRightAttribute() : this.predicate.getLeftAttribute();
+	}
+
+	/**
+	 * Return the type of the index looked up
+	 * @return Index type
+	 */
+	public IndexType getIndexType() {
+		return this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getParameters()
+	 */
+	@Override
+	protected String getParameters() {
+		return this.relation.toString() + "," + this.predicate.toString() + "," + this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + getInput().toString() + ") INDEX-JOIN [" + this.predicate.toString() + "] (" + this.relation.toString() + ")";
+	}
+}
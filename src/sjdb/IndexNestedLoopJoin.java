@@ -0,0 +1,101 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class implements a tuple-at-a-time index nested loop join: for each
+ * tuple of the left (outer) input, the index on the join attribute of the
+ * right (inner) relation is probed with its value, and the inner tuples
+ * found are read from the heap file and joined with it. Only the index
+ * pages probed and the heap file pages of the matching tuples are read.
+ *
+ * The output tuples are those of the outer input followed by those of the
+ * inner relation, in the order of the outer input, which is kept.
+ */
+public class IndexNestedLoopJoin extends PhysicalOperator {
+	private NamedRelation relation;
+	private HeapFile file;
+	private Index index;
+	private Predicate predicate;
+	// position of the outer attribute in the outer tuples
+	private int key;
+	private int width;
+
+	private Tuple outer;
+	private Index.Cursor cursor;
+	private int pageNo;
+	private ByteBuffer page;
+
+	/**
+	 * Create a new index nested loop join
+	 * @param left Left (outer) child operator
+	 * @param relation Right (inner) relation
+	 * @param file Heap file holding the tuples of the inner relation
+	 * @param index Index on the inner relation's attribute of the predicate
+	 * @param predicate Join predicate of the form attr=attr
+	 */
+	public IndexNestedLoopJoin(PhysicalOperator left, NamedRelation relation, HeapFile file, Index index, Predicate predicate) {
+		this.inputs.add(left);
+		this.relation = relation;
+		this.file = file;
+		this.index = index;
+		this.predicate = predicate;
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(relation.getAttributes());
+		this.order.addAll(left.getOrder());
+
+		// the predicate may name the attributes either way round
+		this.key = left.indexOf(predicate.getLeftAttribute());
+		if (this.key < 0) this.key = left.indexOf(predicate.getRightAttribute());
+		this.width = relation.getAttributes().size();
+	}
+
+	public void open() {
+		this.inputs.get(0).open();
+		this.outer = null;
+		this.cursor = null;
+		this.page = null;
+	}
+
+	protected Tuple fetch() {
+		while (true) {
+			if (this.cursor != null && this.cursor.next()) {
+				if (this.page == null || this.cursor.getPage() != this.pageNo) {
+					release();
+					this.pageNo = this.cursor.getPage();
+					this.page = this.file.getPage(this.pageNo);
+				}
+				int offset = HeapFile.getRecordOffset(this.page, this.cursor.getSlot());
+				return this.outer.concat(HeapFile.decode(this.page, offset, this.width));
+			}
+
+			// probe the index with the next outer tuple
+			if (this.cursor != null) this.cursor.close();
+			this.cursor = null;
+			this.outer = this.inputs.get(0).next();
+			if (this.outer == null) return null;
+			this.cursor = this.index.seek(this.outer.get(this.key));
+		}
+	}
+
+	public void close() {
+		this.inputs.get(0).close();
+		if (this.cursor != null) this.cursor.close();
+		this.cursor = null;
+		this.outer = null;
+		release();
+	}
+
+	private void release() {
+		if (this.page != null) this.file.releasePage(this.pageNo);
+		this.page = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") INL-JOIN [" + this.predicate.toString() + "] (" +
+				this.index.getType() + " " + this.relation.toString() + ")";
+	}
+}
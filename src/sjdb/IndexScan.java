@@ -0,0 +1,100 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements an IndexScan operator that feeds the tuples of a
+ * NamedRelation with one value of an attribute into a query plan, looked
+ * up in an index on the attribute, in place of a Scan with a Select of
+ * the form attr=val over it.
+ */
+public class IndexScan extends Operator {
+	/**
+	 * The named relation to be scanned
+	 */
+	private NamedRelation relation;
+	/**
+	 * The predicate looked up in the index, of the form attr=val
+	 */
+	private Predicate predicate;
+	/**
+	 * The type of the index
+	 */
+	private IndexType type;
+
+	/**
+	 * Create a new index scan of a given named relation, through a B+tree
+	 * @param relation Named relation to be scanned
+	 * @param predicate Predicate of the form attr=val, on an indexed attribute of the relation
+	 */
+	public IndexScan(NamedRelation relation, Predicate predicate) {
+		this(relation, predicate, IndexType.BTREE);
+	}
+
+	/**
+	 * Create a new index scan of a given named relation
+	 * @param relation Named relation to be scanned
+	 * @param predicate Predicate of the form attr=val, on an indexed attribute of the relation
+	 * @param type Type of the index on the attribute
+	 */
+	public IndexScan(NamedRelation relation, Predicate predicate, IndexType type) {
+		this.relation = relation;
+		this.predicate = predicate;
+		this.type = type;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getInputs()
+	 */
+	@Override
+	public List<Operator> getInputs() {
+		return null;
+	}
+
+	/**
+	 * Return the named relation to be scanned
+	 * @return Named relation to be scanned
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * Return the predicate looked up in the index
+	 * @return Predicate of the form attr=val
+	 */
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	/**
+	 * Return the type of the index looked up
+	 * @return Index type
+	 */
+	public IndexType getIndexType() {
+		return this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getParameters()
+	 */
+	@Override
+	protected String getParameters() {
+		return this.relation.toString() + "," + this.predicate.toString() + "," + this.type;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "INDEX-SCAN [" + this.predicate.toString() + "] (" + this.relation.toString() + ")";
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		visitor.visit(this);
+	}
+}
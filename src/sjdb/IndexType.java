@@ -0,0 +1,15 @@
+package sjdb;
+
+/**
+ * The kinds of index the Catalogue can declare on an attribute.
+ */
+public enum IndexType {
+	/**
+	 * A BPlusTree, which looks a value up by going down from its root to a leaf.
+	 */
+	BTREE,
+	/**
+	 * A HashIndex, which looks a value up in the bucket its hash leads to.
+	 */
+	HASH
+}
@@ -0,0 +1,130 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class is a hash multimap from int keys to int payloads, such as
+ * row numbers, with open addressing on the keys and the payloads of each
+ * key chained through an array, so that nothing is boxed.
+ * 
+ * Payloads are numbered in order of insertion, 0, 1, 2...; walk the
+ * payloads of a key with first(key) and next(payload).
+ */
+public class IntMultiMap {
+	private static final int EMPTY = -1;
+	
+	// open-addressed slots: the key, and the last payload inserted with it
+	private int[] keys;
+	private int[] heads;
+	private int used;
+	
+	// for each payload: its value, and the payload inserted before it with the same key
+	private int[] values;
+	private int[] chain;
+	private int count;
+	
+	/**
+	 * Create a new multimap sized for the given number of payloads
+	 * @param expected Expected number of payloads
+	 */
+	public IntMultiMap(int expected) {
+		int slots = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+		this.keys = new int[slots];
+		this.heads = new int[slots];
+		Arrays.fill(this.heads, EMPTY);
+		this.values = new int[Math.max(4, expected)];
+		this.chain = new int[this.values.length];
+	}
+	
+	/**
+	 * Add a payload under a key
+	 * @param key Key
+	 * @param value Payload
+	 */
+	public void put(int key, int value) {
+		if (this.used * 2 >= this.keys.length) rehash(this.keys.length * 2);
+		if (this.count == this.values.length) {
+			this.values = Arrays.copyOf(this.values, this.count * 2);
+			this.chain = Arrays.copyOf(this.chain, this.count * 2);
+		}
+		
+		int slot = slot(key);
+		if (this.heads[slot] == EMPTY) {
+			this.keys[slot] = key;
+			this.used++;
+		}
+		this.values[this.count] = value;
+		this.chain[this.count] = this.heads[slot];
+		this.heads[slot] = this.count++;
+	}
+	
+	/**
+	 * Return the first entry under a key
+	 * @param key Key
+	 * @return Entry, whose payload is value(entry), or -1 if there are none
+	 */
+	public int first(int key) {
+		return this.heads[slot(key)];
+	}
+	
+	/**
+	 * Return the next entry under the same key
+	 * @param entry Entry returned by first() or next()
+	 * @return Next entry, or -1 if there are no more
+	 */
+	public int next(int entry) {
+		return this.chain[entry];
+	}
+	
+	/**
+	 * Return the payload of an entry
+	 * @param entry Entry returned by first() or next()
+	 * @return Payload
+	 */
+	public int value(int entry) {
+		return this.values[entry];
+	}
+	
+	/**
+	 * Return the number of payloads in the multimap
+	 * @return Number of payloads
+	 */
+	public int size() {
+		return this.count;
+	}
+	
+	/**
+	 * Find the slot holding a key, or the empty slot it would go in
+	 */
+	private int slot(int key) {
+		int mask = this.keys.length - 1;
+		int slot = mix(key) & mask;
+		while (this.heads[slot] != EMPTY && this.keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	private void rehash(int slots) {
+		int[] oldKeys = this.keys;
+		int[] oldHeads = this.heads;
+		this.keys = new int[slots];
+		this.heads = new int[slots];
+		Arrays.fill(this.heads, EMPTY);
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] == EMPTY) continue;
+			int slot = slot(oldKeys[i]);
+			this.keys[slot] = oldKeys[i];
+			this.heads[slot] = oldHeads[i];
+		}
+	}
+	
+	/**
+	 * Spread the bits of a key, so that dense codes don't cluster
+	 */
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -29,6 +29,14 @@ public class Join extends BinaryOperator {
 		visitor.visit(this);
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getParameters()
+	 */
+	@Override
+	protected String getParameters() {
+		return this.predicate.toString();
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,791 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class finds the cheapest order in which to JOIN (or take the PRODUCT of)
+ * the Operator BLOCKS produced by the Optimiser.
+ *
+ * It is a bottom-up, Selinger-style dynamic programme over subsets of the BLOCKS:
+ * the cheapest sub-plan for every subset is memoised and only ever extended by
+ * one more BLOCK, so each sub-plan is built and ESTimated exactly once.
+ *
+ * If it's asked to consider bushy plans too, every split of a subset into two
+ * connected subsets a PREDICATE links is JOINed as well, so that, say, each
+ * dimension of a snowflake can be JOINed to its own sub-dimensions before they
+ * are all JOINed to the fact. There are O(3^n) splits rather than O(n 2^n).
+ *
+ * Only the subsets the PREDICATEs connect are planned, with JOINs; PRODUCTs are
+ * only taken between whole connected components of the query, once they're JOINed.
+ * The connected subsets are grown a linked BLOCK at a time out of the smaller ones,
+ * so a chain of n BLOCKS has O(n^2) subsets to plan rather than 2^n to look at.
+ *
+ * A BLOCK over a relation with an INDEX on its ATTRIBUTE of a JOIN PREDICATE can
+ * also be JOINed as the inner relation of an IndexJoin, with its SELECTs put back
+ * on top, so that the relation is never SCANned.
+ *
+ * Subsets are bitmasks over the BLOCK indices, and the memo has an entry for every
+ * one of them, so at most MAX_EXHAUSTIVE BLOCKS are ordered this way; sets of
+ * ATTRIBUTEs are BitSets over their Catalogue ids.
+ *
+ * Given the cost of a plan already known, say the greedy one, it is a branch and
+ * bound too: costs only ever add up going up a plan, so a sub-plan can't be part
+ * of a cheaper plan if it's dearer than the cheapEST plan for its subset so far,
+ * or if it and the BLOCKS still to be JOINed to it are dearer than the bound. Each
+ * candidate is costed as it's built, an operator at a time, and abandoned as soon
+ * as its running cost goes past either; its parts' costs alone prune most of them
+ * before anything is built.
+ *
+ * Given a ForkJoinPool, the subsets of each size are planned in parallel, as they
+ * only depend on the smaller ones: each task plans its share of them with an
+ * Estimator and scratch space of its own, into the shared memo. A subset's plan
+ * only depends on its subsets' and the order its candidates are tried in, never
+ * on which task planned it or when, so the plan is the one planned sequentially.
+ *
+ * For queries of more BLOCKS than the dynamic programme can afford, greedy finds
+ * an order by Greedy Operator Ordering instead, in polynomial time and for up to
+ * MAX_BLOCKS, building its sub-plans the same way.
+ */
+class JoinEnumerator {
+
+	/**
+	 * The most BLOCKS the dynamic programme can order, with a memo of 2^n plans and costs
+	 * that still fits in the heap; the bits of an int would allow 31, but not the memory
+	 */
+	static final int MAX_EXHAUSTIVE = 20;
+
+	/**
+	 * The most BLOCKS greedy can order, in the bits of a long
+	 */
+	static final int MAX_BLOCKS = 63;
+
+	/**
+	 * The fewest subsets a parallel task plans, rather than splitting them between two
+	 */
+	static final int PARALLEL_GRAIN = 16;
+
+	private final Estimator est;
+	// the Catalogue of the INDEXes, or null to only consider JOINs
+	private final Catalogue cat;
+	// the budget the sub-plans built are counted against, that stops the dynamic programme
+	private final SearchBudget budget;
+
+	// the BLOCKS at the leaves, and the JOIN PREDICATEs that are still to be applied
+	private final List<Operator> blocks;
+	private final List<Predicate> preds;
+	// the ATTRIBUTEs the root of the query needs, they're never PROJECTed out
+	private final BitSet rootAttrs;
+	// scratch Set of the ATTRIBUTEs still needed above a sub-plan
+	private final BitSet neededAttrs = new BitSet();
+
+	// the BLOCKS each PREDICATE touches, and the BLOCK of its left ATTRIBUTE
+	private final long[] predMasks;
+	private final long[] predLeftMasks;
+	// the BLOCKS a PREDICATE links each BLOCK to
+	private final long[] neighbours;
+
+	// whether to JOIN sub-plans of several BLOCKS each, not just one more BLOCK
+	private boolean bushy;
+	// the cost of a known plan over all the BLOCKS, that candidates dearer than are pruned
+	private long bound = Long.MAX_VALUE;
+	// the least each BLOCK adds to the cost of any plan it's in
+	private long[] leastCost;
+	// scratch right parts a set can be split into, and the costs of both parts, grown as needed
+	private int[] parts;
+	private long[] partCosts;
+
+	// memo of the cheapEST sub-plan for each subset of BLOCKS, null if all of them were pruned
+	private Operator[] bestPlan;
+	private long[] bestCost;
+	// whether the PREDICATEs connect each subset of BLOCKS without a PRODUCT
+	private boolean[] connected;
+	// the connected component of the query each BLOCK belongs to
+	private int[] component;
+
+	/**
+	 * @param blocks the Operator BLOCKS to order, each with its output set
+	 * @param preds the PREDICATEs left over after the BLOCKS were built
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the canonical plan
+	 * @param est the Estimator to cost the sub-plans with
+	 */
+	JoinEnumerator(List<Operator> blocks, Collection<Predicate> preds, BitSet rootAttrs, Estimator est) {
+		this(blocks, preds, rootAttrs, est, null);
+	}
+
+	/**
+	 * @param blocks the Operator BLOCKS to order, each with its output set
+	 * @param preds the PREDICATEs left over after the BLOCKS were built
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the canonical plan
+	 * @param est the Estimator to cost the sub-plans with
+	 * @param cat the Catalogue of the INDEXes that IndexJoins may use, or null for none
+	 */
+	JoinEnumerator(List<Operator> blocks, Collection<Predicate> preds, BitSet rootAttrs, Estimator est, Catalogue cat) {
+		this(blocks, preds, rootAttrs, est, cat, new SearchBudget(SearchBudget.UNLIMITED, SearchBudget.UNLIMITED));
+	}
+
+	/**
+	 * @param blocks the Operator BLOCKS to order, each with its output set
+	 * @param preds the PREDICATEs left over after the BLOCKS were built
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the canonical plan
+	 * @param est the Estimator to cost the sub-plans with
+	 * @param cat the Catalogue of the INDEXes that IndexJoins may use, or null for none
+	 * @param budget the budget, already started, that the dynamic programme stops once it runs out
+	 */
+	JoinEnumerator(List<Operator> blocks, Collection<Predicate> preds, BitSet rootAttrs, Estimator est, Catalogue cat, SearchBudget budget) {
+		this.est = est;
+		this.cat = cat;
+		this.budget = budget;
+		this.blocks = new ArrayList<>(blocks);
+		this.preds = new ArrayList<>(preds);
+		this.rootAttrs = rootAttrs;
+
+		// find out which BLOCK outputs each ATTRIBUTE, by id
+		int maxId = -1;
+		for (Operator block : this.blocks) {
+			for (Attribute attr : block.getOutput().getAttributes()) maxId = Math.max(maxId, attr.getId());
+		}
+		int[] blockOf = new int[maxId + 1];
+		Arrays.fill(blockOf, -1);
+		for (int i = 0; i < this.blocks.size(); i++) {
+			for (Attribute attr : this.blocks.get(i).getOutput().getAttributes()) {
+				if (attr.getId() >= 0) blockOf[attr.getId()] = i;
+			}
+		}
+
+		this.predMasks = new long[this.preds.size()];
+		this.predLeftMasks = new long[this.preds.size()];
+		for (int i = 0; i < this.preds.size(); i++) {
+			Predicate p = this.preds.get(i);
+			predLeftMasks[i] = maskOf(blockOf, p.getLeftAttribute());
+			predMasks[i] = predLeftMasks[i] | (p.equalsValue() ? 0 : maskOf(blockOf, p.getRightAttribute()));
+		}
+
+		// a PREDICATE touches at most two BLOCKS, and only links sets if it touches both
+		this.neighbours = new long[this.blocks.size()];
+		for (long m : this.predMasks) {
+			if (Long.bitCount(m) != 2) continue;
+			int i = Long.numberOfTrailingZeros(m), j = 63 - Long.numberOfLeadingZeros(m);
+			neighbours[i] |= 1L << j;
+			neighbours[j] |= 1L << i;
+		}
+	}
+
+	/**
+	 * A view of an enumerator for a parallel task, sharing its BLOCKS, PREDICATEs and
+	 * memo, with an Estimator and scratch space of its own.
+	 *
+	 * @param shared the enumerator whose dynamic programme is running
+	 * @param est the Estimator of the task
+	 */
+	private JoinEnumerator(JoinEnumerator shared, Estimator est) {
+		this.est = est;
+		this.cat = shared.cat;
+		this.budget = shared.budget;
+		this.blocks = shared.blocks;
+		this.preds = shared.preds;
+		this.rootAttrs = shared.rootAttrs;
+		this.predMasks = shared.predMasks;
+		this.predLeftMasks = shared.predLeftMasks;
+		this.neighbours = shared.neighbours;
+		this.bushy = shared.bushy;
+		this.bound = shared.bound;
+		this.leastCost = shared.leastCost;
+		this.bestPlan = shared.bestPlan;
+		this.bestCost = shared.bestCost;
+		this.connected = shared.connected;
+		this.component = shared.component;
+		this.parts = new int[shared.parts.length];
+		this.partCosts = new long[shared.partCosts.length];
+	}
+
+	/**
+	 * @param bushy whether the dynamic programme JOINs sub-plans of several BLOCKS each,
+	 * rather than only ever one more BLOCK
+	 */
+	void setBushy(boolean bushy) {
+		this.bushy = bushy;
+	}
+
+	/**
+	 * Run the dynamic programme over all the subsets of BLOCKS.
+	 *
+	 * @return the cheapEST plan over all the BLOCKS, or null if the budget ran out first
+	 */
+	Operator enumerate() {
+		return enumerate(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Run the dynamic programme over all the subsets of BLOCKS, pruning the candidates
+	 * dearer than a plan already known.
+	 *
+	 * @param bound the cost of a plan over all the BLOCKS
+	 * @return the cheapEST plan over all the BLOCKS, or null if none is as cheap as the
+	 * bound or the budget ran out first
+	 */
+	Operator enumerate(long bound) {
+		return enumerate(bound, null);
+	}
+
+	/**
+	 * Run the dynamic programme over all the subsets of BLOCKS, pruning the candidates
+	 * dearer than a plan already known, and planning the subsets of each size in parallel.
+	 *
+	 * @param bound the cost of a plan over all the BLOCKS
+	 * @param pool the pool to plan the subsets on, or null to plan them on this thread
+	 * @return the cheapEST plan over all the BLOCKS, or null if none is as cheap as the
+	 * bound or the budget ran out first
+	 */
+	Operator enumerate(long bound, ForkJoinPool pool) {
+		this.bound = bound;
+		int n = blocks.size();
+		int full = (1 << n) - 1;
+
+		bestPlan = new Operator[full + 1];
+		bestCost = new long[full + 1];
+		connected = new boolean[full + 1];
+
+		// the single BLOCKS are the base case
+		leastCost = new long[n];
+		parts = new int[n];
+		partCosts = new long[n];
+		for (int i = 0; i < n; i++) {
+			Operator block = blocks.get(i);
+			bestPlan[1 << i] = block;
+			bestCost[1 << i] = est.getCost(block);
+			connected[1 << i] = true;
+			// a BLOCK JOINed as the inner relation of an IndexJoin is never SCANned
+			leastCost[i] = isIndexed(i) ? 0 : bestCost[1 << i];
+		}
+
+		// grow the connected components out of the PREDICATEs
+		component = new int[n];
+		for (int i = 0; i < n; i++) component[i] = 1 << i;
+		for (boolean grown = true; grown; ) {
+			grown = false;
+			for (long m : predMasks) {
+				// merge the components of all the BLOCKS the PREDICATE touches
+				int merged = (int) m;
+				for (int i = 0; i < n; i++) if ((m & (1 << i)) != 0) merged |= component[i];
+				for (int i = 0; i < n; i++) {
+					if ((merged & (1 << i)) != 0 && component[i] != merged) {
+						component[i] = merged;
+						grown = true;
+					}
+				}
+			}
+		}
+
+		// the sets are built out of smaller subsets, so plan them in order of size
+		int[][] levels = levels(n);
+		for (int k = 2; k <= n; k++) {
+			int[] sets = levels[k];
+			if (pool == null || sets.length <= PARALLEL_GRAIN) {
+				for (int s : sets) {
+					if (!plan(s)) return null;
+				}
+			} else {
+				pool.invoke(new PlanTask(sets, 0, sets.length));
+				if (budget.isExhausted()) return null;
+			}
+		}
+
+		return bestPlan[full];
+	}
+
+	/**
+	 * Plan a set of BLOCKS out of the plans for its subsets, which are all planned already
+	 *
+	 * @param s a set of at least two BLOCKS
+	 * @return false if the budget ran out first
+	 */
+	private boolean plan(int s) {
+		if (budget.check()) return false;
+		bestCost[s] = Long.MAX_VALUE;
+
+		if (connected[s]) {
+			// JOIN one more BLOCK onto a connected set, or, if bushy, a connected subset of it
+			// onto the rest; those whose parts are cheapEST first, so the dearer ones are pruned against them
+			int count = 0;
+			for (int b = nextPart(s, 0); b != 0; b = nextPart(s, b)) {
+				if (!connected[s & ~b] || !connected[b] || !joins(s & ~b, b)) continue;
+				long cost = (bestPlan[s & ~b] == null || bestPlan[b] == null) ? Long.MAX_VALUE : Estimator.add(bestCost[s & ~b], bestCost[b]);
+				if (count == parts.length) {
+					parts = Arrays.copyOf(parts, 2 * count);
+					partCosts = Arrays.copyOf(partCosts, 2 * count);
+				}
+				int i = count++;
+				for (; i > 0 && partCosts[i - 1] > cost; i--) {
+					parts[i] = parts[i - 1];
+					partCosts[i] = partCosts[i - 1];
+				}
+				parts[i] = b;
+				partCosts[i] = cost;
+			}
+			for (int i = 0; i < count; i++) consider(s, s & ~parts[i], parts[i]);
+		} else {
+			// s is whole components, take the PRODUCT of one more of them with the rest
+			for (int rest = s; rest != 0; ) {
+				int b = componentOf(rest & -rest);
+				rest &= ~b;
+				if (b != s) consider(s, s & ~b, b);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Step through the right parts a set may be split into: its single BLOCKS and, if
+	 * bushy, its subsets of two or more BLOCKS that leave two or more on the left. As
+	 * a JOIN is the same whichever part is on its left, only those without the lowest
+	 * BLOCK of the set are; the single BLOCKS are all, as they may be IndexJoined into.
+	 *
+	 * @param s the set
+	 * @param b the last part, or 0 for the first
+	 * @return the next part, or 0 if there are no more
+	 */
+	private int nextPart(int s, int b) {
+		if (!bushy) {
+			// the single BLOCKS, lowest first
+			int rest = s & ~((b << 1) - 1);
+			return (b == 0) ? s & -s : rest & -rest;
+		}
+
+		// the non-empty proper subsets, in increasing order
+		for (b = (b - s) & s; b != 0 && b != s; b = (b - s) & s) {
+			if (Integer.bitCount(b) == 1 || (Integer.bitCount(s & ~b) >= 2 && (b & s & -s) == 0)) return b;
+		}
+		return 0;
+	}
+
+	/**
+	 * Find the sets of BLOCKS there are plans for, and mark those the PREDICATEs connect:
+	 * each connected set of k BLOCKS is a connected set of k - 1 and a BLOCK linked to
+	 * it, and the rest are the unions of two or more whole connected components.
+	 *
+	 * @param n the number of BLOCKS, the single ones already marked connected
+	 * @return the sets of each size of at least two BLOCKS, in increasing order
+	 */
+	private int[][] levels(int n) {
+		int[][] levels = new int[n + 1][];
+		int[] counts = new int[n + 1];
+		for (int k = 1; k <= n; k++) levels[k] = new int[n];
+		for (int i = 0; i < n; i++) levels[1][counts[1]++] = 1 << i;
+
+		for (int k = 2; k <= n; k++) {
+			for (int i = 0; i < counts[k - 1]; i++) {
+				int t = levels[k - 1][i];
+				for (long rest = neighboursOf(t) & ~t; rest != 0; rest &= rest - 1) {
+					int s = t | (1 << Long.numberOfTrailingZeros(rest));
+					if (connected[s]) continue;
+					connected[s] = true;
+					append(levels, counts, k, s);
+				}
+			}
+		}
+
+		// the connected components, and every union of two or more of them
+		int[] components = new int[n];
+		int c = 0;
+		for (int rest = (1 << n) - 1; rest != 0; rest &= ~components[c - 1]) {
+			components[c++] = componentOf(rest & -rest);
+		}
+		for (int u = 1; u < (1 << c); u++) {
+			if (Integer.bitCount(u) < 2) continue;
+			int s = 0;
+			for (int i = 0; i < c; i++) if ((u & (1 << i)) != 0) s |= components[i];
+			append(levels, counts, Integer.bitCount(s), s);
+		}
+
+		for (int k = 2; k <= n; k++) {
+			levels[k] = Arrays.copyOf(levels[k], counts[k]);
+			Arrays.sort(levels[k]);
+		}
+		return levels;
+	}
+
+	/**
+	 * Add a set to those of its size, growing them as needed
+	 */
+	private static void append(int[][] levels, int[] counts, int k, int s) {
+		if (counts[k] == levels[k].length) levels[k] = Arrays.copyOf(levels[k], 2 * counts[k]);
+		levels[k][counts[k]++] = s;
+	}
+
+	/**
+	 * The task that plans some of the sets of one size, splitting them in two
+	 * until there are few enough
+	 */
+	private final class PlanTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] sets;
+		private final int from;
+		private final int to;
+
+		private PlanTask(int[] sets, int from, int to) {
+			this.sets = sets;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > PARALLEL_GRAIN) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new PlanTask(sets, from, middle), new PlanTask(sets, middle, to));
+				return;
+			}
+
+			JoinEnumerator task = new JoinEnumerator(JoinEnumerator.this, est.copy());
+			for (int i = from; i < to; i++) {
+				if (!task.plan(sets[i])) return;
+			}
+		}
+	}
+
+	/**
+	 * Greedy Operator Ordering: start from the BLOCKS, and JOIN the two sub-plans
+	 * whose JOIN outputs the fewest tuples, the cheapEST of those that output as few,
+	 * until there is only one; PRODUCTs are only taken once no PREDICATE links any
+	 * two sub-plans, i.e. between whole connected components of the query.
+	 *
+	 * Each step ESTimates every pair of sub-plans, O(n^3) in all, but the Estimator
+	 * memoises the pairs that the last JOIN didn't change. The pairs are counted against
+	 * the budget, but as it's always quick, it always runs to the end. It picks by
+	 * tuples rather than by cost, so nothing is pruned.
+	 *
+	 * @return a cheap plan over all the BLOCKS
+	 */
+	Operator greedy() {
+		List<Operator> plans = new ArrayList<>(blocks);
+		List<Long> costs = new ArrayList<>();
+		List<Long> masks = new ArrayList<>();
+		// the BLOCKS a PREDICATE links each sub-plan to, so that whether two are linked is one test
+		List<Long> reaches = new ArrayList<>();
+		for (int i = 0; i < blocks.size(); i++) {
+			costs.add(est.getCost(blocks.get(i)));
+			masks.add(1L << i);
+			reaches.add(neighbours[i]);
+		}
+
+		while (plans.size() > 1) {
+			boolean linked = false;
+			for (int i = 0; i < plans.size() && !linked; i++) {
+				for (int j = i + 1; j < plans.size() && !linked; j++) linked = (reaches.get(j) & masks.get(i)) != 0;
+			}
+
+			Candidate best = null;
+			int bestLeft = -1, bestRight = -1;
+			for (int i = 0; i < plans.size(); i++) {
+				for (int j = 0; j < plans.size(); j++) {
+					long a = masks.get(i), b = masks.get(j);
+					if (i == j || (linked && (reaches.get(j) & a) == 0)) continue;
+
+					budget.explored();
+					List<Candidate> candidates = new ArrayList<>(2);
+					// JOINs are symmetric, but an IndexJoin's inner BLOCK is on its right
+					if (i < j) candidates.add(join(plans.get(i), costs.get(i), a, plans.get(j), costs.get(j), b, Long.MAX_VALUE));
+					if (cat != null && Long.bitCount(b) == 1) candidates.add(indexJoin(plans.get(i), costs.get(i), a, plans.get(j), b, Long.MAX_VALUE));
+					for (Candidate c : candidates) {
+						if (c != null && (best == null || c.isBetterThan(best))) {
+							best = c;
+							bestLeft = i;
+							bestRight = j;
+						}
+					}
+				}
+			}
+
+			// the JOIN takes the place of its left sub-plan, the higher index is removed first
+			plans.set(bestLeft, best.plan);
+			costs.set(bestLeft, best.cost);
+			masks.set(bestLeft, masks.get(bestLeft) | masks.get(bestRight));
+			reaches.set(bestLeft, reaches.get(bestLeft) | reaches.get(bestRight));
+			plans.remove(bestRight);
+			costs.remove(bestRight);
+			masks.remove(bestRight);
+			reaches.remove(bestRight);
+		}
+
+		return plans.get(0);
+	}
+
+	/**
+	 * Build the plan for s out of the cheapEST plans for a and b, which partition it,
+	 * as a JOIN and, if b is a single BLOCK, an IndexJoin into it, keeping the cheapEST.
+	 * If either part has no plan, as all of its were pruned, neither is built.
+	 *
+	 * @param s the set being built
+	 * @param a the left part of s
+	 * @param b the right part of s
+	 */
+	private void consider(int s, int a, int b) {
+		budget.explored();
+		if (bestPlan[a] == null || bestPlan[b] == null) {
+			budget.pruned();
+			return;
+		}
+
+		Candidate join = join(bestPlan[a], bestCost[a], a, bestPlan[b], bestCost[b], b, limit(s));
+		keep(s, join);
+		Candidate index = (cat != null && Integer.bitCount(b) == 1) ? indexJoin(bestPlan[a], bestCost[a], a, bestPlan[b], b, limit(s)) : null;
+		keep(s, index);
+		if (join == PRUNED && (index == null || index == PRUNED)) budget.pruned();
+	}
+
+	/**
+	 * Build the plan for the BLOCKS of a and b out of their plans.
+	 *
+	 * The PREDICATEs linking a and b make a JOIN and as many SELECTs as needed,
+	 * or a PRODUCT if there are none; the ATTRIBUTEs not needed any more are PROJECTed out.
+	 *
+	 * @param left the plan for a
+	 * @param leftCost its cost
+	 * @param a a set of BLOCKS
+	 * @param right the plan for b
+	 * @param rightCost its cost
+	 * @param b another set of BLOCKS
+	 * @param limit the most the plan may cost, it's abandoned once its running cost is more
+	 * @return the plan and its cost, or PRUNED
+	 */
+	private Candidate join(Operator left, long leftCost, long a, Operator right, long rightCost, long b, long limit) {
+		Operator result = null;
+		long cost = Estimator.add(leftCost, rightCost);
+		if (cost > limit) return PRUNED;
+
+		for (int i = 0; i < preds.size(); i++) {
+			if (!links(predMasks[i], a, b)) continue;
+
+			Predicate p = preds.get(i);
+			if (result == null) {
+				// the JOIN keeps the left ATTRIBUTE of the PREDICATE on its left
+				result = ((predLeftMasks[i] & a) != 0) ? new Join(left, right, p) : new Join(right, left, p);
+			} else {
+				result = new Select(result, p);
+			}
+			cost = Estimator.add(cost, est.estimate(result));
+			if (cost > limit) return PRUNED;
+		}
+
+		if (result == null) {
+			result = new Product(left, right);
+			cost = Estimator.add(cost, est.estimate(result));
+			if (cost > limit) return PRUNED;
+		}
+
+		return project(result, cost, a | b, limit);
+	}
+
+	/**
+	 * Build the plan for the BLOCKS of a and b out of the plan for a and an IndexJoin into
+	 * the relation of the single BLOCK b, if it has an INDEX on its ATTRIBUTE of one of the
+	 * PREDICATEs linking them.
+	 *
+	 * The SELECTs of b are put back on top of the IndexJoin, and the rest of the
+	 * PREDICATEs linking a and b after them.
+	 *
+	 * @param outer the plan for a
+	 * @param outerCost its cost
+	 * @param a the outer set of BLOCKS
+	 * @param inner the BLOCK b
+	 * @param b the inner BLOCK
+	 * @param limit the most the plan may cost, it's abandoned once its running cost is more
+	 * @return the plan and its cost, null if there's no INDEX to look up, or PRUNED
+	 */
+	private Candidate indexJoin(Operator outer, long outerCost, long a, Operator inner, long b, long limit) {
+		// the inner relation is never SCANned, so the outer plan's is all of the cost so far
+		if (outerCost > limit) return PRUNED;
+
+		// take the BLOCK apart into its relation and its SELECTs, the PROJECTs will be made again
+		List<Predicate> selects = new ArrayList<>();
+		NamedRelation reln = relationOf(inner, selects);
+		if (reln == null) return null;
+
+		// the first PREDICATE on an INDEXed ATTRIBUTE of the relation is looked up, the rest SELECTed
+		Operator result = null;
+		List<Predicate> rest = new ArrayList<>();
+		for (int i = 0; i < preds.size(); i++) {
+			if (!links(predMasks[i], a, b)) continue;
+
+			Predicate p = preds.get(i);
+			Attribute innerAttr = ((predLeftMasks[i] & b) != 0) ? p.getLeftAttribute() : p.getRightAttribute();
+			IndexType type = cat.getIndexType(reln, innerAttr);
+			if (result == null && type != null) result = new IndexJoin(outer, reln, p, type);
+			else rest.add(p);
+		}
+		if (result == null) return null;
+
+		long cost = Estimator.add(outerCost, est.estimate(result));
+		if (cost > limit) return PRUNED;
+		selects.addAll(rest);
+		for (Predicate p : selects) {
+			result = new Select(result, p);
+			cost = Estimator.add(cost, est.estimate(result));
+			if (cost > limit) return PRUNED;
+		}
+		return project(result, cost, a | b, limit);
+	}
+
+	/**
+	 * PROJECT out the ATTRIBUTEs of the plan for s not needed any more.
+	 *
+	 * @param result the plan
+	 * @param cost its cost, before the PROJECT
+	 * @param s the set the plan is for
+	 * @param limit the most the plan may cost
+	 * @return the PROJECTed plan and its cost, or PRUNED
+	 */
+	private Candidate project(Operator result, long cost, long s, long limit) {
+		Operator projected = Optimiser.buildProjectForNeeded(result, neededAttrs(s), est);
+		if (projected != result) cost = Estimator.add(cost, est.estimate(projected));
+		if (cost > limit) return PRUNED;
+		return new Candidate(projected, cost);
+	}
+
+	/**
+	 * Keep a plan for s, it's already within limit(s).
+	 *
+	 * @param s the set the plan is for
+	 * @param c the plan and its cost, or null or PRUNED if there's none
+	 */
+	private void keep(int s, Candidate c) {
+		if (c != null && c != PRUNED) {
+			bestPlan[s] = c.plan;
+			bestCost[s] = c.cost;
+		}
+	}
+
+	/**
+	 * @param s a set of BLOCKS
+	 * @return the most a plan for s may cost to be kept: less than the cheapEST plan for
+	 * s so far, and no more than the bound less the least the rest of the BLOCKS add
+	 */
+	private long limit(int s) {
+		long limit = bound;
+		if (bound != Long.MAX_VALUE) {
+			for (int i = 0; i < blocks.size(); i++) {
+				if ((s & (1 << i)) == 0) limit -= leastCost[i];
+			}
+		}
+		// a saturated cost still gives s a plan
+		return (bestPlan[s] == null) ? limit : Math.min(limit, bestCost[s] - 1);
+	}
+
+	/**
+	 * @param i a BLOCK
+	 * @return whether the BLOCK may be JOINed as the inner relation of an IndexJoin
+	 */
+	private boolean isIndexed(int i) {
+		if (cat == null) return false;
+		NamedRelation reln = relationOf(blocks.get(i), new ArrayList<Predicate>());
+		if (reln == null) return false;
+		for (int p = 0; p < preds.size(); p++) {
+			if (preds.get(p).equalsValue() || (predMasks[p] & (1L << i)) == 0) continue;
+			Attribute attr = ((predLeftMasks[p] & (1L << i)) != 0) ? preds.get(p).getLeftAttribute() : preds.get(p).getRightAttribute();
+			if (cat.getIndexType(reln, attr) != null) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take a BLOCK apart into the relation at its leaf and its SELECTs
+	 *
+	 * @param block the BLOCK
+	 * @param selects the List to add the PREDICATEs of its SELECTs to
+	 * @return the relation, or null if the BLOCK isn't over one
+	 */
+	private static NamedRelation relationOf(Operator block, List<Predicate> selects) {
+		Operator op = block;
+		while (op instanceof Project || op instanceof Select) {
+			if (op instanceof Select) selects.add(((Select) op).getPredicate());
+			op = ((UnaryOperator) op).getInput();
+		}
+		if (op instanceof IndexScan) selects.add(((IndexScan) op).getPredicate());
+		else if (!(op instanceof Scan)) return null;
+		return (NamedRelation) ((op instanceof Scan) ? ((Scan) op).getRelation() : ((IndexScan) op).getRelation());
+	}
+
+	/**
+	 * @param s a set of BLOCKS
+	 * @return the ATTRIBUTEs still needed above the plan for s, only valid until the next call
+	 */
+	private BitSet neededAttrs(long s) {
+		neededAttrs.clear();
+		neededAttrs.or(rootAttrs);
+		for (int i = 0; i < preds.size(); i++) {
+			// the PREDICATE is yet to be applied if it reaches outside s
+			if ((predMasks[i] & ~s) == 0) continue;
+			Predicate p = preds.get(i);
+			Optimiser.add(neededAttrs, p.getLeftAttribute());
+			if (!p.equalsValue()) Optimiser.add(neededAttrs, p.getRightAttribute());
+		}
+		return neededAttrs;
+	}
+
+	/**
+	 * @param b a single BLOCK
+	 * @return the connected component of the query b belongs to
+	 */
+	private int componentOf(int b) {
+		return component[Integer.numberOfTrailingZeros(b)];
+	}
+
+	/**
+	 * @return whether any PREDICATE links the disjoint sets of BLOCKS a and b
+	 */
+	private boolean joins(long a, long b) {
+		return (neighboursOf(b) & a) != 0;
+	}
+
+	/**
+	 * @return the BLOCKS a PREDICATE links to any of the set of BLOCKS s, s's own included
+	 */
+	private long neighboursOf(long s) {
+		long ret = 0;
+		for (long rest = s; rest != 0; rest &= rest - 1) ret |= neighbours[Long.numberOfTrailingZeros(rest)];
+		return ret;
+	}
+
+	/**
+	 * @return whether a PREDICATE touching the BLOCKS in predMask links a and b
+	 */
+	private static boolean links(long predMask, long a, long b) {
+		return (predMask & a) != 0 && (predMask & b) != 0 && (predMask & ~(a | b)) == 0;
+	}
+
+	private static long maskOf(int[] blockOf, Attribute attr) {
+		int id = attr.getId();
+		return (id < 0 || id >= blockOf.length || blockOf[id] < 0) ? 0 : 1L << blockOf[id];
+	}
+
+	// the candidate returned instead of one abandoned as it got too dear
+	private static final Candidate PRUNED = new Candidate(null, Long.MAX_VALUE);
+
+	/**
+	 * A plan for a set of BLOCKS, and its cost
+	 */
+	private static final class Candidate {
+		private final Operator plan;
+		private final long cost;
+
+		private Candidate(Operator plan, long cost) {
+			this.plan = plan;
+			this.cost = cost;
+		}
+
+		/**
+		 * @return whether this plan outputs fewer tuples than another, or as few more cheaply
+		 */
+		private boolean isBetterThan(Candidate other) {
+			long tuples = plan.getOutput().getTupleCount(), otherTuples = other.plan.getOutput().getTupleCount();
+			return tuples < otherTuples || (tuples == otherTuples && cost < other.cost);
+		}
+	}
+}
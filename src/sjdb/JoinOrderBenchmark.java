@@ -0,0 +1,99 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Times the Optimiser on random chain, star and cycle queries of growing
+ * numbers of relations, ordering their JOINs greedily and, while it's
+ * feasible, exhaustively too, and reports how much dearer the greedy
+ * plans are than the exhaustive ones, and what share of the candidates the
+ * exhaustive search pruned against the greedy plans' cost. The exhaustive
+ * search is timed on one thread and on a ForkJoinPool of a thread per core.
+ *
+ * The exhaustive search only considers extending a plan by one relation at
+ * a time, while greedy may JOIN two plans of several, so greedy plans can
+ * be cheaper; the Optimiser then keeps the greedy plan.
+ *
+ * Usage: JoinOrderBenchmark [most relations] [most relations ordered exhaustively] [queries of each shape and size]
+ */
+public class JoinOrderBenchmark {
+
+	private static final String[] SHAPES = {"chain", "star", "cycle"};
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws Exception {
+		int most = (args.length > 0) ? Integer.parseInt(args[0]) : 30;
+		int exhaustive = (args.length > 1) ? Integer.parseInt(args[1]) : 12;
+		int queries = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+		Random random = new Random(3211);
+		ForkJoinPool pool = new ForkJoinPool();
+		System.out.println(String.format("%-6s %9s %12s %12s %12s %10s %10s %8s", "shape", "relations", "greedy ms", "exhaust ms",
+				"parallel ms", "mean gap", "worst gap", "pruned"));
+		for (int n = 4; n <= most; n += (n < 16) ? 2 : 5) {
+			for (String shape : SHAPES) {
+				long greedyNanos = 0, exhaustiveNanos = 0, parallelNanos = 0;
+				double gaps = 0, worst = 0;
+				long explored = 0, pruned = 0;
+				for (int q = 0; q < queries; q++) {
+					Catalogue cat = new Catalogue();
+					String query = query(cat, shape, n, random);
+
+					Optimiser greedy = new Optimiser(cat);
+					greedy.setGreedyThreshold(0);
+					long start = System.nanoTime();
+					Operator greedyPlan = greedy.optimise(new QueryParser(cat, new StringReader(query)).parse());
+					greedyNanos += System.nanoTime() - start;
+					if (n > exhaustive) continue;
+
+					Optimiser dp = new Optimiser(cat);
+					dp.setGreedyThreshold(n);
+					start = System.nanoTime();
+					Operator dpPlan = dp.optimise(new QueryParser(cat, new StringReader(query)).parse());
+					exhaustiveNanos += System.nanoTime() - start;
+					explored += dp.getSearchBudget().getPlansExplored();
+					pruned += dp.getSearchBudget().getPlansPruned();
+
+					Optimiser parallel = new Optimiser(cat);
+					parallel.setGreedyThreshold(n);
+					parallel.setEnumerationPool(pool);
+					start = System.nanoTime();
+					parallel.optimise(new QueryParser(cat, new StringReader(query)).parse());
+					parallelNanos += System.nanoTime() - start;
+
+					double gap = (double) new Estimator().getCost(greedyPlan) / Math.max(1, new Estimator().getCost(dpPlan));
+					gaps += gap;
+					worst = Math.max(worst, gap);
+				}
+
+				System.out.println((n > exhaustive)
+						? String.format("%-6s %9d %12.2f %12s %12s %10s %10s %8s", shape, n, greedyNanos / 1e6 / queries, "-", "-", "-", "-", "-")
+						: String.format("%-6s %9d %12.2f %12.2f %12.2f %10.3f %10.3f %7.1f%%", shape, n, greedyNanos / 1e6 / queries,
+								exhaustiveNanos / 1e6 / queries, parallelNanos / 1e6 / queries, gaps / queries, worst,
+								100.0 * pruned / Math.max(1, explored)));
+			}
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Create n relations of random sizes in a catalogue, and a query joining them
+	 * in a chain, a star around the first or a cycle
+	 */
+	private static String query(Catalogue cat, String shape, int n, Random random) {
+		String from = "", where = "";
+		for (int i = 0; i < n; i++) {
+			cat.createRelation("R" + i, 1000 + random.nextInt(100000));
+			cat.createAttribute("R" + i, "a" + i, 10 + random.nextInt(1000));
+			cat.createAttribute("R" + i, "b" + i, 10 + random.nextInt(1000));
+			from += (i == 0 ? "" : ",") + "R" + i;
+			if (i > 0) where += (i == 1 ? "" : ",") + (shape.equals("star") ? "a0" : "b" + (i - 1)) + "=a" + i;
+		}
+		if (shape.equals("cycle")) where += ",b" + (n - 1) + "=b0";
+		return "SELECT a0\nFROM " + from + "\nWHERE " + where + "\n";
+	}
+}
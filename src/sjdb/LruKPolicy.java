@@ -0,0 +1,77 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * This class is the LRU-K eviction policy: the victim is the evictable
+ * frame whose K-th most recent access is the longest ago. Frames accessed
+ * fewer than K times go first, least recently accessed first, so a page
+ * read once by a scan doesn't push out pages that are used again and again.
+ */
+public class LruKPolicy implements EvictionPolicy {
+	private final int k;
+	// the times of the last K accesses to each frame, most recent at count % K, and how many there have been
+	private long[][] history;
+	private int[] count;
+	private final AtomicLong clock = new AtomicLong();
+	
+	/**
+	 * Create the LRU-2 policy
+	 */
+	public LruKPolicy() {
+		this(2);
+	}
+	
+	/**
+	 * @param k Number of accesses to remember per frame
+	 */
+	public LruKPolicy(int k) {
+		this.k = Math.max(1, k);
+	}
+	
+	public void init(int frames) {
+		this.history = new long[frames][this.k];
+		this.count = new int[frames];
+	}
+	
+	public void accessed(int frame) {
+		long now = this.clock.incrementAndGet();
+		// the pool holds the latch of the frame's page, so accesses to each frame don't race
+		this.history[frame][this.count[frame] % this.k] = now;
+		this.count[frame]++;
+	}
+	
+	public void emptied(int frame) {
+		this.count[frame] = 0;
+	}
+	
+	public synchronized int victim(IntPredicate evictable) {
+		int ret = -1;
+		boolean retFull = true;
+		long retTime = Long.MAX_VALUE;
+		
+		for (int frame = 0; frame < this.count.length; frame++) {
+			if (!evictable.test(frame)) continue;
+			
+			int n = this.count[frame];
+			boolean full = n >= this.k;
+			// the K-th most recent access, or the most recent one if there haven't been K
+			long time = (n == 0) ? 0 : full ? this.history[frame][n % this.k] : this.history[frame][(n - 1) % this.k];
+			
+			if ((retFull && !full) || (retFull == full && time < retTime)) {
+				ret = frame;
+				retFull = full;
+				retTime = time;
+			}
+		}
+		return ret;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "LRU-" + this.k;
+	}
+}
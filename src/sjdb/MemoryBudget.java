@@ -0,0 +1,52 @@
+package sjdb;
+
+/**
+ * This class is the memory budget of a query: the most memory any one of
+ * its operators may hold on to, such as the hash table of a join, before
+ * it spills to disk instead. It also adds up how much was spilled.
+ */
+public class MemoryBudget {
+	/**
+	 * A budget so big that nothing is ever spilled.
+	 */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	
+	private final long limit;
+	private long spilledBytes;
+	
+	/**
+	 * @param limit Most bytes an operator may hold
+	 */
+	public MemoryBudget(long limit) {
+		this.limit = limit;
+	}
+	
+	/**
+	 * Return the most bytes an operator may hold
+	 * @return Limit, in bytes
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+	
+	/**
+	 * Return whether an operator may hold the given number of bytes
+	 * @param bytes Bytes
+	 * @return Whether they're within the limit
+	 */
+	public boolean fits(long bytes) {
+		return bytes <= this.limit;
+	}
+	
+	/**
+	 * Return the number of bytes spilled to disk so far
+	 * @return Bytes spilled
+	 */
+	public long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+	
+	void addSpilledBytes(long bytes) {
+		this.spilledBytes += bytes;
+	}
+}
@@ -0,0 +1,114 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class implements a tuple-at-a-time sort-merge join of two inputs
+ * that are both in ascending order of their join attributes, as ExternalSort
+ * or a sorted scan produces them.
+ *
+ * The inputs are read once, side by side: the right tuples that share a
+ * join value are held in memory while the left tuples with that value are
+ * joined with them, so unlike a hash join there is no build phase.
+ *
+ * The output tuples are those of the left input followed by those of the
+ * right one, in ascending order of the join attributes.
+ */
+public class MergeJoin extends PhysicalOperator {
+	private Predicate predicate;
+	// positions of the join attribute in the tuples of the left and right inputs
+	private int leftKey;
+	private int rightKey;
+
+	// the next tuple of each input
+	private Tuple left;
+	private Tuple right;
+	// the right tuples with the join value of the left tuple being joined, and the next one to join with it
+	private List<Tuple> group;
+	private String groupValue;
+	private int position;
+
+	/**
+	 * Create a new merge join
+	 * @param left Left child operator, in order of its join attribute
+	 * @param right Right child operator, in order of its join attribute
+	 * @param predicate Join predicate of the form attr=attr
+	 */
+	public MergeJoin(PhysicalOperator left, PhysicalOperator right, Predicate predicate) {
+		this.inputs.add(left);
+		this.inputs.add(right);
+		this.predicate = predicate;
+		this.attributes.addAll(left.getAttributes());
+		this.attributes.addAll(right.getAttributes());
+
+		// the predicate may name the attributes of the inputs either way round
+		Attribute leftAttr = predicate.getLeftAttribute(), rightAttr = predicate.getRightAttribute();
+		if (left.indexOf(leftAttr) < 0) {
+			leftAttr = predicate.getRightAttribute();
+			rightAttr = predicate.getLeftAttribute();
+		}
+		this.leftKey = left.indexOf(leftAttr);
+		this.rightKey = right.indexOf(rightAttr);
+		this.order.add(left.getAttributes().get(this.leftKey));
+		this.order.add(right.getAttributes().get(this.rightKey));
+	}
+
+	public void open() {
+		this.inputs.get(0).open();
+		this.inputs.get(1).open();
+		this.left = this.inputs.get(0).next();
+		this.right = this.inputs.get(1).next();
+		this.group = null;
+	}
+
+	protected Tuple fetch() {
+		while (true) {
+			if (this.group != null) {
+				if (this.position < this.group.size()) return this.left.concat(this.group.get(this.position++));
+
+				// the next left tuple joins with the same right tuples if it has the same value
+				this.left = this.inputs.get(0).next();
+				if (this.left != null && this.left.get(this.leftKey).equals(this.groupValue)) {
+					this.position = 0;
+					continue;
+				}
+				this.group = null;
+			}
+
+			if (this.left == null || this.right == null) return null;
+
+			int c = this.left.get(this.leftKey).compareTo(this.right.get(this.rightKey));
+			if (c < 0) {
+				this.left = this.inputs.get(0).next();
+			} else if (c > 0) {
+				this.right = this.inputs.get(1).next();
+			} else {
+				// gather up the right tuples with this value
+				this.groupValue = this.right.get(this.rightKey);
+				this.group = new ArrayList<Tuple>();
+				while (this.right != null && this.right.get(this.rightKey).equals(this.groupValue)) {
+					this.group.add(this.right);
+					this.right = this.inputs.get(1).next();
+				}
+				this.position = 0;
+			}
+		}
+	}
+
+	public void close() {
+		this.inputs.get(0).close();
+		this.inputs.get(1).close();
+		this.left = null;
+		this.right = null;
+		this.group = null;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "(" + this.inputs.get(0).toString() + ") MERGE-JOIN [" + this.predicate.toString() + "] (" +
+				this.inputs.get(1).toString() + ")";
+	}
+}
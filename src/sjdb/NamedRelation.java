@@ -3,6 +3,9 @@
  */
 package sjdb;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class represents a named relation which is fed into a query plan
  * @author nmg
@@ -12,15 +15,58 @@ public class NamedRelation extends Relation {
 	 * The name of the named relation
 	 */
 	private String name;
+	/**
+	 * The dense id given to the named relation by the Catalogue, or -1
+	 */
+	private int id;
+	/**
+	 * A uniform random sample of the tuples, taken by ANALYZE, or null
+	 */
+	private List<Tuple> sample;
 	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
+		this(name, size, -1);
+	}
+	
+	/**
+	 * Create a new named relation with a given name, tuple count and id
+	 * @param name The name of the relation
+	 * @param size The tuple count
+	 * @param id The dense id given by the Catalogue
+	 */
+	NamedRelation(String name, long size, int id) {
 		super(size);
 		this.name = name;
+		this.id = id;
+	}
+	
+	/**
+	 * Return the dense id of this relation in the Catalogue
+	 * @return the id, or -1 if it wasn't created by the Catalogue
+	 */
+	public int getId() {
+		return id;
+	}
+	
+	/**
+	 * Return the uniform random sample of the tuples of this relation taken by ANALYZE
+	 * @return the sampled tuples, or null if it hasn't been analysed
+	 */
+	public List<Tuple> getSample() {
+		return (sample == null) ? null : Collections.unmodifiableList(sample);
+	}
+	
+	/**
+	 * Set the uniform random sample of the tuples of this relation
+	 * @param sample the sampled tuples
+	 */
+	void setSample(List<Tuple> sample) {
+		this.sample = sample;
 	}
 
 	/* (non-Javadoc)
@@ -23,6 +23,11 @@ public abstract class Operator {
 	 * The relation produced by this operator as output.
 	 */
 	protected Relation output;
+	/**
+	 * The structural fingerprint of the plan rooted at this operator,
+	 * built on first use.
+	 */
+	private Fingerprint fingerprint;
 	
 	public Operator() {
 		this.inputs = new ArrayList<Operator>();
@@ -63,6 +68,33 @@ public abstract class Operator {
 		this.output = reln;
 	}
 	
+	/**
+	 * Return a structural fingerprint of the plan rooted at this operator;
+	 * two plans have equal fingerprints if they consist of the same operators
+	 * with the same parameters over the same inputs. It is built once, out of
+	 * the fingerprints of the child operators.
+	 * @return Fingerprint of the plan
+	 */
+	Fingerprint getFingerprint() {
+		if (this.fingerprint == null) {
+			Fingerprint[] inputs = new Fingerprint[this.inputs.size()];
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = this.inputs.get(i).getFingerprint();
+			}
+			this.fingerprint = new Fingerprint(getClass().getSimpleName() + "[" + getParameters() + "]", inputs);
+		}
+		return this.fingerprint;
+	}
+	
+	/**
+	 * Return the parameters that tell this operator apart from others of
+	 * the same kind over the same inputs, for its fingerprint.
+	 * @return Parameters of the operator
+	 */
+	protected String getParameters() {
+		return "";
+	}
+	
 	/**
 	 * Accept a visitor to this operator.
 	 * @param visitor Visitor to be accepted
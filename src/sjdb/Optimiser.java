@@ -1,89 +1,221 @@
 package sjdb;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class will optimise an Operator plan.
  * Call optimise.
  * 
+ * Sets of ATTRIBUTEs are kept as BitSets over the ids the Catalogue gives them,
+ * so checking whether a PREDICATE applies or an ATTRIBUTE is still needed is a bit test.
+ * 
  * @author shakib-bin hamid
  * 
  */
 public class Optimiser implements PlanVisitor {
 	
-	@SuppressWarnings("unused")
-	private Catalogue cat; // taken care of in the estimator
+	/**
+	 * The number of BLOCKS above which the JOIN order is found greedily unless set
+	 */
+	public static final int DEFAULT_GREEDY_THRESHOLD = 10;
+	
+	private Catalogue cat; // resolves the ATTRIBUTEs of the query to their ids
+	
+	// the Estimator in Use here, it memoises the estimate of every subtree 
+	// so the blocks shared by all the candidate plans are only ESTimated once
+	private final Estimator est = new Estimator(true);
 	
-	private static final Estimator EST = new Estimator(); // the Estimator in Use here
+	// the number of BLOCKS above which the JOIN order is found greedily rather than exhaustively
+	private int greedyThreshold = DEFAULT_GREEDY_THRESHOLD;
+	
+	// the budget of the last optimisation
+	private SearchBudget budget = new SearchBudget(SearchBudget.UNLIMITED, SearchBudget.UNLIMITED);
+	
+	// whether the last optimisation searched every JOIN order, rather than ordering them greedily
+	private boolean searchComplete = true;
+	
+	// the pool the JOIN orders are enumerated on in parallel, or null to enumerate them on this thread
+	private ForkJoinPool pool;
+	
+	// whether the exhaustive search considers bushy plans, not just left-deep ones
+	private boolean bushy;
 
 	public Optimiser(Catalogue cat) {
 		this.cat = cat;
 	}
+	
+	/**
+	 * An Optimiser that picks the plan CHEAPEST by the given CostModel
+	 * 
+	 * @param cat the Catalogue the query's ATTRIBUTEs are resolved in
+	 * @param model the CostModel the candidate plans are ESTimated with
+	 */
+	public Optimiser(Catalogue cat, CostModel model) {
+		this.cat = cat;
+		this.est.setCostModel(model);
+	}
+
+	/**
+	 * @return the memoising Estimator used to cost the candidate plans, for its hit and miss counts
+	 */
+	public Estimator getEstimator() {
+		return est;
+	}
+	
+	/**
+	 * Set the number of BLOCKS, one per relation of the query, above which the JOIN
+	 * order is found by Greedy Operator Ordering rather than the dynamic programme,
+	 * which takes time and memory exponential in the BLOCKS; see JoinEnumerator
+	 * 
+	 * @param blocks the largest number of BLOCKS ordered exhaustively, at most 
+	 * JoinEnumerator.MAX_EXHAUSTIVE; 0 to always order greedily
+	 */
+	public void setGreedyThreshold(int blocks) {
+		this.greedyThreshold = Math.max(0, Math.min(blocks, JoinEnumerator.MAX_EXHAUSTIVE));
+	}
+	
+	/**
+	 * @return whether the last optimisation searched every JOIN order, rather than 
+	 * ordering the JOINs greedily, as there were more BLOCKS than the greedy threshold, 
+	 * or stopping when the budget ran out
+	 */
+	public boolean isSearchComplete() {
+		return searchComplete;
+	}
+	
+	/**
+	 * @return the budget of the last optimisation, with the number of candidate plans it built
+	 */
+	public SearchBudget getSearchBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Enumerate the JOIN orders in parallel on a pool; each task costs its share of 
+	 * them with an Estimator of its own, and the plan is the one found without the pool.
+	 * 
+	 * @param pool the ForkJoinPool, or null to enumerate them on the calling thread
+	 */
+	public void setEnumerationPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	/**
+	 * @return the pool the JOIN orders are enumerated on, or null if they're enumerated on the calling thread
+	 */
+	public ForkJoinPool getEnumerationPool() {
+		return pool;
+	}
+	
+	/**
+	 * Set whether the exhaustive search considers bushy plans, whose JOINs may take 
+	 * two JOINs as inputs, rather than only JOINing one more BLOCK at a time; bushy 
+	 * plans may be far CHEAPER, e.g. JOINing each dimension of a snowflake to its 
+	 * filtered sub-dimensions first, but the search takes O(3^n) rather than O(n 2^n),
+	 * so fewer BLOCKS can be ordered exhaustively in as long.
+	 * 
+	 * @param bushy whether to consider bushy plans
+	 */
+	public void setBushy(boolean bushy) {
+		this.bushy = bushy;
+	}
+	
+	/**
+	 * @return whether the exhaustive search considers bushy plans
+	 */
+	public boolean isBushy() {
+		return bushy;
+	}
+	
+	/**
+	 * @return the largest number of BLOCKS whose JOIN order is found exhaustively
+	 */
+	public int getGreedyThreshold() {
+		return greedyThreshold;
+	}
 
 	public Operator optimise(Operator plan) {
+		return optimise(plan, new SearchBudget(SearchBudget.UNLIMITED, SearchBudget.UNLIMITED));
+	}
+	
+	/**
+	 * Optimise a plan within a budget of time or of candidate plans; once it runs 
+	 * out, the CHEAPEST plan found so far is returned, see isSearchComplete.
+	 * 
+	 * A JOIN order is first found greedily, in polynomial time, so there's always a 
+	 * plan to return; the exhaustive search prunes the candidates dearer than it, and 
+	 * only replaces it with a cheaper one if it finishes within the budget.
+	 * 
+	 * @param plan the canonical plan of the query
+	 * @param budget the budget, started when the optimisation starts
+	 * @return the optimised plan
+	 */
+	public Operator optimise(Operator plan, SearchBudget budget) {
+		this.budget = budget;
+		budget.start();
 	
 		//SectionExtractor extractor = new SectionExtractor();
 		plan.accept(this);
 		
+		// the ATTRIBUTEs the root needs, if it's a PROJECT
+		BitSet rootAttrs = new BitSet();
+		if (plan instanceof Project) {
+			for (Attribute attr : ((Project) plan).getAttributes()) add(rootAttrs, resolve(attr));
+		}
+		
 		// push down the SELECTs and PROJECTs to the Scan leaves on the canonical plan
-		List<Operator> operationBlocks = pushSelectsAndProjectsDownForScans(allScans, allAttributes, allPredicates, plan);
+		List<Operator> operationBlocks = pushSelectsAndProjectsDownForScans(allScans, allPredicates, rootAttrs);
 		
 		// then from those blocks, exhaust the SELECTS by creating JOINs, 
 		// putting extra SELECTs and remove unnecessary ATTRIBUTES by adding PROJECTs as we go along and 
 		// finally make PRODUCTs if necessary, once all that could be selected or projected or joined
-		// reorder for each permutation of predicate order
-		Operator optimisedPlan = createBESTOrderOfJoinOrProducts(allPredicates, operationBlocks, plan);
+		Operator optimisedPlan = createBESTOrderOfJoinOrProducts(allPredicates, operationBlocks, rootAttrs);
 		
 		return optimisedPlan;
 	}
 	
 	/**
-	 * Create a permutation of the PREDICATEs Set, then
-	 * Make a JOIN ordering for each, ESTimate the cost and 
-	 * Select the CHEAPEST JOIN ordering
+	 * Find the CHEAPEST JOIN ordering of the Operator BLOCKS by
+	 * dynamic programming over the subsets of BLOCKS, see JoinEnumerator;
+	 * a BLOCK can be JOINed through an INDEX the Catalogue has on it.
 	 * 
-	 * @param preds the Set of PREDICATEs to Permute (Will get turned to List inside)
+	 * @param preds the Set of PREDICATEs still to be applied
 	 * @param ops the List of Operators to build the tree out of
-	 * @param root the root of the tree
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the tree
 	 * @return the Operator with the best of everything
+	 * @throws IllegalArgumentException if there are more than JoinEnumerator.MAX_BLOCKS
 	 */
-	private static Operator createBESTOrderOfJoinOrProducts(Set<Predicate> originalPreds, List<Operator> ops, Operator root){
-		
-		// The list of PREDICATEs - necessary to permute on List, Set does not permute
-		List<Predicate> preds = new ArrayList<>();
-		preds.addAll(originalPreds);
+	private Operator createBESTOrderOfJoinOrProducts(Set<Predicate> preds, List<Operator> ops, BitSet rootAttrs){
 		
-		// Permuations of PREDICATEs
-		List<List<Predicate>> permutedPreds = generatePerm(preds);
+		// nothing to order
+		searchComplete = true;
+		if (ops.size() == 1) return ops.get(0);
 		
-		// CheapEST plan found so far
-		Operator cheapESTPlan = null;
-		Integer cheapESTCost = Integer.MAX_VALUE;
+		// the BLOCKS of a sub-plan are the bits of a long
+		if (ops.size() > JoinEnumerator.MAX_BLOCKS) {
+			throw new IllegalArgumentException("Can't order the JOINs of " + ops.size() + " relations, at most " + JoinEnumerator.MAX_BLOCKS);
+		}
 		
-		// Iterate for each permutation
-		for (List<Predicate> p : permutedPreds) {
-			
-			// create a fresh set of operators
-			List<Operator> tempOps = new ArrayList<>();
-			tempOps.addAll(ops);
-			
-			// make a tree
-			Operator aPlan = buildProductOrJoin(tempOps, p, root);
-			
-			Integer i = EST.getCost(aPlan);
-			System.out.println("Found plan with cost: " + i);
-			
-			// make the cheapEST plan
-			cheapESTPlan = (i < cheapESTCost) ? aPlan : cheapESTPlan;
-			cheapESTCost = (i < cheapESTCost) ? i : cheapESTCost;
+		JoinEnumerator enumerator = new JoinEnumerator(ops, preds, rootAttrs, est, cat, budget);
+		enumerator.setBushy(bushy);
+		// greedy's candidates count against the budget too, and may use it all up
+		Operator greedy = enumerator.greedy();
+		if (ops.size() > greedyThreshold || budget.check()) {
+			searchComplete = false;
+			return greedy;
 		}
 		
-		return cheapESTPlan;
+		// the greedy order BOUNDS the exhaustive search, and is the plan to fall back on
+		// if the budget runs out or nothing the search finds is as CHEAP
+		Operator exhaustive = enumerator.enumerate(est.getCost(greedy), pool);
+		searchComplete = !budget.isExhausted();
+		return (exhaustive == null) ? greedy : exhaustive;
 	}
 	
 	/**
@@ -92,13 +224,12 @@ public class Optimiser implements PlanVisitor {
 	 * SCAN => [SELECT] x n => [PROJECT]_neededAttrs
 	 * 
 	 * @param scans the SCAN operators
-	 * @param attrs the COMPLETE set of ATTRIBUTES needed from the scans
 	 * @param predicates the COMPLETE set of PREDICATES needed from the scans
-	 * @param root 
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the tree
 	 * @return the List of Operator BLOCKS in (SCAN => [SELECT] x n => [PROJECT]_neededAttrs) form,
 	 * 			predicates will be mutated and truncated by removing the used ones
 	 */
-	private static List<Operator> pushSelectsAndProjectsDownForScans(Set<Scan> scans, Set<Attribute> attrs, Set<Predicate> predicates, Operator root) {
+	private List<Operator> pushSelectsAndProjectsDownForScans(Set<Scan> scans, Set<Predicate> predicates, BitSet rootAttrs) {
 		
 		// the block of resultant operators from each of the SCANs
 		List<Operator> operatorBlocks = new ArrayList<>(scans.size());
@@ -106,11 +237,8 @@ public class Optimiser implements PlanVisitor {
 		for (Scan s: scans){
 			// to SCAN => [SELECT] x n
 			Operator o = buildSelectsOnTop(s, predicates);
-			List<Predicate> temp = new ArrayList<>();
-			temp.addAll(predicates);
-			getNecessaryAttrs(temp, root);
 			// [SCAN] || [SELECT] x n => [PROJECT]
-			operatorBlocks.add(buildProjectOnTop(o, getNecessaryAttrs(temp, root)));
+			operatorBlocks.add(buildProjectOnTop(o, getNecessaryAttrs(predicates, rootAttrs)));
 		}
 		
 		return operatorBlocks;
@@ -125,12 +253,16 @@ public class Optimiser implements PlanVisitor {
 	 * @return an Operator that is in the form of (op => [SELECT] x n) and
 	 * 			the Set of PREDICATES is mutated and truncated by removing the used ones
 	 */
-	private static Operator buildSelectsOnTop(Operator op, Set<Predicate> preds){
+	private Operator buildSelectsOnTop(Operator op, Set<Predicate> preds){
+		
+		// The result, an INDEX lookup in place of the SCAN and one SELECT if there's a cheaper one
+		Operator result = (op instanceof Scan) ? buildIndexScan((Scan) op, preds) : op;
+		
+		// If output of the Operator isn't set, set it
+		if(result.getOutput() == null) est.getCost(result);
 		
-		// The result
-		Operator result = op;
 		// the attributes available at this point, building SELECT doesn't remove any attributes
-		List<Attribute> availableAttrs = result.getOutput().getAttributes();
+		BitSet availableAttrs = attributeSet(result.getOutput().getAttributes());
 			
 		// Iterate over the PREDICATEs to see if any are applicable to the latEST Operator in the list
 		Iterator<Predicate> it = preds.iterator();
@@ -138,12 +270,9 @@ public class Optimiser implements PlanVisitor {
 	
 			Predicate currentPred = it.next();
 			
-			// If output of the latEST Operator isn't set, set it
-			if(result.getOutput() == null) result.accept(EST);
-			
 			// attr = val and the ATTRIBUTE comes from the Operator's output relation
-			if ((currentPred.equalsValue() && availableAttrs.contains(currentPred.getLeftAttribute())) || 
-				(!currentPred.equalsValue() && availableAttrs.contains(currentPred.getLeftAttribute()) && availableAttrs.contains(currentPred.getRightAttribute()))) 
+			if (contains(availableAttrs, currentPred.getLeftAttribute()) && 
+				(currentPred.equalsValue() || contains(availableAttrs, currentPred.getRightAttribute()))) 
 			{
 				// add a new SELECT operator on root, note how the output isn't set
 				result = new Select(result, currentPred);
@@ -156,6 +285,39 @@ public class Optimiser implements PlanVisitor {
 		return result;
 	}
 	
+	/**
+	 * Look for an attr = val PREDICATE on an ATTRIBUTE of the SCANned relation
+	 * that the Catalogue has an INDEX on, and if looking it up there is CHEAPER
+	 * than SELECTing it from the SCAN, returns an IndexScan for it.
+	 * With several, the CHEAPEST one is used, and the rest are left to SELECT.
+	 * 
+	 * @param scan the SCAN of a named relation
+	 * @param preds the set of PREDICATEs to choose from
+	 * @return the CHEAPEST IndexScan, or the SCAN if there's none; 
+	 * 			the PREDICATE looked up is removed from preds
+	 */
+	private Operator buildIndexScan(Scan scan, Set<Predicate> preds) {
+		NamedRelation reln = (NamedRelation) scan.getRelation();
+		
+		Operator best = scan;
+		Predicate bestPred = null;
+		long bestCost = Long.MAX_VALUE;
+		for (Predicate currentPred : preds) {
+			if (!currentPred.equalsValue() || !cat.hasIndex(reln, currentPred.getLeftAttribute())) continue;
+			
+			IndexScan lookup = new IndexScan(reln, currentPred, cat.getIndexType(reln, currentPred.getLeftAttribute()));
+			long lookupCost = est.getCost(lookup);
+			if (lookupCost < est.getCost(new Select(scan, currentPred)) && lookupCost < bestCost) {
+				best = lookup;
+				bestPred = currentPred;
+				bestCost = lookupCost;
+			}
+		}
+		
+		if (bestPred != null) preds.remove(bestPred);
+		return best;
+	}
+	
 	/**
 	 * Goes through the Set of needed ATTRIBUTEs and 
 	 * checks which one of the current ATTRIBUTEs are needed.
@@ -166,220 +328,155 @@ public class Optimiser implements PlanVisitor {
 	 * @param attrs the Set of ATTRIBUTES to check for
 	 * @return an Operator in the form of [op] || [PROJECT => op]
 	 */
-	private static Operator buildProjectOnTop(Operator op, Set<Attribute> attrs){
+	private Operator buildProjectOnTop(Operator op, BitSet attrs){
 
 		// if op doesn't have an output, fix that
-		if(op.getOutput() == null) op.accept(EST);
+		if(op.getOutput() == null) est.getCost(op);
 		
 		// see which attributes are to be projected
-		List<Attribute> attrsToProjectFromOp = new ArrayList<>(attrs);
-		attrsToProjectFromOp.retainAll(op.getOutput().getAttributes());
+		List<Attribute> attrsToProjectFromOp = new ArrayList<>();
+		for (Attribute attr : op.getOutput().getAttributes()) {
+			if (contains(attrs, attr)) attrsToProjectFromOp.add(attr);
+		}
 		
 		// not all attributes from op is necessary
 		if (attrsToProjectFromOp.size() > 0) {
 			Operator op2 = new Project(op, attrsToProjectFromOp);
-			op2.accept(EST);
+			est.estimate(op2);
 			return op2;
 		} else {
 			return op;
 		}
 	}
+	
 	/**
-	 * Go through each of the PREDICATEs and 
-	 * see if any can be applied to any ONE/PAIR of Operators.
+	 * Checks which of the ATTRIBUTEs available from op are still needed and
+	 * if NOT ALL of them are, PROJECTs the rest OUT.
 	 * 
-	 * If no Operator found for a PREDICATE, make a PRODUCT,
-	 * If ONE Operator found for a PREDICATE, make a SELECT,
-	 * If TWO Operators found for a PREDICATE, make a JOIN
-	 * 
-	 * Also, if at any point, some ATTRIBUTE is not necessary, it is PROJECTed OUT.
-	 * 
-	 * Finally one Operator will be returned with all such operations performed
-	 * 
-	 * @param ops the List of Operators to process into PRODUCTs, JOINs or SELECTs
-	 * @param preds The List of Predicates to check through
-	 * @param root the root of the tree
-	 * @return One Operator where all the operations are performed in form
-	 * 			[JOIN] x n <=> [SELECT] x n <=> [TIMES] x n <=> [PROJECT] x n
+	 * @param op the Operator to build the PROJECT on top of, with its output set
+	 * @param neededAttrs the Set of ATTRIBUTEs still needed above op
+	 * @param est the Estimator to set the output of the PROJECT with
+	 * @return an Operator in the form of [op] || [PROJECT => op], with its output set
 	 */
-	private static Operator buildProductOrJoin(List<Operator> ops, List<Predicate> preds, Operator root){
+	static Operator buildProjectForNeeded(Operator op, BitSet neededAttrs, Estimator est){
 		
-		Operator result = null;
+		List<Attribute> availableAttrs = op.getOutput().getAttributes();
 		
-		if (ops.size() == 1){
-			result = ops.get(0);
-			if (result.getOutput() == null) result.accept(EST);
-			return result;
+		// count the ATTRIBUTEs needed to be kept before making a List of them
+		int kept = 0;
+		for (Attribute attr : availableAttrs) {
+			if (contains(neededAttrs, attr)) kept++;
 		}
 		
-		// First Iterate over the PREDICATEs and 
-		// EXHAUST it until they've been made into JOINs or SELECTs
-		Iterator<Predicate> it = preds.iterator();
-		while(it.hasNext()){
-			
-			Predicate currentPred = it.next();
-			// The potential Operator with the left ATTRIBUTE in its output Relation
-			Operator left = extractOperatorForAttribute(ops, currentPred.getLeftAttribute());
-			// The potential Operator with the left ATTRIBUTE in its output Relation
-			Operator right = extractOperatorForAttribute(ops, currentPred.getRightAttribute());
-			
-			// if only ONE potential Operators found for the PREDICATE, create a SELECT
-			if((left == null && right != null) || (right == null && left != null)){
-				result = new Select(left != null? left : right, currentPred);
-				it.remove();
-			}
-			
-			// if BOTH potential Operators found for the PREDICATE, create a JOIN
-			if(left != null && right != null){
-				result = new Join(left, right, currentPred);
-				it.remove();
-			}
-			
-			// if the output Relation hasn't been sorted yet
-			if (result.getOutput() == null) result.accept(EST);
-			
-			// get the ATTRIBUTEs still needed based on the remaining predicates and the very rootmost root
-			Set<Attribute> neededAttrs = getNecessaryAttrs(preds, root);
-			
-			// Now if NOT ALL ATTRIBUTEs available now are necessary, PROJECT some OUT
-			List<Attribute> availableAttrs = result.getOutput().getAttributes();
-			
-			// if no ATTRIBUTE can be left out
-			if (neededAttrs.size() == availableAttrs.size() && availableAttrs.containsAll(neededAttrs)){
-				ops.add(result);
-			}else{
-				// the ATTRIBUTE needed to be kept
-				List<Attribute> attrsToKeep = availableAttrs.stream().filter(attr -> neededAttrs.contains(attr)).collect(Collectors.toList());
-				
-				if (attrsToKeep.size() == 0) {
-					ops.add(result); // Otherwise it's vacuously true and causes a BUG
-				} else {
-					Project tempProj = new Project(result, attrsToKeep);
-					tempProj.accept(EST); // set the output Relation right
-					ops.add(tempProj);
-				}
-			}
-		}
+		// if no ATTRIBUTE can be left out
+		if (kept == availableAttrs.size() && kept == neededAttrs.cardinality()) return op;
 		
-		// Now if multiple Operators have been made, turn them into PRODUCTs, because no PREDICATEs are left
-		while(ops.size() > 1) {
-			// Get the first two
-			Operator b1 = ops.get(0);
-			Operator b2 = ops.get(1);
-			Operator product = new Product(b1, b2);
-			product.accept(EST);
-			
-			// remove the first two and add the new one
-			ops.remove(b1);
-			ops.remove(b2);
-			ops.add(product);
-		}
+		// Otherwise it's vacuously true and causes a BUG
+		if (kept == 0) return op;
 		
-		result = ops.get(0); // Finally, get the root one in the List, should be ONE left anyway
-		
-		return result;
-	}
-	
-	/**
-	 * Checks a list of Operators to see if any has the ATTRIBUTE in its output Relation.
-	 * 
-	 * If it does, then the Operator is extracted from the List and Returned,
-	 * If mulitple matches are found, only the first match is returned.
-	 * 
-	 * @param oList the List of Operators to check for a match
-	 * @param attr the ATTRIBUTE to match
-	 * @return an Operator if a match is found, null otherwise
-	 */
-	private static Operator extractOperatorForAttribute(List<Operator> oList, Attribute attr){
-	
-		// go through the Operators
-		Iterator<Operator> oIt = oList.iterator();
-		while(oIt.hasNext()){
-			
-			Operator curOp = oIt.next();
-			// If the Operator contains the attribute in its output Relation, remove and return it
-			if (curOp.getOutput().getAttributes().contains(attr)){
-				oIt.remove();
-				return curOp;
-			}
+		// the ATTRIBUTE needed to be kept
+		List<Attribute> attrsToKeep = new ArrayList<>(kept);
+		for (Attribute attr : availableAttrs) {
+			if (contains(neededAttrs, attr)) attrsToKeep.add(attr);
 		}
-		return null;
+		
+		Project tempProj = new Project(op, attrsToKeep);
+		est.estimate(tempProj); // set the output Relation right
+		return tempProj;
 	}
 	
 	/**
-	 * Get the Set of ATTRIBUTEs that are needed based on the List PREDICATEs and the Operator
+	 * Get the Set of ATTRIBUTEs that are needed based on the PREDICATEs and the root
 	 * 
 	 * @param predicates the PREDICATEs to check for ATTRIBUTEs
-	 * @param root the root Operator in the tree which may not have any additional ATTRIBUTEs
+	 * @param rootAttrs the ATTRIBUTEs needed by the root of the tree
 	 * @return the Set of ATTRIBUTEs necessary still
 	 */
-	private static Set<Attribute> getNecessaryAttrs(List<Predicate> predicates, Operator root){
+	private static BitSet getNecessaryAttrs(Set<Predicate> predicates, BitSet rootAttrs){
 		
-		// the Set of necessary ATTRIBUTEs
-		Set<Attribute> attrsNeeded = new HashSet<>();
+		// the Set of necessary ATTRIBUTEs, starting with the root's
+		BitSet attrsNeeded = (BitSet) rootAttrs.clone();
 		
-		// Iterate over the PREDICATEs
-		Iterator<Predicate> predIt = predicates.iterator();
-		while(predIt.hasNext()){
-			
-			// Add the ATTRIBUTEs of the PREDICATE
-			Predicate currentPred = predIt.next();
-			Attribute left = currentPred.getLeftAttribute();
-			Attribute right = currentPred.getRightAttribute();
-			
-			attrsNeeded.add(left);
-			if (right != null) attrsNeeded.add(right);
+		// Add the ATTRIBUTEs of the PREDICATEs
+		for (Predicate currentPred : predicates) {
+			add(attrsNeeded, currentPred.getLeftAttribute());
+			if (!currentPred.equalsValue()) add(attrsNeeded, currentPred.getRightAttribute());
 		}
 		
-		// If root is a PROJECT then add its ATTRIBUTEs in
-		if (root instanceof Project) attrsNeeded.addAll(((Project) root).getAttributes());
-		
 		return attrsNeeded;
 	}
 	
 	/**
-	 * Generate a List of all possible permutations of List of PREDICATEs
-	 * @param attrs the List of ATTRIBUTEs to permute
-	 * @return List of possible permutations of attrs
+	 * @param attrs a List of ATTRIBUTEs
+	 * @return the Set of their ids
 	 */
-	private static List<List<Predicate>> generatePerm(List<Predicate> attrs) {
-		
-		// if there's only one element
-		if (attrs.size() == 0) { 
-			List<List<Predicate>> result = new ArrayList<List<Predicate>>();
-		    result.add(new ArrayList<Predicate>());
-		    return result;
-		}
-		
-		// there are multiple elements, remove the first
-		Predicate first = attrs.remove(0);
-		List<List<Predicate>> returnValue = new ArrayList<List<Predicate>>();
-		// recursively call
-		List<List<Predicate>> permutations = generatePerm(attrs);
-		
-		// iterate over the permutations
-		for (List<Predicate> smallerPermutated : permutations) {
-		    for (int index=0; index <= smallerPermutated.size(); index++) {
-		    	List<Predicate> temp = new ArrayList<Predicate>(smallerPermutated);
-		    	temp.add(index, first);
-		    	returnValue.add(temp);
-		    }
+	static BitSet attributeSet(List<Attribute> attrs) {
+		BitSet set = new BitSet();
+		for (Attribute attr : attrs) add(set, attr);
+		return set;
+	}
+	
+	/**
+	 * @return whether the ATTRIBUTE is in the Set, those without an id never are
+	 */
+	static boolean contains(BitSet attrs, Attribute attr) {
+		return attr.getId() >= 0 && attrs.get(attr.getId());
+	}
+	
+	/**
+	 * Add the ATTRIBUTE to the Set, unless it has no id
+	 */
+	static void add(BitSet attrs, Attribute attr) {
+		if (attr.getId() >= 0) attrs.set(attr.getId());
+	}
+	
+	/**
+	 * ATTRIBUTEs parsed from a query are only names, find the Catalogue's one with its id
+	 * 
+	 * @param attr the ATTRIBUTE to resolve
+	 * @return the Catalogue's ATTRIBUTE of the same name, or attr if there's none
+	 */
+	private Attribute resolve(Attribute attr) {
+		if (attr.getId() >= 0) return attr;
+		try {
+			return cat.getAttribute(attr.getName());
+		} catch (DatabaseException e) {
+			return attr;
 		}
-		
-		return returnValue;
 	}
-		
-	private Set<Attribute> allAttributes = new HashSet<>();
-	private Set<Predicate> allPredicates = new HashSet<>();
-	private Set<Scan> allScans = new HashSet<Scan>();
+	
+	/**
+	 * A PREDICATE attr=value or attr=? with its ATTRIBUTE resolved, see resolve
+	 * 
+	 * @param p the PREDICATE to resolve
+	 * @return the same PREDICATE over the Catalogue's ATTRIBUTE
+	 */
+	private Predicate resolveValue(Predicate p) {
+		return p.isParameter() ? new Predicate(resolve(p.getLeftAttribute()), p.getParameter())
+							   : new Predicate(resolve(p.getLeftAttribute()), p.getRightValue());
+	}
+	
+	private Set<Predicate> allPredicates = new LinkedHashSet<>();
+	private Set<Scan> allScans = new LinkedHashSet<Scan>();
 	
 	public void visit(Scan op) { allScans.add(new Scan((NamedRelation)op.getRelation())); }
-	public void visit(Project op) { allAttributes.addAll(op.getAttributes()); }
+	public void visit(IndexScan op) {
+		// start again from the SCAN and its SELECT, as the INDEX may not be the best way any more
+		allScans.add(new Scan((NamedRelation)op.getRelation()));
+		allPredicates.add(resolveValue(op.getPredicate()));
+	}
+	public void visit(Project op) {}
 	public void visit(Product op) {}
 	public void visit(Join op) {}
+	public void visit(IndexJoin op) {
+		// the inner relation becomes a SCAN again, and the JOIN one of the PREDICATEs
+		allScans.add(new Scan((NamedRelation)op.getRelation()));
+		Predicate p = op.getPredicate();
+		allPredicates.add(new Predicate(resolve(p.getLeftAttribute()), resolve(p.getRightAttribute())));
+	}
 	public void visit(Select op) {
-		allPredicates.add(op.getPredicate());
-		allAttributes.add(op.getPredicate().getLeftAttribute());
-		if(!op.getPredicate().equalsValue()) allAttributes.add(op.getPredicate().getRightAttribute());
+		Predicate p = op.getPredicate();
+		allPredicates.add(p.equalsValue() ? resolveValue(p)
+										  : new Predicate(resolve(p.getLeftAttribute()), resolve(p.getRightAttribute())));
 	}
 }
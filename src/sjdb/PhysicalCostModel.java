@@ -0,0 +1,224 @@
+package sjdb;
+
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+
+/**
+ * This class implements a cost model of the page I/Os and CPU work of
+ * the physical operator the PhysicalPlanner runs each logical operator
+ * with, weighted by what each costs:
+ *
+ * - a page read in sequence, by a scan or a spill read back in order
+ * - a page read at random, by an index look up
+ * - a tuple built, copied or output
+ * - a predicate evaluated, or a value hashed
+ *
+ * The pages a relation takes up are worked out from the widths of its
+ * attributes in the catalogue, so wide tuples cost more to scan, spill
+ * and join than narrow ones. A Join is costed as a hash join, which copies
+ * its smaller input into a table and only reads and writes its inputs
+ * again if that won't fit in the buffer, or, if both inputs are in order
+ * of their join attributes, as a merge join, which just compares them as
+ * it reads them; a Product as a block nested loop join, which reads its
+ * right input again for every block of its left one unless it fits.
+ *
+ * Only the orders the Estimator knows of are seen, those of the relations
+ * of the DataStore it's given; an order that a sub-plan dearer than the
+ * CHEAPEST for its relations would have kept for a later merge is not.
+ *
+ * The weights default to one hundred per sequential page read, so that
+ * cheaper work can still be counted in whole units; they can be set, or
+ * calibrated against the machine the queries are run on by the
+ * CostCalibrator, which saves them to a file of properties:
+ *
+ * seq_page=<weight>
+ * random_page=<weight>
+ * cpu_tuple=<weight>
+ * cpu_operator=<weight>
+ */
+public class PhysicalCostModel implements CostModel {
+	/**
+	 * The weight of a page read in sequence unless set
+	 */
+	public static final double DEFAULT_SEQUENTIAL_PAGE = 100;
+	/**
+	 * The weight of a page read at random unless set
+	 */
+	public static final double DEFAULT_RANDOM_PAGE = 400;
+	/**
+	 * The weight of a tuple built, copied or output unless set
+	 */
+	public static final double DEFAULT_CPU_TUPLE = 1;
+	/**
+	 * The weight of a predicate evaluated or a value hashed unless set
+	 */
+	public static final double DEFAULT_CPU_OPERATOR = 0.25;
+
+	private double sequentialPage;
+	private double randomPage;
+	private double cpuTuple;
+	private double cpuOperator;
+
+	/**
+	 * Create a cost model with the default weights
+	 */
+	public PhysicalCostModel() {
+		this(DEFAULT_SEQUENTIAL_PAGE, DEFAULT_RANDOM_PAGE, DEFAULT_CPU_TUPLE, DEFAULT_CPU_OPERATOR);
+	}
+
+	/**
+	 * Create a cost model with the given weights
+	 * @param sequentialPage Weight of a page read in sequence
+	 * @param randomPage Weight of a page read at random
+	 * @param cpuTuple Weight of a tuple built, copied or output
+	 * @param cpuOperator Weight of a predicate evaluated or a value hashed
+	 */
+	public PhysicalCostModel(double sequentialPage, double randomPage, double cpuTuple, double cpuOperator) {
+		this.sequentialPage = sequentialPage;
+		this.randomPage = randomPage;
+		this.cpuTuple = cpuTuple;
+		this.cpuOperator = cpuOperator;
+	}
+
+	public long scan(Relation output) {
+		return cost(this.sequentialPage * getPageCount(output) + this.cpuTuple * output.getTupleCount());
+	}
+
+	public long indexScan(IndexType type, Relation relation, Relation output) {
+		// the index pages on the way to the entries, and a heap page per tuple
+		long pages = Estimator.getIndexProbeCost(type, relation.getTupleCount(), output.getTupleCount());
+		return cost(this.randomPage * ((double) pages + output.getTupleCount()) + this.cpuTuple * output.getTupleCount());
+	}
+
+	public long project(Relation input, Relation output) {
+		return cost(this.cpuTuple * input.getTupleCount());
+	}
+
+	public long select(Relation input, Relation output) {
+		return cost(this.cpuOperator * input.getTupleCount());
+	}
+
+	public long product(Relation left, Relation right, Relation output, int bufferPages) {
+		// the right input is kept in the buffer if it fits, else written out and read once per block of the left
+		double leftPages = getPageCount(left), rightPages = getPageCount(right);
+		double io = (rightPages < bufferPages) ? 0 : rightPages + Math.ceil(leftPages / bufferPages) * rightPages;
+		return cost(this.sequentialPage * io + this.cpuTuple * output.getTupleCount());
+	}
+
+	public long join(Relation left, Relation right, Relation output, int bufferPages, boolean merged) {
+		double compared = (double) left.getTupleCount() + right.getTupleCount();
+		if (merged) {
+			// the inputs are read in step, each tuple compared once, with nothing built
+			return cost(this.cpuOperator * compared + this.cpuTuple * output.getTupleCount());
+		}
+		
+		// the smaller input is hashed into a table in the buffer if it fits, else both are partitioned out and read back
+		double leftPages = getPageCount(left), rightPages = getPageCount(right);
+		double io = (Math.min(leftPages, rightPages) < bufferPages) ? 0 : 2 * (leftPages + rightPages);
+		double built = Math.min(left.getTupleCount(), right.getTupleCount());
+		return cost(this.sequentialPage * io + this.cpuOperator * compared + this.cpuTuple * (built + output.getTupleCount()));
+	}
+
+	public long indexJoin(IndexType type, Relation outer, Relation inner, long matches, Relation output) {
+		// the index pages of each look up, and a heap page per tuple found
+		double probes = (double) outer.getTupleCount() * Estimator.getIndexProbeCost(type, inner.getTupleCount(), matches);
+		return cost(this.randomPage * (probes + output.getTupleCount())
+				+ this.cpuOperator * outer.getTupleCount() + this.cpuTuple * output.getTupleCount());
+	}
+
+	/**
+	 * @param reln an estimated relation
+	 * @return the number of pages its tuples take up, at the widths of its
+	 * attributes and eight bytes more per tuple
+	 */
+	public static long getPageCount(Relation reln) {
+		int bytes = 8;
+		for (Attribute attr : reln.getAttributes()) bytes += attr.getWidth();
+		long perPage = Math.max(1, Estimator.PAGE_SIZE / bytes);
+		return reln.getTupleCount() / perPage + ((reln.getTupleCount() % perPage == 0) ? 0 : 1);
+	}
+
+	/**
+	 * @return the weight of a page read in sequence
+	 */
+	public double getSequentialPage() {
+		return this.sequentialPage;
+	}
+
+	/**
+	 * @return the weight of a page read at random
+	 */
+	public double getRandomPage() {
+		return this.randomPage;
+	}
+
+	/**
+	 * @return the weight of a tuple built, copied or output
+	 */
+	public double getCpuTuple() {
+		return this.cpuTuple;
+	}
+
+	/**
+	 * @return the weight of a predicate evaluated or a value hashed
+	 */
+	public double getCpuOperator() {
+		return this.cpuOperator;
+	}
+
+	/**
+	 * Load the weights of a cost model from a file of properties, as saved
+	 * @param filename File of properties; weights missing from it are the defaults
+	 * @return Cost model
+	 * @throws DatabaseException if the file can't be read, or a weight isn't a number
+	 */
+	public static PhysicalCostModel load(String filename) throws DatabaseException {
+		Properties props = new Properties();
+		try (Reader read = new FileReader(filename)) {
+			props.load(read);
+			return new PhysicalCostModel(
+					Double.parseDouble(props.getProperty("seq_page", Double.toString(DEFAULT_SEQUENTIAL_PAGE))),
+					Double.parseDouble(props.getProperty("random_page", Double.toString(DEFAULT_RANDOM_PAGE))),
+					Double.parseDouble(props.getProperty("cpu_tuple", Double.toString(DEFAULT_CPU_TUPLE))),
+					Double.parseDouble(props.getProperty("cpu_operator", Double.toString(DEFAULT_CPU_OPERATOR))));
+		} catch (IOException | NumberFormatException e) {
+			throw new DatabaseException("Cannot load cost model from " + filename, e);
+		}
+	}
+
+	/**
+	 * Save the weights of the cost model to a file of properties
+	 * @param filename File to write
+	 * @param comment Comment written at the top of the file
+	 * @throws DatabaseException if the file can't be written
+	 */
+	public void save(String filename, String comment) throws DatabaseException {
+		Properties props = new Properties();
+		props.setProperty("seq_page", Double.toString(this.sequentialPage));
+		props.setProperty("random_page", Double.toString(this.randomPage));
+		props.setProperty("cpu_tuple", Double.toString(this.cpuTuple));
+		props.setProperty("cpu_operator", Double.toString(this.cpuOperator));
+		try (Writer write = new FileWriter(filename)) {
+			props.store(write, comment);
+		} catch (IOException e) {
+			throw new DatabaseException("Cannot save cost model to " + filename, e);
+		}
+	}
+
+	// weighted work, rounded and saturating
+	private static long cost(double work) {
+		return Math.max(0, Math.round(work));
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "seq_page=" + this.sequentialPage + ", random_page=" + this.randomPage +
+				", cpu_tuple=" + this.cpuTuple + ", cpu_operator=" + this.cpuOperator;
+	}
+}
@@ -0,0 +1,80 @@
+package sjdb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class implements a physical scan over the tuples of a HeapFile with
+ * one value of an attribute, looked up in an Index on it: only the index
+ * pages on the way to the value, and the heap file pages holding the
+ * tuples with it, are read.
+ *
+ * The page of the last tuple stays pinned until a tuple on another page
+ * is fetched, so a clustered index reads each page of tuples once.
+ */
+public class PhysicalIndexScan extends PhysicalOperator {
+	private NamedRelation relation;
+	private HeapFile file;
+	private Index index;
+	private Predicate predicate;
+
+	private Index.Cursor cursor;
+	private int pageNo;
+	private ByteBuffer page;
+
+	/**
+	 * Create a new index scan
+	 * @param relation Relation being scanned
+	 * @param file Heap file holding the tuples of the relation
+	 * @param index Index on the predicate's attribute of the heap file
+	 * @param predicate Predicate of the form attr=val
+	 */
+	public PhysicalIndexScan(NamedRelation relation, HeapFile file, Index index, Predicate predicate) {
+		this.relation = relation;
+		this.file = file;
+		this.index = index;
+		this.predicate = predicate;
+		this.attributes.addAll(relation.getAttributes());
+	}
+
+	public void open() {
+		this.cursor = this.index.seek(this.predicate.getRightValue());
+		this.page = null;
+	}
+
+	protected Tuple fetch() {
+		if (this.cursor == null || !this.cursor.next()) return null;
+
+		if (this.page == null || this.cursor.getPage() != this.pageNo) {
+			release();
+			this.pageNo = this.cursor.getPage();
+			this.page = this.file.getPage(this.pageNo);
+		}
+		return HeapFile.decode(this.page, HeapFile.getRecordOffset(this.page, this.cursor.getSlot()), this.attributes.size());
+	}
+
+	public void close() {
+		if (this.cursor != null) this.cursor.close();
+		this.cursor = null;
+		release();
+	}
+
+	private void release() {
+		if (this.page != null) this.file.releasePage(this.pageNo);
+		this.page = null;
+	}
+
+	/**
+	 * Return the relation being scanned
+	 * @return Relation
+	 */
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "INDEX-SCAN " + this.relation.toString() + " [" + this.predicate.toString() + "]";
+	}
+}
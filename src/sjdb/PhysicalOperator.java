@@ -0,0 +1,115 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This abstract class represents an operator in a physical query plan,
+ * which produces tuples on demand as an iterator: open() prepares it,
+ * each call to next() returns the next tuple, and close() releases it.
+ * 
+ * Physical operators are built out of a logical plan by the PhysicalPlanner.
+ */
+public abstract class PhysicalOperator {
+	/**
+	 * The child operators that feed their tuples to this operator.
+	 */
+	protected List<PhysicalOperator> inputs;
+	/**
+	 * The attributes of the tuples produced by this operator, in order.
+	 */
+	protected List<Attribute> attributes;
+	/**
+	 * The attributes whose values the tuples are produced in ascending order
+	 * of, compared as strings; there is more than one when they are equal,
+	 * as on both sides of a merge join. Empty if the tuples are in no order.
+	 */
+	protected List<Attribute> order;
+	/**
+	 * The number of tuples produced since the operator was first opened.
+	 */
+	private long produced;
+	
+	public PhysicalOperator() {
+		this.inputs = new ArrayList<PhysicalOperator>();
+		this.attributes = new ArrayList<Attribute>();
+		this.order = new ArrayList<Attribute>();
+	}
+	
+	/**
+	 * Prepare the operator to produce its tuples from the start.
+	 */
+	public abstract void open();
+	
+	/**
+	 * Return the next tuple produced by the operator.
+	 * @return Next tuple, or null once there are no more
+	 */
+	public Tuple next() {
+		Tuple ret = fetch();
+		if (ret != null) this.produced++;
+		return ret;
+	}
+	
+	/**
+	 * Produce the next tuple.
+	 * @return Next tuple, or null once there are no more
+	 */
+	protected abstract Tuple fetch();
+	
+	/**
+	 * Release whatever the operator holds since it was opened.
+	 */
+	public abstract void close();
+	
+	/**
+	 * Return the attributes of the tuples produced by this operator
+	 * @return Attributes in tuple order
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+	
+	/**
+	 * Return the attributes whose values the tuples of this operator are in ascending order of
+	 * @return Attributes, empty if the tuples are in no order
+	 */
+	public List<Attribute> getOrder() {
+		return this.order;
+	}
+	
+	/**
+	 * Return whether the tuples of this operator are in ascending order of an attribute
+	 * @param attr Attribute to check
+	 * @return Whether they're ordered on it
+	 */
+	public boolean isOrderedOn(Attribute attr) {
+		return this.order.contains(attr);
+	}
+	
+	/**
+	 * Return the child operators of this operator
+	 * @return Child operators
+	 */
+	public List<PhysicalOperator> getInputs() {
+		return this.inputs;
+	}
+	
+	/**
+	 * Return the number of tuples produced by this operator so far, over
+	 * all the times it has been opened.
+	 * @return Tuples produced
+	 */
+	public long getTuplesProduced() {
+		return this.produced;
+	}
+	
+	/**
+	 * Return the position of an attribute in the tuples of this operator
+	 * @param attr Attribute to look for
+	 * @return Position, or -1 if the tuples don't have the attribute
+	 */
+	public int indexOf(Attribute attr) {
+		return this.attributes.indexOf(attr);
+	}
+}
@@ -0,0 +1,186 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+
+/**
+ * This class turns a logical query plan, such as the one produced by the
+ * Optimiser, into a physical plan that can be executed over the tuples
+ * in a DataStore.
+ * 
+ * It visits the logical plan depth-first, building each physical operator
+ * once those for its inputs are built. Joins become hash joins, built on
+ * whichever input the Estimator expects to be smaller, unless their inputs
+ * are in order of the join attributes, when they become merge joins.
+ * Products become block nested loop joins, with blocks as big as the
+ * memory budget. Index scans and index joins look their values up in the
+ * DataStore's index, becoming index nested loop joins, or if it has none,
+ * fall back to scans with a select or a hash join over them.
+ * 
+ * The order of each physical operator's tuples is tracked as it's built,
+ * starting from the relations the DataStore holds sorted, so that an order
+ * is kept up the plan for as long as the operators above preserve it.
+ */
+public class PhysicalPlanner implements PlanVisitor {
+	private DataStore store;
+	private MemoryBudget budget;
+	private Deque<PhysicalOperator> built;
+	private DatabaseException failure;
+	
+	/**
+	 * @param store DataStore holding the tuples of the named relations
+	 */
+	public PhysicalPlanner(DataStore store) {
+		this(store, new MemoryBudget(MemoryBudget.UNLIMITED));
+	}
+	
+	/**
+	 * @param store DataStore holding the tuples of the named relations
+	 * @param budget Memory budget of the query, beyond which joins spill to disk
+	 */
+	public PhysicalPlanner(DataStore store, MemoryBudget budget) {
+		this.store = store;
+		this.budget = budget;
+	}
+	
+	/**
+	 * Build the physical plan for a logical plan
+	 * @param plan Logical plan
+	 * @return Physical plan, not yet opened
+	 * @throws DatabaseException if the tuples of a scanned relation aren't in the DataStore
+	 */
+	public PhysicalOperator plan(Operator plan) throws DatabaseException {
+		this.built = new ArrayDeque<PhysicalOperator>();
+		this.failure = null;
+		
+		// the estimated sizes of the inputs decide which side each join builds on
+		new Estimator().getCost(plan);
+		plan.accept(this);
+		
+		if (this.failure != null) throw this.failure;
+		return this.built.pop();
+	}
+	
+	public void visit(Scan op) {
+		NamedRelation reln = (NamedRelation) op.getRelation();
+		if (this.store.getHeapFile(reln) != null) {
+			this.built.push(new HeapScan(reln, this.store.getHeapFile(reln)));
+			return;
+		}
+		try {
+			this.built.push(new PhysicalScan(reln, this.store.getTuples(reln), this.store.getOrder(reln)));
+		} catch (DatabaseException e) {
+			this.failure = e;
+			this.built.push(new PhysicalScan(reln, new ArrayList<Tuple>()));
+		}
+	}
+	
+	public void visit(IndexScan op) {
+		NamedRelation reln = (NamedRelation) op.getRelation();
+		Predicate p = op.getPredicate();
+		Index index = this.store.getIndex(reln, p.getLeftAttribute());
+		if (index != null) {
+			this.built.push(new PhysicalIndexScan(reln, this.store.getHeapFile(reln), index, p));
+			return;
+		}
+		
+		// the index was declared but not built, so scan the relation and select from it
+		Scan scan = new Scan(reln);
+		visit(scan);
+		visit(new Select(scan, p));
+	}
+	
+	public void visit(Project op) {
+		this.built.push(new PhysicalProject(this.built.pop(), op.getAttributes()));
+	}
+	
+	public void visit(Select op) {
+		PhysicalOperator input = this.built.pop();
+		
+		// attr=val is compared in the pages of a heap file, if it's the first one there
+		if (input instanceof HeapScan && op.getPredicate().equalsValue() && ((HeapScan) input).getPredicate() == null) {
+			HeapScan scan = (HeapScan) input;
+			this.built.push(new HeapScan(scan.getRelation(), scan.getFile(), op.getPredicate()));
+		} else {
+			this.built.push(new PhysicalSelect(input, op.getPredicate()));
+		}
+	}
+	
+	public void visit(Product op) {
+		PhysicalOperator right = this.built.pop();
+		PhysicalOperator left = this.built.pop();
+		this.built.push(new BlockNestedLoopJoin(left, right, null, blockPages()));
+	}
+	
+	public void visit(Join op) {
+		PhysicalOperator right = this.built.pop();
+		PhysicalOperator left = this.built.pop();
+		Predicate p = op.getPredicate();
+		
+		// the predicate may name the attributes of the inputs either way round
+		Attribute leftAttr = p.getLeftAttribute(), rightAttr = p.getRightAttribute();
+		if (left.indexOf(leftAttr) < 0) {
+			leftAttr = p.getRightAttribute();
+			rightAttr = p.getLeftAttribute();
+		}
+		boolean leftOrdered = left.isOrderedOn(leftAttr), rightOrdered = right.isOrderedOn(rightAttr);
+		
+		if (leftOrdered && rightOrdered) {
+			// both inputs are in order already, so merge them without building a hash table
+			this.built.push(new MergeJoin(left, right, p));
+		} else if ((leftOrdered || rightOrdered) && !this.budget.fits(buildBytes(op))) {
+			// the hash table would spill, so sort the other input and merge it with the ordered one
+			if (!leftOrdered) left = new ExternalSort(left, leftAttr, this.budget);
+			else right = new ExternalSort(right, rightAttr, this.budget);
+			this.built.push(new MergeJoin(left, right, p));
+		} else {
+			this.built.push(new HashJoin(left, right, p, buildLeft(op), this.budget));
+		}
+	}
+	
+	public void visit(IndexJoin op) {
+		NamedRelation reln = (NamedRelation) op.getRelation();
+		Index index = this.store.getIndex(reln, op.getInnerAttribute());
+		if (index != null) {
+			this.built.push(new IndexNestedLoopJoin(this.built.pop(), reln, this.store.getHeapFile(reln), index, op.getPredicate()));
+			return;
+		}
+		
+		// the index was declared but not built, so scan the inner relation and hash join it
+		PhysicalOperator left = this.built.pop();
+		visit(new Scan(reln));
+		PhysicalOperator right = this.built.pop();
+		boolean buildLeft = op.getInput().getOutput().getTupleCount() < reln.getTupleCount();
+		this.built.push(new HashJoin(left, right, op.getPredicate(), buildLeft, this.budget));
+	}
+	
+	/**
+	 * Return the number of pages of outer tuples a block nested loop join
+	 * may hold, as many as fit in the memory budget
+	 * @return Pages
+	 */
+	private int blockPages() {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, this.budget.getLimit() / Estimator.PAGE_SIZE));
+	}
+	
+	/**
+	 * Estimate the memory the hash table of a join would take up
+	 * @param op Logical join, whose inputs have been estimated
+	 * @return Bytes
+	 */
+	private static long buildBytes(Join op) {
+		Relation build = buildLeft(op) ? op.getLeft().getOutput() : op.getRight().getOutput();
+		return HashJoin.bytes(build.getTupleCount(), build.getAttributes().size());
+	}
+	
+	/**
+	 * Decide which input of a join to build the hash table on: the one with
+	 * fewer tuples, by the estimates on the outputs of the logical inputs
+	 * @param op Logical join, whose inputs have been estimated
+	 * @return Whether to build on the left input rather than the right one
+	 */
+	static boolean buildLeft(Join op) {
+		return op.getLeft().getOutput().getTupleCount() < op.getRight().getOutput().getTupleCount();
+	}
+}
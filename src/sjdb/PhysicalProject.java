@@ -0,0 +1,51 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class implements a physical project, which keeps only the given
+ * attributes of the tuples of its input.
+ */
+public class PhysicalProject extends PhysicalOperator {
+	private int[] indexes;
+	
+	/**
+	 * Create a new project over an input
+	 * @param input Child operator
+	 * @param attributes Attributes to keep, those the input doesn't have are ignored
+	 */
+	public PhysicalProject(PhysicalOperator input, List<Attribute> attributes) {
+		this.inputs.add(input);
+		
+		for (Attribute attr : attributes) {
+			if (input.indexOf(attr) >= 0) this.attributes.add(input.getAttributes().get(input.indexOf(attr)));
+		}
+		this.indexes = new int[this.attributes.size()];
+		for (int i = 0; i < this.indexes.length; i++) {
+			this.indexes[i] = input.indexOf(this.attributes.get(i));
+		}
+		for (Attribute attr : input.getOrder()) {
+			if (this.attributes.contains(attr)) this.order.add(attr);
+		}
+	}
+	
+	public void open() {
+		this.inputs.get(0).open();
+	}
+	
+	protected Tuple fetch() {
+		Tuple t = this.inputs.get(0).next();
+		return (t == null) ? null : t.project(this.indexes);
+	}
+	
+	public void close() {
+		this.inputs.get(0).close();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "PROJECT " + this.attributes.toString() + " (" + this.inputs.get(0).toString() + ")";
+	}
+}
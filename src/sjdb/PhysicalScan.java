@@ -0,0 +1,55 @@
+package sjdb;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class implements a physical scan over the tuples of a NamedRelation
+ * held in a DataStore.
+ */
+public class PhysicalScan extends PhysicalOperator {
+	private NamedRelation relation;
+	private List<Tuple> tuples;
+	private Iterator<Tuple> iter;
+	
+	/**
+	 * Create a new scan of the given tuples
+	 * @param relation Relation being scanned
+	 * @param tuples Tuples of the relation
+	 */
+	public PhysicalScan(NamedRelation relation, List<Tuple> tuples) {
+		this(relation, tuples, null);
+	}
+	
+	/**
+	 * Create a new scan of the given tuples, which are in order
+	 * @param relation Relation being scanned
+	 * @param tuples Tuples of the relation
+	 * @param order Attribute the tuples are in ascending order of, or null if none
+	 */
+	public PhysicalScan(NamedRelation relation, List<Tuple> tuples, Attribute order) {
+		this.relation = relation;
+		this.tuples = tuples;
+		this.attributes.addAll(relation.getAttributes());
+		if (order != null) this.order.add(order);
+	}
+	
+	public void open() {
+		this.iter = this.tuples.iterator();
+	}
+	
+	protected Tuple fetch() {
+		return this.iter.hasNext() ? this.iter.next() : null;
+	}
+	
+	public void close() {
+		this.iter = null;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SCAN " + this.relation.toString();
+	}
+}
@@ -0,0 +1,50 @@
+package sjdb;
+
+/**
+ * This class implements a physical select, which passes on the tuples
+ * of its input that satisfy a predicate.
+ */
+public class PhysicalSelect extends PhysicalOperator {
+	private Predicate predicate;
+	private int left;
+	private int right;
+	
+	/**
+	 * Create a new select over an input
+	 * @param input Child operator
+	 * @param predicate Predicate the tuples have to satisfy
+	 */
+	public PhysicalSelect(PhysicalOperator input, Predicate predicate) {
+		this.inputs.add(input);
+		this.predicate = predicate;
+		this.attributes.addAll(input.getAttributes());
+		this.order.addAll(input.getOrder());
+		
+		this.left = indexOf(predicate.getLeftAttribute());
+		this.right = predicate.equalsValue() ? -1 : indexOf(predicate.getRightAttribute());
+	}
+	
+	public void open() {
+		this.inputs.get(0).open();
+	}
+	
+	protected Tuple fetch() {
+		Tuple t;
+		while ((t = this.inputs.get(0).next()) != null) {
+			String value = this.predicate.equalsValue() ? this.predicate.getRightValue() : t.get(this.right);
+			if (t.get(this.left).equals(value)) return t;
+		}
+		return null;
+	}
+	
+	public void close() {
+		this.inputs.get(0).close();
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "SELECT [" + this.predicate.toString() + "] (" + this.inputs.get(0).toString() + ")";
+	}
+}
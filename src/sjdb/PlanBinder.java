@@ -0,0 +1,90 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Function;
+
+/**
+ * This class copies a plan bottom up, with the predicates of its operators
+ * replaced, e.g. to bind the values of a query's parameters into a plan
+ * made for its shape. The copy's operators are its own, and haven't been
+ * estimated.
+ */
+class PlanBinder implements PlanVisitor {
+	private final Function<Predicate, Predicate> binding;
+	private final Deque<Operator> built = new ArrayDeque<Operator>();
+
+	/**
+	 * @param binding the predicate each predicate of the plan is replaced by
+	 */
+	private PlanBinder(Function<Predicate, Predicate> binding) {
+		this.binding = binding;
+	}
+
+	/**
+	 * Copy a plan with its predicates replaced
+	 * @param plan the plan to copy
+	 * @param binding the predicate each predicate of the plan is replaced by
+	 * @return the copy
+	 */
+	static Operator bind(Operator plan, Function<Predicate, Predicate> binding) {
+		PlanBinder binder = new PlanBinder(binding);
+		plan.accept(binder);
+		return binder.built.pop();
+	}
+
+	/**
+	 * Copy a plan with the values of the parameters of its query bound
+	 * @param plan the plan to copy
+	 * @param values the values of the parameters, by position
+	 * @return the copy
+	 */
+	static Operator bind(Operator plan, String[] values) {
+		return bind(plan, p -> p.bind(values));
+	}
+
+	/**
+	 * @param plan a plan
+	 * @return whether it has a predicate of the form attr=? that isn't bound
+	 */
+	static boolean hasParameters(Operator plan) {
+		Predicate p = (plan instanceof Select) ? ((Select) plan).getPredicate()
+				: (plan instanceof IndexScan) ? ((IndexScan) plan).getPredicate() : null;
+		if (p != null && p.isParameter()) return true;
+		if (plan.getInputs() == null) return false;
+		for (Operator input : plan.getInputs()) {
+			if (hasParameters(input)) return true;
+		}
+		return false;
+	}
+
+	public void visit(Scan op) {
+		this.built.push(new Scan((NamedRelation) op.getRelation()));
+	}
+
+	public void visit(IndexScan op) {
+		this.built.push(new IndexScan((NamedRelation) op.getRelation(), this.binding.apply(op.getPredicate()), op.getIndexType()));
+	}
+
+	public void visit(Project op) {
+		this.built.push(new Project(this.built.pop(), op.getAttributes()));
+	}
+
+	public void visit(Select op) {
+		this.built.push(new Select(this.built.pop(), this.binding.apply(op.getPredicate())));
+	}
+
+	public void visit(Product op) {
+		Operator right = this.built.pop(), left = this.built.pop();
+		this.built.push(new Product(left, right));
+	}
+
+	public void visit(Join op) {
+		Operator right = this.built.pop(), left = this.built.pop();
+		this.built.push(new Join(left, right, this.binding.apply(op.getPredicate())));
+	}
+
+	public void visit(IndexJoin op) {
+		this.built.push(new IndexJoin(this.built.pop(), (NamedRelation) op.getRelation(), this.binding.apply(op.getPredicate()), op.getIndexType()));
+	}
+}
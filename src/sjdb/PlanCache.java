@@ -0,0 +1,334 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class caches the plans the Optimiser makes, so that a query of a
+ * shape already optimised is only bound to its values, not optimised again.
+ *
+ * The shape of a query is what the Optimiser makes its plan from: the
+ * relations it scans, its predicates with the values of attr=value ones
+ * taken out as parameters, and the attributes it projects to. Relations
+ * and predicates are sorted, so queries listing them in different orders
+ * have the same shape. A cached plan is the one optimised for the values
+ * of the first query of its shape; later ones get the same plan with their
+ * own values in its predicates.
+ *
+ * The cache holds a bounded number of plans, evicting by an EvictionPolicy
+ * over its slots, LRU-2 unless given another, so that shapes seen once
+ * don't push out those seen again and again. Every plan is dropped once
+ * the version of the Catalogue moves on, e.g. when ANALYZE replaces its
+ * statistics.
+ *
+ * The cache may be shared by threads: the plans are optimised outside its
+ * latch, each by an Optimiser of its own.
+ */
+public class PlanCache {
+	/**
+	 * The number of plans held unless set
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final Catalogue catalogue;
+	private final CostModel model;
+	private final EvictionPolicy policy;
+
+	// the plan in each slot, the slot of each shape, and the empty slots
+	private final Entry[] entries;
+	private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+	private final Deque<Integer> free = new ArrayDeque<Integer>();
+	// the catalogue version the plans held were made against
+	private long version;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder savedNanos = new LongAdder();
+
+	/**
+	 * Create a plan cache of the default capacity
+	 * @param catalogue Catalogue the queries are over
+	 */
+	public PlanCache(Catalogue catalogue) {
+		this(catalogue, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a plan cache, optimising with the Estimator's default cost model
+	 * @param catalogue Catalogue the queries are over
+	 * @param capacity Number of plans held, at least 1
+	 */
+	public PlanCache(Catalogue catalogue, int capacity) {
+		this(catalogue, capacity, null, new LruKPolicy());
+	}
+
+	/**
+	 * Create a plan cache
+	 * @param catalogue Catalogue the queries are over
+	 * @param capacity Number of plans held, at least 1
+	 * @param model Cost model to optimise with, or null for the Estimator's default
+	 * @param policy Policy choosing which plan to evict
+	 */
+	public PlanCache(Catalogue catalogue, int capacity, CostModel model, EvictionPolicy policy) {
+		this.catalogue = catalogue;
+		this.model = model;
+		this.policy = policy;
+		this.entries = new Entry[Math.max(1, capacity)];
+		this.policy.init(this.entries.length);
+		for (int slot = 0; slot < this.entries.length; slot++) this.free.add(slot);
+		this.version = catalogue.getVersion();
+	}
+
+	/**
+	 * Optimise a query, or bind the cached plan of its shape to its values
+	 * @param query Query plan, e.g. from QueryParser
+	 * @return Optimised plan, whose operators are its own; those bound from a
+	 * cached plan haven't been estimated
+	 */
+	public Operator optimise(Operator query) {
+		long start = System.nanoTime();
+		Shape shape = new Shape(query);
+		Entry entry = lookup(shape.key);
+		if (entry != null) {
+			Operator plan = entry.bind(shape.values);
+			this.hits.increment();
+			this.savedNanos.add(Math.max(0, entry.nanos - (System.nanoTime() - start)));
+			return plan;
+		}
+
+		// read the version first, so a plan made while the catalogue changes is never held
+		this.misses.increment();
+		long version = this.catalogue.getVersion();
+		start = System.nanoTime();
+		Operator plan = ((this.model == null) ? new Optimiser(this.catalogue) : new Optimiser(this.catalogue, this.model)).optimise(query);
+		// hold a copy, so the caller's plan shares no operators with those bound from it
+		Entry made = Entry.make(shape, PlanBinder.bind(plan, p -> p), version, System.nanoTime() - start);
+		if (made != null) store(made);
+		return plan;
+	}
+
+	/**
+	 * Find the plan of a shape, dropping every plan if the catalogue has moved on
+	 * @return the entry, or null if there's none
+	 */
+	private synchronized Entry lookup(String key) {
+		invalidate();
+		Integer slot = this.slots.get(key);
+		if (slot == null) return null;
+		this.policy.accessed(slot);
+		return this.entries[slot];
+	}
+
+	/**
+	 * Hold a plan, in place of any of the same shape, evicting another if the cache is full
+	 */
+	private synchronized void store(Entry entry) {
+		invalidate();
+		if (entry.version != this.version) return;
+
+		Integer slot = this.slots.get(entry.key);
+		if (slot == null) slot = this.free.poll();
+		if (slot == null) {
+			slot = this.policy.victim(s -> true);
+			this.slots.remove(this.entries[slot].key);
+			this.policy.emptied(slot);
+			this.evictions.increment();
+		}
+		this.entries[slot] = entry;
+		this.slots.put(entry.key, slot);
+		this.policy.accessed(slot);
+	}
+
+	/**
+	 * Drop every plan if the version of the catalogue has moved on; the caller holds the latch
+	 */
+	private void invalidate() {
+		long current = this.catalogue.getVersion();
+		if (current == this.version) return;
+		clear();
+		this.version = current;
+	}
+
+	/**
+	 * Drop every plan
+	 */
+	public synchronized void clear() {
+		this.invalidations.add(this.slots.size());
+		for (int slot : this.slots.values()) {
+			this.entries[slot] = null;
+			this.policy.emptied(slot);
+			this.free.add(slot);
+		}
+		this.slots.clear();
+	}
+
+	/**
+	 * Return the number of plans held
+	 * @return Plans
+	 */
+	public synchronized int size() {
+		return this.slots.size();
+	}
+
+	/**
+	 * Return the number of queries bound to a cached plan
+	 * @return Hits
+	 */
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	/**
+	 * Return the number of queries optimised
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	/**
+	 * Return the fraction of queries bound to a cached plan
+	 * @return Hit ratio, 0 if nothing has been optimised
+	 */
+	public double getHitRatio() {
+		long hits = getHits(), total = hits + getMisses();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Return the number of plans evicted to make room for others
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return this.evictions.sum();
+	}
+
+	/**
+	 * Return the number of plans dropped because the catalogue moved on, or the cache was cleared
+	 * @return Invalidations
+	 */
+	public long getInvalidations() {
+		return this.invalidations.sum();
+	}
+
+	/**
+	 * Return the time saved by binding cached plans: what optimising each
+	 * took, less what looking it up and binding it took
+	 * @return Saved time, in nanoseconds
+	 */
+	public long getSavedNanos() {
+		return this.savedNanos.sum();
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return String.format("%d hits, %d misses (%.1f%%), %d evictions, %d invalidations, %.3f ms saved",
+				getHits(), getMisses(), 100 * getHitRatio(), getEvictions(), getInvalidations(), getSavedNanos() / 1e6);
+	}
+
+	/**
+	 * The shape of a query, and the values of its attr=value predicates in
+	 * the order of the sorted predicates
+	 */
+	private static class Shape implements PlanVisitor {
+		private final List<String> relations = new ArrayList<String>();
+		private final List<String[]> predicates = new ArrayList<String[]>();
+		private final String key;
+		private final String[] values;
+
+		private Shape(Operator query) {
+			query.accept(this);
+			Collections.sort(this.relations);
+			// stable, so predicates of the same shape keep their order
+			this.predicates.sort((x, y) -> x[0].compareTo(y[0]));
+
+			StringBuilder key = new StringBuilder(String.join(",", this.relations)).append('|');
+			this.values = new String[this.predicates.size()];
+			for (int p = 0; p < this.values.length; p++) {
+				key.append(this.predicates.get(p)[0]).append(',');
+				this.values[p] = this.predicates.get(p)[1];
+			}
+			key.append('|');
+			if (query instanceof Project) key.append(((Project) query).getAttributes());
+			this.key = key.toString();
+		}
+
+		private void add(Predicate p) {
+			if (p.isParameter()) {
+				this.predicates.add(new String[] {p.getLeftAttribute().getName() + "=?" + p.getParameter(), null});
+			} else if (p.equalsValue()) {
+				this.predicates.add(new String[] {p.getLeftAttribute().getName() + "=?", p.getRightValue()});
+			} else {
+				String left = p.getLeftAttribute().getName(), right = p.getRightAttribute().getName();
+				this.predicates.add(new String[] {(left.compareTo(right) < 0) ? left + "=" + right : right + "=" + left, null});
+			}
+		}
+
+		public void visit(Scan op) { this.relations.add(op.getRelation().toString()); }
+		public void visit(IndexScan op) {
+			this.relations.add(op.getRelation().toString());
+			add(op.getPredicate());
+		}
+		public void visit(Project op) {}
+		public void visit(Select op) { add(op.getPredicate()); }
+		public void visit(Product op) {}
+		public void visit(Join op) { add(op.getPredicate()); }
+		public void visit(IndexJoin op) {
+			this.relations.add(op.getRelation().toString());
+			add(op.getPredicate());
+		}
+	}
+
+	/**
+	 * A cached plan, and which parameter of its shape the value of each of its attr=value predicates is
+	 */
+	private static class Entry {
+		private final String key;
+		private final Operator plan;
+		private final HashMap<String, Integer> parameters;
+		private final long version;
+		private final long nanos;
+
+		private Entry(String key, Operator plan, HashMap<String, Integer> parameters, long version, long nanos) {
+			this.key = key;
+			this.plan = plan;
+			this.parameters = parameters;
+			this.version = version;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * @return the entry, or null if two parameters of the shape have the same attribute and value, so
+		 * the predicates of the plan can't be told apart to bind
+		 */
+		private static Entry make(Shape shape, Operator plan, long version, long nanos) {
+			HashMap<String, Integer> parameters = new HashMap<String, Integer>();
+			for (int p = 0; p < shape.values.length; p++) {
+				if (shape.values[p] == null) continue;
+				String predicate = shape.predicates.get(p)[0] + shape.values[p];
+				if (parameters.put(predicate, p) != null) return null;
+			}
+			return new Entry(shape.key, plan, parameters, version, nanos);
+		}
+
+		/**
+		 * @return a copy of the plan with the values of a query of its shape
+		 */
+		private Operator bind(String[] values) {
+			return PlanBinder.bind(this.plan, p -> {
+				if (!p.equalsValue() || p.isParameter()) return p;
+				Integer parameter = this.parameters.get(p.getLeftAttribute().getName() + "=?" + p.getRightValue());
+				return (parameter == null) ? p : new Predicate(p.getLeftAttribute(), values[parameter]);
+			});
+		}
+	}
+}
@@ -7,12 +7,17 @@ package sjdb;
  * only used by the toString() method; a future version of
  * Attribute which uses more expressive synopses may change this.
  * 
+ * A predicate of the form attr=? is a parameter of a prepared query,
+ * whose value is bound when it is executed; it is an attr=value
+ * predicate without a value until then.
+ * 
  * @author nmg
  */
 public class Predicate {
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private int parameter = -1;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -35,11 +40,46 @@ public class Predicate {
 	}
 
 	/**
-	 * Return true if this predicate is of the form attr=value
+	 * Create a predicate of the form attr=?
+	 * @param left
+	 * @param parameter the position of the parameter in the query, from 0
+	 */
+	public Predicate(Attribute left, int parameter) {
+		this.leftAttribute = left;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * Return true if this predicate is of the form attr=value, or attr=?
 	 * @return
 	 */
 	public boolean equalsValue() {
-		return this.rightValue != null;
+		return this.rightAttribute == null;
+	}
+	
+	/**
+	 * Return true if this predicate is of the form attr=?
+	 * @return
+	 */
+	public boolean isParameter() {
+		return this.parameter >= 0;
+	}
+	
+	/**
+	 * Return the position of the parameter for predicates of the form attr=?
+	 * @return parameter, or -1 if this predicate isn't a parameter
+	 */
+	public int getParameter() {
+		return this.parameter;
+	}
+	
+	/**
+	 * Bind a predicate of the form attr=? to its value
+	 * @param values the values of the parameters of the query, by position
+	 * @return the predicate attr=value, or this predicate if it isn't a parameter
+	 */
+	public Predicate bind(String[] values) {
+		return isParameter() ? new Predicate(this.leftAttribute, values[this.parameter]) : this;
 	}
 	
 	/**
@@ -60,7 +100,7 @@ public class Predicate {
 	
 	/**
 	 * Return VALUE for predicates of the form attr=VALUE
-	 * @return right value
+	 * @return right value, or null for predicates of the form attr=?
 	 */
 	public String getRightValue() {
 		return this.rightValue;
@@ -70,8 +110,10 @@ public class Predicate {
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
-		if (this.rightValue == null) {
+		if (this.rightAttribute != null) {
 			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
+		} else if (isParameter()) {
+			return this.leftAttribute.toString() + "=?";
 		} else {
 			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
 		}
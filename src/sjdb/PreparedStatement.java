@@ -0,0 +1,168 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a query with attr=? parameters, parsed and optimised once
+ * and then bound to the values of its parameters each time it's executed,
+ * without parsing or optimising it again.
+ *
+ * The plan it's bound into is generic: the Estimator takes the selectivity
+ * of each parameter to be 1/V(R,A), as its value isn't known. If a value
+ * bound is one of the most common values of its attribute, counted by
+ * ANALYZE, its selectivity may be far from that, so the query is optimised
+ * again with its values for that execution instead. The generic plan is
+ * optimised again once the version of the Catalogue moves on.
+ *
+ * A prepared statement may be bound by threads at once.
+ */
+public class PreparedStatement {
+	private final Catalogue catalogue;
+	private final CostModel model;
+	private final Operator query;
+	private final int parameterCount;
+	// the attribute of each parameter, by position
+	private final Attribute[] attributes;
+
+	// the generic plan, and the catalogue version it was optimised against
+	private Operator plan;
+	private long version;
+	private long binds;
+	private long replans;
+
+	/**
+	 * Prepare a query, optimising with the Estimator's default cost model
+	 * @param catalogue Catalogue the query is over
+	 * @param query Query, as QueryParser reads it, with attr=? parameters
+	 * @throws Exception if the query can't be parsed
+	 */
+	public PreparedStatement(Catalogue catalogue, String query) throws Exception {
+		this(catalogue, query, null);
+	}
+
+	/**
+	 * Prepare a query
+	 * @param catalogue Catalogue the query is over
+	 * @param query Query, as QueryParser reads it, with attr=? parameters
+	 * @param model Cost model to optimise with, or null for the Estimator's default
+	 * @throws Exception if the query can't be parsed
+	 */
+	public PreparedStatement(Catalogue catalogue, String query, CostModel model) throws Exception {
+		this.catalogue = catalogue;
+		this.model = model;
+		QueryParser parser = new QueryParser(catalogue, new StringReader(query));
+		this.query = parser.parse();
+		this.parameterCount = parser.getParameterCount();
+
+		this.attributes = new Attribute[this.parameterCount];
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		collect(this.query, predicates);
+		for (Predicate p : predicates) {
+			if (p.isParameter()) this.attributes[p.getParameter()] = p.getLeftAttribute();
+		}
+
+		this.version = catalogue.getVersion();
+		this.plan = optimise(this.query);
+	}
+
+	/**
+	 * Bind the values of the parameters into the plan of the query
+	 * @param values Values of the parameters, by position
+	 * @return Plan with the values in its predicates, whose operators are its own
+	 * @throws DatabaseException if there isn't a value for each parameter
+	 */
+	public Operator bind(String... values) throws DatabaseException {
+		if (values.length != this.parameterCount) {
+			throw new DatabaseException("Query has " + this.parameterCount + " parameters, but " + values.length + " values were bound");
+		}
+
+		Operator generic;
+		synchronized (this) {
+			this.binds++;
+			if (isMostCommon(values)) {
+				this.replans++;
+				generic = null;
+			} else {
+				long current = this.catalogue.getVersion();
+				if (current != this.version) {
+					this.version = current;
+					this.plan = optimise(this.query);
+				}
+				generic = this.plan;
+			}
+		}
+
+		// a custom plan for the values, optimised from the query with them bound
+		if (generic == null) return optimise(PlanBinder.bind(this.query, values));
+		return PlanBinder.bind(generic, values);
+	}
+
+	/**
+	 * @return whether a value is one of the most common values of its parameter's attribute
+	 */
+	private boolean isMostCommon(String[] values) {
+		for (int p = 0; p < values.length; p++) {
+			try {
+				ColumnStatistics stats = this.catalogue.getAttribute(this.attributes[p].getName()).getStatistics();
+				if (stats != null && stats.getFrequency(values[p]) >= 0) return true;
+			} catch (DatabaseException e) {
+				// an attribute not in the catalogue has no statistics
+			}
+		}
+		return false;
+	}
+
+	private Operator optimise(Operator query) {
+		return ((this.model == null) ? new Optimiser(this.catalogue) : new Optimiser(this.catalogue, this.model)).optimise(query);
+	}
+
+	/**
+	 * Collect the predicates of the selects of a parsed query
+	 */
+	private static void collect(Operator op, List<Predicate> predicates) {
+		if (op instanceof Select) predicates.add(((Select) op).getPredicate());
+		if (op.getInputs() == null) return;
+		for (Operator input : op.getInputs()) collect(input, predicates);
+	}
+
+	/**
+	 * Return the generic plan the values of the parameters are bound into
+	 * @return Plan, with attr=? predicates
+	 */
+	public synchronized Operator getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Return the number of attr=? parameters of the query
+	 * @return Parameters
+	 */
+	public int getParameterCount() {
+		return this.parameterCount;
+	}
+
+	/**
+	 * Return the number of times values have been bound
+	 * @return Binds
+	 */
+	public synchronized long getBindCount() {
+		return this.binds;
+	}
+
+	/**
+	 * Return the number of binds optimised again, as a value was one of the most common
+	 * @return Replans
+	 */
+	public synchronized long getReplanCount() {
+		return this.replans;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return getPlan().toString();
+	}
+}
@@ -37,6 +37,19 @@ public class Project extends UnaryOperator {
 		visitor.visit(this);
 	}
 
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getParameters()
+	 */
+	@Override
+	protected String getParameters() {
+		String ret = "";
+		Iterator<Attribute> iter = this.attributes.iterator();
+		while (iter.hasNext()) {
+			ret += iter.next().getName() + (iter.hasNext() ? "," : "");
+		}
+		return ret;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -22,6 +22,10 @@ import java.util.regex.Matcher;
  * 
  * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name>=?
+ * 
+ * where ? is a parameter of a prepared query, numbered from 0 in the
+ * order they appear, whose value is bound when the query is executed.
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
  * may be omitted; the other lines are required.
@@ -41,6 +45,7 @@ import java.util.regex.Matcher;
 public class QueryParser {
 	private BufferedReader reader;
 	private Catalogue catalogue;
+	private int parameters;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
@@ -157,10 +162,13 @@ public class QueryParser {
 	private Operator buildSelect(String pred, Operator op) {
 		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
 		Matcher m = p.matcher(pred);
+		Matcher parameter = Pattern.compile("(\\w+)=\\?").matcher(pred);
 		Predicate ret;
 		
 		if (m.matches()) {
 			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+		} else if (parameter.matches()) {
+			ret = new Predicate(new Attribute(parameter.group(1)), this.parameters++);
 		} else {
 			String[] atts = pred.split("=");
 			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
@@ -169,6 +177,14 @@ public class QueryParser {
 		return new Select(op, ret);
 	}
 	
+	/**
+	 * Return the number of attr=? parameters in the query parsed
+	 * @return
+	 */
+	public int getParameterCount() {
+		return this.parameters;
+	}
+	
 	/**
 	 * Parse a "SELECT ..." line and build the corresponding project operator.
 	 * @param line
@@ -0,0 +1,67 @@
+package sjdb;
+
+/**
+ * This class records what happened while a query plan was executed.
+ */
+public class QueryStats {
+	private long tuples;
+	private long elapsedNanos;
+	private long spilledBytes;
+	
+	/**
+	 * Return the number of tuples produced by the plan
+	 * @return Tuples produced
+	 */
+	public long getTupleCount() {
+		return this.tuples;
+	}
+	
+	/**
+	 * Return the wall-clock time taken to execute the plan
+	 * @return Time taken, in nanoseconds
+	 */
+	public long getElapsedNanos() {
+		return this.elapsedNanos;
+	}
+	
+	/**
+	 * Return the rate at which the plan produced its tuples
+	 * @return Tuples per second
+	 */
+	public double getThroughput() {
+		return (this.elapsedNanos == 0) ? 0 : this.tuples * 1e9 / this.elapsedNanos;
+	}
+	
+	/**
+	 * Return the number of bytes the plan's operators spilled to disk
+	 * because they ran out of memory
+	 * @return Bytes spilled
+	 */
+	public long getSpilledBytes() {
+		return this.spilledBytes;
+	}
+	
+	void addTuple() {
+		this.tuples++;
+	}
+	
+	void addTuples(long count) {
+		this.tuples += count;
+	}
+	
+	void setElapsedNanos(long elapsedNanos) {
+		this.elapsedNanos = elapsedNanos;
+	}
+	
+	void setSpilledBytes(long spilledBytes) {
+		this.spilledBytes = spilledBytes;
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.tuples + " tuples in " + (this.elapsedNanos / 1000) + "us (" + Math.round(getThroughput()) + " tuples/s)" + 
+				(this.spilledBytes == 0 ? "" : ", " + this.spilledBytes + " bytes spilled");
+	}
+}
@@ -12,12 +12,13 @@ import java.util.ArrayList;
  */
 public class Relation {
 	private List<Attribute> attributes;
-	private int size;
+	private long size;
+	private Attribute order;
 
 	/**
 	 * Create a new relation with the given tuple count
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
 		this.size = size;
 	}
@@ -56,7 +57,7 @@ public class Relation {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute, this.size));
 		} else {
 			this.attributes.add(attribute);	
 		}
@@ -67,10 +68,46 @@ public class Relation {
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
+	/**
+	 * Set the tuple count for this relation, e.g. once it has been counted
+	 * 
+	 * @param size the tuples
+	 */
+	void setTupleCount(long size) {
+		this.size = size;
+	}
+	
+	/**
+	 * Return the attribute the tuples of this relation are in ascending 
+	 * order of, as far as the Estimator knows
+	 * 
+	 * @return the attribute, or null if they're in no known order
+	 */
+	public Attribute getOrder() {
+		return order;
+	}
+	
+	/**
+	 * Set the attribute the tuples of this relation are in ascending order of
+	 * 
+	 * @param order one of the attributes, or null for no known order
+	 */
+	void setOrder(Attribute order) {
+		this.order = order;
+	}
+	
+	/**
+	 * @param attribute an attribute, compared by name
+	 * @return whether the tuples are known to be in ascending order of it
+	 */
+	public boolean isOrderedOn(Attribute attribute) {
+		return this.order != null && this.order.equals(attribute);
+	}
+	
 	
 	/**
 	 * Render this relation and its statistics in a form suitable for debugging 
@@ -3,6 +3,7 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.Random;
 
 /**
  * @author nmg
@@ -43,6 +44,20 @@ public class SJDB {
 		System.out.println(optPlan.toString());
 		
 		System.out.println("CheapEST cost = " + est.getCost(optPlan));
+		System.out.println("Estimates memoised: " + opt.getEstimator().getMemoHits() + " hits, " + opt.getEstimator().getMemoMisses() + " misses");
+		
+		System.out.println("-----------------------------  EXECUTING  --------------------------------------------------------");
+		
+		// generate tuples to match the catalogue and run both plans over them
+		DataStore store = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) store.generate(reln, random);
+		
+		Executor exec = new Executor(store);
+		exec.execute(plan);
+		System.out.println("Canonical plan: " + exec.getStats());
+		exec.execute(optPlan);
+		System.out.println("Optimised plan: " + exec.getStats());
 	}
 
 }
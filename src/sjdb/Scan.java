@@ -45,6 +45,14 @@ public class Scan extends Operator {
 		return this.relation;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getParameters()
+	 */
+	@Override
+	protected String getParameters() {
+		return this.relation.toString();
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -0,0 +1,122 @@
+package sjdb;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is the search budget of an optimisation: the longest the
+ * Optimiser may take, from when it starts, and the most candidate plans
+ * it may build and estimate. Once either runs out, it stops searching and
+ * returns the cheapest plan it has found. It also counts the candidate
+ * plans considered, those of them pruned before they were built, and
+ * whether the budget ran out.
+ *
+ * The tasks of a parallel search count against one budget at once.
+ */
+public class SearchBudget {
+	/**
+	 * A budget so big that the search is never stopped.
+	 */
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	private final long nanos;
+	private final long plans;
+	private volatile long deadline = UNLIMITED;
+	private final LongAdder explored = new LongAdder();
+	private final LongAdder pruned = new LongAdder();
+	private volatile boolean exhausted;
+
+	/**
+	 * @param nanos Longest the optimisation may take, in nanoseconds
+	 * @param plans Most candidate plans it may build
+	 */
+	public SearchBudget(long nanos, long plans) {
+		this.nanos = nanos;
+		this.plans = plans;
+	}
+
+	/**
+	 * Create a budget of time only
+	 * @param nanos Longest the optimisation may take, in nanoseconds
+	 * @return Budget
+	 */
+	public static SearchBudget ofNanos(long nanos) {
+		return new SearchBudget(nanos, UNLIMITED);
+	}
+
+	/**
+	 * Create a budget of candidate plans only
+	 * @param plans Most candidate plans the optimisation may build
+	 * @return Budget
+	 */
+	public static SearchBudget ofPlans(long plans) {
+		return new SearchBudget(UNLIMITED, plans);
+	}
+
+	/**
+	 * Return whether the budget never stops a search
+	 * @return Whether neither the time nor the plans are limited
+	 */
+	public boolean isUnlimited() {
+		return this.nanos == UNLIMITED && this.plans == UNLIMITED;
+	}
+
+	/**
+	 * Return the number of candidate plans considered so far
+	 * @return Plans
+	 */
+	public long getPlansExplored() {
+		return this.explored.sum();
+	}
+
+	/**
+	 * Return the number of candidate plans considered so far that were abandoned,
+	 * as they cost more than a plan already found
+	 * @return Plans
+	 */
+	public long getPlansPruned() {
+		return this.pruned.sum();
+	}
+
+	/**
+	 * Return whether the budget has run out, so the search stopped before it was complete
+	 * @return Whether the time or the plans ran out
+	 */
+	public boolean isExhausted() {
+		return this.exhausted;
+	}
+
+	/**
+	 * Start the clock, and the count of plans
+	 */
+	void start() {
+		long now = System.nanoTime();
+		this.deadline = (this.nanos == UNLIMITED || now + this.nanos < now) ? UNLIMITED : now + this.nanos;
+		this.explored.reset();
+		this.pruned.reset();
+		this.exhausted = false;
+	}
+
+	/**
+	 * Count a candidate plan considered
+	 */
+	void explored() {
+		this.explored.increment();
+	}
+
+	/**
+	 * Count a candidate plan pruned
+	 */
+	void pruned() {
+		this.pruned.increment();
+	}
+
+	/**
+	 * @return whether the search should stop, now that the budget has run out
+	 */
+	boolean check() {
+		if (!this.exhausted) {
+			this.exhausted = this.explored.sum() >= this.plans || (this.deadline != UNLIMITED && System.nanoTime() >= this.deadline);
+		}
+		return this.exhausted;
+	}
+}
@@ -27,6 +27,11 @@ public class Select extends UnaryOperator {
 		visitor.visit(this);
 	}
 	
+	@Override
+	protected String getParameters() {
+		return this.predicate.toString();
+	}
+	
 	public String toString() {
 		return "SELECT [" + this.predicate.toString() + "] (" + getInput().toString() + ")";
 	}
@@ -0,0 +1,223 @@
+package sjdb;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a temporary file of fixed-width rows of ints, such as
+ * dictionary codes, that an operator spills to disk when its input doesn't
+ * fit in memory; or of tuples, each value as its length and UTF-8 bytes,
+ * so that spilling them doesn't keep their values in memory. A file is
+ * read back the way it was written.
+ *
+ * Rows are written through a direct buffer to a FileChannel, then, once
+ * the file has been rewound, read back in the same order. The file is
+ * only created once the first row is written, and deleted when it's closed.
+ */
+public class SpillFile {
+	private static final int BUFFER_BYTES = 64 * 1024;
+
+	private final int width;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long rows;
+	private long bytes;
+	private boolean reading;
+
+	/**
+	 * Create a new, empty spill file
+	 * @param width Number of ints in each row
+	 */
+	public SpillFile(int width) {
+		this.width = width;
+	}
+
+	/**
+	 * Append a row
+	 * @param row Values of the row
+	 */
+	public void write(int[] row) {
+		ensureSpace(this.width * 4);
+		for (int c = 0; c < this.width; c++) this.buffer.putInt(row[c]);
+		this.rows++;
+		this.bytes += this.width * 4;
+	}
+
+	/**
+	 * Append a row of some columns
+	 * @param columns Columns holding the values of the row
+	 * @param row Position of the row in the columns
+	 */
+	public void write(int[][] columns, int row) {
+		ensureSpace(this.width * 4);
+		for (int c = 0; c < this.width; c++) this.buffer.putInt(columns[c][row]);
+		this.rows++;
+		this.bytes += this.width * 4;
+	}
+
+	/**
+	 * Append a tuple, after the number of bytes it takes up
+	 * @param t Tuple of as many values as the rows are wide
+	 */
+	public void write(Tuple t) {
+		byte[][] values = new byte[this.width][];
+		int length = 0;
+		for (int c = 0; c < this.width; c++) {
+			values[c] = t.get(c).getBytes(StandardCharsets.UTF_8);
+			length += 4 + values[c].length;
+		}
+
+		ensureSpace(4 + length);
+		this.buffer.putInt(length);
+		for (byte[] value : values) {
+			this.buffer.putInt(value.length);
+			this.buffer.put(value);
+		}
+		this.rows++;
+		this.bytes += 4 + length;
+	}
+
+	/**
+	 * Finish writing, and go back to the first row to read the rows back
+	 */
+	public void rewind() {
+		if (this.channel == null) return;
+		try {
+			if (!this.reading) flush();
+			this.channel.position(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.buffer.clear();
+		this.buffer.flip();
+		this.reading = true;
+	}
+
+	/**
+	 * Read the next row
+	 * @param row Array to read the values of the row into
+	 * @return Whether there was a row left to read
+	 */
+	public boolean read(int[] row) {
+		if (!fill(this.width * 4)) return false;
+		for (int c = 0; c < this.width; c++) row[c] = this.buffer.getInt();
+		return true;
+	}
+
+	/**
+	 * Read the next row into some columns
+	 * @param columns Columns to read the values of the row into
+	 * @param row Position of the row in the columns
+	 * @return Whether there was a row left to read
+	 */
+	public boolean read(int[][] columns, int row) {
+		if (!fill(this.width * 4)) return false;
+		for (int c = 0; c < this.width; c++) columns[c][row] = this.buffer.getInt();
+		return true;
+	}
+
+	/**
+	 * Read the next tuple
+	 * @return Tuple, or null if there was none left to read
+	 */
+	public Tuple read() {
+		if (!fill(4) || !fill(4 + this.buffer.getInt(this.buffer.position()))) return null;
+		this.buffer.getInt();
+
+		String[] values = new String[this.width];
+		for (int c = 0; c < this.width; c++) {
+			byte[] value = new byte[this.buffer.getInt()];
+			this.buffer.get(value);
+			values[c] = new String(value, StandardCharsets.UTF_8);
+		}
+		return new Tuple(values);
+	}
+
+	/**
+	 * Return the number of rows written
+	 * @return Rows
+	 */
+	public long getRowCount() {
+		return this.rows;
+	}
+
+	/**
+	 * Return the number of bytes written
+	 * @return Bytes
+	 */
+	public long getByteCount() {
+		return this.bytes;
+	}
+
+	/**
+	 * Delete the file
+	 */
+	public void close() {
+		if (this.channel == null) return;
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Make sure the buffer has room for another row, writing it out if not
+	 * @param bytes Bytes the row takes up
+	 */
+	private void ensureSpace(int bytes) {
+		try {
+			if (this.channel == null) {
+				Path path = Files.createTempFile("sjdb-spill", ".tmp");
+				this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.DELETE_ON_CLOSE);
+				this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, bytes));
+			} else if (this.buffer.remaining() < bytes) {
+				flush();
+				// a tuple may be longer than the buffer
+				if (this.buffer.capacity() < bytes) this.buffer = ByteBuffer.allocateDirect(bytes);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) this.channel.write(this.buffer);
+		this.buffer.clear();
+	}
+
+	/**
+	 * Make sure the buffer holds another whole row, reading more of the file if not
+	 * @param bytes Bytes the row takes up
+	 * @return Whether there was a row left to read
+	 */
+	private boolean fill(int bytes) {
+		if (this.channel == null) return false;
+		if (this.buffer.remaining() >= bytes) return true;
+		try {
+			if (this.buffer.capacity() < bytes) {
+				// a tuple may be longer than the buffer
+				ByteBuffer larger = ByteBuffer.allocateDirect(bytes);
+				larger.put(this.buffer);
+				this.buffer = larger;
+			} else {
+				this.buffer.compact();
+			}
+			while (this.buffer.hasRemaining() && this.channel.read(this.buffer) > 0) {
+				// keep reading until the buffer is full or the file runs out
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.buffer.flip();
+		return this.buffer.remaining() >= bytes;
+	}
+}
@@ -0,0 +1,82 @@
+package sjdb;
+
+/**
+ * This class is one partition of both inputs of a grace hash join, spilled
+ * to disk: the rows of the build and the probe inputs whose join keys hash
+ * to the same partition, so that the partition can be joined on its own.
+ * 
+ * A partition whose build rows still don't fit in memory is partitioned 
+ * again, on other bits of the hash, up to MAX_LEVEL times; beyond that its
+ * keys are too skewed to split, and it is joined in memory regardless.
+ */
+class SpillPartition {
+	/**
+	 * Number of partitions an input is split into at a time.
+	 */
+	static final int FANOUT = 16;
+	/**
+	 * Most times a partition is split again.
+	 */
+	static final int MAX_LEVEL = 3;
+	
+	final SpillFile build;
+	final SpillFile probe;
+	final int level;
+	
+	private SpillPartition(int buildWidth, int probeWidth, int level) {
+		this.build = new SpillFile(buildWidth);
+		this.probe = new SpillFile(probeWidth);
+		this.level = level;
+	}
+	
+	/**
+	 * Create a set of empty partitions
+	 * @param buildWidth Number of columns of the build input
+	 * @param probeWidth Number of columns of the probe input
+	 * @param level Number of times the rows have been partitioned before
+	 * @return FANOUT partitions
+	 */
+	static SpillPartition[] create(int buildWidth, int probeWidth, int level) {
+		SpillPartition[] ret = new SpillPartition[FANOUT];
+		for (int i = 0; i < FANOUT; i++) ret[i] = new SpillPartition(buildWidth, probeWidth, level);
+		return ret;
+	}
+	
+	/**
+	 * Return the partition a join key goes to; each level uses a different hash,
+	 * and none of them the low bits the hash tables of the partitions use
+	 * @param key Dictionary code of the join value, or the hash code of the value itself
+	 * @param level Number of times the rows have been partitioned before
+	 * @return Partition, from 0 to FANOUT - 1
+	 */
+	static int of(int key, int level) {
+		int h = (key ^ (level * 0x27D4EB2F)) * 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		return h >>> 28;
+	}
+	
+	/**
+	 * Return whether joining the partition can produce nothing
+	 * @return Whether either side is empty
+	 */
+	boolean isEmpty() {
+		return this.build.getRowCount() == 0 || this.probe.getRowCount() == 0;
+	}
+	
+	/**
+	 * Return the number of bytes spilled to the partition
+	 * @return Bytes
+	 */
+	long getByteCount() {
+		return this.build.getByteCount() + this.probe.getByteCount();
+	}
+	
+	/**
+	 * Delete the files of both sides
+	 */
+	void close() {
+		this.build.close();
+		this.probe.close();
+	}
+}
@@ -0,0 +1,70 @@
+package sjdb;
+
+import java.util.Arrays;
+
+/**
+ * This class represents a single tuple flowing through a physical query
+ * plan. The values are kept as strings, in the order of the attributes
+ * of the physical operator that produced the tuple.
+ */
+public class Tuple {
+	private final String[] values;
+
+	/**
+	 * Create a new tuple with the given values
+	 * @param values Values of the tuple, in attribute order
+	 */
+	public Tuple(String[] values) {
+		this.values = values;
+	}
+
+	/**
+	 * Return the value at the given position
+	 * @param index Position of the attribute
+	 * @return Value of the attribute
+	 */
+	public String get(int index) {
+		return this.values[index];
+	}
+
+	/**
+	 * Return the number of values in this tuple
+	 * @return Number of values
+	 */
+	public int size() {
+		return this.values.length;
+	}
+
+	/**
+	 * Create a new tuple with the values of this tuple followed by 
+	 * those of another
+	 * @param right Tuple whose values go after those of this tuple
+	 * @return Concatenated tuple
+	 */
+	public Tuple concat(Tuple right) {
+		String[] ret = Arrays.copyOf(this.values, this.values.length + right.values.length);
+		System.arraycopy(right.values, 0, ret, this.values.length, right.values.length);
+		return new Tuple(ret);
+	}
+
+	/**
+	 * Create a new tuple with the values at the given positions
+	 * @param indexes Positions of the values to keep, in order
+	 * @return Projected tuple
+	 */
+	public Tuple project(int[] indexes) {
+		String[] ret = new String[indexes.length];
+		for (int i = 0; i < indexes.length; i++) {
+			ret[i] = this.values[indexes[i]];
+		}
+		return new Tuple(ret);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.join(",", this.values);
+	}
+}
@@ -0,0 +1,45 @@
+package sjdb;
+
+/**
+ * This class implements the cost model the Estimator has always used: an
+ * operator costs as many tuples as it outputs, except for a Product, which
+ * costs the pages a block nested loop join reads, and the index look ups,
+ * which cost the index pages they read as well.
+ */
+public class TupleCostModel implements CostModel {
+
+	public long scan(Relation output) {
+		return output.getTupleCount();
+	}
+
+	public long indexScan(IndexType type, Relation relation, Relation output) {
+		// the INDEX pages read to find the entries with the value, and one read per tuple
+		return Estimator.add(Estimator.getIndexProbeCost(type, relation.getTupleCount(), output.getTupleCount()), output.getTupleCount());
+	}
+
+	public long project(Relation input, Relation output) {
+		return output.getTupleCount();
+	}
+
+	public long select(Relation input, Relation output) {
+		return output.getTupleCount();
+	}
+
+	public long product(Relation left, Relation right, Relation output, int bufferPages) {
+		// a PRODUCT is a block nested loop join, which reads the left pages once and the
+		// right pages once per block of B left pages: B(R) + ceil(B(R) / B) * B(S);
+		// unless the right pages fit in the buffer with room for a block, when they're only read once
+		long leftPages = Estimator.getPageCount(left), rightPages = Estimator.getPageCount(right);
+		return (rightPages < bufferPages) ? Estimator.add(leftPages, rightPages)
+				: Estimator.add(leftPages, Estimator.multiply((leftPages + bufferPages - 1) / bufferPages, rightPages));
+	}
+
+	public long join(Relation left, Relation right, Relation output, int bufferPages, boolean merged) {
+		return output.getTupleCount();
+	}
+
+	public long indexJoin(IndexType type, Relation outer, Relation inner, long matches, Relation output) {
+		long probe = Estimator.getIndexProbeCost(type, inner.getTupleCount(), matches);
+		return Estimator.add(Estimator.multiply(outer.getTupleCount(), probe), output.getTupleCount());
+	}
+}
@@ -0,0 +1,220 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sjdb.Analyzer;
+import sjdb.Attribute;
+import sjdb.Catalogue;
+import sjdb.ColumnStatistics;
+import sjdb.DataStore;
+import sjdb.Estimator;
+import sjdb.ExecutionMode;
+import sjdb.Executor;
+import sjdb.HyperLogLog;
+import sjdb.Join;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.Predicate;
+import sjdb.QueryParser;
+import sjdb.Scan;
+import sjdb.Select;
+import sjdb.Tuple;
+
+public class AnalyzeTest {
+
+	// test the sketch counts distinct values to within a few percent, however many there are
+	@Test
+	public void testHyperLogLog() {
+		System.out.println("\n===========  testing HyperLogLog  ===========\n");
+		for (int n : new int[] {10, 1000, 100000, 1000000}) {
+			HyperLogLog sketch = new HyperLogLog();
+			// every value added three times
+			for (int i = 0; i < 3 * n; i++) sketch.add("v" + (i % n));
+			System.out.println(n + " ===> " + sketch);
+			assertEquals(n, sketch.estimate(), Math.max(1, n * 0.05));
+		}
+	}
+
+	// test ANALYZE finds the common department of a skewed dept, and selects on it are estimated from it
+	@Test
+	public void testSkewedSelect() throws Exception {
+		System.out.println("\n===========  testing ANALYZE of a skewed attribute  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Project", 20000);
+		cat.createAttribute("Project", "projid", 20000);
+		cat.createAttribute("Project", "dept", 500);
+
+		// two fifths of the projects are in department 0, the rest spread over 1..499
+		Random random = new Random(3211);
+		List<Tuple> data = new ArrayList<>();
+		Set<String> depts = new HashSet<>();
+		int common = 0, rare = 0;
+		for (int i = 0; i < 20000; i++) {
+			String dept = (random.nextInt(5) < 2) ? "0" : Integer.toString(1 + random.nextInt(499));
+			data.add(new Tuple(new String[] {Integer.toString(i), dept}));
+			depts.add(dept);
+			if (dept.equals("0")) common++;
+			if (dept.equals("17")) rare++;
+		}
+		DataStore store = new DataStore();
+		store.insert(cat.getRelation("Project"), data);
+
+		Operator selectCommon = select(cat, "dept", "0");
+		Operator selectRare = select(cat, "dept", "17");
+		new Estimator().getCost(selectCommon);
+		long uniform = selectCommon.getOutput().getTupleCount();
+
+		new Analyzer(cat, store).analyze();
+		Attribute dept = cat.getAttribute("dept");
+		ColumnStatistics stats = dept.getStatistics();
+		System.out.println("dept " + stats);
+
+		assertEquals(depts.size(), dept.getValueCount(), depts.size() * 0.05);
+		assertEquals(20000, cat.getRelation("Project").getTupleCount());
+		assertEquals("0", stats.getMostCommonValues().get(0));
+		assertEquals((double) common / 20000, stats.getFrequency("0"), 1e-9);
+		assertNotNull(stats.getHistogram());
+		// projid is unique, so has no common values
+		assertTrue(cat.getAttribute("projid").getStatistics().getMostCommonValues().isEmpty());
+
+		new Estimator().getCost(selectCommon);
+		new Estimator().getCost(selectRare);
+		long commonEstimate = selectCommon.getOutput().getTupleCount();
+		long rareEstimate = selectRare.getOutput().getTupleCount();
+		System.out.println("dept=\"0\": " + common + " tuples, estimated " + commonEstimate + " (uniformly " + uniform + ")");
+		System.out.println("dept=\"17\": " + rare + " tuples, estimated " + rareEstimate);
+		assertEquals(common, commonEstimate);
+		assertEquals(rare, rareEstimate, rare);
+		assertTrue(uniform < common / 10);
+	}
+
+	// test selects on correlated attributes are estimated over the sample, and by the formulas without one
+	@Test
+	public void testCorrelatedSelects() throws Exception {
+		System.out.println("\n===========  testing sampled estimates of correlated selects  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Project", 50000);
+		cat.createAttribute("Project", "projid", 50000);
+		cat.createAttribute("Project", "projname", 100);
+		cat.createAttribute("Project", "dept", 100);
+
+		// every project of a department has the same name
+		Random random = new Random(3211);
+		List<Tuple> data = new ArrayList<>();
+		int actual = 0;
+		for (int i = 0; i < 50000; i++) {
+			int dept = random.nextInt(100);
+			data.add(new Tuple(new String[] {Integer.toString(i), "name" + dept, Integer.toString(dept)}));
+			if (dept == 5) actual++;
+		}
+		DataStore store = new DataStore();
+		store.insert(cat.getRelation("Project"), data);
+
+		Operator plan = new Select(select(cat, "dept", "5"), new Predicate(new Attribute("projname"), "name5"));
+		Estimator est = new Estimator();
+		est.getCost(plan);
+		long independent = plan.getOutput().getTupleCount();
+
+		Analyzer analyzer = new Analyzer(cat, store);
+		analyzer.setSampleSize(5000);
+		analyzer.analyze();
+		assertEquals(5000, cat.getRelation("Project").getSample().size());
+
+		est.getCost(plan);
+		long sampled = plan.getOutput().getTupleCount();
+		est.setSampling(false);
+		est.getCost(plan);
+		long unsampled = plan.getOutput().getTupleCount();
+		System.out.println(actual + " tuples, estimated " + sampled + " over the sample, " + unsampled + " without it, " + independent + " before ANALYZE");
+
+		assertTrue(independent * 20 < actual);
+		assertTrue(unsampled * 20 < actual);
+		assertEquals(actual, sampled, actual * 0.2);
+		assertEquals(1, plan.getOutput().getAttribute(new Attribute("projname")).getValueCount());
+
+		// no sampled tuple has both values, so the formulas are used
+		est.setSampling(true);
+		plan = new Select(select(cat, "dept", "5"), new Predicate(new Attribute("projname"), "name6"));
+		est.getCost(plan);
+		assertEquals(unsampled, plan.getOutput().getTupleCount());
+	}
+
+	// test a join on skewed attributes is estimated as the large join it is, so it's put off to last
+	@Test
+	public void testSkewedJoinOrder() throws Exception {
+		System.out.println("\n===========  testing join order on skewed attributes  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Employee", 2000);
+		cat.createAttribute("Employee", "empid", 2000);
+		cat.createAttribute("Employee", "grade", 10);
+		cat.createAttribute("Employee", "edept", 100);
+		cat.createRelation("Project", 2000);
+		cat.createAttribute("Project", "pdept", 100);
+		cat.createAttribute("Project", "site", 40);
+		cat.createRelation("Site", 2000);
+		cat.createAttribute("Site", "siteid", 40);
+		cat.createAttribute("Site", "region", 20);
+
+		// half of the employees and of the projects are in department 0
+		Random random = new Random(3211);
+		DataStore store = new DataStore();
+		for (NamedRelation reln : cat.getRelations()) store.generate(reln, random);
+		skew(store, cat.getRelation("Employee"), 2, random);
+		skew(store, cat.getRelation("Project"), 0, random);
+
+		String query = "SELECT empid, siteid\nFROM Employee, Project, Site\nWHERE edept=pdept, site=siteid, grade=\"1\", region=\"1\"\n";
+		Operator uniform = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		new Analyzer(cat, store).analyze();
+		Operator analysed = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		System.out.println(uniform);
+		System.out.println(analysed);
+
+		Executor exec = new Executor(store);
+		List<Tuple> expected = exec.execute(uniform, ExecutionMode.ROW);
+		List<Tuple> actual = exec.execute(analysed, ExecutionMode.ROW);
+		// the tuples out of the first join of each plan
+		int uniformJoin = exec.execute(firstJoin(uniform), ExecutionMode.ROW).size();
+		int analysedJoin = exec.execute(firstJoin(analysed), ExecutionMode.ROW).size();
+		System.out.println(expected.size() + " tuples; first join " + uniformJoin + " tuples, analysed " + analysedJoin);
+
+		assertEquals(expected.size(), actual.size());
+		assertTrue(analysedJoin * 10 < uniformJoin);
+	}
+
+	// the join with no join below it
+	private static Operator firstJoin(Operator op) {
+		if (op.getInputs() == null) return null;
+		for (Operator input : op.getInputs()) {
+			Operator join = firstJoin(input);
+			if (join != null) return join;
+		}
+		return (op instanceof Join) ? op : null;
+	}
+
+	private static Operator select(Catalogue cat, String attr, String value) throws Exception {
+		Scan scan = new Scan(cat.getRelation("Project"));
+		return new Select(scan, new Predicate(new Attribute(attr), value));
+	}
+
+	// put half the tuples of a generated relation in department 0
+	private static void skew(DataStore store, NamedRelation reln, int attr, Random random) throws Exception {
+		List<Tuple> data = new ArrayList<>();
+		for (Tuple t : store.getTuples(reln)) {
+			String[] values = new String[t.size()];
+			for (int a = 0; a < values.length; a++) values[a] = t.get(a);
+			if (random.nextBoolean()) values[attr] = "0";
+			data.add(new Tuple(values));
+		}
+		store.insert(reln, data);
+	}
+}
@@ -0,0 +1,136 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sjdb.BPlusTree;
+import sjdb.BufferPool;
+import sjdb.Catalogue;
+import sjdb.DataStore;
+import sjdb.Estimator;
+import sjdb.ExecutionMode;
+import sjdb.Executor;
+import sjdb.HeapFile;
+import sjdb.Index;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PhysicalPlanner;
+import sjdb.QueryParser;
+import sjdb.Tuple;
+
+public class BPlusTreeTest {
+
+	// test looking values up finds every tuple with them, including a value spread over many leaves
+	@Test
+	public void testLookup() throws Exception {
+		System.out.println("\n===========  testing B+tree lookup  ===========\n");
+		List<String[]> values = new ArrayList<>();
+		for (int i = 0; i < 30000; i++) {
+			values.add(new String[] {Integer.toString(i), (i % 6 == 0) ? "hot" : Integer.toString(i * 7919 % 1000)});
+		}
+		HeapFile heap = HeapFile.write(tempFile(".heap"), 2, values.iterator());
+		BufferPool pool = new BufferPool(64);
+		BPlusTree index = BPlusTree.build(tempFile(".index"), heap, 1, pool);
+		System.out.println(index.getHeight() + " levels, " + index.getLeafCount() + " leaves ===> " + pool);
+
+		assertEquals(30000, index.getEntryCount());
+		assertTrue(index.getHeight() > 1);
+
+		for (String key : new String[] {"hot", "0", "999", "500", "1000", ""}) {
+			List<String> expected = new ArrayList<>();
+			for (String[] v : values) if (v[1].equals(key)) expected.add(v[0] + "," + v[1]);
+
+			List<String> actual = new ArrayList<>();
+			Index.Cursor cursor = index.seek(key);
+			while (cursor.next()) {
+				ByteBuffer page = heap.getPage(cursor.getPage());
+				actual.add(HeapFile.decode(page, HeapFile.getRecordOffset(page, cursor.getSlot()), 2).toString());
+				heap.releasePage(cursor.getPage());
+			}
+			cursor.close();
+
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(key, expected, actual);
+		}
+		index.close();
+	}
+
+	// test q2 is looked up in an index on age, touching a handful of pages, when the index is declared and cheaper
+	@Test
+	public void testIndexScan() throws Exception {
+		System.out.println("\n===========  testing index scan  ===========\n");
+		Catalogue cat = catalogue();
+		String query = "SELECT persname\nFROM Person\nWHERE age=\"35\"\n";
+
+		Operator scanned = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		cat.createIndex("Person", "age");
+		Operator plan = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		System.out.println(scanned + " ===> " + new Estimator().getCost(scanned));
+		System.out.println(plan + " ===> " + new Estimator().getCost(plan));
+
+		assertTrue(plan.toString().contains("INDEX-SCAN [age=\"35\"] (Person)"));
+		assertTrue(new Estimator().getCost(plan) < new Estimator().getCost(scanned));
+
+		// the heap file is sorted on age, so the index is clustered
+		NamedRelation person = cat.getRelation("Person");
+		DataStore memory = new DataStore();
+		memory.generate(person, new Random(3211));
+		memory.sort(person, cat.getAttribute("age"));
+		List<String[]> values = new ArrayList<>();
+		for (Tuple t : memory.getTuples(person)) values.add(t.toString().split(","));
+
+		BufferPool pool = new BufferPool(256);
+		HeapFile heap = HeapFile.write(tempFile(".heap"), 3, values.iterator());
+		DataStore store = new DataStore();
+		store.attach(person, HeapFile.open(heap.toString(), pool));
+		// without the index built, the lookup falls back to a scan
+		assertTrue(new PhysicalPlanner(store).plan(plan).toString().contains("HEAP-SCAN Person [age=\"35\"]"));
+
+		store.attachIndex(person, cat.getAttribute("age"), BPlusTree.build(tempFile(".index"), store.getHeapFile(person), 2, pool));
+		System.out.println(new PhysicalPlanner(store).plan(plan));
+
+		long before = pool.getHits() + pool.getMisses();
+		List<String> actual = sorted(new Executor(store).execute(plan, ExecutionMode.ROW));
+		long touched = pool.getHits() + pool.getMisses() - before;
+		System.out.println(actual.size() + " tuples, " + touched + " pages pinned, of " + heap.getPageCount() + " heap pages ===> " + pool);
+
+		assertFalse(actual.isEmpty());
+		assertEquals(sorted(new Executor(memory).execute(plan, ExecutionMode.ROW)), actual);
+		assertEquals(actual, sorted(new Executor(store).execute(plan, ExecutionMode.VECTORISED)));
+		assertTrue(touched <= 10);
+		assertTrue(heap.getPageCount() > 50);
+	}
+
+	private static Catalogue catalogue() {
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Person", 20000);
+		cat.createAttribute("Person", "persid", 20000);
+		cat.createAttribute("Person", "persname", 17500);
+		cat.createAttribute("Person", "age", 47);
+		return cat;
+	}
+
+	private static String tempFile(String suffix) throws Exception {
+		File file = File.createTempFile("sjdb", suffix);
+		file.deleteOnExit();
+		return file.getPath();
+	}
+
+	private static List<String> sorted(List<Tuple> tuples) {
+		List<String> ret = new ArrayList<>();
+		for (Tuple t : tuples) ret.add(t.toString());
+		Collections.sort(ret);
+		return ret;
+	}
+}
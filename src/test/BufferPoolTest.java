@@ -0,0 +1,174 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import sjdb.BufferPool;
+import sjdb.ClockPolicy;
+import sjdb.EvictionPolicy;
+import sjdb.Estimator;
+import sjdb.HeapFile;
+import sjdb.LruKPolicy;
+import sjdb.Tuple;
+
+public class BufferPoolTest {
+
+	// test pages are read in once, and evicted once the pool is full
+	@Test
+	public void testHitsAndEvictions() throws Exception {
+		System.out.println("\n===========  testing buffer pool hits and evictions  ===========\n");
+		for (EvictionPolicy policy : new EvictionPolicy[] {new ClockPolicy(), new LruKPolicy()}) {
+			BufferPool pool = new BufferPool(4, policy);
+			int file = pool.register(pagesFile(8));
+			
+			for (int round = 0; round < 2; round++) {
+				for (int p = 0; p < 4; p++) {
+					assertEquals(p, pool.pin(file, p).getInt(0));
+					pool.unpin(file, p, false);
+				}
+			}
+			assertEquals(4, pool.getHits());
+			assertEquals(4, pool.getMisses());
+			assertEquals(0, pool.getEvictions());
+			
+			for (int p = 4; p < 8; p++) {
+				assertEquals(p, pool.pin(file, p).getInt(0));
+				pool.unpin(file, p, false);
+			}
+			System.out.println(pool);
+			assertEquals(4, pool.getEvictions());
+			assertEquals(1.0 / 3, pool.getHitRatio(), 1e-9);
+		}
+	}
+	
+	// test LRU-2 keeps a page used twice while a scan goes past it, where CLOCK lets it go
+	@Test
+	public void testScanResistance() throws Exception {
+		System.out.println("\n===========  testing LRU-2 scan resistance  ===========\n");
+		BufferPool lru = new BufferPool(4, new LruKPolicy(2));
+		int file = lru.register(pagesFile(16));
+		for (int i = 0; i < 2; i++) {
+			lru.pin(file, 0);
+			lru.unpin(file, 0, false);
+		}
+		for (int p = 1; p < 16; p++) {
+			lru.pin(file, p);
+			lru.unpin(file, p, false);
+		}
+		long hits = lru.getHits();
+		lru.pin(file, 0);
+		lru.unpin(file, 0, false);
+		System.out.println(lru);
+		assertEquals(hits + 1, lru.getHits());
+	}
+	
+	// test pinned pages aren't evicted, and dirty ones are written back when they are
+	@Test
+	public void testPinsAndDirtyPages() throws Exception {
+		System.out.println("\n===========  testing pins and dirty pages  ===========\n");
+		BufferPool pool = new BufferPool(2);
+		int file = pool.register(pagesFile(4));
+		
+		ByteBuffer page = pool.pin(file, 0);
+		page.putInt(0, 1000);
+		pool.pin(file, 1);
+		try {
+			pool.pin(file, 2);
+			fail("Evicted a pinned page");
+		} catch (IllegalStateException e) {
+			System.out.println(e.getMessage());
+		}
+		
+		pool.unpin(file, 0, true);
+		pool.unpin(file, 1, false);
+		pool.pin(file, 2);
+		pool.unpin(file, 2, false);
+		pool.pin(file, 3);
+		pool.unpin(file, 3, false);
+		assertEquals(1, pool.getWrites());
+		
+		assertEquals(1000, pool.pin(file, 0).getInt(0));
+		pool.unpin(file, 0, false);
+		System.out.println(pool);
+	}
+	
+	// test threads pinning pages at random all see the right pages
+	@Test
+	public void testConcurrentPins() throws Exception {
+		System.out.println("\n===========  testing concurrent pins  ===========\n");
+		BufferPool pool = new BufferPool(16, new LruKPolicy());
+		int file = pool.register(pagesFile(64));
+		AtomicBoolean wrong = new AtomicBoolean();
+		
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			Random random = new Random(t);
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 10000; i++) {
+					// mostly the first few pages, so some stay in the pool
+					int p = (random.nextInt(4) == 0) ? random.nextInt(64) : random.nextInt(8);
+					if (pool.pin(file, p).getInt(0) != p) wrong.set(true);
+					pool.unpin(file, p, false);
+				}
+			}));
+		}
+		for (Thread t : threads) t.start();
+		for (Thread t : threads) t.join();
+		
+		System.out.println(pool);
+		assertFalse(wrong.get());
+		assertEquals(80000, pool.getHits() + pool.getMisses());
+		assertTrue(pool.getHitRatio() > 0.5);
+	}
+	
+	// test a heap file read through the pool gives the same tuples as mapped, and the pool size reaches the Estimator
+	@Test
+	public void testHeapFileThroughPool() throws Exception {
+		System.out.println("\n===========  testing heap file through buffer pool  ===========\n");
+		File heap = File.createTempFile("sjdb", ".heap");
+		heap.deleteOnExit();
+		List<String[]> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) values.add(new String[] {Integer.toString(i), "name" + i, Integer.toString(i % 47)});
+		HeapFile mapped = HeapFile.write(heap.getPath(), 3, values.iterator());
+		
+		BufferPool pool = new BufferPool(64);
+		HeapFile pooled = HeapFile.open(heap.getPath(), pool);
+		for (int round = 0; round < 2; round++) {
+			Iterator<Tuple> expected = mapped.iterator(), actual = pooled.iterator();
+			while (expected.hasNext()) assertEquals(expected.next().toString(), actual.next().toString());
+			assertFalse(actual.hasNext());
+		}
+		System.out.println(pooled.getPageCount() + " pages ===> " + pool);
+		assertEquals(pooled.getPageCount(), pool.getMisses());
+		assertEquals(pooled.getPageCount(), pool.getHits());
+		pooled.close();
+		
+		Estimator est = new Estimator();
+		est.setBufferPool(pool);
+		assertEquals(64, est.getBufferPages());
+	}
+	
+	// a file of pages, each starting with its page number
+	private static FileChannel pagesFile(int pages) throws Exception {
+		File file = File.createTempFile("sjdb", ".pages");
+		file.deleteOnExit();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		for (int p = 0; p < pages; p++) {
+			ByteBuffer page = ByteBuffer.allocate(BufferPool.PAGE_SIZE);
+			page.putInt(0, p);
+			channel.write(page, (long) p * BufferPool.PAGE_SIZE);
+		}
+		return channel;
+	}
+}
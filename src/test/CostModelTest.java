@@ -0,0 +1,205 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.StringReader;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sjdb.Attribute;
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.CostCalibrator;
+import sjdb.DataStore;
+import sjdb.Estimator;
+import sjdb.Join;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PhysicalCostModel;
+import sjdb.Predicate;
+import sjdb.Product;
+import sjdb.QueryParser;
+import sjdb.Scan;
+import sjdb.Select;
+import sjdb.TupleCostModel;
+
+public class CostModelTest {
+
+	// test the widths of the attributes in the catalogue are read, and wide tuples cost more to scan
+	@Test
+	public void testWidths() throws Exception {
+		System.out.println("\n===========  testing attribute widths  ===========\n");
+		File file = File.createTempFile("sjdb", ".cat");
+		file.deleteOnExit();
+		try (FileWriter write = new FileWriter(file)) {
+			write.write("Narrow:100000:n1,1000:n2,10\nWide:100000:w1,1000,200:w2,10,56\n");
+		}
+		Catalogue cat = new Catalogue();
+		new CatalogueParser(file.getPath(), cat).parse();
+		System.out.println(cat.getRelation("Narrow").render() + "\n" + cat.getRelation("Wide").render());
+
+		assertEquals(Attribute.DEFAULT_WIDTH, cat.getAttribute("n1").getWidth());
+		assertEquals(200, cat.getAttribute("w1").getWidth());
+		assertEquals("Wide:100000:w1,1000,200:w2,10,56", cat.getRelation("Wide").render());
+
+		Estimator tuples = new Estimator();
+		Estimator physical = new Estimator();
+		physical.setCostModel(new PhysicalCostModel());
+		Scan narrow = new Scan(cat.getRelation("Narrow")), wide = new Scan(cat.getRelation("Wide"));
+		System.out.println("Narrow ===> " + physical.getCost(narrow) + ", Wide ===> " + physical.getCost(wide));
+
+		assertEquals(tuples.getCost(narrow), tuples.getCost(wide));
+		// 170 narrow tuples to a page, but only 15 wide ones
+		assertEquals(589, PhysicalCostModel.getPageCount(narrow.getOutput()));
+		assertEquals(6667, PhysicalCostModel.getPageCount(wide.getOutput()));
+		assertTrue(physical.getCost(wide) > 4 * physical.getCost(narrow));
+	}
+
+	// test a join costs less than the product it replaces, and the weights scale the cost
+	@Test
+	public void testJoinAndProduct() throws Exception {
+		System.out.println("\n===========  testing costs of joins and products  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("A", 20000);
+		cat.createAttribute("A", "a", 1000);
+		cat.createRelation("B", 50000);
+		cat.createAttribute("B", "b", 1000);
+		Predicate p = new Predicate(new Attribute("a"), new Attribute("b"));
+
+		Operator join = new Join(new Scan(cat.getRelation("A")), new Scan(cat.getRelation("B")), p);
+		Operator product = new Select(new Product(new Scan(cat.getRelation("A")), new Scan(cat.getRelation("B"))), p);
+		Estimator est = new Estimator();
+		est.setCostModel(new PhysicalCostModel());
+		long joinCost = est.getCost(join), productCost = est.getCost(product);
+		System.out.println(join + " ===> " + joinCost + "\n" + product + " ===> " + productCost);
+
+		assertEquals(join.getOutput().getTupleCount(), product.getOutput().getTupleCount());
+		assertTrue(productCost > 100 * joinCost);
+
+		// twice the weight is twice the cost
+		est.setCostModel(new PhysicalCostModel(200, 800, 2, 0.5));
+		assertEquals(2 * joinCost, est.getCost(join), 2);
+
+		// a join whose smaller input doesn't fit in the buffer spills both
+		est.setCostModel(new PhysicalCostModel());
+		est.setBufferPages(10);
+		assertTrue(est.getCost(join) > joinCost);
+	}
+
+	// test a join of inputs stored in order of their join attributes is costed as a merge
+	@Test
+	public void testMergeJoin() throws Exception {
+		System.out.println("\n===========  testing costs of merge joins  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("A", 20000);
+		cat.createAttribute("A", "a", 1000);
+		cat.createAttribute("A", "c", 100);
+		cat.createRelation("B", 50000);
+		cat.createAttribute("B", "b", 1000);
+		DataStore store = new DataStore();
+		store.generate(cat.getRelation("A"), new Random(17));
+		store.generate(cat.getRelation("B"), new Random(17));
+
+		// the predicate names the attributes the other way round to the inputs
+		Operator join = new Join(new Select(new Scan(cat.getRelation("A")), new Predicate(new Attribute("c"), "1")),
+				new Scan(cat.getRelation("B")), new Predicate(new Attribute("b"), new Attribute("a")));
+		Estimator est = new Estimator();
+		est.setCostModel(new PhysicalCostModel());
+		long hashCost = est.getCost(join);
+		assertNull(join.getOutput().getOrder());
+
+		// one input in order isn't enough to merge
+		est.setDataStore(store);
+		store.sort(cat.getRelation("A"), new Attribute("a"));
+		assertEquals(hashCost, est.getCost(join));
+
+		store.sort(cat.getRelation("B"), new Attribute("b"));
+		long mergeCost = est.getCost(join);
+		System.out.println(join + " ===> " + hashCost + " hashed, " + mergeCost + " merged");
+		assertTrue(mergeCost < hashCost);
+		assertEquals(new Attribute("a"), join.getOutput().getOrder());
+
+		// the tuple cost model doesn't tell them apart
+		est.setCostModel(new TupleCostModel());
+		long tupleCost = est.getCost(join);
+		est.setDataStore(null);
+		assertEquals(tupleCost, est.getCost(join));
+	}
+
+	// test the optimiser picks the plan cheapest by the cost model it's given
+	@Test
+	public void testOptimiserMinimises() throws Exception {
+		System.out.println("\n===========  testing optimising with a cost model  ===========\n");
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		for (int q = 1; q <= 5; q++) {
+			Operator byTuples = new Optimiser(cat).optimise(new QueryParser(cat, new FileReader("data/q" + q + ".txt")).parse());
+			Operator byPages = new Optimiser(cat, new PhysicalCostModel()).optimise(new QueryParser(cat, new FileReader("data/q" + q + ".txt")).parse());
+
+			Estimator physical = new Estimator();
+			physical.setCostModel(new PhysicalCostModel());
+			System.out.println("q" + q + " ===> " + byPages + " ===> " + physical.getCost(byPages));
+			assertTrue(physical.getCost(byPages) <= physical.getCost(byTuples));
+			assertFalse(byPages.toString().contains("TIMES"));
+		}
+
+		// a query over relations too big for the buffer still gets joins
+		Catalogue big = new Catalogue();
+		big.createRelation("Order", 1000000);
+		big.createAttribute("Order", "orderid", 1000000);
+		big.createAttribute("Order", "cust", 50000, 16);
+		big.createAttribute("Order", "note", 1000000, 400);
+		big.createRelation("Customer", 50000);
+		big.createAttribute("Customer", "custid", 50000, 16);
+		big.createAttribute("Customer", "region", 20);
+		String query = "SELECT orderid\nFROM Order, Customer\nWHERE cust=custid, region=\"3\"\n";
+		Operator plan = new Optimiser(big, new PhysicalCostModel()).optimise(new QueryParser(big, new StringReader(query)).parse());
+		System.out.println(plan);
+		assertTrue(plan.toString().contains("JOIN [cust=custid]"));
+	}
+
+	// test the weights calibrated against timed plans are saved, and loaded by new estimators
+	@Test
+	public void testCalibration() throws Exception {
+		System.out.println("\n===========  testing cost model calibration  ===========\n");
+		File directory = File.createTempFile("sjdb", ".calibrate");
+		directory.delete();
+		directory.mkdir();
+		File config = File.createTempFile("sjdb", ".properties");
+		config.deleteOnExit();
+		try {
+			CostCalibrator calibrator = new CostCalibrator(directory);
+			calibrator.setRuns(1);
+			PhysicalCostModel model = calibrator.calibrate(20000, System.out);
+			model.save(config.getPath(), "test");
+			System.out.println(model);
+
+			assertTrue(model.getSequentialPage() >= 0 && model.getCpuTuple() >= 0 && model.getCpuOperator() >= 0);
+			assertTrue(model.getSequentialPage() + model.getCpuTuple() + model.getCpuOperator() > 0);
+			assertTrue(model.getRandomPage() >= model.getSequentialPage());
+		} finally {
+			for (File file : directory.listFiles()) file.delete();
+			directory.delete();
+		}
+
+		PhysicalCostModel saved = new PhysicalCostModel(1500, 6000, 40, 12.5);
+		saved.save(config.getPath(), "test");
+		assertTrue(new Estimator().getCostModel() instanceof TupleCostModel);
+		System.setProperty(Estimator.COST_CONFIG_PROPERTY, config.getPath());
+		try {
+			PhysicalCostModel loaded = (PhysicalCostModel) new Estimator().getCostModel();
+			assertEquals(saved.toString(), loaded.toString());
+			Catalogue cat = new Catalogue();
+			cat.createRelation("A", 20000);
+			cat.createAttribute("A", "a", 1000);
+			Scan scan = new Scan(cat.getRelation("A"));
+			assertEquals(saved.scan(scan.getOutput()), new Estimator().getCost(scan));
+		} finally {
+			System.clearProperty(Estimator.COST_CONFIG_PROPERTY);
+		}
+	}
+}
@@ -60,6 +60,45 @@ public class EstimatorTest {
 		}
 	}
 	
+	// test cardinalities and costs of 10^8-row relations are carried in full, and saturate rather than wrap
+	@Test
+	public void testProductionScale() throws Exception {
+		System.out.println("\n===========  testing 10^8-row relations  ===========\n");
+		Catalogue big = new Catalogue();
+		for (String r : new String[] {"X", "Y", "Z"}) {
+			big.createRelation(r, 100000000L);
+			big.createAttribute(r, r.toLowerCase() + "key", 100000000L);
+			big.createAttribute(r, r.toLowerCase() + "grp", 10);
+		}
+		Attribute xkey = new Attribute("xkey"), ykey = new Attribute("ykey"), xgrp = new Attribute("xgrp"), ygrp = new Attribute("ygrp");
+		
+		Product xy = new Product(new Scan(big.getRelation("X")), new Scan(big.getRelation("Y")));
+		Join keys = new Join(new Scan(big.getRelation("X")), new Scan(big.getRelation("Y")), new Predicate(xkey, ykey));
+		Join groups = new Join(new Scan(big.getRelation("X")), new Scan(big.getRelation("Y")), new Predicate(xgrp, ygrp));
+		Product xyz = new Product(xy, new Scan(big.getRelation("Z")));
+		
+		Estimator big_est = new Estimator();
+		long cost = big_est.getCost(xy);
+		System.out.println(xy + " ===> " + xy.getOutput().getTupleCount() + " tuples, cost " + cost);
+		assertEquals(10000000000000000L, xy.getOutput().getTupleCount());
+		assertTrue(cost > 200000000L);
+		
+		big_est.getCost(keys);
+		big_est.getCost(groups);
+		assertEquals(100000000L, keys.getOutput().getTupleCount());
+		assertEquals(1000000000000000L, groups.getOutput().getTupleCount());
+		assertEquals(100000000L, keys.getOutput().getAttribute(xkey).getValueCount());
+		
+		cost = big_est.getCost(xyz);
+		System.out.println(xyz + " ===> " + xyz.getOutput().getTupleCount() + " tuples, cost " + cost);
+		assertEquals(Long.MAX_VALUE, xyz.getOutput().getTupleCount());
+		assertTrue(cost > 100000000000000000L);
+		
+		// a fourth product saturates the cost too
+		Product xyzw = new Product(xyz, new Scan(big.getRelation("X")));
+		assertEquals(Long.MAX_VALUE, big_est.getCost(xyzw));
+	}
+	
 	// test for scan(R)
 	@Test
 	public void testVisitScan() {
@@ -200,6 +239,25 @@ public class EstimatorTest {
 		} catch (DatabaseException e) { fail("Relation A || B NOT in catalogue!"); }
 	}
 
+	// test a product is costed as a block nested loop join over pages
+	@Test
+	public void testProductCost() {
+		System.out.println("\n===========  testing product cost  ===========\n");
+		try {
+			Operator product_ab = new Product(new Scan(cat.getRelation("A")), new Scan(cat.getRelation("B")));
+			Estimator blocks = new Estimator();
+			
+			// A is 8 pages of 128 tuples, B is 16 pages, and A fits in one block of 100 pages
+			assertEquals(1000 + 2000 + 8 + 16, blocks.getCost(product_ab));
+			assertEquals(1000 * 2000, product_ab.getOutput().getTupleCount());
+			
+			// in blocks of 2 pages, B is read 4 times
+			blocks.setBufferPages(2);
+			assertEquals(1000 + 2000 + 8 + 4 * 16, blocks.getCost(product_ab));
+			System.out.println("Cost ===> " + blocks.getCost(product_ab));
+		} catch (DatabaseException e) { fail("Relation A || B NOT in catalogue!"); }
+	}
+	
 	@Test
 	public void testVisitJoinVal() {
 		System.out.println("\n===========  testing join  ===========\n");
@@ -224,16 +282,47 @@ public class EstimatorTest {
 		} catch (DatabaseException e) { fail("Relation A || B NOT in catalogue!"); }
 	}
 	
+	// test the memoised estimates of shared subtrees are reused
+	@Test
+	public void testMemoisedCost() {
+		System.out.println("\n===========  testing memoised cost  ===========\n");
+		try {
+			Estimator memo = new Estimator(true);
+			Predicate pred = new Predicate(cat.getAttribute("a"), cat.getAttribute("d"));
+			
+			// two structurally identical plans, built out of different operators
+			Operator first = new Join(new Select(new Scan(cat.getRelation("A")), new Predicate(cat.getAttribute("b"), "b_1")), new Scan(cat.getRelation("B")), pred);
+			Operator second = new Join(new Select(new Scan(cat.getRelation("A")), new Predicate(cat.getAttribute("b"), "b_1")), new Scan(cat.getRelation("B")), pred);
+			// and one that shares the left subtree of the second
+			Operator third = new Product(((Join) second).getLeft(), new Scan(cat.getRelation("C")));
+			
+			long cost = memo.getCost(first);
+			assertEquals(est.getCost(first), cost);
+			assertEquals(0, memo.getMemoHits());
+			assertEquals(4, memo.getMemoMisses());
+			
+			// the whole of the second plan is found in the memo
+			assertEquals(cost, memo.getCost(second));
+			assertEquals(1, memo.getMemoHits());
+			assertEquals(first.getOutput().render(), second.getOutput().render());
+			
+			// only the PRODUCT and the new SCAN are visited
+			assertEquals(est.getCost(third), memo.getCost(third));
+			assertEquals(2, memo.getMemoHits());
+			assertEquals(6, memo.getMemoMisses());
+		} catch (DatabaseException e) { fail("Relation A || B || C NOT in catalogue!"); }
+	}
+	
 	private void checkAttr(Join join_AB) {
 		Attribute left_attr = join_AB.getPredicate().getLeftAttribute();
 		Attribute right_attr = join_AB.getPredicate().getRightAttribute();
 		
 		// valuecount of left attr in result
-		int left_count = ((Attribute) (filterOutputAttributes(join_AB, attr -> attr.equals(left_attr))[0])).getValueCount();
+		long left_count = ((Attribute) (filterOutputAttributes(join_AB, attr -> attr.equals(left_attr))[0])).getValueCount();
 		// valuecount of right attr in result
-		int right_count = ((Attribute) (filterOutputAttributes(join_AB, attr -> attr.equals(right_attr))[0])).getValueCount();
+		long right_count = ((Attribute) (filterOutputAttributes(join_AB, attr -> attr.equals(right_attr))[0])).getValueCount();
 		// true valuecount
-		int actual = Math.min(left_attr.getValueCount(), right_attr.getValueCount());
+		long actual = Math.min(left_attr.getValueCount(), right_attr.getValueCount());
 		
 		// if attr = attr, V(Output, a) = V(Output, b) = min(V(R, a), V(R, b))
 		assertEquals(left_count, actual);
@@ -270,8 +359,8 @@ public class EstimatorTest {
 
 	// check the attributes and valueCounts for PROJECT
 	private static void checkAttr(Project project_Aa){
-		HashMap<String, Integer> inp_attrs = new HashMap<>(project_Aa.getAttributes().size());
-		HashMap<String, Integer> out_attrs = new HashMap<>(project_Aa.getOutput().getAttributes().size());
+		HashMap<String, Long> inp_attrs = new HashMap<>(project_Aa.getAttributes().size());
+		HashMap<String, Long> out_attrs = new HashMap<>(project_Aa.getOutput().getAttributes().size());
 		
 		project_Aa.getAttributes().forEach(attr -> inp_attrs.put(attr.getName(), attr.getValueCount()));
 		project_Aa.getOutput().getAttributes().forEach(attr -> out_attrs.put(attr.getName(), attr.getValueCount()));
@@ -301,11 +390,11 @@ public class EstimatorTest {
 		Attribute right_attr = select_Aab.getPredicate().getRightAttribute();
 		
 		// valuecount of left attr in result
-		int left_count = ((Attribute) (filterOutputAttributes(select_Aab, attr -> attr.equals(left_attr))[0])).getValueCount();
+		long left_count = ((Attribute) (filterOutputAttributes(select_Aab, attr -> attr.equals(left_attr))[0])).getValueCount();
 		// valuecount of right attr in result
-		int right_count = ((Attribute) (filterOutputAttributes(select_Aab, attr -> attr.equals(right_attr))[0])).getValueCount();
+		long right_count = ((Attribute) (filterOutputAttributes(select_Aab, attr -> attr.equals(right_attr))[0])).getValueCount();
 		// true valuecount
-		int actual = Math.min(left_attr.getValueCount(), right_attr.getValueCount());
+		long actual = Math.min(left_attr.getValueCount(), right_attr.getValueCount());
 		
 		// if attr = attr, V(Output, a) = V(Output, b) = min(V(R, a), V(R, b))
 		assertEquals(left_count, actual);
@@ -322,8 +411,8 @@ public class EstimatorTest {
 	
 	// check the attributes and valueCounts for PRODUCT
 	private static void checkAttr(Product product_ab){
-		HashMap<String, Integer> inp_attrs = new HashMap<>(product_ab.getLeft().getOutput().getAttributes().size() + product_ab.getRight().getOutput().getAttributes().size());
-		HashMap<String, Integer> out_attrs = new HashMap<>(product_ab.getOutput().getAttributes().size());
+		HashMap<String, Long> inp_attrs = new HashMap<>(product_ab.getLeft().getOutput().getAttributes().size() + product_ab.getRight().getOutput().getAttributes().size());
+		HashMap<String, Long> out_attrs = new HashMap<>(product_ab.getOutput().getAttributes().size());
 		
 		product_ab.getLeft().getOutput().getAttributes().forEach(attr -> inp_attrs.put(attr.getName(), attr.getValueCount()));
 		product_ab.getRight().getOutput().getAttributes().forEach(attr -> inp_attrs.put(attr.getName(), attr.getValueCount()));
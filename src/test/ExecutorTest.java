@@ -0,0 +1,307 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import sjdb.Attribute;
+import sjdb.BlockNestedLoopJoin;
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.DataStore;
+import sjdb.Estimator;
+import sjdb.ExecutionMode;
+import sjdb.ExternalSort;
+import sjdb.Executor;
+import sjdb.HashJoin;
+import sjdb.Join;
+import sjdb.MemoryBudget;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PhysicalOperator;
+import sjdb.PhysicalPlanner;
+import sjdb.PhysicalProject;
+import sjdb.PhysicalScan;
+import sjdb.Predicate;
+import sjdb.Project;
+import sjdb.QueryParser;
+import sjdb.Scan;
+import sjdb.Tuple;
+
+public class ExecutorTest {
+
+	private static Catalogue cat;
+	private static DataStore store;
+
+	// queries over the sample catalogue whose predicates match generated tuples
+	private static final String[] QUERIES = {
+		"SELECT persname\nFROM Person\nWHERE age=\"35\"\n",
+		"SELECT projid\nFROM Project, Department\nWHERE dept=deptid, deptname=\"3\"\n",
+		"SELECT projname, deptname\nFROM Person, Project, Department\nWHERE persid=manager, dept=deptid\n",
+		"SELECT persname, deptname\nFROM Person, Department\nWHERE age=\"7\"\n"
+	};
+
+	@BeforeClass
+	public static void createData() {
+		cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+
+		store = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) store.generate(reln, random);
+	}
+
+	// test the scan of a relation produces all its tuples
+	@Test
+	public void testScan() throws Exception {
+		System.out.println("\n===========  testing physical scan  ===========\n");
+		Operator plan = new QueryParser(cat, new StringReader("SELECT *\nFROM Person\n")).parse();
+
+		Executor exec = new Executor(store);
+		List<Tuple> result = exec.execute(plan);
+		System.out.println("Person ===> " + exec.getStats());
+
+		assertEquals(400, result.size());
+		assertEquals(3, result.get(0).size());
+	}
+
+	// test the optimised plans produce the same tuples as the canonical ones
+	@Test
+	public void testOptimisedMatchesCanonical() throws Exception {
+		System.out.println("\n===========  testing optimised vs canonical  ===========\n");
+		for (String query : QUERIES) {
+			Operator plan = new QueryParser(cat, new StringReader(query)).parse();
+			Operator optPlan = new Optimiser(cat).optimise(plan);
+
+			List<String> expected = run(plan, (Project) plan);
+			List<String> actual = run(optPlan, (Project) plan);
+			System.out.println(optPlan + " ===> " + actual.size() + " tuples");
+
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, actual);
+		}
+	}
+
+	// test the vectorised mode produces the same tuples as the row mode
+	@Test
+	public void testVectorisedMatchesRow() throws Exception {
+		System.out.println("\n===========  testing vectorised vs row  ===========\n");
+		Executor exec = new Executor(store);
+		for (String query : QUERIES) {
+			Operator plan = new QueryParser(cat, new StringReader(query)).parse();
+			Operator optPlan = new Optimiser(cat).optimise(plan);
+
+			for (Operator p : new Operator[] {plan, optPlan}) {
+				List<String> expected = sorted(exec.execute(p, ExecutionMode.ROW));
+				System.out.print("Row ===> " + exec.getStats());
+				List<String> actual = sorted(exec.execute(p, ExecutionMode.VECTORISED));
+				System.out.println(", vectorised ===> " + exec.getStats());
+
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	// test the hash join gives the block nested loop join's tuples whichever side it builds on
+	@Test
+	public void testHashJoinBuildSides() throws Exception {
+		System.out.println("\n===========  testing hash join build sides  ===========\n");
+		Operator plan = new QueryParser(cat, new StringReader("SELECT *\nFROM Person, Department\nWHERE persid=manager\n")).parse();
+		Operator optPlan = new Optimiser(cat).optimise(plan);
+		Join join = (Join) optPlan;
+		
+		// Department is the smaller input, so it's the one built on
+		PhysicalOperator physical = new PhysicalPlanner(store).plan(optPlan);
+		System.out.println(physical);
+		assertTrue(physical instanceof HashJoin);
+		assertEquals(join.getLeft().getOutput().getTupleCount() < join.getRight().getOutput().getTupleCount(), 
+				physical.toString().contains("BUILD LEFT"));
+		
+		PhysicalPlanner planner = new PhysicalPlanner(store);
+		Predicate p = join.getPredicate();
+		List<String> expected = sorted(new Executor(store).execute(
+				new BlockNestedLoopJoin(planner.plan(join.getLeft()), planner.plan(join.getRight()), p)));
+		for (boolean buildLeft : new boolean[] {false, true}) {
+			Executor exec = new Executor(store);
+			List<String> actual = sorted(exec.execute(
+					new HashJoin(planner.plan(join.getLeft()), planner.plan(join.getRight()), p, buildLeft)));
+			System.out.println((buildLeft ? "Build left" : "Build right") + " ===> " + exec.getStats());
+			
+			assertFalse(expected.isEmpty());
+			assertEquals(expected, actual);
+		}
+	}
+	
+	// test the hash joins give the same tuples when they spill to disk
+	@Test
+	public void testSpillingHashJoin() throws Exception {
+		System.out.println("\n===========  testing spilling hash join  ===========\n");
+		for (String query : QUERIES) {
+			Operator plan = new QueryParser(cat, new StringReader(query)).parse();
+			Operator optPlan = new Optimiser(cat).optimise(plan);
+			
+			for (ExecutionMode mode : ExecutionMode.values()) {
+				Executor exec = new Executor(store);
+				List<String> expected = sorted(exec.execute(optPlan, mode));
+				assertEquals(0, exec.getStats().getSpilledBytes());
+				
+				exec.setMemoryBudget(64);
+				List<String> actual = sorted(exec.execute(optPlan, mode));
+				System.out.println(mode + " ===> " + exec.getStats());
+				
+				assertEquals(expected, actual);
+				assertEquals(optPlan.toString().contains("JOIN"), exec.getStats().getSpilledBytes() > 0);
+			}
+		}
+	}
+	
+	// test the block nested loop join gives the same tuples however many blocks the outer input takes
+	@Test
+	public void testBlockNestedLoopJoin() throws Exception {
+		System.out.println("\n===========  testing block nested loop join  ===========\n");
+		Operator plan = new QueryParser(cat, new StringReader(QUERIES[3])).parse();
+		Operator optPlan = new Optimiser(cat).optimise(plan);
+		
+		Executor exec = new Executor(store);
+		List<String> expected = sorted(exec.execute(optPlan));
+		System.out.println(new PhysicalPlanner(store).plan(optPlan) + " ===> " + exec.getStats());
+		
+		// one page of outer tuples at a time
+		exec.setMemoryBudget(Estimator.PAGE_SIZE);
+		assertEquals(expected, sorted(exec.execute(optPlan)));
+		System.out.println("One page blocks ===> " + exec.getStats());
+		assertFalse(expected.isEmpty());
+		
+		// Person takes 4 pages of 128 tuples, so Department is read 4 times
+		NamedRelation person = cat.getRelation("Person"), department = cat.getRelation("Department");
+		List<String> product = sorted(exec.execute(new BlockNestedLoopJoin(new PhysicalScan(person, store.getTuples(person)), 
+				new PhysicalScan(department, store.getTuples(department)), null)));
+		PhysicalScan inner = new PhysicalScan(department, store.getTuples(department));
+		PhysicalOperator blocks = new BlockNestedLoopJoin(new PhysicalScan(person, store.getTuples(person)), inner, null, 1);
+		
+		assertEquals(product, sorted(exec.execute(blocks)));
+		assertEquals(400 * 5, product.size());
+		assertEquals(4 * 5, inner.getTuplesProduced());
+	}
+	
+	// test the external sort gives the tuples in order when its runs are spilled and merged
+	@Test
+	public void testExternalSort() throws Exception {
+		System.out.println("\n===========  testing external sort  ===========\n");
+		NamedRelation person = cat.getRelation("Person");
+		Attribute age = new Attribute("age");
+		
+		List<String> expected = new ArrayList<>();
+		for (Tuple t : store.getTuples(person)) expected.add(t.get(person.getAttributes().indexOf(age)));
+		Collections.sort(expected);
+		
+		// room for 5 tuples at a time makes more runs than can be merged at once
+		int codes = store.getDictionary().size();
+		for (long limit : new long[] {MemoryBudget.UNLIMITED, 520}) {
+			MemoryBudget budget = new MemoryBudget(limit);
+			PhysicalOperator sort = new ExternalSort(new PhysicalScan(person, store.getTuples(person)), age, budget);
+			Executor exec = new Executor(store);
+			List<String> actual = new ArrayList<>();
+			for (Tuple t : exec.execute(sort)) actual.add(t.get(sort.indexOf(age)));
+			System.out.println(sort + " ===> " + exec.getStats() + ", " + budget.getSpilledBytes() + " bytes spilled");
+			
+			assertEquals(expected, actual);
+			assertEquals(limit != MemoryBudget.UNLIMITED, budget.getSpilledBytes() > 0);
+		}
+		// the spilled values are written as they are, not coded into the store's Dictionary
+		assertEquals(codes, store.getDictionary().size());
+	}
+	
+	// test joins of relations held in order of their join attributes are merged, with the same tuples
+	@Test
+	public void testMergeJoin() throws Exception {
+		System.out.println("\n===========  testing merge join  ===========\n");
+		DataStore sorted = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) sorted.generate(reln, random);
+		sorted.sort(cat.getRelation("Project"), new Attribute("dept"));
+		sorted.sort(cat.getRelation("Department"), new Attribute("deptid"));
+		
+		Operator plan = new QueryParser(cat, new StringReader(QUERIES[1])).parse();
+		Operator optPlan = new Optimiser(cat).optimise(plan);
+		PhysicalOperator physical = new PhysicalPlanner(sorted).plan(optPlan);
+		System.out.println(physical);
+		assertTrue(physical.toString().contains("MERGE-JOIN [dept=deptid]"));
+		
+		List<String> expected = sorted(new Executor(store).execute(optPlan));
+		Executor exec = new Executor(sorted);
+		assertEquals(expected, sorted(exec.execute(optPlan)));
+		
+		// with Department back out of order, and a budget its hash table doesn't fit in, it's sorted to merge instead
+		sorted.insert(cat.getRelation("Department"), store.getTuples(cat.getRelation("Department")));
+		physical = new PhysicalPlanner(sorted, new MemoryBudget(64)).plan(optPlan);
+		System.out.println(physical);
+		assertTrue(physical.toString().contains("SORT [deptid]"));
+		
+		exec.setMemoryBudget(64);
+		assertEquals(expected, sorted(exec.execute(optPlan)));
+		System.out.println("Sorted ===> " + exec.getStats());
+	}
+	
+	// test a hash join that may spill isn't merged as if in order of its probe input, as it spills its partitions out of order
+	@Test
+	public void testSpilledHashJoinOrder() throws Exception {
+		System.out.println("\n===========  testing spilled hash join order  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("A", 300);
+		cat.createAttribute("A", "ak", 40);
+		// B holds 600 tuples, but is catalogued with 10, so its hash table is planned to fit
+		cat.createRelation("B", 10);
+		cat.createAttribute("B", "bk", 40);
+		cat.createRelation("C", 300);
+		cat.createAttribute("C", "ck", 40);
+
+		DataStore data = new DataStore();
+		Random random = new Random(3211);
+		for (String name : new String[] {"A", "B", "C"}) {
+			List<Tuple> tuples = new ArrayList<>();
+			for (int i = 0; i < (name.equals("B") ? 600 : 300); i++) tuples.add(new Tuple(new String[] {Integer.toString(random.nextInt(40))}));
+			data.insert(cat.getRelation(name), tuples);
+		}
+		data.sort(cat.getRelation("A"), new Attribute("ak"));
+		data.sort(cat.getRelation("C"), new Attribute("ck"));
+
+		Operator plan = new Join(new Join(new Scan(cat.getRelation("A")), new Scan(cat.getRelation("B")),
+				new Predicate(cat.getAttribute("ak"), cat.getAttribute("bk"))),
+				new Scan(cat.getRelation("C")), new Predicate(cat.getAttribute("ak"), cat.getAttribute("ck")));
+		new Estimator().getCost(plan);
+
+		Executor exec = new Executor(data);
+		List<String> expected = sorted(exec.execute(plan));
+		exec.setMemoryBudget(4000);
+		List<String> actual = sorted(exec.execute(plan));
+		System.out.println(new PhysicalPlanner(data, new MemoryBudget(4000)).plan(plan) + " ===> " + exec.getStats());
+
+		assertTrue(exec.getStats().getSpilledBytes() > 0);
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected, actual);
+		assertEquals(0, data.getDictionary().size());
+	}
+
+	// run a plan and list its tuples, with the attributes of root in order, sorted
+	private static List<String> run(Operator plan, Project root) throws Exception {
+		PhysicalOperator physical = new PhysicalProject(new PhysicalPlanner(store).plan(plan), root.getAttributes());
+
+		return sorted(new Executor(store).execute(physical));
+	}
+
+	private static List<String> sorted(List<Tuple> tuples) {
+		List<String> ret = new ArrayList<>();
+		for (Tuple t : tuples) ret.add(t.toString());
+		Collections.sort(ret);
+		return ret;
+	}
+}
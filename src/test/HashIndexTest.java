@@ -0,0 +1,165 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sjdb.BPlusTree;
+import sjdb.BufferPool;
+import sjdb.Catalogue;
+import sjdb.DataStore;
+import sjdb.Estimator;
+import sjdb.ExecutionMode;
+import sjdb.Executor;
+import sjdb.HashIndex;
+import sjdb.HeapFile;
+import sjdb.Index;
+import sjdb.IndexType;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PhysicalOperator;
+import sjdb.PhysicalPlanner;
+import sjdb.QueryParser;
+import sjdb.Tuple;
+
+public class HashIndexTest {
+
+	// test looking values up finds every tuple with them, after splits and overflow, and once the index is opened again
+	@Test
+	public void testLookup() throws Exception {
+		System.out.println("\n===========  testing hash index lookup  ===========\n");
+		List<String[]> values = new ArrayList<>();
+		for (int i = 0; i < 30000; i++) {
+			values.add(new String[] {Integer.toString(i), (i % 6 == 0) ? "hot" : Integer.toString(i * 7919 % 1000)});
+		}
+		HeapFile heap = HeapFile.write(tempFile(".heap"), 2, values.iterator());
+		String filename = tempFile(".hash");
+		// a small pool, so buckets are written back and read in again while it's built
+		BufferPool pool = new BufferPool(8);
+		HashIndex index = HashIndex.build(filename, heap, 1, pool);
+		System.out.println("depth " + index.getGlobalDepth() + ", " + index.getPageCount() + " pages ===> " + pool);
+
+		assertEquals(30000, index.getEntryCount());
+		assertTrue(index.getGlobalDepth() > 2);
+		assertTrue(pool.getWrites() > 0);
+		lookups(index, heap, values);
+		index.close();
+
+		HashIndex reopened = HashIndex.open(filename, new BufferPool(8));
+		assertEquals(index.getGlobalDepth(), reopened.getGlobalDepth());
+		lookups(reopened, heap, values);
+		reopened.close();
+	}
+
+	// test a q5-shaped query probes the indexes of Department and Project instead of scanning them
+	@Test
+	public void testIndexJoin() throws Exception {
+		System.out.println("\n===========  testing index nested loop join  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Person", 20000);
+		cat.createAttribute("Person", "persid", 20000);
+		cat.createAttribute("Person", "persname", 17500);
+		cat.createAttribute("Person", "age", 47);
+		cat.createRelation("Project", 4000);
+		cat.createAttribute("Project", "projid", 4000);
+		cat.createAttribute("Project", "projname", 3500);
+		cat.createAttribute("Project", "dept", 500);
+		cat.createRelation("Department", 500);
+		cat.createAttribute("Department", "deptid", 500);
+		cat.createAttribute("Department", "deptname", 500);
+		cat.createAttribute("Department", "manager", 500);
+
+		DataStore memory = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) memory.generate(reln, random);
+		// a name whose Person manages a department
+		String name = null;
+		for (Tuple t : memory.getTuples(cat.getRelation("Person"))) if (Integer.parseInt(t.get(0)) < 500) name = t.get(1);
+		String query = "SELECT projname, deptname\nFROM Person, Project, Department\nWHERE persid=manager, dept=deptid, persname=\"" + name + "\"\n";
+
+		Operator scanned = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		cat.createIndex("Department", "manager", IndexType.HASH);
+		cat.createIndex("Project", "dept", IndexType.HASH);
+		cat.createIndex("Person", "persname");
+		Operator plan = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		System.out.println(scanned + " ===> " + new Estimator().getCost(scanned));
+		System.out.println(plan + " ===> " + new Estimator().getCost(plan));
+		assertTrue(new Estimator().getCost(plan) < new Estimator().getCost(scanned));
+
+		BufferPool pool = new BufferPool(512);
+		DataStore store = new DataStore();
+		long heapPages = 0;
+		for (NamedRelation reln : cat.getRelations()) {
+			List<String[]> values = new ArrayList<>();
+			for (Tuple t : memory.getTuples(reln)) values.add(t.toString().split(","));
+			HeapFile heap = HeapFile.write(tempFile(".heap"), 3, values.iterator());
+			store.attach(reln, HeapFile.open(heap.toString(), pool));
+			heapPages += heap.getPageCount();
+		}
+		store.attachIndex(cat.getRelation("Department"), cat.getAttribute("manager"),
+				HashIndex.build(tempFile(".hash"), store.getHeapFile(cat.getRelation("Department")), 2, pool));
+		store.attachIndex(cat.getRelation("Project"), cat.getAttribute("dept"),
+				HashIndex.build(tempFile(".hash"), store.getHeapFile(cat.getRelation("Project")), 2, pool));
+		store.attachIndex(cat.getRelation("Person"), cat.getAttribute("persname"),
+				BPlusTree.build(tempFile(".index"), store.getHeapFile(cat.getRelation("Person")), 1, pool));
+
+		PhysicalOperator physical = new PhysicalPlanner(store).plan(plan);
+		System.out.println(physical);
+		assertTrue(physical.toString().contains("INL-JOIN"));
+		assertFalse(physical.toString().contains("HEAP-SCAN"));
+
+		long before = pool.getHits() + pool.getMisses();
+		List<String> actual = sorted(new Executor(store).execute(plan, ExecutionMode.ROW));
+		long touched = pool.getHits() + pool.getMisses() - before;
+		System.out.println(actual.size() + " tuples, " + touched + " pages pinned, of " + heapPages + " heap pages ===> " + pool);
+
+		assertFalse(actual.isEmpty());
+		// without the indexes, the index joins fall back to hash joins
+		assertEquals(sorted(new Executor(memory).execute(plan, ExecutionMode.ROW)), actual);
+		assertEquals(new Executor(memory).execute(scanned, ExecutionMode.ROW).size(), actual.size());
+		assertEquals(actual, sorted(new Executor(store).execute(plan, ExecutionMode.VECTORISED)));
+		assertTrue(touched < heapPages / 4);
+	}
+
+	private static void lookups(Index index, HeapFile heap, List<String[]> values) {
+		for (String key : new String[] {"hot", "0", "999", "500", "1000", ""}) {
+			List<String> expected = new ArrayList<>();
+			for (String[] v : values) if (v[1].equals(key)) expected.add(v[0] + "," + v[1]);
+
+			List<String> actual = new ArrayList<>();
+			Index.Cursor cursor = index.seek(key);
+			while (cursor.next()) {
+				ByteBuffer page = heap.getPage(cursor.getPage());
+				actual.add(HeapFile.decode(page, HeapFile.getRecordOffset(page, cursor.getSlot()), 2).toString());
+				heap.releasePage(cursor.getPage());
+			}
+			cursor.close();
+
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(key, expected, actual);
+		}
+	}
+
+	private static String tempFile(String suffix) throws Exception {
+		File file = File.createTempFile("sjdb", suffix);
+		file.deleteOnExit();
+		return file.getPath();
+	}
+
+	private static List<String> sorted(List<Tuple> tuples) {
+		List<String> ret = new ArrayList<>();
+		for (Tuple t : tuples) ret.add(t.toString());
+		Collections.sort(ret);
+		return ret;
+	}
+}
@@ -0,0 +1,122 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.DataStore;
+import sjdb.DatabaseException;
+import sjdb.ExecutionMode;
+import sjdb.Executor;
+import sjdb.HeapFile;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PhysicalPlanner;
+import sjdb.QueryParser;
+import sjdb.Tuple;
+
+public class HeapFileTest {
+
+	private static Catalogue cat;
+	private static DataStore store;
+
+	@BeforeClass
+	public static void createData() {
+		cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+
+		store = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) store.generate(reln, random);
+	}
+
+	// test a relation bulk loaded from CSV reads back the same, over several pages
+	@Test
+	public void testLoad() throws Exception {
+		System.out.println("\n===========  testing heap file load  ===========\n");
+		NamedRelation person = cat.getRelation("Person");
+		HeapFile file = load(person, store.getTuples(person));
+		System.out.println(file + " ===> " + file.getPageCount() + " pages, " + file.getTupleCount() + " tuples");
+
+		assertEquals(400, file.getTupleCount());
+		assertTrue(file.getPageCount() > 1);
+
+		List<String> actual = new ArrayList<>();
+		for (Iterator<Tuple> iter = file.iterator(); iter.hasNext(); ) actual.add(iter.next().toString());
+		assertEquals(strings(store.getTuples(person)), actual);
+	}
+
+	// test queries over relations held in heap files give the same tuples as over those held in memory
+	@Test
+	public void testHeapScan() throws Exception {
+		System.out.println("\n===========  testing heap scan  ===========\n");
+		DataStore heap = new DataStore();
+		for (NamedRelation reln : cat.getRelations()) heap.attach(reln, load(reln, store.getTuples(reln)));
+
+		String[] queries = {
+			"SELECT persname\nFROM Person\nWHERE age=\"35\"\n",
+			"SELECT projname, deptname\nFROM Person, Project, Department\nWHERE persid=manager, dept=deptid\n"
+		};
+		for (String query : queries) {
+			Operator plan = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+			System.out.println(new PhysicalPlanner(heap).plan(plan));
+
+			for (ExecutionMode mode : ExecutionMode.values()) {
+				List<String> expected = sorted(new Executor(store).execute(plan, mode));
+				assertEquals(expected, sorted(new Executor(heap).execute(plan, mode)));
+			}
+		}
+		assertTrue(new PhysicalPlanner(heap).plan(new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(queries[0])).parse()))
+				.toString().contains("HEAP-SCAN Person [age=\"35\"]"));
+	}
+
+	// test a line that doesn't match the relation isn't loaded
+	@Test(expected = DatabaseException.class)
+	public void testBadLine() throws Exception {
+		File csv = File.createTempFile("sjdb", ".csv");
+		csv.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(csv)) {
+			out.println("1,Smith,35");
+			out.println("2,Jones");
+		}
+		HeapFile.load(cat.getRelation("Person"), csv.getPath(), csv.getPath() + ".heap");
+	}
+
+	// write tuples out as CSV, and bulk load them into a heap file
+	private static HeapFile load(NamedRelation reln, List<Tuple> tuples) throws IOException, DatabaseException {
+		File csv = File.createTempFile("sjdb-" + reln, ".csv");
+		File heap = new File(csv.getPath() + ".heap");
+		csv.deleteOnExit();
+		heap.deleteOnExit();
+		try (PrintWriter out = new PrintWriter(csv)) {
+			for (Tuple t : tuples) out.println(t);
+		}
+		return HeapFile.load(reln, csv.getPath(), heap.getPath());
+	}
+
+	private static List<String> strings(List<Tuple> tuples) {
+		List<String> ret = new ArrayList<>();
+		for (Tuple t : tuples) ret.add(t.toString());
+		return ret;
+	}
+
+	private static List<String> sorted(List<Tuple> tuples) {
+		List<String> ret = strings(tuples);
+		Collections.sort(ret);
+		return ret;
+	}
+}
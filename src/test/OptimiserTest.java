@@ -0,0 +1,348 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.Estimator;
+import sjdb.Join;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.QueryParser;
+import sjdb.SearchBudget;
+
+public class OptimiserTest {
+
+	// the plans the optimiser has always found for the sample queries
+	private static final String[] SAMPLE_PLANS = {
+		"Person",
+		"PROJECT [persname] (SELECT [age=\"35\"] (Person))",
+		"(PROJECT [dept] (Project)) JOIN [dept=deptid] (PROJECT [deptid] (Department))",
+		"PROJECT [projid] ((PROJECT [projid,dept] (Project)) JOIN [dept=deptid] (PROJECT [deptid] (SELECT [deptname=\"Research\"] (Department))))",
+		"PROJECT [projname,deptname] ((PROJECT [projname,dept] (Project)) JOIN [dept=deptid] (PROJECT [deptid,deptname] ((PROJECT [persid] (SELECT [persname=\"Smith\"] (Person))) JOIN [persid=manager] (PROJECT [deptid,deptname,manager] (Department)))))"
+	};
+	private static final int[] SAMPLE_COSTS = {400, 416, 130, 103, 510};
+
+	// test the sample queries q1..q5 still get the same plans
+	@Test
+	public void testSampleQueries() throws Exception {
+		System.out.println("\n===========  testing sample queries  ===========\n");
+		for (int q = 1; q <= 5; q++) {
+			Catalogue cat = sampleCatalogue();
+			Operator plan = new QueryParser(cat, new FileReader("data/q" + q + ".txt")).parse();
+
+			Operator optPlan = new Optimiser(cat).optimise(plan);
+			System.out.println("q" + q + " ===> " + optPlan);
+
+			assertEquals(SAMPLE_PLANS[q - 1], optPlan.toString());
+			assertEquals(SAMPLE_COSTS[q - 1], new Estimator().getCost(optPlan));
+		}
+	}
+
+	// test a 12-way chain of joins is planned exhaustively with JOINs only, in under a millisecond once the JIT has warmed up
+	@Test
+	public void testTwelveWayChain() throws Exception {
+		System.out.println("\n===========  testing 12-way chain  ===========\n");
+		Catalogue cat = new Catalogue();
+		Operator plan = chainQuery(cat, 12);
+		Operator optPlan = null;
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 1500; i++) {
+			Optimiser opt = new Optimiser(cat);
+			// past the default threshold, so it's the dynamic programme that's timed, not greedy
+			opt.setGreedyThreshold(12);
+
+			long start = System.nanoTime();
+			optPlan = opt.optimise(plan);
+			long nanos = System.nanoTime() - start;
+			assertTrue(opt.isSearchComplete());
+			// the first 1400 warm the JIT up
+			if (i >= 1400) best = Math.min(best, nanos);
+		}
+		System.out.println("Planned in " + best / 1000 + "us ===> " + optPlan);
+
+		assertEquals(11, optPlan.toString().split("JOIN").length - 1);
+		assertFalse(optPlan.toString().contains("TIMES"));
+		assertTrue(best < 1000000L);
+
+		// every subset of a star with its hub in is connected, about 20 thousand candidates, so it
+		// takes tens of milliseconds rather than under one; only check it's the right order of magnitude
+		best = Long.MAX_VALUE;
+		cat = starCatalogue(12);
+		plan = starQuery(cat, 12);
+		for (int i = 0; i < 10; i++) {
+			Optimiser opt = new Optimiser(cat);
+			opt.setGreedyThreshold(12);
+
+			long start = System.nanoTime();
+			optPlan = opt.optimise(plan);
+			if (i >= 5) best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println("Planned 12-way star in " + best / 1000 + "us");
+		assertEquals(11, optPlan.toString().split("JOIN").length - 1);
+		assertTrue(best < 200000000L);
+	}
+
+	// test a star of 10^8-row relations, whose products overflow an int, is still planned with JOINs in the cheap order
+	@Test
+	public void testProductionScale() throws Exception {
+		System.out.println("\n===========  testing 10^8-row star  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Sale", 100000000L);
+		cat.createAttribute("Sale", "saleid", 100000000L);
+		cat.createAttribute("Sale", "custid", 10000000L);
+		cat.createAttribute("Sale", "itemid", 100000L);
+		cat.createRelation("Customer", 10000000L);
+		cat.createAttribute("Customer", "cid", 10000000L);
+		cat.createAttribute("Customer", "city", 1000);
+		cat.createRelation("Item", 100000L);
+		cat.createAttribute("Item", "iid", 100000L);
+		cat.createAttribute("Item", "brand", 100);
+		String query = "SELECT saleid\nFROM Sale, Customer, Item\nWHERE custid=cid, itemid=iid, city=\"Leeds\", brand=\"Acme\"\n";
+
+		Operator optPlan = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(query)).parse());
+		long cost = new Estimator().getCost(optPlan);
+		System.out.println(optPlan + " ===> " + cost);
+
+		assertFalse(optPlan.toString().contains("TIMES"));
+		assertTrue(cost > 100000000L && cost < Long.MAX_VALUE);
+		// the 10^8 sales are joined with the customers of the city first, leaving 10^5, then the items of the brand
+		assertTrue(optPlan.toString().indexOf("JOIN [custid=cid]") < optPlan.toString().indexOf("JOIN [itemid=iid]"));
+		assertEquals(1000, optPlan.getOutput().getTupleCount());
+	}
+
+	// test queries past the greedy threshold are planned quickly with JOINs only, and nearly as cheaply as exhaustively
+	@Test
+	public void testGreedyOrder() throws Exception {
+		System.out.println("\n===========  testing greedy join order  ===========\n");
+		for (int n : new int[] {6, 8, 10}) {
+			Catalogue cat = new Catalogue();
+			Operator plan = chainQuery(cat, n);
+			Optimiser greedy = new Optimiser(cat);
+			greedy.setGreedyThreshold(0);
+			long greedyCost = new Estimator().getCost(greedy.optimise(plan));
+			long exhaustiveCost = new Estimator().getCost(new Optimiser(cat).optimise(chainQuery(new Catalogue(), n)));
+			System.out.println(n + "-way chain ===> greedy " + greedyCost + ", exhaustive " + exhaustiveCost);
+			assertTrue(greedyCost <= 2 * exhaustiveCost);
+		}
+
+		Catalogue cat = new Catalogue();
+		Operator plan = chainQuery(cat, 30);
+		Optimiser opt = new Optimiser(cat);
+		long start = System.nanoTime();
+		Operator optPlan = opt.optimise(plan);
+		long nanos = System.nanoTime() - start;
+		System.out.println("Planned in " + nanos / 1000 + "us ===> " + optPlan);
+
+		// ordered greedily, so not every order was searched
+		assertFalse(opt.isSearchComplete());
+		assertEquals(29, optPlan.toString().split("JOIN").length - 1);
+		assertFalse(optPlan.toString().contains("TIMES"));
+		assertTrue(nanos < 1000000000L);
+
+		// more relations than greedy can order are refused, rather than mis-planned
+		cat = new Catalogue();
+		plan = chainQuery(cat, 64);
+		try {
+			new Optimiser(cat).optimise(plan);
+			fail("64-way chain was planned");
+		} catch (IllegalArgumentException e) {
+			System.out.println("64-way chain ===> " + e.getMessage());
+		}
+	}
+
+	// test a search that runs out of budget returns the best plan found so far, and says it's incomplete
+	@Test
+	public void testSearchBudget() throws Exception {
+		System.out.println("\n===========  testing search budget  ===========\n");
+		// a 14-way star takes the dynamic programme about a second
+		Catalogue cat = starCatalogue(14);
+		Optimiser opt = new Optimiser(cat);
+		opt.setGreedyThreshold(14);
+		long start = System.nanoTime();
+		Operator optPlan = opt.optimise(starQuery(cat, 14), SearchBudget.ofNanos(20000000L));
+		long nanos = System.nanoTime() - start;
+		System.out.println("Planned in " + nanos / 1000 + "us, " + opt.getSearchBudget().getPlansExplored() + " plans ===> " + optPlan);
+
+		assertFalse(opt.isSearchComplete());
+		assertTrue(nanos < 500000000L);
+		assertEquals(13, optPlan.toString().split("JOIN").length - 1);
+
+		// a budget of plans stops the search too, and a big enough one lets it finish with the cheapest plan
+		Catalogue chain = new Catalogue();
+		opt = new Optimiser(chain);
+		opt.optimise(chainQuery(chain, 8), SearchBudget.ofPlans(50));
+		assertFalse(opt.isSearchComplete());
+		assertTrue(opt.getSearchBudget().getPlansExplored() >= 50);
+
+		// greedy's candidates count against it too, and if they use it up the exhaustive search never starts
+		chain = new Catalogue();
+		opt = new Optimiser(chain);
+		opt.setGreedyThreshold(0);
+		opt.optimise(chainQuery(chain, 8));
+		long greedyPlans = opt.getSearchBudget().getPlansExplored();
+		chain = new Catalogue();
+		opt = new Optimiser(chain);
+		optPlan = opt.optimise(chainQuery(chain, 8), SearchBudget.ofPlans(1));
+		assertFalse(opt.isSearchComplete());
+		assertEquals(greedyPlans, opt.getSearchBudget().getPlansExplored());
+		assertEquals(7, optPlan.toString().split("JOIN").length - 1);
+
+		chain = new Catalogue();
+		opt = new Optimiser(chain);
+		Operator budgeted = opt.optimise(chainQuery(chain, 8), SearchBudget.ofPlans(1000000));
+		assertTrue(opt.isSearchComplete());
+		chain = new Catalogue();
+		Operator unlimited = new Optimiser(chain).optimise(chainQuery(chain, 8));
+		assertTrue(new Estimator().getCost(budgeted) <= new Estimator().getCost(unlimited));
+	}
+
+	// test the exhaustive search prunes most of its candidates against the greedy plan, and still finds a plan as cheap
+	@Test
+	public void testBranchAndBound() throws Exception {
+		System.out.println("\n===========  testing branch and bound  ===========\n");
+		Catalogue cat = starCatalogue(8);
+		Optimiser opt = new Optimiser(cat);
+		Operator optPlan = opt.optimise(starQuery(cat, 8));
+		SearchBudget search = opt.getSearchBudget();
+		System.out.println(search.getPlansPruned() + " of " + search.getPlansExplored() + " plans pruned ===> " + optPlan);
+
+		assertTrue(opt.isSearchComplete());
+		assertTrue(search.getPlansPruned() * 2 > search.getPlansExplored());
+
+		cat = starCatalogue(8);
+		Optimiser greedy = new Optimiser(cat);
+		greedy.setGreedyThreshold(0);
+		Operator greedyPlan = greedy.optimise(starQuery(cat, 8));
+		assertEquals(0, greedy.getSearchBudget().getPlansPruned());
+		assertTrue(new Estimator().getCost(optPlan) <= new Estimator().getCost(greedyPlan));
+	}
+
+	// test enumerating the JOIN orders on a pool finds the plan found on one thread
+	@Test
+	public void testParallelEnumeration() throws Exception {
+		System.out.println("\n===========  testing parallel enumeration  ===========\n");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		for (int n = 6; n <= 12; n += 3) {
+			Catalogue stars = starCatalogue(n), chains = new Catalogue();
+			Operator[] queries = {starQuery(stars, n), chainQuery(chains, n)};
+			Catalogue[] cats = {stars, chains};
+			for (int q = 0; q < queries.length; q++) {
+				Optimiser sequential = new Optimiser(cats[q]);
+				sequential.setGreedyThreshold(n);
+				Operator seqPlan = sequential.optimise(queries[q]);
+
+				Optimiser parallel = new Optimiser(cats[q]);
+				parallel.setGreedyThreshold(n);
+				parallel.setEnumerationPool(pool);
+				long start = System.nanoTime();
+				Operator parPlan = parallel.optimise(queries[q]);
+				System.out.println(n + " relations planned in parallel in " + (System.nanoTime() - start) / 1000 + "us");
+
+				assertEquals(seqPlan.toString(), parPlan.toString());
+				assertEquals(new Estimator().getCost(seqPlan), new Estimator().getCost(parPlan));
+				assertEquals(sequential.getSearchBudget().getPlansExplored(), parallel.getSearchBudget().getPlansExplored());
+				assertEquals(sequential.getSearchBudget().getPlansPruned(), parallel.getSearchBudget().getPlansPruned());
+			}
+		}
+		pool.shutdown();
+	}
+
+	// test a bushy plan, with a JOIN of two JOINs, is found on a cycle where it's far CHEAPER than the left-deep and greedy plans
+	@Test
+	public void testBushy() throws Exception {
+		System.out.println("\n===========  testing bushy plans  ===========\n");
+		long[] tuples = {45823, 43950, 93894, 35750, 25212, 56496, 519, 98455};
+		long[] as = {539, 378, 367, 468, 788, 921, 337, 138};
+		long[] bs = {428, 630, 280, 584, 860, 976, 168, 923};
+		Catalogue cat = new Catalogue();
+		String from = "", where = "";
+		for (int i = 0; i < tuples.length; i++) {
+			cat.createRelation("R" + i, tuples[i]);
+			cat.createAttribute("R" + i, "a" + i, as[i]);
+			cat.createAttribute("R" + i, "b" + i, bs[i]);
+			from += (i == 0 ? "" : ",") + "R" + i;
+			where += (i == 0 ? "" : ",") + ((i == tuples.length - 1) ? "b" + i + "=b0" : "b" + i + "=a" + (i + 1));
+		}
+		String query = "SELECT a0\nFROM " + from + "\nWHERE " + where + "\n";
+
+		Optimiser leftDeep = new Optimiser(cat);
+		Operator leftDeepPlan = leftDeep.optimise(new QueryParser(cat, new StringReader(query)).parse());
+		Optimiser bushy = new Optimiser(cat);
+		bushy.setBushy(true);
+		Operator bushyPlan = bushy.optimise(new QueryParser(cat, new StringReader(query)).parse());
+		long leftDeepCost = new Estimator().getCost(leftDeepPlan), bushyCost = new Estimator().getCost(bushyPlan);
+		System.out.println(leftDeepPlan + " ===> " + leftDeepCost + "\n" + bushyPlan + " ===> " + bushyCost);
+
+		assertTrue(bushy.isBushy());
+		assertTrue(bushyCost * 2 < leftDeepCost);
+		assertTrue(joinsJoins(bushyPlan));
+	}
+
+	// whether a JOIN in the plan has JOINs on both sides
+	private static boolean joinsJoins(Operator op) {
+		if (op.getInputs() == null) return false;
+		if (op instanceof Join && hasJoin(op.getInputs().get(0)) && hasJoin(op.getInputs().get(1))) return true;
+		for (Operator input : op.getInputs()) {
+			if (joinsJoins(input)) return true;
+		}
+		return false;
+	}
+
+	private static boolean hasJoin(Operator op) {
+		if (op instanceof Join) return true;
+		if (op.getInputs() == null) return false;
+		for (Operator input : op.getInputs()) {
+			if (hasJoin(input)) return true;
+		}
+		return false;
+	}
+
+	private static Catalogue sampleCatalogue() {
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		return cat;
+	}
+
+	// S0 .. S(n-1) of growing sizes
+	private static Catalogue starCatalogue(int n) {
+		Catalogue cat = new Catalogue();
+		for (int i = 0; i < n; i++) {
+			cat.createRelation("S" + i, 1000 + i * 997);
+			cat.createAttribute("S" + i, "k" + i, 100 + i * 31);
+		}
+		return cat;
+	}
+
+	// S0 JOIN S1 JOIN ... on k0=k(i)
+	private static Operator starQuery(Catalogue cat, int n) throws Exception {
+		String from = "", where = "";
+		for (int i = 0; i < n; i++) {
+			from += (i == 0 ? "" : ",") + "S" + i;
+			if (i > 0) where += (i == 1 ? "" : ",") + "k0=k" + i;
+		}
+		String query = "SELECT k0\nFROM " + from + "\nWHERE " + where + "\n";
+		return new QueryParser(cat, new StringReader(query)).parse();
+	}
+
+	// R0 JOIN R1 JOIN ... on b(i-1)=a(i)
+	private static Operator chainQuery(Catalogue cat, int n) throws Exception {
+		String from = "", where = "";
+		for (int i = 0; i < n; i++) {
+			cat.createRelation("R" + i, 1000 + i * 137);
+			cat.createAttribute("R" + i, "a" + i, 50 + i * 7);
+			cat.createAttribute("R" + i, "b" + i, 20 + i * 3);
+			cat.createAttribute("R" + i, "c" + i, 10 + i);
+			from += (i == 0 ? "" : ",") + "R" + i;
+			if (i > 0) where += (i == 1 ? "" : ",") + "b" + (i - 1) + "=a" + i;
+		}
+		String query = "SELECT c0,c" + (n - 1) + "\nFROM " + from + "\nWHERE " + where + "\n";
+		return new QueryParser(cat, new StringReader(query)).parse();
+	}
+}
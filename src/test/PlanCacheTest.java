@@ -0,0 +1,113 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.ColumnStatistics;
+import sjdb.Operator;
+import sjdb.PlanCache;
+import sjdb.QueryParser;
+
+public class PlanCacheTest {
+
+	private static Operator parse(Catalogue cat, String query) throws Exception {
+		return new QueryParser(cat, new StringReader(query)).parse();
+	}
+
+	// test a query of a shape already optimised gets the same plan with its own values, whatever the order of its clauses
+	@Test
+	public void testBinding() throws Exception {
+		System.out.println("\n===========  testing plan cache binding  ===========\n");
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		PlanCache cache = new PlanCache(cat);
+
+		String first = "SELECT projname, deptname\nFROM Project, Department\nWHERE dept=deptid, manager=\"3\", projid=\"7\"\n";
+		String second = "SELECT projname, deptname\nFROM Department, Project\nWHERE projid=\"12\", deptid=dept, manager=\"4\"\n";
+		Operator plan = cache.optimise(parse(cat, first));
+		Operator bound = cache.optimise(parse(cat, second));
+		System.out.println(plan + "\n" + bound + "\n" + cache);
+
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(plan.toString().replace("\"3\"", "\"4\"").replace("\"7\"", "\"12\""), bound.toString());
+
+		// binding didn't change the cached plan
+		assertEquals(plan.toString().replace("\"3\"", "\"5\"").replace("\"7\"", "\"1\""),
+				cache.optimise(parse(cat, first.replace("\"3\"", "\"5\"").replace("\"7\"", "\"1\""))).toString());
+
+		// other attributes projected is another shape
+		cache.optimise(parse(cat, first.replace("projname, ", "")));
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.size());
+	}
+
+	// test the plans are dropped once the catalogue changes, and the cache holds no more than its capacity
+	@Test
+	public void testInvalidationAndEviction() throws Exception {
+		System.out.println("\n===========  testing plan cache invalidation and eviction  ===========\n");
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		PlanCache cache = new PlanCache(cat, 2);
+
+		String query = "SELECT persname\nFROM Person\nWHERE age=\"35\"\n";
+		cache.optimise(parse(cat, query));
+		cache.optimise(parse(cat, query));
+		assertEquals(1, cache.getHits());
+
+		cat.setStatistics("Person", "age", new ColumnStatistics(47, new String[] {"35"}, new double[] {0.5}, null));
+		cache.optimise(parse(cat, query));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getInvalidations());
+
+		// Person is seen again and again, so the shapes seen once evict each other
+		for (String relation : new String[] {"Project", "Department", "Project", "Department"}) {
+			cache.optimise(parse(cat, query));
+			cache.optimise(parse(cat, "SELECT *\nFROM " + relation + "\n"));
+		}
+		System.out.println(cache);
+		assertEquals(2, cache.size());
+		assertEquals(5, cache.getHits());
+		assertEquals(3, cache.getEvictions());
+	}
+
+	// test threads sharing the cache each get the plan for their own values
+	@Test
+	public void testConcurrent() throws Exception {
+		System.out.println("\n===========  testing plan cache shared by threads  ===========\n");
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		PlanCache cache = new PlanCache(cat, 4);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int t = 0; t < 4; t++) {
+			results.add(pool.submit(() -> {
+				for (int i = 0; i < 200; i++) {
+					String value = Integer.toString(i % 50);
+					String query = "SELECT projname, deptname\nFROM Project, Department\nWHERE dept=deptid, projid=\"" + value + "\"\n";
+					String plan = cache.optimise(parse(cat, query)).toString();
+					if (!plan.contains("projid=\"" + value + "\"")) return false;
+				}
+				return true;
+			}));
+		}
+		for (Future<Boolean> result : results) assertTrue(result.get());
+		pool.shutdown();
+		System.out.println(cache);
+
+		assertEquals(800, cache.getHits() + cache.getMisses());
+		assertTrue(cache.getMisses() <= 4);
+		assertEquals(1, cache.size());
+	}
+}
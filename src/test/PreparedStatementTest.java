@@ -0,0 +1,118 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sjdb.Analyzer;
+import sjdb.Catalogue;
+import sjdb.CatalogueParser;
+import sjdb.DataStore;
+import sjdb.DatabaseException;
+import sjdb.Estimator;
+import sjdb.ExecutionMode;
+import sjdb.Executor;
+import sjdb.NamedRelation;
+import sjdb.Operator;
+import sjdb.Optimiser;
+import sjdb.PreparedStatement;
+import sjdb.QueryParser;
+import sjdb.Tuple;
+
+public class PreparedStatementTest {
+
+	// test a prepared query bound to values returns what the query with those values does, and can't run unbound
+	@Test
+	public void testBinding() throws Exception {
+		System.out.println("\n===========  testing prepared statement binding  ===========\n");
+		Catalogue cat = new Catalogue();
+		new CatalogueParser("data/cat.txt", cat).parse();
+		DataStore store = new DataStore();
+		Random random = new Random(3211);
+		for (NamedRelation reln : cat.getRelations()) store.generate(reln, random);
+		Executor exec = new Executor(store);
+
+		String query = "SELECT projname, deptname\nFROM Project, Department\nWHERE dept=deptid, deptid=?, projid=?\n";
+		PreparedStatement stmt = new PreparedStatement(cat, query);
+		System.out.println(stmt);
+		assertEquals(2, stmt.getParameterCount());
+		assertTrue(stmt.getPlan().toString().contains("deptid=?"));
+
+		for (int dept = 0; dept < 5; dept++) {
+			for (int proj = 0; proj < 40; proj += 7) {
+				String literal = query.replace("deptid=?", "deptid=\"" + dept + "\"").replace("projid=?", "projid=\"" + proj + "\"");
+				Operator bound = stmt.bind(Integer.toString(dept), Integer.toString(proj));
+				Operator optimised = new Optimiser(cat).optimise(new QueryParser(cat, new StringReader(literal)).parse());
+				assertEquals(optimised.toString(), bound.toString());
+				assertEquals(strings(exec.execute(optimised)), strings(exec.execute(bound, ExecutionMode.VECTORISED)));
+			}
+		}
+		assertEquals(30, stmt.getBindCount());
+		assertEquals(0, stmt.getReplanCount());
+
+		try {
+			exec.execute(stmt.getPlan());
+			fail("executed a plan with parameters not bound");
+		} catch (DatabaseException e) {
+			System.out.println(e.getMessage());
+		}
+		try {
+			stmt.bind("1");
+			fail("bound one value to two parameters");
+		} catch (DatabaseException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	// test a value that's one of the most common of its attribute gets a plan of its own, estimated with its frequency
+	@Test
+	public void testMostCommonValues() throws Exception {
+		System.out.println("\n===========  testing prepared statement replanning  ===========\n");
+		Catalogue cat = new Catalogue();
+		cat.createRelation("Project", 20000);
+		cat.createAttribute("Project", "projid", 20000);
+		cat.createAttribute("Project", "dept", 500);
+
+		// two fifths of the projects are in department 0, the rest spread over 1..499
+		Random random = new Random(3211);
+		List<Tuple> data = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			String dept = (random.nextInt(5) < 2) ? "0" : Integer.toString(1 + random.nextInt(499));
+			data.add(new Tuple(new String[] {Integer.toString(i), dept}));
+		}
+		DataStore store = new DataStore();
+		store.insert(cat.getRelation("Project"), data);
+
+		PreparedStatement stmt = new PreparedStatement(cat, "SELECT projid\nFROM Project\nWHERE dept=?\n");
+		Estimator est = new Estimator();
+		est.getCost(stmt.getPlan());
+		assertEquals(40, stmt.getPlan().getOutput().getTupleCount());
+		stmt.bind("0");
+		assertEquals(0, stmt.getReplanCount());
+
+		new Analyzer(cat, store).analyze();
+		Operator common = stmt.bind("0");
+		Operator rare = stmt.bind("17");
+		est.clearMemo();
+		est.getCost(common);
+		est.getCost(rare);
+		System.out.println(common + " ===> " + common.getOutput().getTupleCount() + "\n" + rare + " ===> " + rare.getOutput().getTupleCount());
+
+		assertEquals(1, stmt.getReplanCount());
+		assertEquals(8000, common.getOutput().getTupleCount(), 400);
+		assertTrue(rare.getOutput().getTupleCount() < 100);
+		assertEquals(new Executor(store).execute(common).size(), common.getOutput().getTupleCount(), 400);
+	}
+
+	private static List<String> strings(List<Tuple> tuples) {
+		List<String> ret = new ArrayList<>();
+		for (Tuple t : tuples) ret.add(t.toString());
+		ret.sort(null);
+		return ret;
+	}
+}